@@ -0,0 +1,87 @@
+import benchmarks.Editor;
+
+import javax.swing.text.BadLocationException;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The editor operations the benchmarks measure, done with the same classes the File and Edit
+ * menus use, minus the dialogs and background tasks around them.
+ */
+public class BenchmarkEditor implements Editor {
+    private PieceTableDocument document;
+    private UndoHistory history;
+
+    @Override
+    public Object open(Path path) throws IOException {
+        close();
+        document = OpenTask.read(path.toFile(), IoProgress.NONE, IoProgress.NONE);
+        // Unlimited, so that no edit goes to disk while it is measured
+        history = new UndoHistory(Long.MAX_VALUE);
+        history.setDocument(document);
+        return document;
+    }
+
+    @Override
+    public void save(Path target) throws IOException {
+        new AtomicSaver(TextFormat.of(document), false).save(document.snapshot(), target, IoProgress.NONE);
+    }
+
+    @Override
+    public int countMatches(String text, boolean matchCase) {
+        TextBuffer snapshot = document.snapshot();
+        int[] count = new int[1];
+        new TextSearcher(text, matchCase).scan(snapshot, 0, snapshot.length(), IoProgress.NONE, new TextSearcher.MatchVisitor() {
+            @Override
+            public boolean matchFound(int start) {
+                count[0]++;
+                return true;
+            }
+        });
+        return count[0];
+    }
+
+    @Override
+    public int find(String text) {
+        TextBuffer snapshot = document.snapshot();
+        return new TextSearcher(text, true).indexOf(snapshot, 0, snapshot.length());
+    }
+
+    @Override
+    public int replaceAll(String text, String replacement) {
+        Replacements replacements = new Replacer(text, replacement, true, false)
+                .findAll(document.snapshot(), null, IoProgress.NONE);
+        document.replaceAll(replacements);
+        return replacements.size();
+    }
+
+    @Override
+    public void type(String text) {
+        int offset = document.getLineStartOffset(document.getLineCount() / 2);
+        try {
+            for (int i = 0; i < text.length(); i++) {
+                document.insertString(offset + i, text.substring(i, i + 1), null);
+            }
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean undo() {
+        if (!history.canUndo()) {
+            return false;
+        }
+        history.undo();
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (history != null) {
+            history.close();
+        }
+        document = null;
+        history = null;
+    }
+}
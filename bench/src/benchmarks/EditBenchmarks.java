@@ -0,0 +1,148 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the Edit menu: finding and counting matches, replacing them all, typing and
+ * undoing.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EditBenchmarks {
+    // Text that never occurs in a generated file, so finding it scans everything
+    private static final String MISSING = "notes-editor-missing";
+
+    // Typed a keystroke at a time, in words the undo history groups
+    private static final String TYPED = "the quick brown fox jumps over the lazy dog ";
+
+    /**
+     * An editor with the generated file open, and the text to find in it.
+     */
+    @State(Scope.Benchmark)
+    public static class Session {
+        Editor editor;
+        String term;
+        String replacement;
+
+        /**
+         * Opens the generated file.
+         *
+         * @param text The generated file.
+         * @throws IOException If the file cannot be read.
+         */
+        @Setup(Level.Trial)
+        public void open(GeneratedText text) throws IOException {
+            editor = Editor.create();
+            editor.open(text.path);
+            term = TextGenerator.term(text.kind);
+            // Longer than the text it replaces, so the document grows
+            replacement = term.toLowerCase(Locale.ROOT) + "_replaced";
+        }
+
+        /**
+         * Closes the document.
+         */
+        @TearDown(Level.Trial)
+        public void close() {
+            editor.close();
+        }
+    }
+
+    /**
+     * A session whose replacements are undone after each one, so every replacement starts from
+     * the same text.
+     */
+    @State(Scope.Benchmark)
+    public static class Replacing extends Session {
+        /**
+         * Undoes the replacement just measured.
+         */
+        @TearDown(Level.Invocation)
+        public void undo() {
+            editor.undo();
+        }
+    }
+
+    /**
+     * A session with every match replaced before each undo is measured.
+     */
+    @State(Scope.Benchmark)
+    public static class Undoing extends Session {
+        /**
+         * Replaces every match, for the undo to take back.
+         */
+        @Setup(Level.Invocation)
+        public void replace() {
+            editor.replaceAll(term, replacement);
+        }
+    }
+
+    /**
+     * Counts the matches of text found throughout the document.
+     */
+    @Benchmark
+    public int countMatches(Session session) {
+        return session.editor.countMatches(session.term, true);
+    }
+
+    /**
+     * Counts the matches ignoring case, which compares folded characters.
+     */
+    @Benchmark
+    public int countMatchesIgnoringCase(Session session) {
+        return session.editor.countMatches(session.term, false);
+    }
+
+    /**
+     * Looks for text that is not there, which scans the whole document.
+     */
+    @Benchmark
+    public int findMissing(Session session) {
+        return session.editor.find(MISSING);
+    }
+
+    /**
+     * Replaces every match in one edit.
+     */
+    @Benchmark
+    public int replaceAll(Replacing session) {
+        return session.editor.replaceAll(session.term, session.replacement);
+    }
+
+    /**
+     * Undoes replacing every match.
+     */
+    @Benchmark
+    public boolean undoReplaceAll(Undoing session) {
+        return session.editor.undo();
+    }
+
+    /**
+     * Types a line of words into the middle of the document, then undoes it word by word.
+     */
+    @Benchmark
+    public void typeAndUndo(Session session) {
+        session.editor.type(TYPED);
+        while (session.editor.undo()) {
+            // Until the document is back as it was opened
+        }
+    }
+}
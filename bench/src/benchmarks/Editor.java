@@ -0,0 +1,89 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The editor operations the benchmarks measure, on one document at a time.
+ * <p>
+ * The editor's classes live in the unnamed package, which benchmark classes, kept in a package
+ * of their own as JMH requires, cannot refer to. The implementation therefore lives in the unnamed
+ * package too, and is looked up by name once, before anything is measured.
+ */
+public interface Editor {
+    /**
+     * Creates an editor with no document open.
+     *
+     * @return The editor.
+     */
+    static Editor create() {
+        try {
+            return (Editor) Class.forName("BenchmarkEditor").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("The editor's classes are missing from the class path", e);
+        }
+    }
+
+    /**
+     * Opens a file the way File > Open does, in place of the document open before, with a fresh
+     * undo history.
+     *
+     * @param path The file.
+     * @return The new document.
+     * @throws IOException If the file cannot be read.
+     */
+    Object open(Path path) throws IOException;
+
+    /**
+     * Saves the document the way File > Save does, without forcing it to disk.
+     *
+     * @param target The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    void save(Path target) throws IOException;
+
+    /**
+     * Counts the matches of a text, as the Find dialog does.
+     *
+     * @param text The text to find.
+     * @param matchCase Whether upper and lower case must match exactly.
+     * @return The number of matches.
+     */
+    int countMatches(String text, boolean matchCase);
+
+    /**
+     * Finds the first match of a text.
+     *
+     * @param text The text to find.
+     * @return Its offset, or -1 if it does not occur.
+     */
+    int find(String text);
+
+    /**
+     * Replaces every match of a text in one edit, as Replace All does.
+     *
+     * @param text The text to find.
+     * @param replacement The text to put in its place.
+     * @return The number of matches replaced.
+     */
+    int replaceAll(String text, String replacement);
+
+    /**
+     * Types text into the middle of the document, a keystroke at a time.
+     *
+     * @param text The text to type.
+     */
+    void type(String text);
+
+    /**
+     * Undoes the last edit, as Edit > Undo does.
+     *
+     * @return Whether there was an edit to undo.
+     */
+    boolean undo();
+
+    /**
+     * Lets go of the document and deletes the files of its undo history.
+     */
+    void close();
+}
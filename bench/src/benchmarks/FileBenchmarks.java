@@ -0,0 +1,96 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the File menu: opening a file into a document and saving a document.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FileBenchmarks {
+    /**
+     * An editor with the generated file open, and a file to save it to.
+     */
+    @State(Scope.Benchmark)
+    public static class Session {
+        Editor editor;
+        Path target;
+
+        /**
+         * Opens the generated file.
+         *
+         * @param text The generated file.
+         * @throws IOException If the file cannot be read, or the target created.
+         */
+        @Setup
+        public void setUp(GeneratedText text) throws IOException {
+            editor = Editor.create();
+            editor.open(text.path);
+            target = Files.createTempFile("notes-editor-bench", "." + text.kind);
+        }
+
+        /**
+         * Closes the document and deletes the saved file.
+         *
+         * @throws IOException If the saved file cannot be deleted.
+         */
+        @TearDown
+        public void tearDown() throws IOException {
+            editor.close();
+            Files.deleteIfExists(target);
+        }
+    }
+
+    /**
+     * Detects the format, maps or decodes the text and indexes its lines.
+     */
+    @Benchmark
+    public Object open(Session session, GeneratedText text) throws IOException {
+        return session.editor.open(text.path);
+    }
+
+    /**
+     * Reads the file the way File > Open did before formats were detected, as the baseline for
+     * {@link #open}: a line at a time in the platform charset, each appended with a '\n'. Putting
+     * the text into a text area is left out.
+     */
+    @Benchmark
+    public String openWithReadLine(GeneratedText text) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(text.path.toFile()))) {
+            StringBuilder fileText = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                fileText.append(line).append("\n");
+            }
+            return fileText.toString();
+        }
+    }
+
+    /**
+     * Snapshots the document and writes it out atomically.
+     */
+    @Benchmark
+    public void save(Session session) throws IOException {
+        session.editor.save(session.target);
+    }
+}
@@ -0,0 +1,34 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A generated file the benchmarks run against, for every kind and size asked for. Narrow them
+ * down on the command line, such as -p kind=log -p size=1MB.
+ */
+@State(Scope.Benchmark)
+public class GeneratedText {
+    @Param({"log", "csv", "json"})
+    public String kind;
+
+    @Param({"1MB", "100MB", "1GB"})
+    public String size;
+
+    public Path path;
+
+    /**
+     * Writes the file unless an earlier run left it behind.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    @Setup
+    public void generate() throws IOException {
+        path = TextGenerator.file(kind, size);
+    }
+}
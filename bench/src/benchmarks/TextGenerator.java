@@ -0,0 +1,181 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Writes synthetic text files for the benchmarks: application logs, CSV tables and minified JSON.
+ * <p>
+ * The text comes from a fixed seed, so every run measures the same files. Files are kept in the
+ * temporary directory and only written again when missing, since a gigabyte takes a while.
+ */
+public final class TextGenerator {
+    // Text the find benchmarks count, found throughout each kind of file
+    private static final String LOG_TERM = "ERROR";
+    private static final String CSV_TERM = "Lisbon";
+    private static final String JSON_TERM = "\"active\":false";
+
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "INFO", "DEBUG", "DEBUG", "WARN", "ERROR"};
+    private static final String[] SERVICES = {"OrderService", "PaymentGateway", "InventoryCache", "SessionStore",
+            "MailQueue"};
+    private static final String[] NAMES = {"Alice", "Bob", "Carmen", "Dmitri", "Emeka", "Fatima", "Goran", "Hiroko"};
+    private static final String[] CITIES = {"Lisbon", "Nairobi", "Osaka", "Quito", "Reykjavik", "Tallinn", "Windhoek"};
+    private static final String[] TAGS = {"new", "sale", "bulk", "gift", "export"};
+
+    private TextGenerator() {
+    }
+
+    /**
+     * Retrieves a generated file, writing it first if it is not there yet.
+     *
+     * @param kind "log", "csv" or "json".
+     * @param size The size of the file, such as "1MB" or "1GB".
+     * @return The path of the file.
+     * @throws IOException If the file cannot be written.
+     */
+    public static Path file(String kind, String size) throws IOException {
+        long bytes = parseSize(size);
+        Path directory = Paths.get(System.getProperty("java.io.tmpdir"), "notes-editor-bench");
+        Files.createDirectories(directory);
+        Path path = directory.resolve(kind + "-" + size + "." + kind);
+        if (!Files.exists(path) || Files.size(path) < bytes) {
+            Path temp = Files.createTempFile(directory, kind, ".part");
+            try (Writer out = new BufferedWriter(Files.newBufferedWriter(temp, StandardCharsets.UTF_8), 1 << 20)) {
+                write(kind, bytes, out);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return path;
+    }
+
+    /**
+     * Retrieves text that occurs throughout a kind of file.
+     *
+     * @param kind "log", "csv" or "json".
+     * @return The text.
+     */
+    public static String term(String kind) {
+        switch (kind) {
+            case "log":
+                return LOG_TERM;
+            case "csv":
+                return CSV_TERM;
+            case "json":
+                return JSON_TERM;
+            default:
+                throw new IllegalArgumentException("Unknown kind of file: " + kind);
+        }
+    }
+
+    /**
+     * Parses a size such as "512KB", "100MB" or "1GB".
+     *
+     * @param size The size.
+     * @return The number of bytes.
+     */
+    public static long parseSize(String size) {
+        String upper = size.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (upper.endsWith("KB")) {
+            unit = 1L << 10;
+        } else if (upper.endsWith("MB")) {
+            unit = 1L << 20;
+        } else if (upper.endsWith("GB")) {
+            unit = 1L << 30;
+        }
+        String digits = unit == 1 ? upper : upper.substring(0, upper.length() - 2);
+        return Long.parseLong(digits.trim()) * unit;
+    }
+
+    /**
+     * Writes text of a kind until it reaches a number of bytes. The text is ASCII, so characters
+     * and bytes count the same.
+     */
+    static void write(String kind, long bytes, Writer out) throws IOException {
+        Random random = new Random(42);
+        StringBuilder line = new StringBuilder(256);
+        long written = 0;
+        long record = 0;
+        if (kind.equals("csv")) {
+            line.append("id,name,email,city,amount,date\n");
+        } else if (kind.equals("json")) {
+            line.append('[');
+        } else if (!kind.equals("log")) {
+            throw new IllegalArgumentException("Unknown kind of file: " + kind);
+        }
+        while (written + line.length() < bytes) {
+            out.append(line);
+            written += line.length();
+            line.setLength(0);
+            switch (kind) {
+                case "log":
+                    logEntry(random, record, line);
+                    break;
+                case "csv":
+                    csvRow(random, record, line);
+                    break;
+                default:
+                    jsonObject(random, record, line);
+                    break;
+            }
+            record++;
+        }
+        if (kind.equals("json")) {
+            out.append(record > 0 ? "{}]" : "]");
+        }
+    }
+
+    private static void logEntry(Random random, long record, StringBuilder line) {
+        String level = LEVELS[random.nextInt(LEVELS.length)];
+        long millis = record * 37;
+        line.append("2024-05-").append(10 + millis / 86_400_000 % 20).append(' ');
+        appendTwoDigits(line, millis / 3_600_000 % 24).append(':');
+        appendTwoDigits(line, millis / 60_000 % 60).append(':');
+        appendTwoDigits(line, millis / 1000 % 60).append(',').append(100 + millis % 900).append(' ');
+        line.append(level).append(level.length() == 4 ? "  " : " ");
+        line.append("[worker-").append(random.nextInt(16)).append("] ");
+        line.append("com.example.").append(SERVICES[random.nextInt(SERVICES.length)]).append(" - ");
+        if (level.equals("ERROR")) {
+            line.append("Request ").append(record).append(" failed: connection reset\n");
+            line.append("java.io.IOException: Connection reset\n");
+            line.append("\tat com.example.net.Channel.read(Channel.java:").append(random.nextInt(400)).append(")\n");
+            line.append("\tat com.example.OrderService.handle(OrderService.java:").append(random.nextInt(400)).append(")\n");
+        } else {
+            line.append("Processed request ").append(record).append(" in ").append(random.nextInt(250)).append(" ms\n");
+        }
+    }
+
+    private static void csvRow(Random random, long record, StringBuilder line) {
+        String name = NAMES[random.nextInt(NAMES.length)];
+        line.append(record).append(',').append(name).append(',');
+        line.append(name.toLowerCase(Locale.ROOT)).append(record % 1000).append("@example.com,");
+        line.append(CITIES[random.nextInt(CITIES.length)]).append(',');
+        line.append(random.nextInt(100_000)).append('.').append(random.nextInt(90) + 10).append(',');
+        line.append("2024-").append(1 + random.nextInt(9)).append('-').append(10 + random.nextInt(19)).append('\n');
+    }
+
+    private static void jsonObject(Random random, long record, StringBuilder line) {
+        line.append("{\"id\":").append(record);
+        line.append(",\"name\":\"").append(NAMES[random.nextInt(NAMES.length)]).append('"');
+        line.append(",\"city\":\"").append(CITIES[random.nextInt(CITIES.length)]).append('"');
+        line.append(",\"price\":").append(random.nextInt(10_000)).append('.').append(random.nextInt(90) + 10);
+        line.append(",\"tags\":[\"").append(TAGS[random.nextInt(TAGS.length)]).append("\",\"")
+                .append(TAGS[random.nextInt(TAGS.length)]).append("\"]");
+        line.append(",\"active\":").append(random.nextInt(4) == 0 ? "false" : "true").append("},");
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder line, long value) {
+        if (value < 10) {
+            line.append('0');
+        }
+        return line.append(value);
+    }
+}
@@ -1,21 +1,66 @@
 import javax.swing.*;
+import java.awt.*;
 
 /**
  * Entry point for the Notepad application.
  */
 public class App {
 
+    // Look and feel of the application
+    private static final String LOOK_AND_FEEL = "com.jtattoo.plaf.acryl.AcrylLookAndFeel";
+
     /**
      * Main method to start the application.
+     * <p>
+     * By default Notepad starts fast: the look and feel is loaded on the main thread while another
+     * thread starts up the AWT toolkit, and the window shows its text area before the menus are
+     * built. Run with -Dnotepad.fastStart=false to build everything before the window shows.
+     * <p>
+     * Events on the Event Dispatch Thread are timed by an {@link EdtMonitor}, which prints the
+     * stack of the thread when an event holds it longer than -Dnotepad.stallMillis, 200 ms by default.
+     *
      * @param args Command line arguments (not used in this application).
      */
     public static void main(String[] args){
+        StartupTimer.start();
+        boolean fastStart = !"false".equals(System.getProperty("notepad.fastStart"));
+
+        if(fastStart){
+            // The toolkit starts up while the look and feel's classes load, which only need it later on
+            Thread toolkitLoader = new Thread(new Runnable(){
+                @Override
+                public void run(){
+                    Toolkit.getDefaultToolkit();
+                }
+            }, "Toolkit loader");
+            toolkitLoader.setDaemon(true);
+            toolkitLoader.start();
+            try{
+                UIManager.setLookAndFeel(LOOK_AND_FEEL);
+            }catch(Exception e){
+                e.printStackTrace();
+            }
+            StartupTimer.mark("look and feel");
+        }else{
+            // Enumerate fonts in the background while the window comes up, for the font dialog
+            FontCatalog.preload();
+        }
+
         SwingUtilities.invokeLater(new Runnable(){
             @Override
             public void run(){
                 try{
-                    UIManager.setLookAndFeel("com.jtattoo.plaf.acryl.AcrylLookAndFeel");
-                    new GUI().setVisible(true);
+                    // Times every event from here on, and reports the Event Dispatch Thread stalling
+                    EdtMonitor.install();
+                    if(!fastStart){
+                        UIManager.setLookAndFeel(LOOK_AND_FEEL);
+                        StartupTimer.mark("look and feel");
+                    }
+                    GUI gui = new GUI(fastStart);
+                    StartupTimer.mark("frame construction");
+                    gui.setVisible(true);
+                    gui.restoreSession();
+                    gui.recoverUnsavedWork();
                 }catch(Exception e){
                     e.printStackTrace();
                 }
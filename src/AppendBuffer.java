@@ -0,0 +1,156 @@
+import javax.swing.text.Segment;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Deflater;
+
+/**
+ * Append-only TextBuffer holding every character ever inserted into a document.
+ * Text is stored in fixed-size blocks, so growing the buffer never copies what is already there,
+ * and readers that fetched an older range keep seeing the same characters.
+ * <p>
+ * A block that has been filled never changes again, so a background thread compresses it into a
+ * {@link TextChunk} and the block itself is let go; its characters stay in {@link ChunkCache}
+ * while they are read. Large pastes and followed logs then take a fraction of the memory, while
+ * the block being typed into stays as it is.
+ */
+public class AppendBuffer implements TextBuffer {
+    private static final int BLOCK_SHIFT = 16;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    private static final ExecutorService compressThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Text compression");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+
+    // Only used by the compression thread
+    private static final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+
+    // Blocks in memory, null once compressed, and the compressed ones. Both arrays are replaced
+    // rather than changed once a block has been compressed, chunks first, so that a reader that
+    // finds a block gone always finds its chunk
+    private volatile char[][] blocks = new char[8][];
+    private volatile TextChunk[] chunks = new TextChunk[8];
+    private volatile int length;
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Appends text to the end of the buffer.
+     *
+     * @param text The text to append.
+     * @return The offset at which the text was stored.
+     */
+    public synchronized int append(String text) {
+        int start = length;
+        int pos = start;
+        int copied = 0;
+        while (copied < text.length()) {
+            char[] block = blockFor(pos);
+            int count = Math.min(text.length() - copied, BLOCK_SIZE - (pos & BLOCK_MASK));
+            text.getChars(copied, copied + count, block, pos & BLOCK_MASK);
+            copied += count;
+            pos += count;
+        }
+        length = pos;
+        for (int index = start >>> BLOCK_SHIFT; index < pos >>> BLOCK_SHIFT; index++) {
+            compressLater(index);
+        }
+        return start;
+    }
+
+    /**
+     * Compresses a block that has been filled, in the background.
+     */
+    private void compressLater(int index) {
+        char[] block = blocks[index];
+        compressThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                TextChunk chunk = TextChunk.compress(block, 0, BLOCK_SIZE, deflater);
+                synchronized (AppendBuffer.this) {
+                    TextChunk[] compressed = chunks.clone();
+                    compressed[index] = chunk;
+                    chunks = compressed;
+                    char[][] remaining = blocks.clone();
+                    remaining[index] = null;
+                    blocks = remaining;
+                }
+                ChunkCache.compressed(chunk, block);
+            }
+        });
+    }
+
+    /**
+     * Returns the block that stores the given offset, allocating it if needed.
+     */
+    private char[] blockFor(int pos) {
+        int index = pos >>> BLOCK_SHIFT;
+        char[][] current = blocks;
+        if (index >= current.length) {
+            TextChunk[] grownChunks = new TextChunk[current.length * 2];
+            System.arraycopy(chunks, 0, grownChunks, 0, current.length);
+            chunks = grownChunks;
+            char[][] grown = new char[current.length * 2][];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            blocks = current = grown;
+        }
+        if (current[index] == null) {
+            current[index] = new char[BLOCK_SIZE];
+        }
+        return current[index];
+    }
+
+    @Override
+    public synchronized long memoryUsage() {
+        // Every block up to the one holding the end is allocated or compressed
+        long bytes = 0;
+        int count = (int) (((long) length + BLOCK_MASK) >>> BLOCK_SHIFT);
+        for (int index = 0; index < count; index++) {
+            if (blocks[index] != null) {
+                bytes += BLOCK_SIZE * Character.BYTES;
+            } else if (chunks[index] != null) {
+                bytes += chunks[index].memoryUsage();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the characters of a block, from the cache if it has been compressed.
+     */
+    private char[] block(int index) {
+        char[] block = blocks[index];
+        return block != null ? block : ChunkCache.get(chunks[index]);
+    }
+
+    @Override
+    public void getChars(int offset, int length, Segment segment) {
+        int inBlock = offset & BLOCK_MASK;
+        if (inBlock + length <= BLOCK_SIZE) {
+            // The range lives in one block, so share it directly
+            segment.array = block(offset >>> BLOCK_SHIFT);
+            segment.offset = inBlock;
+            segment.count = length;
+        } else if (segment.isPartialReturn()) {
+            segment.array = block(offset >>> BLOCK_SHIFT);
+            segment.offset = inBlock;
+            segment.count = BLOCK_SIZE - inBlock;
+        } else {
+            char[] copy = new char[length];
+            TextBuffer.copyChars(this, offset, length, copy, 0);
+            segment.array = copy;
+            segment.offset = 0;
+            segment.count = length;
+        }
+    }
+}
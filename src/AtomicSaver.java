@@ -0,0 +1,279 @@
+import javax.swing.text.Segment;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Streams text to a file without ever holding it as one String, and replaces the file atomically.
+ * <p>
+ * The text is encoded chunk by chunk into a reused direct buffer and written to a temporary file
+ * next to the target. Once everything is written, and optionally forced to disk, the temporary
+ * file is renamed over the target, so a crash or cancellation part way through leaves the
+ * original file untouched.
+ * <p>
+ * A symbolic link is followed, so the file it points to is replaced and the link stays. The new
+ * file gets the permissions, ACL, owner and group of the one it replaces, as far as the file
+ * system and the rights of the editor allow: only a privileged user can give a file to another
+ * owner, so saving a file owned by someone else makes it the user's own. A file that did not
+ * exist gets the default permissions of the user, as any other new file would.
+ * <p>
+ * The text is written in a {@link TextFormat}: after the byte order mark, if the format has one,
+ * every '\n' of the document is written as the line separator of the format.
+ */
+public class AtomicSaver {
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final TextFormat format;
+    private final boolean sync;
+
+    /**
+     * Creates a saver that writes the text as it is, without a byte order mark.
+     *
+     * @param charset The charset to encode the text with.
+     * @param sync Whether to force the data to disk before replacing the target.
+     */
+    public AtomicSaver(Charset charset, boolean sync) {
+        this(new TextFormat(charset, false, "\n"), sync);
+    }
+
+    /**
+     * Creates a saver.
+     *
+     * @param format The charset, byte order mark and line separator to write the text with.
+     * @param sync Whether to force the data to disk before replacing the target.
+     */
+    public AtomicSaver(TextFormat format, boolean sync) {
+        this.format = format;
+        this.sync = sync;
+    }
+
+    /**
+     * Writes text to a file, replacing whatever was there.
+     *
+     * @param text The text to write.
+     * @param target The file to write.
+     * @param progress Receives the number of characters written so far.
+     * @throws IOException If the file cannot be written. The target is left unchanged.
+     */
+    public void save(TextBuffer text, Path target, IoProgress progress) throws IOException {
+        Path absolute = resolve(target);
+        Path temp = createTemp(absolute);
+        boolean moved = false;
+        try {
+            copyAttributes(absolute, temp);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(text, channel, progress);
+                if (sync) {
+                    channel.force(true);
+                }
+            }
+            replace(temp, absolute);
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Encodes the text into the channel one chunk at a time.
+     */
+    private void write(TextBuffer text, FileChannel channel, IoProgress progress) throws IOException {
+        CharsetEncoder encoder = format.getCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer out = ByteBuffer.allocateDirect(CHUNK_SIZE * 4);
+        out.put(format.getBom());
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+
+        // Chunks with their line breaks expanded, when the separator is not '\n'
+        String separator = format.getLineSeparator();
+        char[] expanded = separator.equals("\n") ? null : new char[CHUNK_SIZE * separator.length()];
+
+        // A high surrogate left over at the end of a chunk, waiting for its pair
+        CharBuffer carry = CharBuffer.allocate(2);
+        int length = text.length();
+        for (int pos = 0; pos < length; pos += segment.count) {
+            text.getChars(pos, Math.min(length - pos, CHUNK_SIZE), segment);
+            CharBuffer in = expanded == null
+                    ? CharBuffer.wrap(segment.array, segment.offset, segment.count)
+                    : expandLineBreaks(segment, separator, expanded);
+            if (carry.position() > 0) {
+                carry.put(in.get());
+                carry.flip();
+                encode(encoder, carry, out, channel, false);
+                carry.clear();
+            }
+            encode(encoder, in, out, channel, false);
+            if (in.hasRemaining()) {
+                carry.put(in.get());
+            }
+            progress.update(pos + segment.count, length);
+        }
+        carry.flip();
+        encode(encoder, carry, out, channel, true);
+        while (encoder.flush(out).isOverflow()) {
+            drain(out, channel);
+        }
+        drain(out, channel);
+    }
+
+    /**
+     * Copies a chunk into the scratch array with every '\n' replaced by the separator.
+     */
+    private static CharBuffer expandLineBreaks(Segment segment, String separator, char[] expanded) {
+        int length = 0;
+        int end = segment.offset + segment.count;
+        for (int i = segment.offset; i < end; i++) {
+            char c = segment.array[i];
+            if (c == '\n') {
+                for (int k = 0; k < separator.length(); k++) {
+                    expanded[length++] = separator.charAt(k);
+                }
+            } else {
+                expanded[length++] = c;
+            }
+        }
+        return CharBuffer.wrap(expanded, 0, length);
+    }
+
+    private static void encode(CharsetEncoder encoder, CharBuffer in, ByteBuffer out, FileChannel channel, boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(in, out, endOfInput);
+            if (!result.isOverflow()) {
+                return;
+            }
+            drain(out, channel);
+        }
+    }
+
+    private static void drain(ByteBuffer out, FileChannel channel) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Finds the file to replace: the one a symbolic link points to rather than the link itself,
+     * which the rename would otherwise turn into a regular file.
+     */
+    private static Path resolve(Path target) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        if (Files.exists(absolute)) {
+            return absolute.toRealPath();
+        }
+        // A new file, or a link to one; only its directory need exist
+        while (Files.isSymbolicLink(absolute)) {
+            absolute = absolute.resolveSibling(Files.readSymbolicLink(absolute)).normalize();
+        }
+        return absolute;
+    }
+
+    /**
+     * Creates the temporary file next to the target. Unlike {@link Files#createTempFile}, which
+     * makes the file readable by its owner only, this leaves the permissions to the user's
+     * defaults, which a new file keeps.
+     */
+    private static Path createTemp(Path target) throws IOException {
+        while (true) {
+            String name = "." + target.getFileName() + "-" + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp";
+            try {
+                return Files.createFile(target.resolveSibling(name));
+            } catch (FileAlreadyExistsException e) {
+                // Try another name
+            }
+        }
+    }
+
+    /**
+     * Gives the temporary file the permissions, ACL, owner and group of the file it replaces,
+     * when there is one. Whatever the file system or the editor's rights do not allow is left as
+     * it is.
+     */
+    private static void copyAttributes(Path target, Path temp) {
+        if (!Files.exists(target)) {
+            return;
+        }
+        PosixFileAttributeView posix = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (posix != null) {
+            try {
+                PosixFileAttributes attributes = posix.readAttributes();
+                PosixFileAttributeView copy = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+                // The group first: it may take permissions a user cannot set on a file of another group
+                setGroup(copy, attributes);
+                copy.setPermissions(attributes.permissions());
+                if (!attributes.owner().equals(copy.getOwner())) {
+                    copy.setOwner(attributes.owner());
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                // Not allowed; the file becomes the user's own
+            }
+        }
+        AclFileAttributeView acl = Files.getFileAttributeView(target, AclFileAttributeView.class);
+        if (acl != null) {
+            try {
+                Files.getFileAttributeView(temp, AclFileAttributeView.class).setAcl(acl.getAcl());
+            } catch (IOException | UnsupportedOperationException e) {
+                // Not allowed; the defaults of the directory will do
+            }
+        }
+    }
+
+    private static void setGroup(PosixFileAttributeView view, PosixFileAttributes attributes) {
+        try {
+            view.setGroup(attributes.group());
+        } catch (IOException e) {
+            // The user is not in the group
+        }
+    }
+
+    /**
+     * Renames the temporary file over the target. Some platforms refuse to replace a file that is
+     * memory-mapped, which an open document may be; in that case the old file is moved aside first.
+     */
+    private static void replace(Path temp, Path target) throws IOException {
+        try {
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (FileSystemException e) {
+            if (!Files.exists(target)) throw e;
+
+            Path aside = Files.createTempFile(target.getParent(), "." + target.getFileName() + "-", ".old");
+            Files.move(target, aside, StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(temp, target);
+            } catch (IOException moveFailed) {
+                Files.move(aside, target);
+                throw moveFailed;
+            }
+            try {
+                Files.delete(aside);
+            } catch (IOException stillMapped) {
+                aside.toFile().deleteOnExit();
+            }
+        }
+    }
+}
@@ -0,0 +1,356 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Headless entry point that replaces a literal or regular expression in many files at once, for
+ * scripts, without starting the editor:
+ * <pre>
+ * java -cp notes-editor.jar BatchReplace [options] &lt;find&gt; &lt;replacement&gt; &lt;path&gt;...
+ * </pre>
+ * Each path is a file or a directory searched recursively. Files are handled in parallel on a
+ * fork-join pool, each the way the editor would: its format is detected, it is opened into a
+ * document, every match is found by the same {@link Replacer} as Replace All, the replacements
+ * are applied as one edit and the document is written back with {@link AtomicSaver}, in the
+ * charset and with the line separators it was read with. Files without a match are left alone.
+ * A file with bytes that are not valid in the charset detected from its start is read, and
+ * written back, in the {@linkplain TextFormat#fallback() fallback} charset, and says so.
+ * <p>
+ * Every file with matches is listed with its count as it is done, followed by a summary of the
+ * files, matches and throughput. Failures are listed on standard error, and make the exit status
+ * 1; bad arguments make it 2.
+ */
+public class BatchReplace {
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: BatchReplace [options] <find> <replacement> <path>...",
+            "Replaces text in files, and in the files of directories and their subdirectories.",
+            "",
+            "Options:",
+            "  -r, --regex          Treat <find> as a regular expression; <replacement> may use $1 or ${name}",
+            "  -i, --ignore-case    Match upper and lower case letters alike",
+            "  -n, --dry-run        Count the matches without changing any file",
+            "      --include <glob> Only take files whose name matches, such as *.log; may be repeated",
+            "  -t, --threads <n>    Number of files handled at once (default: number of processors)",
+            "      --sync           Force each file to disk before replacing it",
+            "  -v, --verbose        Also list files without matches, and binary files skipped",
+            "  -h, --help           Show this help");
+
+    // Bytes looked at for a NUL to tell a binary file
+    private static final int BINARY_SAMPLE = 8192;
+
+    private final Replacer replacer;
+    private final boolean dryRun;
+    private final boolean sync;
+    private final boolean verbose;
+    private final PrintStream out;
+    private final PrintStream err;
+
+    // Totals over every file, updated from the pool's threads
+    private final AtomicLong scannedFiles = new AtomicLong();
+    private final AtomicLong scannedBytes = new AtomicLong();
+    private final AtomicLong changedFiles = new AtomicLong();
+    private final AtomicLong matches = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+    private final AtomicLong skippedFiles = new AtomicLong();
+
+    /**
+     * Creates a batch run.
+     *
+     * @param replacer What to find and what to put in its place.
+     * @param dryRun Whether to only count matches.
+     * @param sync Whether to force each file to disk before replacing it.
+     * @param verbose Whether to list files without matches too.
+     * @param out Where files and the summary are listed.
+     * @param err Where failures are listed.
+     */
+    public BatchReplace(Replacer replacer, boolean dryRun, boolean sync, boolean verbose, PrintStream out, PrintStream err) {
+        this.replacer = replacer;
+        this.dryRun = dryRun;
+        this.sync = sync;
+        this.verbose = verbose;
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Runs a batch replacement from the command line.
+     *
+     * @param args Options, the text to find, its replacement and the paths to search.
+     */
+    public static void main(String[] args) {
+        boolean regex = false;
+        boolean ignoreCase = false;
+        boolean dryRun = false;
+        boolean sync = false;
+        boolean verbose = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<PathMatcher> includes = new ArrayList<>();
+        List<String> operands = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!operands.isEmpty() || !arg.startsWith("-") || arg.equals("-")) {
+                    operands.add(arg);
+                    continue;
+                }
+                switch (arg) {
+                    case "-r":
+                    case "--regex":
+                        regex = true;
+                        break;
+                    case "-i":
+                    case "--ignore-case":
+                        ignoreCase = true;
+                        break;
+                    case "-n":
+                    case "--dry-run":
+                        dryRun = true;
+                        break;
+                    case "--include":
+                        includes.add(FileSystems.getDefault().getPathMatcher("glob:" + value(args, ++i, arg)));
+                        break;
+                    case "-t":
+                    case "--threads":
+                        threads = Integer.parseInt(value(args, ++i, arg));
+                        if (threads < 1) {
+                            throw new IllegalArgumentException("Number of threads must be at least 1");
+                        }
+                        break;
+                    case "--sync":
+                        sync = true;
+                        break;
+                    case "-v":
+                    case "--verbose":
+                        verbose = true;
+                        break;
+                    case "-h":
+                    case "--help":
+                        System.out.println(USAGE);
+                        return;
+                    case "--":
+                        // Everything after is taken as it is, even if it starts with a dash
+                        for (i++; i < args.length; i++) {
+                            operands.add(args[i]);
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (operands.size() < 3) {
+                throw new IllegalArgumentException("Expected the text to find, its replacement and at least one path");
+            }
+            if (operands.get(0).isEmpty()) {
+                throw new IllegalArgumentException("The text to find must not be empty");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        Replacer replacer;
+        try {
+            replacer = new Replacer(operands.get(0), operands.get(1), !ignoreCase, regex);
+        } catch (PatternSyntaxException e) {
+            System.err.println("Invalid regular expression: " + e.getDescription());
+            System.exit(2);
+            return;
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (String path : operands.subList(2, operands.size())) {
+            try {
+                collectFiles(Paths.get(path), includes, files);
+            } catch (NoSuchFileException e) {
+                System.err.println(path + ": no such file or directory");
+                System.exit(2);
+                return;
+            } catch (IOException e) {
+                System.err.println(path + ": " + e.getMessage());
+                System.exit(2);
+                return;
+            }
+        }
+
+        BatchReplace batch = new BatchReplace(replacer, dryRun, sync, verbose, System.out, System.err);
+        batch.run(files, threads);
+        System.exit(batch.failedFiles.get() > 0 ? 1 : 0);
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Option " + option + " needs a value");
+        }
+        return args[i];
+    }
+
+    /**
+     * Adds a file, or the files under a directory whose names match any of the patterns.
+     */
+    private static void collectFiles(Path root, List<PathMatcher> includes, List<Path> files) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && isIncluded(file, includes)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static boolean isIncluded(Path file, List<PathMatcher> includes) {
+        if (includes.isEmpty()) {
+            return true;
+        }
+        Path name = file.getFileName();
+        for (PathMatcher include : includes) {
+            if (include.matches(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces in every file, a number at a time, and lists the totals.
+     *
+     * @param files The files.
+     * @param threads The number of files handled at once.
+     */
+    public void run(List<Path> files, int threads) {
+        long started = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Batch(files, 0, files.size()));
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = Math.max(System.nanoTime() - started, 1) / 1e9;
+        double megabytes = scannedBytes.get() / (double) (1 << 20);
+        out.printf("%s %s (%.1f MB) in %.2f s, %.1f MB/s: %s in %s%s%s%n",
+                dryRun ? "Searched" : "Scanned", count(scannedFiles.get(), "file"), megabytes, seconds, megabytes / seconds,
+                count(matches.get(), "match"), count(changedFiles.get(), "file"),
+                failedFiles.get() > 0 ? ", " + failedFiles.get() + " failed" : "",
+                skippedFiles.get() > 0 ? ", " + skippedFiles.get() + " binary skipped" : "");
+    }
+
+    /**
+     * Replaces in one file, and lists it.
+     */
+    private void replaceIn(Path file) {
+        try {
+            TextFormat format = TextFormat.detect(file);
+            if (isBinary(file, format)) {
+                skippedFiles.incrementAndGet();
+                if (verbose) {
+                    print(out, file + ": skipped, binary");
+                }
+                return;
+            }
+            // Taken before the file is rewritten, so the bytes scanned are those read
+            long size = Files.size(file);
+            PieceTableDocument document = OpenTask.read(file.toFile(), IoProgress.NONE, IoProgress.NONE);
+            // A file with bytes past the part detection looked at that are not in its charset was
+            // read in the fallback charset instead, which is the one to write it back in
+            TextFormat read = TextFormat.of(document);
+            Replacements replacements = replacer.findAll(document.snapshot(), null, IoProgress.NONE);
+            if (replacements.size() > 0 && !dryRun) {
+                document.replaceAll(replacements);
+                new AtomicSaver(read, sync).save(document.snapshot(), file, IoProgress.NONE);
+            }
+            scannedFiles.incrementAndGet();
+            scannedBytes.addAndGet(size);
+            if (replacements.size() > 0) {
+                changedFiles.incrementAndGet();
+                matches.addAndGet(replacements.size());
+            }
+            if (replacements.size() > 0 || verbose) {
+                print(out, file + ": " + count(replacements.size(), "match")
+                        + (read.getCharset().equals(format.getCharset()) ? "" : ", read as " + read.getCharset().name()
+                        + " since it is not all " + format.getCharset().name()));
+            }
+        } catch (IOException | RuntimeException e) {
+            failedFiles.incrementAndGet();
+            print(err, file + ": failed: " + (e.getMessage() != null ? e.getMessage() : e.toString()));
+        }
+    }
+
+    /**
+     * Tells a binary file, which has NUL bytes, from text. UTF-16 text is full of them, so is
+     * taken as text whatever it holds.
+     */
+    private static boolean isBinary(Path file, TextFormat format) throws IOException {
+        if (format.getCharset().equals(StandardCharsets.UTF_16LE) || format.getCharset().equals(StandardCharsets.UTF_16BE)
+                || format.getCharset().equals(StandardCharsets.UTF_16)) {
+            return false;
+        }
+        ByteBuffer sample = ByteBuffer.allocate(BINARY_SAMPLE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.read(sample);
+        }
+        for (int i = 0; i < sample.position(); i++) {
+            if (sample.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String count(long count, String noun) {
+        return count + " " + noun + (count == 1 ? "" : noun.endsWith("h") ? "es" : "s");
+    }
+
+    private static void print(PrintStream stream, String line) {
+        // One line at a time from any thread
+        synchronized (stream) {
+            stream.println(line);
+        }
+    }
+
+    /**
+     * A run of the files, split in half until each half is one file.
+     */
+    private final class Batch extends RecursiveAction {
+        private final List<Path> files;
+        private final int from;
+        private final int to;
+
+        Batch(List<Path> files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                replaceIn(files.get(from));
+            } else if (to > from) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Batch(files, from, middle), new Batch(files, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import javax.swing.text.Segment;
+
+/**
+ * TextBuffer over a character array that is never modified after construction.
+ */
+public class CharArrayBuffer implements TextBuffer {
+    private final char[] chars;
+    private final int start;
+    private final int length;
+
+    /**
+     * Wraps the whole array.
+     *
+     * @param chars The characters to expose. The caller must not modify them afterwards.
+     */
+    public CharArrayBuffer(char[] chars) {
+        this(chars, 0, chars.length);
+    }
+
+    /**
+     * Wraps a range of the array.
+     *
+     * @param chars The characters to expose. The caller must not modify them afterwards.
+     * @param start The first character of the range.
+     * @param length The number of characters in the range.
+     */
+    public CharArrayBuffer(char[] chars, int start, int length) {
+        this.chars = chars;
+        this.start = start;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public long memoryUsage() {
+        return (long) chars.length * Character.BYTES;
+    }
+
+    @Override
+    public void getChars(int offset, int length, Segment segment) {
+        // The array is immutable, so the segment can share it without copying
+        segment.array = chars;
+        segment.offset = start + offset;
+        segment.count = length;
+    }
+}
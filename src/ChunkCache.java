@@ -0,0 +1,103 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+
+/**
+ * Characters of the {@link TextChunk}s read lately, shared by every document so that the memory
+ * spent on them has one bound however many documents are open.
+ * <p>
+ * The least recently read chunks are dropped once their characters take more than 16 MB, unless
+ * Notepad runs with {@code -Dnotepad.chunkCache=bytes}. The cache also counts how much text was
+ * compressed into how many bytes, and how often a read found its chunk already decompressed,
+ * for the View &gt; Diagnostics window.
+ */
+public final class ChunkCache {
+    private static final long BUDGET = Long.getLong("notepad.chunkCache", 16L << 20);
+
+    private static final Map<TextChunk, char[]> chunks = new LinkedHashMap<>(64, 0.75f, true);
+    private static long cachedBytes;
+    private static final Inflater inflater = new Inflater(true);
+
+    // Reads that found their chunk decompressed and that had to decompress it
+    private static long hits;
+    private static long misses;
+
+    // Chunks compressed so far, the characters in them and the bytes they were compressed to
+    private static long compressedChunks;
+    private static long compressedChars;
+    private static long compressedBytes;
+
+    private ChunkCache() {
+    }
+
+    /**
+     * Retrieves the characters of a chunk, decompressing them if they are not cached.
+     *
+     * @param chunk The chunk.
+     * @return The characters, which must not be modified.
+     */
+    public static synchronized char[] get(TextChunk chunk) {
+        char[] chars = chunks.get(chunk);
+        if (chars != null) {
+            hits++;
+            return chars;
+        }
+        misses++;
+        chars = chunk.decompress(inflater);
+        add(chunk, chars);
+        return chars;
+    }
+
+    /**
+     * Counts a chunk that has just been compressed, and keeps its characters as if it had just
+     * been read, since text is most often read soon after it was written.
+     *
+     * @param chunk The chunk.
+     * @param chars Its characters, which must not be modified afterwards; or null to not keep
+     *              them.
+     */
+    public static synchronized void compressed(TextChunk chunk, char[] chars) {
+        compressedChunks++;
+        compressedChars += chunk.length();
+        compressedBytes += chunk.memoryUsage();
+        if (chars != null) {
+            add(chunk, chars);
+        }
+    }
+
+    private static void add(TextChunk chunk, char[] chars) {
+        if (chunks.put(chunk, chars) == null) {
+            cachedBytes += (long) chars.length * Character.BYTES;
+        }
+        Iterator<Map.Entry<TextChunk, char[]>> eldest = chunks.entrySet().iterator();
+        while (cachedBytes > BUDGET && chunks.size() > 1) {
+            cachedBytes -= (long) eldest.next().getValue().length * Character.BYTES;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Forgets how often chunks were found in the cache, to measure from a known point.
+     */
+    public static synchronized void reset() {
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Describes the compression and the cache, such as "40 chunks, 5.0 MB of text in 0.8 MB
+     * (6.3:1), cache 4.0 of 16.0 MB, 97.5% hits".
+     *
+     * @return The report.
+     */
+    public static synchronized String getReport() {
+        long reads = hits + misses;
+        double textBytes = compressedChars * (double) Character.BYTES;
+        return String.format("%d chunks, %.1f MB of text in %.1f MB (%.1f:1), cache %.1f of %.1f MB, %s hits",
+                compressedChunks, textBytes / (1 << 20), compressedBytes / (double) (1 << 20),
+                compressedBytes == 0 ? 0 : textBytes / compressedBytes,
+                cachedBytes / (double) (1 << 20), BUDGET / (double) (1 << 20),
+                reads == 0 ? "no" : String.format("%.1f%%", 100.0 * hits / reads));
+    }
+}
@@ -0,0 +1,118 @@
+import javax.swing.text.Segment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * TextBuffer that holds its characters compressed, in {@link TextChunk}s of 64K characters each.
+ * <p>
+ * Reading a range decompresses only the chunks it covers, and {@link ChunkCache} keeps the ones
+ * read lately, so scrolling and typing near the same text costs no more than with plain arrays,
+ * while text nobody looks at takes a fraction of the memory. The buffer is built a character at
+ * a time with a {@link Builder}, which never holds more than one chunk uncompressed.
+ */
+public class CompressedTextBuffer implements TextBuffer {
+    static final int CHUNK_SHIFT = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final TextChunk[] chunks;
+    private final int length;
+
+    private CompressedTextBuffer(TextChunk[] chunks, int length) {
+        this.chunks = chunks;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public long memoryUsage() {
+        long bytes = (long) chunks.length * Long.BYTES;
+        for (TextChunk chunk : chunks) {
+            bytes += chunk.memoryUsage();
+        }
+        return bytes;
+    }
+
+    @Override
+    public void getChars(int offset, int length, Segment segment) {
+        int inChunk = offset & CHUNK_MASK;
+        if (inChunk + length <= CHUNK_SIZE || segment.isPartialReturn()) {
+            // The cache never changes the arrays it hands out, so the segment can share them
+            segment.array = ChunkCache.get(chunks[offset >>> CHUNK_SHIFT]);
+            segment.offset = inChunk;
+            segment.count = Math.min(length, CHUNK_SIZE - inChunk);
+        } else {
+            char[] copy = new char[length];
+            TextBuffer.copyChars(this, offset, length, copy, 0);
+            segment.array = copy;
+            segment.offset = 0;
+            segment.count = length;
+        }
+    }
+
+    /**
+     * Builds a buffer a character at a time, compressing each chunk as soon as it is full.
+     */
+    public static final class Builder {
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        private final List<TextChunk> chunks = new ArrayList<>();
+        private final char[] pending = new char[CHUNK_SIZE];
+        private int count;
+        private long length;
+
+        /**
+         * Adds a character to the end of the text.
+         *
+         * @param c The character.
+         */
+        public void append(char c) {
+            pending[count++] = c;
+            if (count == CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Returns the number of characters added so far.
+         *
+         * @return The length.
+         */
+        public long length() {
+            return length + count;
+        }
+
+        private void flush() {
+            TextChunk chunk = TextChunk.compress(pending, 0, count, deflater);
+            ChunkCache.compressed(chunk, null);
+            chunks.add(chunk);
+            length += count;
+            count = 0;
+        }
+
+        /**
+         * Finishes the text. Text shorter than a chunk is not worth compressing, and is kept as a
+         * plain array instead.
+         *
+         * @return The buffer.
+         */
+        public TextBuffer build() {
+            try {
+                if (chunks.isEmpty()) {
+                    return new CharArrayBuffer(Arrays.copyOf(pending, count));
+                }
+                if (count > 0) {
+                    flush();
+                }
+                return new CompressedTextBuffer(chunks.toArray(new TextChunk[0]), (int) length);
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
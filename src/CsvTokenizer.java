@@ -0,0 +1,80 @@
+import javax.swing.text.Segment;
+
+/**
+ * Tokenizes comma or tab separated values, giving each column a color of its own so that the
+ * fields of a row can be matched up by eye.
+ * <p>
+ * The state holds the column the text is in, whether the field has started, and whether it is
+ * inside quotes, since a quoted field may run over several lines.
+ */
+public class CsvTokenizer implements Tokenizer {
+    private static final int IN_QUOTES = 1;
+    private static final int STARTED = 2;
+    private static final int COLUMN_SHIFT = 2;
+
+    // Columns past this one are counted as this one
+    private static final int MAX_COLUMN = 1 << 20;
+
+    private final char delimiter;
+
+    /**
+     * Creates a tokenizer.
+     *
+     * @param delimiter The character between fields, such as a comma or a tab.
+     */
+    public CsvTokenizer(char delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    @Override
+    public int getInitialState() {
+        return 0;
+    }
+
+    @Override
+    public int tokenize(Segment text, int state, boolean endsLine, TokenList tokens) {
+        char[] array = text.array;
+        int start = text.offset;
+        int end = start + text.count;
+        boolean inQuotes = (state & IN_QUOTES) != 0;
+        boolean started = (state & STARTED) != 0;
+        int column = state >>> COLUMN_SHIFT;
+
+        int i = start;
+        if (i < end) {
+            Tokenizers.add(tokens, 0, TokenType.column(column));
+        }
+        while (i < end) {
+            char c = array[i];
+            if (inQuotes) {
+                if (c == '"') {
+                    if (i + 1 < end && array[i + 1] == '"') {
+                        // A doubled quote stands for one quote
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                }
+            } else if (c == delimiter) {
+                Tokenizers.add(tokens, i - start, TokenType.PUNCTUATION);
+                column = Math.min(column + 1, MAX_COLUMN);
+                started = false;
+                if (i + 1 < end) {
+                    Tokenizers.add(tokens, i + 1 - start, TokenType.column(column));
+                }
+            } else if (c == '"' && !started) {
+                inQuotes = true;
+                started = true;
+            } else {
+                started = true;
+            }
+            i++;
+        }
+
+        if (endsLine && !inQuotes) {
+            column = 0;
+            started = false;
+        }
+        return (inQuotes ? IN_QUOTES : 0) | (started ? STARTED : 0) | column << COLUMN_SHIFT;
+    }
+}
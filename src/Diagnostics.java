@@ -0,0 +1,244 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How long the editor takes to do what it is asked, for the View &gt; Diagnostics window: a
+ * {@link LatencyHistogram} for each kind of operation, from which any percentile can be read
+ * while the editor runs, and a matching Flight Recorder event from {@link EditorEvents} for each
+ * operation timed.
+ * <p>
+ * Operations are timed with a {@link Span}, begun when the operation is asked for and ended when
+ * its result is shown. A keystroke is timed from when its key event is dispatched until the text
+ * area has painted the edit, which is the delay the user feels while typing.
+ */
+public final class Diagnostics {
+    /**
+     * Kinds of operation that are timed.
+     */
+    public enum Operation {
+        KEYSTROKE_TO_PAINT("Keystroke to paint"),
+        OPEN("Open"),
+        SAVE("Save"),
+        FIND("Find"),
+        REPLACE("Replace All"),
+        EVENT_DISPATCH("Event dispatch");
+
+        private final String label;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Retrieves the name the operation is reported under.
+         *
+         * @return The name.
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Retrieves the times the operation took.
+         *
+         * @return The histogram of its times.
+         */
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        /**
+         * Creates the Flight Recorder event for the operation.
+         */
+        EditorEvents.OperationEvent newEvent() {
+            switch (this) {
+                case KEYSTROKE_TO_PAINT:
+                    return new EditorEvents.KeystrokeToPaint();
+                case OPEN:
+                    return new EditorEvents.Open();
+                case SAVE:
+                    return new EditorEvents.Save();
+                case FIND:
+                    return new EditorEvents.Find();
+                case REPLACE:
+                    return new EditorEvents.Replace();
+                default:
+                    return new EditorEvents.EventDispatch();
+            }
+        }
+    }
+
+    // Percentiles shown in the report, and the ladder written when exporting
+    private static final double[] REPORT_PERCENTILES = {50, 90, 99, 99.9};
+    private static final double[] EXPORT_PERCENTILES = {50, 75, 90, 95, 99, 99.9, 99.99, 100};
+
+    // A keystroke not painted within this long was not going to be, such as one in a dialog
+    private static final long KEYSTROKE_TIMEOUT_NANOS = 2_000_000_000L;
+
+    // The oldest keystroke the text area has not painted yet, only used on the Event Dispatch Thread
+    private static Span pendingKeystroke;
+
+    private static final AtomicLong stalls = new AtomicLong();
+
+    private Diagnostics() {
+    }
+
+    /**
+     * Begins timing an operation.
+     *
+     * @param operation The kind of operation.
+     * @param detail What it works on, such as a file name, for the Flight Recorder event.
+     * @return The span to end once the operation is done.
+     */
+    public static Span begin(Operation operation, String detail) {
+        return new Span(operation, detail);
+    }
+
+    /**
+     * Records how long an operation took, when it was timed some other way.
+     *
+     * @param operation The kind of operation.
+     * @param nanos How long it took, in nanoseconds.
+     */
+    public static void record(Operation operation, long nanos) {
+        operation.histogram.record(nanos);
+    }
+
+    /**
+     * Notes that a key event that edits the text is being dispatched. Keys typed before the text
+     * area painted the first of them are timed with it, since they are painted in the same frame.
+     */
+    static void keystroke() {
+        long now = System.nanoTime();
+        if (pendingKeystroke != null && now - pendingKeystroke.started < KEYSTROKE_TIMEOUT_NANOS) {
+            return;
+        }
+        pendingKeystroke = begin(Operation.KEYSTROKE_TO_PAINT, null);
+    }
+
+    /**
+     * Notes that a text view has painted, which ends the timing of a pending keystroke.
+     */
+    public static void textPainted() {
+        if (pendingKeystroke != null) {
+            Span keystroke = pendingKeystroke;
+            pendingKeystroke = null;
+            if (System.nanoTime() - keystroke.started < KEYSTROKE_TIMEOUT_NANOS) {
+                keystroke.end();
+            }
+        }
+    }
+
+    /**
+     * Counts an event that held the Event Dispatch Thread past the stall threshold.
+     */
+    static void stalled() {
+        stalls.incrementAndGet();
+    }
+
+    /**
+     * Forgets every time recorded so far, to measure from a known point.
+     */
+    public static void reset() {
+        for (Operation operation : Operation.values()) {
+            operation.histogram.reset();
+        }
+        stalls.set(0);
+        PaintMetrics.reset();
+        ChunkCache.reset();
+    }
+
+    /**
+     * Describes the times recorded, as a table of percentiles in milliseconds for each operation,
+     * followed by the stalls, the paint times, the compressed text and the startup phases.
+     *
+     * @return The report.
+     */
+    public static String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-20s %8s %9s %9s %9s %9s %9s %9s%n",
+                "Operation (ms)", "Count", "p50", "p90", "p99", "p99.9", "Max", "Mean"));
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = operation.histogram;
+            report.append(String.format("%-20s %8d", operation.label, histogram.getCount()));
+            for (double percentile : REPORT_PERCENTILES) {
+                report.append(String.format(" %9.2f", histogram.getPercentile(percentile) / 1e6));
+            }
+            report.append(String.format(" %9.2f %9.2f%n", histogram.getMax() / 1e6, histogram.getMean() / 1e6));
+        }
+        report.append(System.lineSeparator());
+        report.append("EDT stalls over ").append(EdtMonitor.getStallMillis()).append(" ms: ").append(stalls.get());
+        report.append(System.lineSeparator());
+        report.append("Paint: ").append(PaintMetrics.getReport()).append(System.lineSeparator());
+        report.append("Compressed text: ").append(ChunkCache.getReport()).append(System.lineSeparator());
+        report.append("Startup: ").append(StartupTimer.getReport()).append(System.lineSeparator());
+        return report.toString();
+    }
+
+    /**
+     * Writes the report to a file, followed by the full ladder of percentiles of each operation
+     * that was timed, so that runs can be compared later.
+     *
+     * @param file The file, which is replaced if it exists.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void export(Path file) throws IOException {
+        StringBuilder text = new StringBuilder();
+        text.append("Notepad diagnostics, ")
+                .append(LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
+                .append(System.lineSeparator()).append(System.lineSeparator());
+        text.append(getReport());
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = operation.histogram;
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            text.append(System.lineSeparator()).append(operation.label).append(System.lineSeparator());
+            text.append(String.format("%12s %12s%n", "Percentile", "Time (ms)"));
+            for (double percentile : EXPORT_PERCENTILES) {
+                text.append(String.format("%12s %12.3f%n", percentile, histogram.getPercentile(percentile) / 1e6));
+            }
+        }
+        Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The timing of one operation, which is recorded in its histogram, and as a Flight Recorder
+     * event if a recording is running, once it is ended.
+     */
+    public static final class Span {
+        private final Operation operation;
+        private final EditorEvents.OperationEvent event;
+        private final long started;
+
+        private Span(Operation operation, String detail) {
+            this.operation = operation;
+            event = operation.newEvent();
+            if (event.isEnabled()) {
+                event.detail = detail;
+                event.begin();
+            }
+            started = System.nanoTime();
+        }
+
+        /**
+         * Ends the timing, and records it.
+         */
+        public void end() {
+            operation.histogram.record(System.nanoTime() - started);
+            if (event.isEnabled()) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.commit();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * DiagnosticsDialog class extends JDialog to show how long the editor takes to respond: the
+ * percentiles of each kind of operation from {@link Diagnostics}, refreshed every second while
+ * the dialog is open, with options to export them to a file or start measuring afresh.
+ */
+public class DiagnosticsDialog extends JDialog {
+    // How often the figures are refreshed, in milliseconds
+    private static final int REFRESH_MILLIS = 1000;
+
+    // Text area showing the report
+    private JTextArea reportArea;
+
+    // Refreshes the report while the dialog is open
+    private Timer refreshTimer;
+
+    /**
+     * Constructor to initialize the DiagnosticsDialog.
+     *
+     * @param source The GUI instance that launched this dialog.
+     */
+    public DiagnosticsDialog(GUI source) {
+        super(source);
+        setTitle("Diagnostics");
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        setSize(720, 360);
+        setLocationRelativeTo(source);
+
+        // Use absolute positioning like the other dialogs
+        setLayout(null);
+
+        addDialogComponents();
+
+        refreshTimer = new Timer(REFRESH_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                refresh();
+            }
+        });
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                refreshTimer.start();
+            }
+
+            @Override
+            public void windowClosed(WindowEvent e) {
+                refreshTimer.stop();
+            }
+        });
+        refresh();
+    }
+
+    /**
+     * Adds all components to the dialog.
+     */
+    private void addDialogComponents() {
+        reportArea = new JTextArea();
+        reportArea.setEditable(false);
+        reportArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JScrollPane reportScrollPane = new JScrollPane(reportArea);
+        reportScrollPane.setBounds(10, 10, 685, 270);
+        add(reportScrollPane);
+
+        // Export button - writes the figures to a file
+        JButton exportButton = new JButton("Export...");
+        exportButton.setBounds(10, 290, 100, 25);
+        exportButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                export();
+            }
+        });
+        add(exportButton);
+
+        // Reset button - forgets every time recorded so far
+        JButton resetButton = new JButton("Reset");
+        resetButton.setBounds(120, 290, 100, 25);
+        resetButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                Diagnostics.reset();
+                refresh();
+            }
+        });
+        add(resetButton);
+
+        // Close button - closes the dialog
+        JButton closeButton = new JButton("Close");
+        closeButton.setBounds(595, 290, 100, 25);
+        closeButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                DiagnosticsDialog.this.dispose();
+            }
+        });
+        add(closeButton);
+    }
+
+    /**
+     * Shows the latest figures.
+     */
+    private void refresh() {
+        reportArea.setText(Diagnostics.getReport());
+        reportArea.setCaretPosition(0);
+    }
+
+    /**
+     * Asks for a file and writes the figures to it.
+     */
+    private void export() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("notepad-diagnostics.txt"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        try {
+            Diagnostics.export(file.toPath());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "Could not export to " + file.getName() + ": " + ex.getMessage(),
+                    "Diagnostics", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
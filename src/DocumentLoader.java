@@ -0,0 +1,141 @@
+import javax.swing.*;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads the rest of a large file into a document that was shown once its start had been read, so
+ * that the first screen of a file of gigabytes shows as soon as that of a small one.
+ * <p>
+ * A background thread reads the file a batch at a time with {@link MappedTextBuffer#readPages(long, IoProgress)},
+ * and each batch is added to the end of the document on the Event Dispatch Thread, with
+ * {@link PieceTableDocument#extend()}, before the next one is read; as with {@link LogFollower},
+ * the Event Dispatch Thread is never held for more than a batch, and a slow one holds the reading
+ * back rather than the other way round. The text added is the file's rather than the user's, so
+ * undo never sees it.
+ */
+public class DocumentLoader {
+    /**
+     * Told on the Event Dispatch Thread how the reading goes.
+     */
+    public interface Listener {
+        /**
+         * Called after a batch was added to the end of the document.
+         *
+         * @param done The number of bytes of the file read so far.
+         * @param total The size of the file.
+         */
+        void progressed(long done, long total);
+
+        /**
+         * Called once the document holds the whole file.
+         */
+        void finished();
+
+        /**
+         * Called if the file could not be read to its end. The document holds only part of it.
+         *
+         * @param cause The error.
+         */
+        void failed(IOException cause);
+    }
+
+    // Bytes read in one batch
+    private static final long BATCH_BYTES = 2L << 20;
+
+    private static final ExecutorService readThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Document loader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final PieceTableDocument document;
+    private final MappedTextBuffer text;
+    private Listener listener;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a loader for a document made from the start of a buffer. Loading starts with
+     * {@link #start(Listener)}.
+     *
+     * @param document The document, loaded from the buffer.
+     * @param text The buffer, with the rest of its file still to read.
+     */
+    public DocumentLoader(PieceTableDocument document, MappedTextBuffer text) {
+        this.document = document;
+        this.text = text;
+    }
+
+    /**
+     * Starts reading the rest of the file.
+     *
+     * @param listener The listener told how the reading goes.
+     */
+    public void start(Listener listener) {
+        this.listener = listener;
+        readNext();
+    }
+
+    /**
+     * Stops reading the file and lets go of it, for a document that is closed before it has
+     * been read. A batch already read is not added.
+     */
+    public void stop() {
+        stopped = true;
+        // After the batch being read, if any, rather than holding up the Event Dispatch Thread for it
+        readThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                text.discard();
+            }
+        });
+    }
+
+    /**
+     * Reads the next batch on the read thread and hands it to the Event Dispatch Thread.
+     */
+    private void readNext() {
+        readThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (stopped) {
+                    return;
+                }
+                boolean complete;
+                try {
+                    complete = text.readPages(BATCH_BYTES, IoProgress.NONE);
+                } catch (IOException e) {
+                    text.discard();
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!stopped) {
+                                listener.failed(e);
+                            }
+                        }
+                    });
+                    return;
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (stopped) {
+                            return;
+                        }
+                        document.extend();
+                        listener.progressed(text.getBytesRead(), text.getSize());
+                        if (complete) {
+                            listener.finished();
+                        } else {
+                            readNext();
+                        }
+                    }
+                });
+            }
+        });
+    }
+}
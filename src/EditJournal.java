@@ -0,0 +1,727 @@
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of the edits made to a document since its file was opened or saved, so that
+ * unsaved work survives the editor dying.
+ * <p>
+ * Every insertion and removal is appended as a record of its offset, the length it removed and the
+ * text it inserted, followed by a checksum. Records are queued as the document changes and
+ * written by a background thread in group commits: the first edit after a quiet spell starts a
+ * short timer, and everything typed until it fires goes out in one write and one sync. The
+ * journal names the file the edits apply to, with the size and modification time it had, so the
+ * edits of a session that did not end cleanly can be replayed on top of it at the next start.
+ * Saving compacts the journal down to the edits made after the saved snapshot was taken.
+ * <p>
+ * A journal that cannot be written, say because the disk is full, stops writing and tells its
+ * {@link Listener} once. The edits made from then on are only counted. Saving starts it over,
+ * provided no edit was made after the saved snapshot was taken, since such an edit is in neither
+ * the saved file nor the journal; otherwise the next save tries again.
+ */
+public class EditJournal implements DocumentListener {
+    /**
+     * Told on the Event Dispatch Thread when the journal can no longer be written.
+     */
+    public interface Listener {
+        /**
+         * Called once when writing the journal fails, and again only after it has been started
+         * over and failed anew.
+         *
+         * @param cause Why it failed.
+         */
+        void failed(IOException cause);
+    }
+
+    private static final int MAGIC = 0x4E504A31;
+    private static final String SUFFIX = ".journal";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // How long the first edit of a burst waits for the rest before they are written together
+    private static final long COMMIT_DELAY = Long.getLong("notepad.journalCommitDelay", 100L);
+
+    // Offset of the process id in the header, rewritten when a journal is taken over
+    private static final int PID_OFFSET = 4;
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Edit journal writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // Records and control steps waiting for the next commit, in the order they happened; guarded by this
+    private List<Step> pending = new ArrayList<>();
+    private boolean commitScheduled;
+    private long nextMark;
+    private boolean closed;
+
+    // Document being journaled, and its length after the last event
+    private PieceTableDocument document;
+    private int documentLength;
+
+    // Writer state, only touched on the writer thread
+    private Path path;
+    private FileChannel channel;
+    private Header header = Header.of(null);
+    private long headerLength;
+    private long records;
+    private final Map<Long, long[]> marks = new HashMap<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final Segment segment = new Segment();
+    private boolean failed;
+
+    // Edits made while the journal was failing, which it does not hold
+    private long unjournaled;
+
+    private volatile Listener listener;
+
+    /**
+     * Creates a journal. Its file is only made once the first edit is recorded.
+     */
+    public EditJournal() {
+        segment.setPartialReturn(true);
+    }
+
+    /**
+     * Takes over the journal of an earlier session, after its edits were replayed, so that new
+     * edits are appended to it.
+     *
+     * @param path The journal file.
+     * @return The journal.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static EditJournal resume(Path path) throws IOException {
+        EditJournal journal = new EditJournal();
+        journal.path = path;
+        journal.header = Header.read(path);
+        journal.headerLength = journal.header.length;
+        journal.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer pid = ByteBuffer.allocate(Long.BYTES).putLong(0, ProcessHandle.current().pid());
+        journal.channel.write(pid, PID_OFFSET);
+        journal.channel.position(journal.channel.size());
+        // The journal is known to hold edits, or it would not have been offered for recovery
+        journal.records = 1;
+        return journal;
+    }
+
+    /**
+     * Retrieves the directory journals are kept in, set with -Dnotepad.journalDir.
+     *
+     * @return The directory.
+     */
+    public static Path getDirectory() {
+        String directory = System.getProperty("notepad.journalDir");
+        if (directory != null) {
+            return Paths.get(directory);
+        }
+        return Paths.get(System.getProperty("user.home"), ".notepad", "journal");
+    }
+
+    /**
+     * Finds the journals left behind by sessions that are no longer running, newest first.
+     * Journals without any edits are deleted on the way.
+     *
+     * @return The journals holding unsaved edits.
+     */
+    public static List<Path> findOrphans() {
+        List<Path> orphans = new ArrayList<>();
+        Path directory = getDirectory();
+        if (!Files.isDirectory(directory)) {
+            return orphans;
+        }
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path journal : journals) {
+                try {
+                    Header header = Header.read(journal);
+                    Optional<ProcessHandle> writer = ProcessHandle.of(header.pid);
+                    if (writer.isPresent() && writer.get().isAlive()) {
+                        continue;
+                    }
+                    if (Files.size(journal) > header.length) {
+                        orphans.add(journal);
+                    } else {
+                        Files.delete(journal);
+                    }
+                } catch (IOException e) {
+                    // Not a journal, or one being written right now; leave it alone
+                }
+            }
+        } catch (IOException e) {
+            return orphans;
+        }
+        orphans.sort(new Comparator<Path>() {
+            @Override
+            public int compare(Path a, Path b) {
+                return Long.compare(b.toFile().lastModified(), a.toFile().lastModified());
+            }
+        });
+        return orphans;
+    }
+
+    /**
+     * Applies the edits of a journal to a document holding the text they were made to. A record
+     * torn by a crash ends the replay, and is cut off the journal so that it can be appended to.
+     *
+     * @param path The journal file.
+     * @param document The document, holding the text of the journal's file or nothing.
+     * @param progress Receives the number of journal bytes replayed so far.
+     * @return The number of edits replayed.
+     * @throws IOException If the journal cannot be read.
+     */
+    public static int replay(Path path, PieceTableDocument document, IoProgress progress) throws IOException {
+        Header header = Header.read(path);
+        int replayed = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long good = header.length;
+            channel.position(good);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+            CRC32 crc = new CRC32();
+            byte[] fields = new byte[3 * Integer.BYTES];
+            while (good < size) {
+                char[] text;
+                int offset;
+                int removed;
+                try {
+                    in.readFully(fields);
+                    ByteBuffer values = ByteBuffer.wrap(fields);
+                    offset = values.getInt();
+                    removed = values.getInt();
+                    int length = values.getInt();
+                    if (offset < 0 || removed < 0 || length < 0 || (long) offset + removed > document.getLength()
+                            || 2L * length > size - good) {
+                        break;
+                    }
+                    byte[] bytes = new byte[2 * length];
+                    in.readFully(bytes);
+                    crc.reset();
+                    crc.update(fields);
+                    crc.update(bytes);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                    text = new char[length];
+                    ByteBuffer.wrap(bytes).asCharBuffer().get(text);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                try {
+                    if (removed > 0) {
+                        document.remove(offset, removed);
+                    }
+                    if (text.length > 0) {
+                        document.insertString(offset, new String(text), null);
+                    }
+                } catch (BadLocationException e) {
+                    throw new IOException("Journal does not match its file: " + path, e);
+                }
+                replayed++;
+                good += fields.length + 2L * text.length + Integer.BYTES;
+                progress.update(good, size);
+            }
+            channel.truncate(good);
+        }
+        return replayed;
+    }
+
+    /**
+     * Starts journaling the edits of a document. The journal carries on where it was, so the
+     * document must hold the text the edits recorded so far lead to.
+     *
+     * @param document The document to follow, or null to follow none while the document is
+     *                 evicted.
+     */
+    public synchronized void setDocument(PieceTableDocument document) {
+        if (this.document != null) {
+            this.document.removeDocumentListener(this);
+        }
+        this.document = document;
+        if (document != null) {
+            documentLength = document.getLength();
+            document.addDocumentListener(this);
+        }
+    }
+
+    /**
+     * Sets who is told when the journal can no longer be written.
+     *
+     * @param listener The listener, or null for none.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Throws away the edits recorded so far, for a document that now matches a file again or is
+     * new. Edits recorded after this apply to the given file. A journal that failed starts over.
+     *
+     * @param base The file the document was opened from, or null for a new document.
+     */
+    public void start(File base) {
+        enqueue(new Step() {
+            @Override
+            public void write() throws IOException {
+                restart();
+                header = Header.of(base);
+            }
+        }, 0);
+    }
+
+    /**
+     * Marks the point a document snapshot is taken at, so that once the snapshot is saved the
+     * journal can drop everything recorded before it.
+     *
+     * @return The mark, to pass to {@link #compact(long, File)}.
+     */
+    public long mark() {
+        long id;
+        synchronized (this) {
+            id = nextMark++;
+        }
+        enqueue(new Step() {
+            @Override
+            public void write() throws IOException {
+                marks.put(id, new long[]{channel == null ? -1 : channel.position() + buffer.position(), records, unjournaled});
+            }
+        }, COMMIT_DELAY);
+        return id;
+    }
+
+    /**
+     * Drops the edits recorded before a mark, once the snapshot taken at it has been saved. The
+     * edits made since are kept, on top of the saved file. The journal is rewritten to a new file
+     * that then replaces it, so a crash part way through leaves the old journal intact.
+     *
+     * @param mark The mark returned when the snapshot was taken.
+     * @param base The file the snapshot was saved to.
+     */
+    public void compact(long mark, File base) {
+        enqueue(new Step() {
+            @Override
+            public void write() throws IOException {
+                long[] at = marks.remove(mark);
+                marks.clear();
+                if (at == null) {
+                    // Another document was started since the snapshot, so it is not what was saved
+                    return;
+                }
+                Header saved = Header.of(base);
+                if (failed) {
+                    // The saved file holds every edit the journal lost, unless more were made since
+                    if (unjournaled == at[2]) {
+                        restart();
+                        header = saved;
+                    }
+                    return;
+                }
+                if (records == at[1]) {
+                    deleteFile();
+                    header = saved;
+                    return;
+                }
+
+                // Without a file at the mark, every record in it was made after the mark
+                drain();
+                byte[] bytes = saved.toBytes();
+                Path compacted = Files.createTempFile(path.getParent(), "edits-", SUFFIX + ".tmp");
+                try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.WRITE)) {
+                    out.write(ByteBuffer.wrap(bytes));
+                    long end = channel.size();
+                    for (long pos = at[0] < 0 ? headerLength : at[0]; pos < end; ) {
+                        pos += channel.transferTo(pos, end - pos, out);
+                    }
+                    out.force(true);
+                }
+                channel.close();
+                Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+                header = saved;
+                headerLength = bytes.length;
+                records -= at[1];
+            }
+        }, 0);
+    }
+
+    /**
+     * Stops journaling and deletes the edits recorded so far, for a document that is closed
+     * without being saved on purpose.
+     */
+    public void discard() {
+        start(null);
+        close();
+    }
+
+    /**
+     * Stops journaling, once every edit recorded so far is on disk. A journal without edits is
+     * deleted; one with edits is left for the next session to recover.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (document != null) {
+                document.removeDocumentListener(this);
+            }
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                commit();
+                try {
+                    if (channel != null) {
+                        channel.close();
+                        if (records == 0) {
+                            Files.deleteIfExists(path);
+                        }
+                    }
+                } catch (IOException e) {
+                    // The journal is only left behind
+                }
+            }
+        });
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        record(e.getOffset(), 0, e.getLength());
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        record(e.getOffset(), e.getLength(), 0);
+    }
+
+    /**
+     * Records a batch replacement, or the undo or redo of one. The event gives the span of the
+     * change as it reads after a replacement, but the same span as it read before when the
+     * replacement is undone, and the two cannot be told apart. Replacing the longer of the two
+     * readings always covers the change, at the cost of rewriting a little unchanged text after it.
+     */
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        int change = document.getLength() - documentLength;
+        int removed = Math.min(Math.max(e.getLength(), e.getLength() - change), documentLength - e.getOffset());
+        record(e.getOffset(), removed, removed + change);
+    }
+
+    /**
+     * Queues a record of an edit that has just been made to the document.
+     */
+    private void record(int offset, int removed, int inserted) {
+        TextBuffer text;
+        try {
+            text = document.snapshot(offset, inserted);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        documentLength = document.getLength();
+        enqueue(new Step() {
+            @Override
+            public void write() throws IOException {
+                if (failed) {
+                    unjournaled++;
+                } else {
+                    writeRecord(offset, removed, text);
+                }
+            }
+        }, COMMIT_DELAY);
+    }
+
+    /**
+     * Adds a step to the next commit, and schedules the commit unless one already is.
+     */
+    private synchronized void enqueue(Step step, long delay) {
+        if (closed) {
+            return;
+        }
+        pending.add(step);
+        if (!commitScheduled || delay == 0) {
+            commitScheduled = true;
+            writer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    commit();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes every queued step, then syncs the journal once for all of them.
+     */
+    private void commit() {
+        List<Step> steps;
+        synchronized (this) {
+            steps = pending;
+            pending = new ArrayList<>();
+            commitScheduled = false;
+        }
+        if (steps.isEmpty()) {
+            return;
+        }
+        // Steps after a failing one still run, to count the edits lost and to start over on a save
+        for (Step step : steps) {
+            try {
+                step.write();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        try {
+            if (channel != null && !failed) {
+                drain();
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Stops writing a journal that cannot be written, and tells the listener, once rather than
+     * on every keystroke. What was written stays, for what it is worth after a crash.
+     */
+    private void fail(IOException cause) {
+        if (failed) {
+            return;
+        }
+        failed = true;
+        unjournaled = 0;
+        marks.clear();
+        buffer.clear();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException ignored) {
+            // Already failing
+        }
+        channel = null;
+        Listener told = listener;
+        if (told != null) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    told.failed(cause);
+                }
+            });
+        }
+    }
+
+    /**
+     * Deletes the journal file, and writes again if writing had failed.
+     */
+    private void restart() throws IOException {
+        if (failed) {
+            failed = false;
+            unjournaled = 0;
+            if (path != null) {
+                Files.deleteIfExists(path);
+            }
+        }
+        deleteFile();
+    }
+
+    /**
+     * Appends a record: offset, removed length, inserted length, the inserted characters, and a
+     * checksum of all of them.
+     */
+    private void writeRecord(int offset, int removed, TextBuffer text) throws IOException {
+        if (channel == null) {
+            Path directory = getDirectory();
+            Files.createDirectories(directory);
+            path = Files.createTempFile(directory, "edits-", SUFFIX);
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            byte[] bytes = header.toBytes();
+            channel.write(ByteBuffer.wrap(bytes));
+            headerLength = bytes.length;
+        }
+        crc.reset();
+        putInt(offset);
+        putInt(removed);
+        putInt(text.length());
+        for (int done = 0; done < text.length(); done += segment.count) {
+            text.getChars(done, text.length() - done, segment);
+            for (int i = 0; i < segment.count; ) {
+                if (buffer.remaining() < Character.BYTES) {
+                    drain();
+                }
+                int count = Math.min(segment.count - i, buffer.remaining() / Character.BYTES);
+                int start = buffer.position();
+                buffer.asCharBuffer().put(segment.array, segment.offset + i, count);
+                buffer.position(start + count * Character.BYTES);
+                crc.update(buffer.array(), start, count * Character.BYTES);
+                i += count;
+            }
+        }
+        if (buffer.remaining() < Integer.BYTES) {
+            drain();
+        }
+        buffer.putInt((int) crc.getValue());
+        records++;
+    }
+
+    private void putInt(int value) throws IOException {
+        if (buffer.remaining() < Integer.BYTES) {
+            drain();
+        }
+        int start = buffer.position();
+        buffer.putInt(value);
+        crc.update(buffer.array(), start, Integer.BYTES);
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Deletes the journal file and everything in it; the next record starts a new one. Marks
+     * taken before are dropped, since their offsets are into the file deleted.
+     */
+    private void deleteFile() throws IOException {
+        buffer.clear();
+        records = 0;
+        marks.clear();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Work done on the writer thread as part of a commit.
+     */
+    private interface Step {
+        void write() throws IOException;
+    }
+
+    /**
+     * The start of a journal: the process writing it, and the file its edits apply to.
+     */
+    public static final class Header {
+        private final long pid;
+        private final File base;
+        private final long baseSize;
+        private final long baseModified;
+        private final int length;
+
+        private Header(long pid, File base, long baseSize, long baseModified, int length) {
+            this.pid = pid;
+            this.base = base;
+            this.baseSize = baseSize;
+            this.baseModified = baseModified;
+            this.length = length;
+        }
+
+        /**
+         * Describes a file as it is now, for a journal written by this process.
+         */
+        private static Header of(File base) {
+            long pid = ProcessHandle.current().pid();
+            return base == null ? new Header(pid, null, 0, 0, 0) : new Header(pid, base.getAbsoluteFile(), base.length(), base.lastModified(), 0);
+        }
+
+        /**
+         * Reads the header of a journal.
+         *
+         * @param path The journal file.
+         * @return The header.
+         * @throws IOException If the file cannot be read or is not a journal.
+         */
+        public static Header read(Path path) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not an edit journal: " + path);
+                }
+                long pid = in.readLong();
+                long baseSize = in.readLong();
+                long baseModified = in.readLong();
+                byte[] base = new byte[in.readInt()];
+                in.readFully(base);
+                int length = Integer.BYTES + 3 * Long.BYTES + Integer.BYTES + base.length;
+                return new Header(pid, base.length == 0 ? null : new File(new String(base, StandardCharsets.UTF_8)), baseSize, baseModified, length);
+            }
+        }
+
+        private byte[] toBytes() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeLong(pid);
+            out.writeLong(baseSize);
+            out.writeLong(baseModified);
+            byte[] name = base == null ? new byte[0] : base.getPath().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Retrieves the file the edits of the journal apply to.
+         *
+         * @return The file, or null if they were made to a new document.
+         */
+        public File getBase() {
+            return base;
+        }
+
+        /**
+         * Checks that the file the edits apply to has not changed since they were made, so that
+         * replaying them gives back the text they were made to.
+         *
+         * @return True if the edits can be replayed.
+         */
+        public boolean isBaseUnchanged() {
+            return base == null || (base.isFile() && base.length() == baseSize && base.lastModified() == baseModified);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder events for what the editor does, so that a recording taken with
+ * {@code -XX:StartFlightRecording} shows each open, save, find, replace and keystroke, and the
+ * slow events on the Event Dispatch Thread, next to the garbage collections and allocations of the
+ * same moment. They cost next to nothing while no recording is running.
+ */
+public final class EditorEvents {
+    private EditorEvents() {
+    }
+
+    /**
+     * An operation of the editor, from when it was asked for to when its result was shown.
+     */
+    @Category("Notepad")
+    @StackTrace(false)
+    public abstract static class OperationEvent extends Event {
+        @Label("Detail")
+        @Description("What the operation worked on")
+        String detail;
+    }
+
+    /**
+     * A file opened into a tab.
+     */
+    @Name("notepad.Open")
+    @Label("Open")
+    public static final class Open extends OperationEvent {
+    }
+
+    /**
+     * A document saved to its file.
+     */
+    @Name("notepad.Save")
+    @Label("Save")
+    public static final class Save extends OperationEvent {
+    }
+
+    /**
+     * A match searched for from the Find dialog or with Find Next.
+     */
+    @Name("notepad.Find")
+    @Label("Find")
+    public static final class Find extends OperationEvent {
+    }
+
+    /**
+     * Every match replaced at once.
+     */
+    @Name("notepad.Replace")
+    @Label("Replace All")
+    public static final class Replace extends OperationEvent {
+    }
+
+    /**
+     * A key typed into the text, until the text area painted it.
+     */
+    @Name("notepad.KeystrokeToPaint")
+    @Label("Keystroke to Paint")
+    public static final class KeystrokeToPaint extends OperationEvent {
+    }
+
+    /**
+     * An event dispatched on the Event Dispatch Thread slowly enough to be felt.
+     */
+    @Name("notepad.EventDispatch")
+    @Label("Event Dispatch")
+    @Threshold("20 ms")
+    public static final class EventDispatch extends OperationEvent {
+    }
+
+    /**
+     * An event that held the Event Dispatch Thread past the stall threshold, with what the thread
+     * was doing then.
+     */
+    @Name("notepad.EdtStall")
+    @Label("EDT Stall")
+    @Category("Notepad")
+    @StackTrace(false)
+    public static final class EdtStall extends Event {
+        @Label("Event")
+        String event;
+
+        @Label("Stall Time (ms)")
+        long millis;
+
+        @Label("EDT Stack")
+        String stack;
+    }
+}
@@ -0,0 +1,740 @@
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * One open document of the editor, with everything that belongs to it: its file and format, its
+ * undo history and edit journal, and where the caret was left.
+ * <p>
+ * While the tab is not shown, the {@link MemoryGovernor} may evict its document: the text is
+ * written to a snapshot file, the undo history is moved to its log on disk, and the document is
+ * dropped. Showing the tab again maps the snapshot back in as the text of a new document, which
+ * costs little heap however large the text is, and the history and journal carry on with it.
+ * <p>
+ * The tab also keeps a {@link FileWatcher.Stamp} of its file as it was last read or written, to
+ * tell when another program has changed it since.
+ * <p>
+ * A tab can follow its file as it grows, with a {@link LogFollower}. The text it adds is not the
+ * user's, so while it runs the undo history and journal let go of the document, and it is not
+ * counted as unsaved.
+ * <p>
+ * The document of a large file is shown once its start has been read, and a {@link DocumentLoader}
+ * reads the rest of it into the document. Like a follower, it adds text the user did not type, so
+ * the journal lets go of the document until it is done.
+ * <p>
+ * A tab restored from the last {@link Session} starts without a document, and is only given
+ * one by {@link #opened(PieceTableDocument, FileWatcher.Stamp)} once it is first shown.
+ */
+public class EditorTab {
+    // Snapshots are the editor's own text read back exactly, so they keep every character as is
+    private static final TextFormat SNAPSHOT_FORMAT = new TextFormat(StandardCharsets.UTF_16LE, false, "\n");
+
+    private PieceTableDocument document;
+    private File file;
+    private TextFormat format;
+    private final UndoHistory undoHistory;
+    private final EditJournal journal;
+    private boolean modified;
+    private int caretPosition;
+    private int viewPosition;
+    private long lastUsed = System.nanoTime();
+    private boolean closed;
+
+    // Edits made so far, to tell whether a save caught them all
+    private long editCount;
+
+    // The file as it was when last read or written, or null for a new document
+    private FileWatcher.Stamp diskStamp;
+
+    // Estimated memory of the document and history, taken when the tab was last left
+    private long memoryUsage;
+
+    // Snapshot of the text while evicted, kept until the next eviction since it may still be mapped
+    private Path snapshot;
+
+    // Eviction or reload running in the background, if any
+    private SwingWorker<?, ?> transfer;
+
+    // Follower adding what is appended to the file, if following, and whether it has only added
+    // text to the end so far, which leaves the undo history valid
+    private LogFollower follower;
+    private boolean onlyAppended;
+
+    // Reader of the rest of the file, while the document holds only its start
+    private DocumentLoader loader;
+
+    // Entry of the last session the tab was restored from, until its file has been opened
+    private Session.Entry restored;
+
+    private final PropertyChangeSupport changeSupport = new PropertyChangeSupport(this);
+
+    private final DocumentListener modifiedListener = new DocumentListener() {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            edited();
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            edited();
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+            edited();
+        }
+    };
+
+    /**
+     * Creates a tab for a document.
+     *
+     * @param document The document.
+     * @param file The file the document was opened from, or null for a new document.
+     * @param journal The journal of the document's unsaved edits.
+     * @param undoBudget The most memory, in bytes, the undo history may hold before it spills to disk.
+     */
+    public EditorTab(PieceTableDocument document, File file, EditJournal journal, long undoBudget) {
+        this.document = document;
+        this.file = file;
+        this.format = TextFormat.of(document);
+        this.journal = journal;
+        diskStamp = file == null ? null : FileWatcher.Stamp.of(file);
+        undoHistory = new UndoHistory(undoBudget);
+        undoHistory.setDocument(document);
+        journal.setDocument(document);
+        document.addDocumentListener(modifiedListener);
+        SyntaxHighlighter.install(document, Tokenizers.forFile(file));
+    }
+
+    /**
+     * Creates a tab for a file open in the last session, which is opened once the tab is first
+     * shown. Until then the tab has no document, as if it were evicted.
+     *
+     * @param entry The entry of the session.
+     * @param journal The journal to record the document's unsaved edits in, once it is opened.
+     * @param undoBudget The most memory, in bytes, the undo history may hold before it spills to disk.
+     */
+    public EditorTab(Session.Entry entry, EditJournal journal, long undoBudget) {
+        this.file = entry.getFile();
+        this.format = TextFormat.DEFAULT;
+        this.journal = journal;
+        this.caretPosition = entry.getCaretPosition();
+        this.viewPosition = entry.getViewPosition();
+        this.restored = entry;
+        undoHistory = new UndoHistory(undoBudget);
+    }
+
+    /**
+     * Returns whether the tab was restored from the last session and its file not opened yet.
+     *
+     * @return True until {@link #opened(PieceTableDocument, FileWatcher.Stamp)} is called.
+     */
+    public boolean isOpenPending() {
+        return restored != null;
+    }
+
+    /**
+     * Gives a restored tab the document read from its file. The undo history saved with the
+     * session is carried on if the file is as it was then, and the journal starts on top of it.
+     *
+     * @param document The document.
+     * @param stamp The file as it was before it was read.
+     */
+    public void opened(PieceTableDocument document, FileWatcher.Stamp stamp) {
+        if (restored == null || closed) {
+            return;
+        }
+        this.document = document;
+        format = TextFormat.of(document);
+        diskStamp = stamp;
+        undoHistory.setDocument(document);
+        Path undoFile = restored.getUndoFile();
+        if (undoFile != null) {
+            if (restored.matches(stamp)) {
+                try {
+                    undoHistory.load(undoFile);
+                } catch (IOException e) {
+                    // Starts without the history instead
+                }
+            }
+            deleteQuietly(undoFile);
+        }
+        restored = null;
+        journal.start(file);
+        journal.setDocument(document);
+        document.addDocumentListener(modifiedListener);
+        SyntaxHighlighter.install(document, Tokenizers.forFile(file));
+        memoryUsage = document.memoryUsage() + undoHistory.memoryUsage();
+    }
+
+    /**
+     * Describes the tab for the session, saving its undo history to a file of its own if there
+     * is one worth keeping. Only the history of a document that matches its file is saved, since
+     * it is only carried on if the file is still the same next time.
+     *
+     * @param undoDirectory The directory to save the undo history in, or null to not save it.
+     *                      Saving moves the whole history to disk, so it is meant for a tab about
+     *                      to be closed.
+     * @return The entry, or null if the document has no file.
+     */
+    public Session.Entry toSessionEntry(Path undoDirectory) {
+        if (file == null) {
+            return null;
+        }
+        if (restored != null) {
+            return restored;
+        }
+        FileWatcher.Stamp stamp = diskStamp != null ? diskStamp : FileWatcher.Stamp.UNREAD;
+        Path undoFile = null;
+        if (undoDirectory != null && document != null && !modified && follower == null && stamp.getSize() >= 0
+                && (undoHistory.canUndo() || undoHistory.canRedo())) {
+            try {
+                Files.createDirectories(undoDirectory);
+                undoFile = Files.createTempFile(undoDirectory, "tab", ".undo");
+                undoHistory.save(undoFile);
+            } catch (IOException e) {
+                if (undoFile != null) {
+                    deleteQuietly(undoFile);
+                    undoFile = null;
+                }
+            }
+        }
+        return new Session.Entry(file, stamp.getSize(), stamp.getModified(), caretPosition, viewPosition, undoFile);
+    }
+
+    /**
+     * Retrieves the document of the tab.
+     *
+     * @return The document, or null while it is evicted.
+     */
+    public PieceTableDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * Returns whether the document is in memory, rather than evicted or being read back. A
+     * document whose eviction is still being written counts as loaded.
+     *
+     * @return True if the document can be shown.
+     */
+    public boolean isLoaded() {
+        return document != null;
+    }
+
+    /**
+     * Returns whether the document is being evicted or read back.
+     *
+     * @return True while a transfer runs.
+     */
+    public boolean isTransferring() {
+        return transfer != null;
+    }
+
+    /**
+     * Retrieves the file the document belongs to.
+     *
+     * @return The file, or null if it was never saved.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Changes the file the document belongs to, after it was saved.
+     *
+     * @param file The file.
+     */
+    public void setFile(File file) {
+        this.file = file;
+        if (document != null) {
+            // Saving under another extension may change how the text is highlighted
+            SyntaxHighlighter.install(document, Tokenizers.forFile(file));
+        }
+        changeSupport.firePropertyChange("title", null, getTitle());
+    }
+
+    /**
+     * Retrieves the charset and line separator the document is saved with.
+     *
+     * @return The format.
+     */
+    public TextFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Retrieves the undo history of the document.
+     *
+     * @return The undo history.
+     */
+    public UndoHistory getUndoHistory() {
+        return undoHistory;
+    }
+
+    /**
+     * Retrieves the journal of the document's unsaved edits.
+     *
+     * @return The journal.
+     */
+    public EditJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Returns whether the document has changed since it was opened or saved.
+     *
+     * @return True if there are unsaved changes.
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Marks the document as changed or saved.
+     *
+     * @param modified True if there are unsaved changes.
+     */
+    public void setModified(boolean modified) {
+        if (this.modified != modified) {
+            this.modified = modified;
+            changeSupport.firePropertyChange("title", null, getTitle());
+        }
+    }
+
+    /**
+     * Counts the edits made to the document, so that a save can tell afterwards whether the
+     * document changed while it ran.
+     *
+     * @return The number of edits so far.
+     */
+    public long getEditCount() {
+        return editCount;
+    }
+
+    /**
+     * Marks the document as saved, unless it was edited after the text that was saved was taken.
+     * A file whose lines ended in different ways now ends them all in one.
+     *
+     * @param savedEditCount The edit count when the text that was saved was taken.
+     */
+    public void markSaved(long savedEditCount) {
+        if (format.isMixed()) {
+            format = format.unmixed();
+            // An evicted document is given the format when it is read back
+            if (document != null) {
+                document.putProperty(TextFormat.PROPERTY, format);
+            }
+        }
+        diskStamp = FileWatcher.Stamp.of(file);
+        setModified(editCount != savedEditCount);
+    }
+
+    /**
+     * Returns whether the file of the document was changed, replaced or deleted since the
+     * document was last read from it or written to it.
+     *
+     * @return True if another program changed the file.
+     */
+    public boolean isChangedOnDisk() {
+        return file != null && diskStamp != null && !diskStamp.equals(FileWatcher.Stamp.of(file));
+    }
+
+    /**
+     * Takes the file as it is now as the one the document belongs to, without reading it, for
+     * a change the user chose to keep their own text over.
+     */
+    public void acceptDiskChange() {
+        diskStamp = FileWatcher.Stamp.of(file);
+    }
+
+    /**
+     * Marks the document as matching its file again, after the changes another program made to
+     * the file were applied to it. The journal starts over on top of the file.
+     *
+     * @param format The format the file was read in.
+     * @param stamp The file as it was before it was read.
+     */
+    public void reloaded(TextFormat format, FileWatcher.Stamp stamp) {
+        this.format = format;
+        document.putProperty(TextFormat.PROPERTY, format);
+        diskStamp = stamp;
+        journal.compact(journal.mark(), file);
+        setModified(false);
+    }
+
+    private void edited() {
+        editCount++;
+        if (follower == null && loader == null) {
+            setModified(true);
+        }
+    }
+
+    /**
+     * Reads the rest of the file into a document that holds only its start. The text area
+     * showing the document should not let it be edited until the loader is done.
+     *
+     * @param loader The loader of the rest of the file.
+     * @param listener The listener told how the reading goes, on the Event Dispatch Thread.
+     */
+    public void read(DocumentLoader loader, DocumentLoader.Listener listener) {
+        this.loader = loader;
+        journal.setDocument(null);
+        loader.start(new DocumentLoader.Listener() {
+            @Override
+            public void progressed(long done, long total) {
+                listener.progressed(done, total);
+            }
+
+            @Override
+            public void finished() {
+                EditorTab.this.loader = null;
+                // The journal started on the file when it was opened, so it carries on from the whole of it
+                journal.setDocument(document);
+                listener.finished();
+            }
+
+            @Override
+            public void failed(IOException cause) {
+                EditorTab.this.loader = null;
+                listener.failed(cause);
+            }
+        });
+    }
+
+    /**
+     * Returns whether the rest of the file is still being read into the document.
+     *
+     * @return True while the document holds only the start of the file.
+     */
+    public boolean isReading() {
+        return loader != null;
+    }
+
+    /**
+     * Starts adding what is appended to the file to the end of the document. The document must
+     * be loaded and saved to its file, and the text area showing it should not let it be edited
+     * until following stops.
+     *
+     * @param windowLines The most lines to keep, or 0 to keep all of them.
+     * @param listener The listener told about the text added, on the Event Dispatch Thread.
+     */
+    public void follow(int windowLines, LogFollower.Listener listener) {
+        if (follower != null || loader != null || document == null || file == null) {
+            return;
+        }
+        undoHistory.pause();
+        journal.setDocument(null);
+        onlyAppended = true;
+        follower = new LogFollower(document, file, format, diskStamp, windowLines, new LogFollower.Listener() {
+            @Override
+            public void appended(int previousLength, int removed, FileWatcher.Stamp stamp) {
+                if (removed > 0) {
+                    onlyAppended = false;
+                }
+                // Text cut from the start makes the document differ from the file until reloaded
+                diskStamp = stamp != null ? stamp : FileWatcher.Stamp.UNREAD;
+                listener.appended(previousLength, removed, stamp);
+            }
+
+            @Override
+            public void restarted(boolean rotated) {
+                onlyAppended = false;
+                listener.restarted(rotated);
+            }
+
+            @Override
+            public void failed(BadLocationException cause) {
+                listener.failed(cause);
+            }
+        });
+        follower.start();
+    }
+
+    /**
+     * Stops following the file. The undo history carries on if the follower only added text to
+     * the end, and the journal starts over on top of the file. Unless the document holds all of
+     * the file by then, {@link #isChangedOnDisk()} tells to reload it.
+     */
+    public void stopFollowing() {
+        if (follower == null) {
+            return;
+        }
+        follower.stop();
+        follower = null;
+        if (onlyAppended) {
+            undoHistory.resume(document);
+        } else {
+            undoHistory.setDocument(document);
+        }
+        journal.setDocument(document);
+        journal.start(file);
+    }
+
+    /**
+     * Returns whether the tab is following its file.
+     *
+     * @return True while text appended to the file is added to the document.
+     */
+    public boolean isFollowing() {
+        return follower != null;
+    }
+
+    /**
+     * Returns whether the tab holds a new document nobody has typed into, which opening a file
+     * may take the place of.
+     *
+     * @return True if the tab can be replaced.
+     */
+    public boolean isPristine() {
+        return file == null && !modified && document != null && document.getLength() == 0;
+    }
+
+    /**
+     * Retrieves the name shown on the tab.
+     *
+     * @return The file name, or "Untitled", marked with an asterisk if there are unsaved changes.
+     */
+    public String getTitle() {
+        return (modified ? "*" : "") + (file == null ? "Untitled" : file.getName());
+    }
+
+    /**
+     * Retrieves where the caret was when the tab was last left.
+     *
+     * @return The caret offset.
+     */
+    public int getCaretPosition() {
+        return caretPosition;
+    }
+
+    /**
+     * Retrieves the text that was at the top of the view when the tab was last left.
+     *
+     * @return Its offset.
+     */
+    public int getViewPosition() {
+        return viewPosition;
+    }
+
+    /**
+     * Remembers where the caret and the top of the view are, without leaving the tab.
+     *
+     * @param caretPosition The caret offset.
+     * @param viewPosition The offset of the text at the top of the view.
+     */
+    public void remember(int caretPosition, int viewPosition) {
+        this.caretPosition = caretPosition;
+        this.viewPosition = viewPosition;
+    }
+
+    /**
+     * Leaves the tab, remembering where the caret and the top of the view were and how much
+     * memory the tab holds.
+     *
+     * @param caretPosition The caret offset.
+     * @param viewPosition The offset of the text at the top of the view.
+     */
+    public void deactivate(int caretPosition, int viewPosition) {
+        remember(caretPosition, viewPosition);
+        lastUsed = System.nanoTime();
+        memoryUsage = document == null ? 0 : document.memoryUsage() + undoHistory.memoryUsage();
+    }
+
+    /**
+     * Marks the tab as the one being shown.
+     */
+    public void activate() {
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Retrieves when the tab was last shown or left.
+     *
+     * @return A {@link System#nanoTime()} value.
+     */
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Estimates the heap memory the tab holds.
+     *
+     * @param active Whether the tab is being shown, so its document may have changed since it
+     *               was last measured.
+     * @return The estimate in bytes; zero while evicted.
+     */
+    public long memoryUsage(boolean active) {
+        if (document == null) {
+            return 0;
+        }
+        return active ? document.memoryUsage() + undoHistory.memoryUsage() : memoryUsage;
+    }
+
+    /**
+     * Writes the document to a snapshot in the background and drops it once written. The tab
+     * must not be shown, and stays usable throughout: if it is shown before the snapshot is
+     * written, the snapshot is thrown away instead.
+     */
+    public void evict() {
+        if (document == null || transfer != null || follower != null || loader != null) {
+            return;
+        }
+        PieceTableDocument evicted = document;
+        TextBuffer text = evicted.snapshot();
+        SwingWorker<Path, Void> eviction = new SwingWorker<Path, Void>() {
+            @Override
+            protected Path doInBackground() throws IOException {
+                Path path = Files.createTempFile("notepad-tab", ".snapshot");
+                path.toFile().deleteOnExit();
+                new AtomicSaver(SNAPSHOT_FORMAT, false).save(text, path, IoProgress.NONE);
+                return path;
+            }
+
+            @Override
+            protected void done() {
+                // Called off if the tab was shown or closed while the snapshot was written
+                boolean current = transfer == this;
+                if (current) {
+                    transfer = null;
+                }
+                Path path;
+                try {
+                    path = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    // The document stays in memory
+                    return;
+                }
+                if (!current || closed || document != evicted) {
+                    deleteQuietly(path);
+                    return;
+                }
+                undoHistory.moveToDisk();
+                journal.setDocument(null);
+                evicted.removeDocumentListener(modifiedListener);
+                SyntaxHighlighter.uninstall(evicted);
+                if (snapshot != null) {
+                    deleteQuietly(snapshot);
+                }
+                snapshot = path;
+                document = null;
+            }
+        };
+        transfer = eviction;
+        eviction.execute();
+    }
+
+    /**
+     * Makes sure the document is in memory, for a tab about to be shown. An evicted document is
+     * read back from its snapshot in the background; if the snapshot is still being written, the
+     * eviction is called off instead.
+     *
+     * @param loaded Run on the Event Dispatch Thread once the document is in memory.
+     * @param failed Run on the Event Dispatch Thread if the snapshot cannot be read.
+     */
+    public void load(Runnable loaded, Runnable failed) {
+        if (document != null) {
+            transfer = null;
+            loaded.run();
+            return;
+        }
+        if (transfer != null) {
+            // Already being read back; the first caller shows it
+            return;
+        }
+        Path path = snapshot;
+        SwingWorker<PieceTableDocument, Void> reload = new SwingWorker<PieceTableDocument, Void>() {
+            @Override
+            protected PieceTableDocument doInBackground() throws IOException {
+                MappedTextBuffer text = MappedTextBuffer.open(path, SNAPSHOT_FORMAT.getCharset(), 0, false, IoProgress.NONE);
+                PieceTableDocument reloaded = PieceTableDocument.load(text);
+                reloaded.putProperty(TextFormat.PROPERTY, format);
+                return reloaded;
+            }
+
+            @Override
+            protected void done() {
+                transfer = null;
+                PieceTableDocument reloaded;
+                try {
+                    reloaded = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    failed.run();
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+                document = reloaded;
+                undoHistory.resume(document);
+                journal.setDocument(document);
+                document.addDocumentListener(modifiedListener);
+                SyntaxHighlighter.install(document, Tokenizers.forFile(file));
+                memoryUsage = document.memoryUsage() + undoHistory.memoryUsage();
+                loaded.run();
+            }
+        };
+        transfer = reload;
+        reload.execute();
+    }
+
+    /**
+     * Closes the tab for good, stopping its journal and deleting its files.
+     *
+     * @param keepJournal Whether to leave unsaved edits in the journal to be recovered later,
+     *                    rather than throwing them away.
+     */
+    public void close(boolean keepJournal) {
+        closed = true;
+        transfer = null;
+        if (follower != null) {
+            follower.stop();
+            follower = null;
+        }
+        if (loader != null) {
+            loader.stop();
+            loader = null;
+        }
+        if (keepJournal) {
+            journal.close();
+        } else {
+            journal.discard();
+        }
+        undoHistory.close();
+        if (document != null) {
+            SyntaxHighlighter.uninstall(document);
+        }
+        if (snapshot != null) {
+            deleteQuietly(snapshot);
+        }
+        if (restored != null && restored.getUndoFile() != null) {
+            deleteQuietly(restored.getUndoFile());
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Still mapped on some platforms; it goes when the editor exits
+            path.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * Adds a listener told when the title of the tab changes.
+     *
+     * @param listener The listener.
+     */
+    public void addPropertyChangeListener(PropertyChangeListener listener) {
+        changeSupport.addPropertyChangeListener(listener);
+    }
+}
@@ -0,0 +1,68 @@
+import com.jtattoo.plaf.BaseTextAreaUI;
+
+import javax.swing.*;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.View;
+
+/**
+ * Text area of the editor, which shows its text with a {@link WrapView} rather than Swing's
+ * WrappedPlainView when line wrap is on, and with a {@link LineView} rather than PlainView when
+ * it is off.
+ * <p>
+ * The view comes from the text area's UI delegate, so the delegate of the look and feel is
+ * replaced by a subclass of it that only changes which view shows the text. The delegate builds
+ * the view anew whenever the font, tab size or editability changes, which would throw away
+ * everything the view has laid out; the view showing the text is kept instead, and takes up the
+ * change itself.
+ */
+public class EditorTextArea extends JTextArea {
+
+    @Override
+    public void updateUI() {
+        if (UIManager.getUI(this) instanceof BaseTextAreaUI) {
+            setUI(new BaseTextAreaUI() {
+                @Override
+                public View create(Element element) {
+                    View view = createView(getComponent(), element, getRootView(getComponent()).getView(0));
+                    return view != null ? view : super.create(element);
+                }
+            });
+        } else {
+            setUI(new BasicTextAreaUI() {
+                @Override
+                public View create(Element element) {
+                    View view = createView(getComponent(), element, getRootView(getComponent()).getView(0));
+                    return view != null ? view : super.create(element);
+                }
+            });
+        }
+    }
+
+    /**
+     * Creates the view of the whole document.
+     *
+     * @param component The text area.
+     * @param element The element to make a view of.
+     * @param current The view showing the text until now, or null.
+     * @return The view, or null to leave it to the UI delegate.
+     */
+    private static View createView(JTextComponent component, Element element, View current) {
+        JTextArea area = (JTextArea) component;
+        if (!(area.getDocument() instanceof PieceTableDocument) || element != area.getDocument().getDefaultRootElement()) {
+            return null;
+        }
+        if (area.getLineWrap()) {
+            if (current instanceof WrapView && current.getElement() == element
+                    && ((WrapView) current).isWordWrap() == area.getWrapStyleWord()) {
+                return current;
+            }
+            return new WrapView(element, area.getWrapStyleWord());
+        }
+        if (current instanceof LineView && current.getElement() == element) {
+            return current;
+        }
+        return new LineView(element);
+    }
+}
@@ -0,0 +1,208 @@
+import javax.swing.text.JTextComponent;
+import java.awt.*;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+
+/**
+ * Event queue that times every event the Event Dispatch Thread dispatches, into the
+ * {@link Diagnostics.Operation#EVENT_DISPATCH} histogram, and that catches the thread stalling.
+ * <p>
+ * A watchdog thread looks at the event being dispatched a few times per stall threshold. Once one
+ * has run past the threshold, 200 ms unless Notepad runs with {@code -Dnotepad.stallMillis=n}, the
+ * stack of the Event Dispatch Thread is printed to standard error, once per event, so that what
+ * held it up is caught in the act rather than guessed at afterwards.
+ * <p>
+ * The queue also tells {@link Diagnostics} about keys that edit a text component, which starts
+ * the timing of keystroke to paint.
+ */
+public class EdtMonitor extends EventQueue {
+    private static final long STALL_MILLIS = Long.getLong("notepad.stallMillis", 200);
+
+    // Events that took less are not recorded for Flight Recorder, as in its threshold for them
+    private static final long SLOW_EVENT_NANOS = 20_000_000L;
+
+    // Frames of the stack put in the Flight Recorder event; the printed stack has them all
+    private static final int EVENT_STACK_FRAMES = 24;
+
+    // Events nested deeper than this, in modal loops within modal loops, are not timed
+    private static final int MAX_DEPTH = 16;
+
+    // Time spent in the dispatches nested in each one under way, so that an event that opens a
+    // modal dialog is not charged with the time the dialog was open
+    private final long[] nestedNanos = new long[MAX_DEPTH];
+    private int depth;
+
+    // What the watchdog looks at: the event being dispatched, when it started, and a number that
+    // tells one dispatch from the next, or a start of 0 while the thread is idle
+    private volatile Thread dispatchThread;
+    private volatile AWTEvent dispatching;
+    private volatile long dispatchStart;
+    private volatile long dispatchNumber;
+
+    private EdtMonitor() {
+    }
+
+    /**
+     * Puts the monitor in front of the system event queue, unless it is there already.
+     */
+    public static void install() {
+        EventQueue queue = Toolkit.getDefaultToolkit().getSystemEventQueue();
+        if (queue instanceof EdtMonitor) {
+            return;
+        }
+        EdtMonitor monitor = new EdtMonitor();
+        queue.push(monitor);
+        monitor.startWatchdog();
+    }
+
+    /**
+     * Retrieves how long an event may run before it counts as a stall.
+     *
+     * @return The threshold in milliseconds.
+     */
+    public static long getStallMillis() {
+        return STALL_MILLIS;
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        if (depth >= MAX_DEPTH) {
+            super.dispatchEvent(event);
+            return;
+        }
+        if (event instanceof KeyEvent && isEdit((KeyEvent) event)) {
+            Diagnostics.keystroke();
+        }
+
+        int level = depth++;
+        long started = System.nanoTime();
+        nestedNanos[level] = 0;
+        EditorEvents.EventDispatch jfrEvent = new EditorEvents.EventDispatch();
+        jfrEvent.begin();
+        dispatchThread = Thread.currentThread();
+        dispatching = event;
+        dispatchStart = started;
+        dispatchNumber++;
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long elapsed = System.nanoTime() - started;
+            depth = level;
+            if (level > 0) {
+                nestedNanos[level - 1] += elapsed;
+            }
+            // The watchdog leaves an event that has nested ones alone once they are done
+            dispatchStart = 0;
+            dispatching = null;
+
+            long own = elapsed - nestedNanos[level];
+            Diagnostics.record(Diagnostics.Operation.EVENT_DISPATCH, own);
+            if (jfrEvent.isEnabled() && own >= SLOW_EVENT_NANOS) {
+                jfrEvent.end();
+                if (jfrEvent.shouldCommit()) {
+                    jfrEvent.detail = describe(event);
+                    jfrEvent.commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells whether a key event changes the text of the component it goes to: a character typed
+     * without a shortcut modifier, or one of the keys that insert or delete.
+     */
+    private static boolean isEdit(KeyEvent event) {
+        if (!(event.getSource() instanceof JTextComponent) || !((JTextComponent) event.getSource()).isEditable()) {
+            return false;
+        }
+        if (event.getID() == KeyEvent.KEY_TYPED) {
+            char c = event.getKeyChar();
+            return c >= ' ' && c != KeyEvent.VK_DELETE
+                    && (event.getModifiersEx() & (InputEvent.CTRL_DOWN_MASK | InputEvent.META_DOWN_MASK | InputEvent.ALT_DOWN_MASK)) == 0;
+        }
+        if (event.getID() == KeyEvent.KEY_PRESSED && (event.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) == 0) {
+            int key = event.getKeyCode();
+            return key == KeyEvent.VK_ENTER || key == KeyEvent.VK_BACK_SPACE || key == KeyEvent.VK_DELETE || key == KeyEvent.VK_TAB;
+        }
+        return false;
+    }
+
+    /**
+     * Starts the daemon thread that catches stalls.
+     */
+    private void startWatchdog() {
+        Thread watchdog = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long checkMillis = Math.max(1, STALL_MILLIS / 4);
+                long reported = -1;
+                while (true) {
+                    try {
+                        Thread.sleep(checkMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long number = dispatchNumber;
+                    long start = dispatchStart;
+                    AWTEvent event = dispatching;
+                    Thread thread = dispatchThread;
+                    if (start == 0 || event == null || thread == null || number == reported) {
+                        continue;
+                    }
+                    long millis = (System.nanoTime() - start) / 1_000_000;
+                    if (millis >= STALL_MILLIS) {
+                        reported = number;
+                        reportStall(thread, event, millis);
+                    }
+                }
+            }
+        }, "EDT watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    /**
+     * Prints what the Event Dispatch Thread is doing, and records it as a Flight Recorder event.
+     */
+    private static void reportStall(Thread thread, AWTEvent event, long millis) {
+        Diagnostics.stalled();
+        StackTraceElement[] stack = thread.getStackTrace();
+        StringBuilder text = new StringBuilder();
+        text.append("EDT stalled for ").append(millis).append(" ms on ").append(describe(event)).append(':');
+        StringBuilder eventStack = new StringBuilder();
+        for (int i = 0; i < stack.length; i++) {
+            text.append(System.lineSeparator()).append("\tat ").append(stack[i]);
+            if (i < EVENT_STACK_FRAMES) {
+                eventStack.append(stack[i]).append('\n');
+            }
+        }
+        System.err.println(text);
+
+        EditorEvents.EdtStall stall = new EditorEvents.EdtStall();
+        if (stall.isEnabled()) {
+            stall.event = describe(event);
+            stall.millis = millis;
+            stall.stack = eventStack.toString();
+            stall.commit();
+        }
+    }
+
+    /**
+     * Names an event, such as "KEY_TYPED on EditorTextArea" or "InvocationEvent".
+     */
+    private static String describe(AWTEvent event) {
+        String name = nameOf(event.getClass());
+        if (event instanceof InputEvent) {
+            String params = event.paramString();
+            int comma = params.indexOf(',');
+            name = comma < 0 ? params : params.substring(0, comma);
+        }
+        Object source = event.getSource();
+        return source instanceof Component ? name + " on " + nameOf(source.getClass()) : name;
+    }
+
+    private static String nameOf(Class<?> type) {
+        // Anonymous classes, such as the text area, go by their outer class and number
+        return type.getSimpleName().isEmpty() ? type.getName() : type.getSimpleName();
+    }
+}
@@ -0,0 +1,118 @@
+import javax.swing.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Background file operation that reports progress and can be cancelled.
+ * The work runs on a SwingWorker thread; only the callbacks run on the Event Dispatch Thread.
+ *
+ * @param <T> The type of the result.
+ */
+public abstract class FileTask<T> extends SwingWorker<T, Void> implements IoProgress {
+    private final String description;
+
+    // Times the task from when it was asked for until its result is shown, or null if untimed
+    private final Diagnostics.Span span;
+
+    /**
+     * Creates a task.
+     *
+     * @param description Short text describing the task for the status bar.
+     */
+    protected FileTask(String description) {
+        this(description, null, null);
+    }
+
+    /**
+     * Creates a task that is timed for the Diagnostics window when it succeeds.
+     *
+     * @param description Short text describing the task for the status bar.
+     * @param operation The kind of operation it is timed as, or null to leave it untimed.
+     * @param detail What it works on, such as the file name, for the Flight Recorder event.
+     */
+    protected FileTask(String description, Diagnostics.Operation operation, String detail) {
+        this.description = description;
+        span = operation == null ? null : Diagnostics.begin(operation, detail);
+    }
+
+    /**
+     * Retrieves the description of the task.
+     *
+     * @return The description.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public void update(long done, long total) {
+        if (isCancelled()) {
+            throw new CancellationException();
+        }
+        // A file that grows while it is read can run past the size it had at the start
+        setProgress(total <= 0 ? 100 : (int) Math.min(100, done * 100 / total));
+    }
+
+    /**
+     * Returns a progress sink that maps its updates onto a slice of this task's progress,
+     * for tasks made of several steps.
+     *
+     * @param from The progress percentage at which the step starts.
+     * @param to The progress percentage at which the step ends.
+     * @return The progress sink for the step.
+     */
+    protected IoProgress step(int from, int to) {
+        return new IoProgress() {
+            @Override
+            public void update(long done, long total) {
+                FileTask.this.update(from * 100L + (total <= 0 ? 100 : done * 100 / total) * (to - from), 100 * 100L);
+            }
+        };
+    }
+
+    @Override
+    protected final void done() {
+        if (isCancelled()) {
+            cancelled();
+            return;
+        }
+        try {
+            T result = get();
+            succeeded(result);
+            // Only operations that went through are timed; a failure or a cancellation says little
+            if (span != null) {
+                span.end();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                cancelled();
+            } else {
+                failed(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Called on the Event Dispatch Thread when the task completes.
+     *
+     * @param result The result of the task.
+     */
+    protected abstract void succeeded(T result);
+
+    /**
+     * Called on the Event Dispatch Thread when the task fails.
+     *
+     * @param cause The error that stopped the task.
+     */
+    protected void failed(Throwable cause) {
+        cause.printStackTrace();
+    }
+
+    /**
+     * Called on the Event Dispatch Thread when the task was cancelled.
+     */
+    protected void cancelled() {
+    }
+}
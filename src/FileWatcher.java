@@ -0,0 +1,307 @@
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notices when files open in the editor are changed by another program, with a
+ * {@link WatchService} on the directory of each.
+ * <p>
+ * A background thread waits for the directories to report changes. A program usually writes a
+ * file in several steps, so the thread waits until the files have been quiet for a moment, then
+ * tells the listener on the Event Dispatch Thread which watched files changed. The editor's own
+ * saves are reported too; a {@link Stamp} taken when the file was last read or written tells
+ * them apart.
+ */
+public class FileWatcher {
+    /**
+     * Told on the Event Dispatch Thread when watched files change.
+     */
+    public interface Listener {
+        /**
+         * Called when watched files have been changed, replaced or deleted.
+         *
+         * @param files The files, by their absolute paths as given by {@link #normalize(File)}.
+         */
+        void filesChanged(Set<File> files);
+    }
+
+    // How long the files must be quiet before the changes are reported
+    private static final long QUIET_MILLIS = 150;
+
+    // Longest the changes are held back for, so that a file written to all the time does not
+    // keep the changes of every file from being reported
+    private static final long MAX_DELAY_MILLIS = 1000;
+
+    private final Listener listener;
+    private WatchService service;
+
+    // Times each file is watched, and the key of each directory with the files watched in it
+    private final Map<Path, Integer> watchCounts = new HashMap<>();
+    private final Map<Path, WatchKey> keys = new HashMap<>();
+
+    /**
+     * Creates a watcher. Its thread starts with the first file watched.
+     *
+     * @param listener The listener told about changes.
+     */
+    public FileWatcher(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts watching a file. A file may be watched more than once, and is then watched until
+     * it has been unwatched as many times.
+     *
+     * @param file The file.
+     */
+    public synchronized void watch(File file) {
+        Path path = pathOf(file);
+        Integer count = watchCounts.get(path);
+        watchCounts.put(path, count == null ? 1 : count + 1);
+        Path directory = path.getParent();
+        if (directory == null || keys.containsKey(directory)) {
+            return;
+        }
+        try {
+            if (service == null) {
+                service = FileSystems.getDefault().newWatchService();
+                startThread(service);
+            }
+            keys.put(directory, directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+        } catch (IOException e) {
+            // Changes to the file go unnoticed, as they always did
+        }
+    }
+
+    /**
+     * Stops watching a file, once as often as it was watched.
+     *
+     * @param file The file.
+     */
+    public synchronized void unwatch(File file) {
+        Path path = pathOf(file);
+        Integer count = watchCounts.get(path);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            watchCounts.put(path, count - 1);
+            return;
+        }
+        watchCounts.remove(path);
+        Path directory = path.getParent();
+        for (Path watched : watchCounts.keySet()) {
+            if (Objects.equals(watched.getParent(), directory)) {
+                return;
+            }
+        }
+        WatchKey key = keys.remove(directory);
+        if (key != null) {
+            key.cancel();
+        }
+    }
+
+    /**
+     * Names a file the way the watcher reports it, to look it up in a set of changed files.
+     *
+     * @param file The file.
+     * @return The file by its absolute path.
+     */
+    public static File normalize(File file) {
+        return pathOf(file).toFile();
+    }
+
+    /**
+     * Tells whether two names refer to the same file, through symbolic links, relative paths and
+     * {@code ..} too, so that it is not opened twice. Names of files that cannot be looked at are
+     * compared as {@link #normalize(File)} gives them.
+     *
+     * @param a One file.
+     * @param b The other file.
+     * @return Whether they are the same file.
+     */
+    public static boolean isSameFile(File a, File b) {
+        Path first = pathOf(a);
+        Path second = pathOf(b);
+        try {
+            return Files.isSameFile(first, second);
+        } catch (IOException e) {
+            return first.equals(second);
+        }
+    }
+
+    private static Path pathOf(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * Starts the daemon thread that waits for changes.
+     */
+    private void startThread(WatchService service) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Set<File> changed = new LinkedHashSet<>();
+                        WatchKey key = service.take();
+                        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MILLIS);
+                        // Collect changes until there are none for a moment, or for long enough
+                        while (key != null) {
+                            collect(key, changed);
+                            long left = deadline - System.nanoTime();
+                            if (left <= 0) {
+                                break;
+                            }
+                            key = service.poll(Math.min(TimeUnit.MILLISECONDS.toNanos(QUIET_MILLIS), left), TimeUnit.NANOSECONDS);
+                        }
+                        if (!changed.isEmpty()) {
+                            SwingUtilities.invokeLater(new Runnable() {
+                                @Override
+                                public void run() {
+                                    listener.filesChanged(changed);
+                                }
+                            });
+                        }
+                    }
+                } catch (InterruptedException | ClosedWatchServiceException e) {
+                    // The editor is going away
+                }
+            }
+        }, "File watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Adds the watched files a directory reported changes to, all of them if it lost count.
+     */
+    private void collect(WatchKey key, Set<File> changed) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            synchronized (this) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    for (Path watched : watchCounts.keySet()) {
+                        if (Objects.equals(watched.getParent(), directory)) {
+                            changed.add(watched.toFile());
+                        }
+                    }
+                } else {
+                    Path path = directory.resolve((Path) event.context());
+                    if (watchCounts.containsKey(path)) {
+                        changed.add(path.toFile());
+                    }
+                }
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * What a file looked like on disk at some point: its size, when it was last modified and
+     * which file it was, so that a file replaced by another one of the same size and time still
+     * counts as changed.
+     */
+    public static final class Stamp {
+        // Stamp of a file that does not exist
+        private static final Stamp MISSING = new Stamp(-1, -1, null);
+
+        /**
+         * Stamp that matches no file, for a document that does not hold its file as it was at
+         * any point, such as one that kept only the end of a followed log.
+         */
+        public static final Stamp UNREAD = new Stamp(-2, -2, null);
+
+        private final long size;
+        private final long modified;
+        private final Object key;
+
+        private Stamp(long size, long modified, Object key) {
+            this.size = size;
+            this.modified = modified;
+            this.key = key;
+        }
+
+        /**
+         * Takes the stamp of a file as it is now.
+         *
+         * @param file The file.
+         * @return Its stamp, which only equals that of another missing file if it does not exist.
+         */
+        public static Stamp of(File file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                return new Stamp(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), attributes.fileKey());
+            } catch (IOException e) {
+                return MISSING;
+            }
+        }
+
+        /**
+         * Tells whether the file existed when the stamp was taken.
+         *
+         * @return True if it did.
+         */
+        public boolean exists() {
+            return this != MISSING;
+        }
+
+        /**
+         * Retrieves the size of the file when the stamp was taken.
+         *
+         * @return The size in bytes, or -1 if it did not exist.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Retrieves when the file was last changed, as of when the stamp was taken.
+         *
+         * @return The time in nanoseconds since the epoch, or -1 if it did not exist.
+         */
+        public long getModified() {
+            return modified;
+        }
+
+        /**
+         * Retrieves what identifies the file on its file system, which changes when another
+         * file takes its place.
+         *
+         * @return The file key, or null if it did not exist or the file system has none.
+         */
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Stamp)) {
+                return false;
+            }
+            Stamp other = (Stamp) o;
+            return size == other.size && modified == other.modified && Objects.equals(key, other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, modified, key);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * FindDialog class extends JDialog to let the user search the text area without closing the dialog.
+ */
+public class FindDialog extends JDialog {
+    // Reference to the GUI instance whose text area is searched
+    private GUI source;
+
+    // Engine that finds and counts the matches
+    private SearchEngine engine;
+
+    // Components for the search settings
+    private JTextField findField;
+    private JCheckBox matchCaseCheckBox, wrapAroundCheckBox;
+    private JLabel countLabel;
+
+    /**
+     * Constructor to initialize the FindDialog.
+     *
+     * @param source The GUI instance that launched this dialog.
+     * @param engine The search engine of the GUI.
+     */
+    public FindDialog(GUI source, SearchEngine engine) {
+        super(source);
+        this.source = source;
+        this.engine = engine;
+        setTitle("Find");
+        setDefaultCloseOperation(HIDE_ON_CLOSE);
+        setSize(400, 165);
+        setLocationRelativeTo(source);
+
+        // Use absolute positioning like the other dialogs
+        setLayout(null);
+
+        addDialogComponents();
+    }
+
+    /**
+     * Adds all components to the dialog.
+     */
+    private void addDialogComponents() {
+        JLabel findLabel = new JLabel("Find what:");
+        findLabel.setBounds(10, 10, 70, 25);
+        add(findLabel);
+
+        // Every keystroke updates the query, so the match count starts while the user is still typing
+        findField = new JTextField();
+        findField.setBounds(80, 10, 190, 25);
+        findField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                updateQuery();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                updateQuery();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        add(findField);
+
+        matchCaseCheckBox = new JCheckBox("Match case");
+        matchCaseCheckBox.setBounds(10, 45, 120, 25);
+        matchCaseCheckBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateQuery();
+            }
+        });
+        add(matchCaseCheckBox);
+
+        wrapAroundCheckBox = new JCheckBox("Wrap around", true);
+        wrapAroundCheckBox.setBounds(130, 45, 140, 25);
+        add(wrapAroundCheckBox);
+
+        countLabel = new JLabel(" ");
+        countLabel.setBounds(10, 85, 260, 25);
+        add(countLabel);
+
+        // Find Next button - selects the next match after the selection
+        JButton findNextButton = new JButton("Find Next");
+        findNextButton.setBounds(280, 10, 100, 25);
+        findNextButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                find(true);
+            }
+        });
+        add(findNextButton);
+        getRootPane().setDefaultButton(findNextButton);
+
+        // Find Previous button - selects the match before the selection
+        JButton findPreviousButton = new JButton("Find Previous");
+        findPreviousButton.setBounds(280, 45, 100, 25);
+        findPreviousButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                find(false);
+            }
+        });
+        add(findPreviousButton);
+
+        // Close button - hides the dialog, keeping the search for Find Next
+        JButton closeButton = new JButton("Close");
+        closeButton.setBounds(280, 85, 100, 25);
+        closeButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setVisible(false);
+            }
+        });
+        add(closeButton);
+
+        engine.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                updateCount(-1);
+            }
+        });
+    }
+
+    /**
+     * Shows the dialog with the current selection, if any, as the text to find.
+     */
+    public void showDialog() {
+        JTextArea textArea = source.getTextArea();
+        String selected = textArea.getSelectionEnd() - textArea.getSelectionStart() <= 256 ? textArea.getSelectedText() : null;
+        if (selected != null && !selected.isEmpty() && selected.indexOf('\n') < 0) {
+            findField.setText(selected);
+        }
+        findField.selectAll();
+        setVisible(true);
+        findField.requestFocusInWindow();
+    }
+
+    /**
+     * Selects the next or previous match in the text area.
+     *
+     * @param forward True to search forward from the selection, false to search backward.
+     * @return True if a match was found.
+     */
+    public boolean find(boolean forward) {
+        updateQuery();
+        if (!engine.hasQuery()) {
+            return false;
+        }
+
+        JTextArea textArea = source.getTextArea();
+        boolean wrap = wrapAroundCheckBox.isSelected();
+        Diagnostics.Span span = Diagnostics.begin(Diagnostics.Operation.FIND, findField.getText());
+        int start = forward
+                ? engine.findNext(textArea.getSelectionEnd(), wrap)
+                : engine.findPrevious(textArea.getSelectionStart(), wrap);
+        span.end();
+        if (start < 0) {
+            countLabel.setText("Text not found!");
+            return false;
+        }
+        textArea.select(start, start + engine.getMatchLength());
+        // Keep the match highlighted while the focus stays in this dialog
+        textArea.getCaret().setSelectionVisible(true);
+        updateCount(start);
+        return true;
+    }
+
+    private void updateQuery() {
+        engine.setQuery(findField.getText(), matchCaseCheckBox.isSelected());
+    }
+
+    /**
+     * Shows the number of matches, and which one is selected when it is known.
+     */
+    private void updateCount(int selected) {
+        if (!engine.hasQuery()) {
+            countLabel.setText(" ");
+        } else if (engine.getMatchCount() < 0) {
+            countLabel.setText("Counting matches... " + engine.getCountProgress() + "%");
+        } else {
+            int number = selected < 0 ? 0 : engine.getMatchNumber(selected);
+            int count = engine.getMatchCount();
+            countLabel.setText(number > 0
+                    ? "Match " + number + " of " + count
+                    : count + (count == 1 ? " match" : " matches"));
+        }
+    }
+}
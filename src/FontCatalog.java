@@ -0,0 +1,136 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The font families installed on the system, enumerated once on a background thread and kept
+ * for the rest of the session.
+ * <p>
+ * Asking the graphics environment for its fonts reads every font file on the system, which takes
+ * seconds on machines with thousands of fonts. The catalog starts on that as the application
+ * starts, so that the font dialog normally finds the list ready. Previews of a family, its name
+ * drawn in its own font, are rendered on demand and kept in a small least recently used cache.
+ */
+public final class FontCatalog {
+    // Most previews kept at once; a preview takes a few kilobytes
+    private static final int PREVIEW_CACHE_SIZE = 128;
+
+    private static final int PREVIEW_WIDTH = 105;
+    private static final int PREVIEW_HEIGHT = 18;
+
+    // Families once enumerated, and the callbacks waiting for them until then
+    private static String[] families;
+    private static final List<Runnable> waiting = new ArrayList<>();
+    private static Thread loader;
+
+    // Accessed on the Event Dispatch Thread only
+    private static final Map<String, Icon> previews = new LinkedHashMap<String, Icon>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Icon> eldest) {
+            return size() > PREVIEW_CACHE_SIZE;
+        }
+    };
+
+    private FontCatalog() {
+    }
+
+    /**
+     * Starts enumerating the font families in the background, unless that has already started.
+     */
+    public static synchronized void preload() {
+        if (loader != null) {
+            return;
+        }
+        loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                String[] names = GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames();
+                List<Runnable> callbacks;
+                synchronized (FontCatalog.class) {
+                    families = names;
+                    callbacks = new ArrayList<>(waiting);
+                    waiting.clear();
+                }
+                for (Runnable callback : callbacks) {
+                    SwingUtilities.invokeLater(callback);
+                }
+            }
+        }, "Font catalog");
+        loader.setDaemon(true);
+        loader.setPriority(Thread.MIN_PRIORITY);
+        loader.start();
+    }
+
+    /**
+     * Runs a callback on the Event Dispatch Thread once the font families are known, straight
+     * away if they already are.
+     *
+     * @param callback The callback, which can then call {@link #getFamilies()}.
+     */
+    public static void whenLoaded(Runnable callback) {
+        synchronized (FontCatalog.class) {
+            if (families == null) {
+                waiting.add(callback);
+                preload();
+                return;
+            }
+        }
+        if (SwingUtilities.isEventDispatchThread()) {
+            callback.run();
+        } else {
+            SwingUtilities.invokeLater(callback);
+        }
+    }
+
+    /**
+     * Retrieves the font families installed on the system.
+     *
+     * @return The family names, in the order the graphics environment gives them, or null if they
+     *         have not been enumerated yet.
+     */
+    public static synchronized String[] getFamilies() {
+        return families == null ? null : families.clone();
+    }
+
+    /**
+     * Retrieves a preview of a font family: its name drawn in its own font, or in the default
+     * font if the family cannot show its own name. Must be called on the Event Dispatch Thread.
+     *
+     * @param family The family name.
+     * @param color The color to draw the name in.
+     * @return The preview.
+     */
+    public static Icon getPreview(String family, Color color) {
+        String key = family + '\u0000' + color.getRGB();
+        Icon preview = previews.get(key);
+        if (preview == null) {
+            preview = renderPreview(family, color);
+            previews.put(key, preview);
+        }
+        return preview;
+    }
+
+    private static Icon renderPreview(String family, Color color) {
+        Font font = new Font(family, Font.PLAIN, 12);
+        if (font.canDisplayUpTo(family) != -1) {
+            font = new Font(Font.DIALOG, Font.PLAIN, 12);
+        }
+        BufferedImage image = new BufferedImage(PREVIEW_WIDTH, PREVIEW_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setFont(font);
+            g.setColor(color);
+            FontMetrics metrics = g.getFontMetrics();
+            int baseline = (PREVIEW_HEIGHT - metrics.getHeight()) / 2 + metrics.getAscent();
+            g.drawString(family, 0, baseline);
+        } finally {
+            g.dispose();
+        }
+        return new ImageIcon(image);
+    }
+}
@@ -1,4 +1,6 @@
 import javax.swing.*;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -16,6 +18,10 @@ public class FontMenu extends JDialog {
     private JTextField currentFontField, currentFontStyleField, currentFontSizeField;
     private JPanel currentColorBox;
 
+    // List of font families, and whether it shows each name in its own font
+    private JList<String> fontList;
+    private JCheckBox previewCheckBox;
+
     /**
      * Constructor to initialize the FontMenu dialog.
      *
@@ -59,8 +65,8 @@ public class FontMenu extends JDialog {
                 // Create new font based on selected settings
                 Font newFont = new Font(fontType, fontStyle, fontSize);
 
-                // Update text area font and font color
-                source.getTextArea().setFont(newFont);
+                // Update text area font and font color, keeping the text in view where it was
+                source.getZoomController().setFont(newFont);
                 source.getTextArea().setForeground(fontColor);
 
                 // Dispose the font menu dialog
@@ -93,55 +99,55 @@ public class FontMenu extends JDialog {
         JPanel fontPanel = new JPanel();
         fontPanel.setBounds(10, 15, 125, 160);
 
-        // Display current font name
-        currentFontField = new JTextField(source.getTextArea().getFont().getFontName());
+        // Display current font family
+        currentFontField = new JTextField(source.getTextArea().getFont().getFamily());
         currentFontField.setPreferredSize(new Dimension(125, 25));
         currentFontField.setEditable(false);
         fontPanel.add(currentFontField);
 
-        // Display list of available fonts
-        JPanel listOfFontsPanel = new JPanel();
-        listOfFontsPanel.setLayout(new BoxLayout(listOfFontsPanel, BoxLayout.Y_AXIS));
-        listOfFontsPanel.setBackground(Color.WHITE);
-
-        // Scrollable list of available font names
-        JScrollPane scrollPane = new JScrollPane(listOfFontsPanel);
-        scrollPane.setPreferredSize(new Dimension(125, 125));
-
-        // Retrieve all available font family names
-        GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
-        String[] fontNames = ge.getAvailableFontFamilyNames();
-
-        // Add each font name as a selectable label
-        for(String fontName : fontNames){
-            JLabel fontNameLabel = new JLabel(fontName);
-
-            // Mouse listener for font selection and highlighting
-            fontNameLabel.addMouseListener(new MouseAdapter() {
-                @Override
-                public void mouseClicked(MouseEvent e) {
-                    currentFontField.setText(fontName); // Set selected font name
-                }
-
-                @Override
-                public void mouseEntered(MouseEvent e) {
-                    fontNameLabel.setOpaque(true); // Highlight on mouse hover
-                    fontNameLabel.setBackground(Color.BLUE);
-                    fontNameLabel.setForeground(Color.WHITE);
+        // List of available fonts; with a fixed cell size only the visible rows are ever rendered
+        fontList = new JList<>();
+        fontList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        fontList.setFixedCellHeight(18);
+        fontList.setFixedCellWidth(105);
+        fontList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if(previewCheckBox.isSelected()){
+                    // Previews come from the catalog's cache, rendered once per family and color
+                    setIcon(FontCatalog.getPreview((String) value, getForeground()));
+                    setText(null);
                 }
-
-                @Override
-                public void mouseExited(MouseEvent e) {
-                    fontNameLabel.setBackground(null); // Remove highlight on mouse exit
-                    fontNameLabel.setForeground(null);
+                return this;
+            }
+        });
+        fontList.addListSelectionListener(new ListSelectionListener() {
+            @Override
+            public void valueChanged(ListSelectionEvent e) {
+                String fontName = fontList.getSelectedValue();
+                if(fontName != null){
+                    currentFontField.setText(fontName); // Set selected font name
                 }
-            });
+            }
+        });
 
-            // Add font name label to panel
-            listOfFontsPanel.add(fontNameLabel);
-        }
+        // Scrollable list of available font names
+        JScrollPane scrollPane = new JScrollPane(fontList);
+        scrollPane.setPreferredSize(new Dimension(125, 125));
         fontPanel.add(scrollPane);
 
+        // Fill the list once the catalog has the fonts, which it normally has by now
+        String currentFamily = currentFontField.getText();
+        FontCatalog.whenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                fontList.setListData(FontCatalog.getFamilies());
+                fontList.setSelectedValue(currentFamily, true);
+            }
+        });
+
         add(fontPanel);
     }
 
@@ -333,5 +339,16 @@ public class FontMenu extends JDialog {
             }
         });
         add(chooseColorButton);
+
+        // Preview option - shows each font name in its own font
+        previewCheckBox = new JCheckBox("Preview fonts");
+        previewCheckBox.setBounds(230, 200, 160, 25);
+        previewCheckBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                fontList.repaint();
+            }
+        });
+        add(previewCheckBox);
     }
 }
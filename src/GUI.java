@@ -1,49 +1,507 @@
 import javax.swing.*;
-import javax.swing.event.UndoableEditEvent;
-import javax.swing.event.UndoableEditListener;
+import javax.swing.event.CaretEvent;
+import javax.swing.event.CaretListener;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
-import javax.swing.undo.UndoManager;
+import javax.swing.text.BadLocationException;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.geom.Rectangle2D;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.*;
+import java.nio.charset.CharacterCodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.stream.Stream;
 
 /**
  * GUI class extends JFrame to create a simple Notepad application.
  */
 public class GUI extends JFrame {
 
-    // file explorer
+    // file explorer, created the first time it is needed since it is slow to create
     private JFileChooser fileChooser;
 
+    // whether the menus and file chooser are put off until the text area has been painted
+    private final boolean fastStart;
+
+    // menu bar holding the menus
+    private JMenuBar menuBar;
+
     // text area for editing text
     private JTextArea textArea;
 
-    // currently opened file
-    private File currentFile;
+    // open tabs, in the order of the tab strip, and the one being shown
+    private final List<EditorTab> tabs = new ArrayList<>();
+    private EditorTab activeTab;
+
+    // tab strip above the text area, one tab per open document
+    private JTabbedPane tabStrip;
+
+    // memory each undo history may hold before older edits are written to disk, in bytes
+    private static final long UNDO_BUDGET = Long.getLong("notepad.undoBudget", 64L << 20);
+
+    // memory the documents of all tabs may hold before inactive ones are moved to disk, in bytes
+    private static final long TAB_BUDGET = Long.getLong("notepad.tabBudget", 256L << 20);
+
+    // moves the documents of tabs not used for a while to disk
+    private MemoryGovernor memoryGovernor;
+
+    // lines kept of a followed file when only its end is kept
+    private static final int FOLLOW_LINES = Integer.getInteger("notepad.followLines", 100000);
+
+    // whether the open files are reopened next time, and whether their undo histories are kept too
+    private static final boolean SESSION_ENABLED = !"false".equals(System.getProperty("notepad.session"))
+            && !Boolean.getBoolean("notepad.trainingRun");
+    private static final boolean SESSION_UNDO = !"false".equals(System.getProperty("notepad.sessionUndo"));
+
+    // how often the session is written while the editor runs, in milliseconds
+    private static final int SESSION_INTERVAL = 30000;
+
+    // writes the session off the event dispatch thread, one session at a time and in order
+    private static final ExecutorService sessionWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Session writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // characters past the top of the view read before a large file restored by the session shows
+    private static final int VISIBLE_CHARS = 1 << 16;
+
+    // document currently shown in the text area
+    private PieceTableDocument document;
+
+    // status bar showing messages and the progress of file tasks
+    private StatusBar statusBar;
+
+    // file task whose progress the status bar shows, if any
+    private FileTask<?> fileTask;
+
+    // file tasks running in the background, by what each works on: a tab, or a file being opened
+    // or recovered; and the saves of each tab waiting for the one before to finish
+    private final Map<Object, List<FileTask<?>>> fileTasks = new HashMap<>();
+    private final Map<EditorTab, ArrayDeque<SaveTask>> queuedSaves = new HashMap<>();
+    private static final Class<?>[] FILE_TASK_KINDS = {OpenTask.class, SaveTask.class, ReplaceAllTask.class, RecoverTask.class};
 
-    // UndoManager for managing undo and redo actions
-    private UndoManager undoManager;
+    // notices files of open tabs being changed by other programs, and the tabs being reloaded
+    private FileWatcher fileWatcher;
+    private final Set<EditorTab> reloading = new HashSet<>();
+
+    // tabs restored from the last session whose files are being opened
+    private final Set<EditorTab> opening = new HashSet<>();
+
+    // whether saves are forced to disk before replacing the file
+    private JCheckBoxMenuItem syncOnSaveMenuItem;
+
+    // whether lines wrap, which the session may set before the menus are built
+    private JCheckBoxMenuItem wordWrapMenuItem;
+
+    // whether the tab shown follows its file as it grows, and whether only its end is kept
+    private JCheckBoxMenuItem followMenuItem;
+    private JCheckBoxMenuItem followWindowMenuItem;
+
+    // finds and counts matches in the document
+    private SearchEngine searchEngine;
+
+    // find dialog, created the first time it is needed
+    private FindDialog findDialog;
+
+    // diagnostics dialog, kept while it is open so that it is not opened twice
+    private DiagnosticsDialog diagnosticsDialog;
+
+    // scroll pane around the text area, and the line numbers shown beside it
+    private JScrollPane scrollPane;
+    private LineNumberGutter lineNumberGutter;
+
+    // zoom and font changes of the text area
+    private ZoomController zoomController;
 
     /**
      * Constructor to initialize the GUI.
+     *
+     * @param fastStart Whether to show the text area first, and build the menus and file chooser
+     *                  only once it has been painted.
      */
-    public GUI() {
+    public GUI(boolean fastStart) {
         super("Notepad");
+        this.fastStart = fastStart;
         setSize(400, 500);
         setLocationRelativeTo(null);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
 
-        // Initialize file chooser
-        fileChooser = new JFileChooser();
-        fileChooser.setCurrentDirectory(new File("src/assets"));
-        fileChooser.setFileFilter(new FileNameExtensionFilter("Text Files", "txt"));
+        // Initialize search engine
+        searchEngine = new SearchEngine();
+
+        // Initialize the memory governor
+        memoryGovernor = new MemoryGovernor(TAB_BUDGET);
+
+        // Watch the files of open tabs for changes made by other programs
+        fileWatcher = new FileWatcher(new FileWatcher.Listener() {
+            @Override
+            public void filesChanged(Set<File> files) {
+                for (EditorTab tab : tabs) {
+                    if (tab.getFile() != null && files.contains(FileWatcher.normalize(tab.getFile()))) {
+                        checkDisk(tab);
+                    }
+                }
+            }
+        });
+
+        // Make sure queued edits reach the journals before the window goes away
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                saveSession(true);
+                closeJournals();
+            }
 
-        // Initialize UndoManager
-        undoManager = new UndoManager();
+            @Override
+            public void windowClosed(WindowEvent e) {
+                closeJournals();
+            }
+        });
 
         // Add GUI components
         addGuiComponents();
+
+        // Check the tabs against the budget now and then too, since the one being edited grows
+        new Timer(10000, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                memoryGovernor.enforce(tabs, activeTab);
+            }
+        }).start();
+
+        // Write the session now and then too, so that a crash loses little of it
+        new Timer(SESSION_INTERVAL, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                saveSession(false);
+            }
+        }).start();
+    }
+
+    /**
+     * Retrieves the file chooser, creating it the first time.
+     *
+     * @return The file chooser.
+     */
+    private JFileChooser getFileChooser() {
+        if (fileChooser == null) {
+            fileChooser = new JFileChooser();
+            fileChooser.setCurrentDirectory(new File("src/assets"));
+            fileChooser.setFileFilter(new FileNameExtensionFilter("Text Files", "txt"));
+        }
+        return fileChooser;
+    }
+
+    /**
+     * Finishes startup once the text area has been painted for the first time: builds what a
+     * fast start put off, one step per event so that typing is never held up for long, and ends
+     * startup timing.
+     */
+    private void finishStartup() {
+        if (!fastStart) {
+            StartupTimer.report();
+            endTrainingRun();
+            return;
+        }
+        addMenus();
+        StartupTimer.mark("menus");
+        FontCatalog.preload();
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                getFileChooser();
+                StartupTimer.mark("file chooser");
+                StartupTimer.report();
+                endTrainingRun();
+            }
+        });
+    }
+
+    /**
+     * Ends a training run for a class data sharing archive, started with
+     * {@code -Dnotepad.trainingRun=true}, once startup has loaded its classes. The journals are
+     * closed before the JVM exits, so that the archive is written.
+     */
+    private void endTrainingRun() {
+        if (!Boolean.getBoolean("notepad.trainingRun")) {
+            return;
+        }
+        getFileChooser();
+        dispose();
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                System.exit(0);
+            }
+        });
+    }
+
+    /**
+     * Closes the journals of every tab, leaving unsaved edits in them for the next session.
+     */
+    private void closeJournals() {
+        for (EditorTab tab : tabs) {
+            tab.getJournal().close();
+        }
+    }
+
+    /**
+     * Writes the session: the files open in tabs, where the caret and the top of the view are in
+     * each, the font and whether lines wrap. The session is gathered here and written on a
+     * background thread. Does nothing if sessions are turned off with
+     * {@code -Dnotepad.session=false}.
+     *
+     * @param exiting Whether the editor is about to exit, in which case this waits for the session
+     *                to be written, the undo histories of saved files are written too, unless
+     *                {@code -Dnotepad.sessionUndo=false}, and those of earlier sessions no longer
+     *                referred to are deleted.
+     */
+    private void saveSession(boolean exiting) {
+        if (!SESSION_ENABLED) {
+            return;
+        }
+        if (activeTab != null && activeTab.isLoaded()) {
+            activeTab.remember(textArea.getCaretPosition(), getViewOffset());
+        }
+        Path undoDirectory = exiting && SESSION_UNDO ? Session.getDirectory().resolve("undo") : null;
+        List<Session.Entry> entries = new ArrayList<>();
+        Set<Path> undoFiles = new HashSet<>();
+        int activeIndex = 0;
+        for (EditorTab tab : tabs) {
+            Session.Entry entry = tab.toSessionEntry(undoDirectory);
+            if (entry == null) {
+                continue;
+            }
+            if (tab == activeTab) {
+                activeIndex = entries.size();
+            }
+            entries.add(entry);
+            if (entry.getUndoFile() != null) {
+                undoFiles.add(entry.getUndoFile());
+            }
+        }
+        Font font = zoomController.getFont();
+        final Session session = new Session(font.getName(), font.getStyle(), font.getSize(),
+                textArea.getForeground().getRGB(), textArea.getLineWrap(), activeIndex, entries);
+        Future<Void> written = sessionWriter.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                session.write();
+                return null;
+            }
+        });
+        if (!exiting) {
+            // The last session written stays if this one fails, and the next try is not far off
+            return;
+        }
+
+        // The last chance: wait for it, after any write still queued, and say if it failed
+        try {
+            written.get();
+        } catch (ExecutionException e) {
+            JOptionPane.showMessageDialog(this, "Could not save the open files for the next start:\n"
+                    + e.getCause().getMessage(), "Session", JOptionPane.WARNING_MESSAGE);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        deleteUnusedUndoFiles(undoFiles);
+    }
+
+    /**
+     * Deletes the undo histories saved by earlier sessions that the session just written does
+     * not refer to.
+     *
+     * @param used The undo files the session refers to.
+     */
+    private static void deleteUnusedUndoFiles(Set<Path> used) {
+        Path directory = Session.getDirectory().resolve("undo");
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            Iterator<Path> iterator = files.iterator();
+            while (iterator.hasNext()) {
+                Path file = iterator.next();
+                if (!used.contains(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            // Tried again next time
+        }
+    }
+
+    /**
+     * Reopens the files of the last session in tabs, and restores the font and line wrap. Each
+     * file is only read once its tab is first shown, so that startup does not wait for files
+     * that may never be looked at. Files that no longer exist are left out.
+     */
+    public void restoreSession() {
+        if (!SESSION_ENABLED) {
+            return;
+        }
+        Session session = Session.read();
+        if (session == null) {
+            return;
+        }
+        zoomController.setFont(new Font(session.getFontName(), session.getFontStyle(), session.getFontSize()));
+        textArea.setForeground(new Color(session.getForeground()));
+        textArea.setLineWrap(session.isLineWrap());
+        textArea.setWrapStyleWord(session.isLineWrap());
+        if (wordWrapMenuItem != null) {
+            wordWrapMenuItem.setState(session.isLineWrap());
+        }
+
+        EditorTab pristine = activeTab != null && activeTab.isPristine() ? activeTab : null;
+        EditorTab active = null;
+        List<Session.Entry> entries = session.getEntries();
+        for (int i = 0; i < entries.size(); i++) {
+            Session.Entry entry = entries.get(i);
+            if (!entry.getFile().isFile()) {
+                // Its undo file, if any, is deleted on exit
+                continue;
+            }
+            EditorTab tab = new EditorTab(entry, new EditJournal(), UNDO_BUDGET);
+            openTab(tab, false);
+            if (i == session.getActiveIndex() || active == null) {
+                active = tab;
+            }
+        }
+        if (active == null) {
+            return;
+        }
+        tabStrip.setSelectedIndex(tabs.indexOf(active));
+        if (pristine != null) {
+            removeTab(pristine);
+        }
+    }
+
+    /**
+     * Offers to recover the unsaved edits of sessions that did not end cleanly, newest first, and
+     * opens each one accepted in a tab of its own. Journals that are declined, or whose file has
+     * changed since, are deleted.
+     */
+    public void recoverUnsavedWork() {
+        List<Path> journals = new ArrayList<>();
+        List<File> bases = new ArrayList<>();
+        for (Path orphan : EditJournal.findOrphans()) {
+            EditJournal.Header header;
+            try {
+                header = EditJournal.Header.read(orphan);
+            } catch (IOException e) {
+                continue;
+            }
+            File base = header.getBase();
+            String name = base == null ? "an untitled document" : base.getName();
+            if (!header.isBaseUnchanged()) {
+                statusBar.setMessage("Could not recover changes to " + name + ": the file has changed");
+                deleteJournal(orphan);
+                continue;
+            }
+            int choice = JOptionPane.showConfirmDialog(this,
+                    "Notepad did not close properly. Recover unsaved changes to " + name + "?",
+                    "Recover Unsaved Changes", JOptionPane.YES_NO_OPTION);
+            if (choice != JOptionPane.YES_OPTION) {
+                deleteJournal(orphan);
+                continue;
+            }
+            journals.add(orphan);
+            bases.add(base);
+        }
+        recover(journals, bases, 0);
+    }
+
+    /**
+     * Recovers accepted journals one after another, so that each recovered tab has taken the place
+     * of any tab of the same file before the next is read.
+     *
+     * @param journals The journals to recover.
+     * @param bases The file each journal applies to, or null for an untitled document.
+     * @param index The journal to recover next.
+     */
+    private void recover(List<Path> journals, List<File> bases, int index) {
+        if (index == journals.size()) {
+            return;
+        }
+        Path orphan = journals.get(index);
+        File base = bases.get(index);
+        String name = base == null ? "an untitled document" : base.getName();
+        runFileTask(orphan, new RecoverTask(orphan, base) {
+            @Override
+            protected void succeeded(PieceTableDocument recovered) {
+                EditJournal resumed;
+                try {
+                    resumed = EditJournal.resume(orphan);
+                } catch (IOException e) {
+                    failed(e);
+                    return;
+                }
+                // Carry on journaling into the recovered journal, on top of the same file
+                EditorTab tab = new EditorTab(recovered, base, resumed, UNDO_BUDGET);
+                tab.setModified(true);
+                openTab(tab);
+                // The recovered tab takes the place of the same file reopened by the session
+                for (EditorTab other : new ArrayList<>(tabs)) {
+                    if (other != tab && base != null && !other.isModified() && other.getFile() != null
+                            && FileWatcher.isSameFile(base, other.getFile())) {
+                        removeTab(other);
+                    }
+                }
+                statusBar.setMessage("Recovered unsaved changes to " + name);
+                recover(journals, bases, index + 1);
+            }
+
+            @Override
+            protected void failed(Throwable cause) {
+                super.failed(cause);
+                statusBar.setMessage("Could not recover changes to " + name);
+                recover(journals, bases, index + 1);
+            }
+
+            @Override
+            protected void cancelled() {
+                statusBar.setMessage("Recovery cancelled");
+            }
+        });
+    }
+
+    private static void deleteJournal(Path journal) {
+        try {
+            Files.deleteIfExists(journal);
+        } catch (IOException e) {
+            // Offered again next time
+        }
     }
 
     /**
@@ -52,17 +510,733 @@ public class GUI extends JFrame {
     private void addGuiComponents() {
         addToolbar();
 
-        // Text area for editing text
-        textArea = new JTextArea();
-        textArea.getDocument().addUndoableEditListener(new UndoableEditListener() {
+        statusBar = new StatusBar();
+        add(statusBar, BorderLayout.SOUTH);
+
+        // Text area for editing text, backed by a piece table so large files stay cheap to edit;
+        // its first paint ends startup
+        textArea = new EditorTextArea() {
+            private boolean painted;
+
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                if (!painted) {
+                    painted = true;
+                    StartupTimer.mark("first paint");
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            finishStartup();
+                        }
+                    });
+                }
+            }
+        };
+        textArea.addCaretListener(new CaretListener() {
+            @Override
+            public void caretUpdate(CaretEvent e) {
+                updateCaretStatus();
+            }
+        });
+        installDocument(new PieceTableDocument());
+        zoomController = new ZoomController(textArea);
+
+        scrollPane = new JScrollPane(textArea);
+        lineNumberGutter = new LineNumberGutter(textArea);
+        scrollPane.setRowHeaderView(lineNumberGutter);
+
+        // Tab strip above the text area; the tabs have no components of their own, since every
+        // tab is shown in the same text area
+        tabStrip = new JTabbedPane(JTabbedPane.TOP, JTabbedPane.SCROLL_TAB_LAYOUT);
+        tabStrip.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                int index = tabStrip.getSelectedIndex();
+                if (index >= 0) {
+                    showTab(tabs.get(index));
+                }
+            }
+        });
+
+        JPanel editorPanel = new JPanel(new BorderLayout());
+        editorPanel.add(tabStrip, BorderLayout.NORTH);
+        editorPanel.add(scrollPane, BorderLayout.CENTER);
+        add(editorPanel, BorderLayout.CENTER);
+
+        openTab(newTab(new PieceTableDocument(), null));
+    }
+
+    /**
+     * Creates a tab for a document, with a fresh journal.
+     *
+     * @param document The document.
+     * @param file The file it was opened from, or null for a new document.
+     * @return The tab.
+     */
+    private EditorTab newTab(PieceTableDocument document, File file) {
+        EditJournal journal = new EditJournal();
+        journal.start(file);
+        return new EditorTab(document, file, journal, UNDO_BUDGET);
+    }
+
+    /**
+     * Adds a tab and shows it. A new document nobody has typed into gives up its tab to it.
+     *
+     * @param tab The tab.
+     */
+    private void openTab(EditorTab tab) {
+        openTab(tab, true);
+    }
+
+    /**
+     * Adds a tab, and shows it if asked to. A new document nobody has typed into gives up its tab
+     * to a tab that is shown.
+     *
+     * @param tab The tab.
+     * @param show Whether to show the tab.
+     */
+    private void openTab(EditorTab tab, boolean show) {
+        EditorTab pristine = show && activeTab != null && activeTab.isPristine() ? activeTab : null;
+        tabs.add(tab);
+        tabStrip.addTab(tab.getTitle(), null);
+        tab.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                updateTabTitle(tab);
+            }
+        });
+        tab.getJournal().setListener(new EditJournal.Listener() {
+            @Override
+            public void failed(IOException cause) {
+                journalFailed(tab, cause);
+            }
+        });
+        updateTabTitle(tab);
+        if (tab.getFile() != null) {
+            fileWatcher.watch(tab.getFile());
+        }
+        if (!show) {
+            return;
+        }
+        tabStrip.setSelectedIndex(tabs.size() - 1);
+        if (pristine != null) {
+            removeTab(pristine);
+        }
+    }
+
+    /**
+     * Warns that the changes to a tab can no longer be recovered after a crash, until it is saved
+     * and its journal starts over.
+     *
+     * @param tab The tab.
+     * @param cause Why the journal could not be written.
+     */
+    private void journalFailed(EditorTab tab, IOException cause) {
+        if (!tabs.contains(tab)) {
+            return;
+        }
+        String name = tab.getFile() == null ? "an untitled document" : tab.getFile().getName();
+        statusBar.setMessage("Changes to " + name + " are no longer journaled");
+        JOptionPane.showMessageDialog(this,
+                "Unsaved changes to " + name + " cannot be recovered after a crash any more, because the journal"
+                        + " could not be written:\n" + cause.getMessage() + "\n\nSaving starts the journal over.",
+                "Journal", JOptionPane.WARNING_MESSAGE);
+    }
+
+    /**
+     * Closes a tab, asking first if it has unsaved changes. Closing the last tab leaves a new
+     * document in its place.
+     *
+     * @param tab The tab.
+     */
+    private void closeTab(EditorTab tab) {
+        if (tab.isModified()) {
+            int choice = JOptionPane.showConfirmDialog(this,
+                    "Close " + tab.getTitle().substring(1) + " without saving the changes?",
+                    "Close Tab", JOptionPane.YES_NO_OPTION);
+            if (choice != JOptionPane.YES_OPTION) {
+                return;
+            }
+        }
+        removeTab(tab);
+        if (tabs.isEmpty()) {
+            openTab(newTab(new PieceTableDocument(), null));
+        }
+    }
+
+    /**
+     * Removes a tab and throws its unsaved edits away.
+     *
+     * @param tab The tab.
+     */
+    private void removeTab(EditorTab tab) {
+        int index = tabs.indexOf(tab);
+        if (tab == activeTab) {
+            activeTab = null;
+        }
+        tabs.remove(index);
+        tabStrip.removeTabAt(index);
+        tab.close(false);
+        if (tab.getFile() != null) {
+            fileWatcher.unwatch(tab.getFile());
+        }
+        if (activeTab == null && !tabs.isEmpty()) {
+            showTab(tabs.get(tabStrip.getSelectedIndex()));
+        }
+    }
+
+    /**
+     * Shows the title of a tab on the tab strip, and in the title bar if it is the one shown.
+     *
+     * @param tab The tab.
+     */
+    private void updateTabTitle(EditorTab tab) {
+        int index = tabs.indexOf(tab);
+        if (index < 0) {
+            return;
+        }
+        tabStrip.setTitleAt(index, tab.getTitle());
+        tabStrip.setToolTipTextAt(index, tab.getFile() == null ? null : tab.getFile().getPath());
+        if (tab == activeTab) {
+            setTitle(tab.getTitle());
+        }
+    }
+
+    /**
+     * Shows a tab in the text area, where the caret and the top of the view were left in it. A
+     * tab whose document was moved to disk, or whose file has not been opened since the session
+     * was restored, shows empty and read-only until the document has been read.
+     *
+     * @param tab The tab.
+     */
+    private void showTab(EditorTab tab) {
+        if (tab == activeTab) {
+            return;
+        }
+        if (activeTab != null && activeTab.isLoaded()) {
+            activeTab.deactivate(textArea.getCaretPosition(), getViewOffset());
+        }
+        activeTab = tab;
+        tab.activate();
+        setTitle(tab.getTitle());
+        if (!tab.isLoaded()) {
+            installDocument(new PieceTableDocument());
+            textArea.setEditable(false);
+            statusBar.setMessage("Loading " + tab.getTitle());
+        }
+        if (followMenuItem != null) {
+            followMenuItem.setSelected(tab.isFollowing());
+        }
+        if (tab.isOpenPending()) {
+            openRestoredTab(tab);
+            memoryGovernor.enforce(tabs, tab);
+            return;
+        }
+        tab.load(new Runnable() {
+            @Override
+            public void run() {
+                tabLoaded(tab);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                statusBar.setMessage("Could not read " + tab.getTitle() + " back from disk");
+            }
+        });
+        memoryGovernor.enforce(tabs, tab);
+    }
+
+    /**
+     * Puts the document of a tab that has just been loaded in the text area, if the tab is still
+     * the one shown, with the caret and the top of the view where they were left.
+     *
+     * @param tab The tab.
+     */
+    private void tabLoaded(EditorTab tab) {
+        if (tab != activeTab) {
+            return;
+        }
+        installDocument(tab.getDocument());
+        // A followed file is only read while it is followed, and a large one not edited until read
+        textArea.setEditable(!tab.isFollowing() && !tab.isReading());
+        textArea.setCaretPosition(Math.min(tab.getCaretPosition(), document.getLength()));
+        scrollToOffset(Math.min(tab.getViewPosition(), document.getLength()));
+        // Changes made to the file while another tab was shown are taken up now
+        checkDisk(tab);
+    }
+
+    /**
+     * Opens the file of a tab restored from the last session, in the background. It does not go
+     * through {@link #runFileTask(Object, FileTask)}, so that its progress does not take the place
+     * of that of an open or save the user asked for.
+     *
+     * @param tab The tab.
+     */
+    private void openRestoredTab(EditorTab tab) {
+        if (opening.contains(tab)) {
+            return;
+        }
+        File file = tab.getFile();
+        // Taken before reading, so that a change made while the file is read is noticed after
+        FileWatcher.Stamp stamp = FileWatcher.Stamp.of(file);
+        // The text at the caret and the top of the view is read before the tab shows
+        int visibleOffset = Math.max(tab.getCaretPosition(), tab.getViewPosition()) + VISIBLE_CHARS;
+        OpenTask task = new OpenTask(file, visibleOffset) {
+            @Override
+            protected void succeeded(PieceTableDocument opened) {
+                opening.remove(tab);
+                DocumentLoader loader = getLoader();
+                if (!tabs.contains(tab) || !tab.isOpenPending()) {
+                    if (loader != null) {
+                        loader.stop();
+                    }
+                    return;
+                }
+                tab.opened(opened, stamp);
+                if (loader != null) {
+                    readRest(tab, loader);
+                } else if (tab == activeTab) {
+                    statusBar.setMessage(openedMessage(file, tab.getFormat()));
+                }
+                tabLoaded(tab);
+            }
+
+            @Override
+            protected void failed(Throwable cause) {
+                super.failed(cause);
+                opening.remove(tab);
+                statusBar.setMessage("Could not open " + file.getName());
+            }
+
+            @Override
+            protected void cancelled() {
+                super.cancelled();
+                opening.remove(tab);
+                statusBar.setMessage("Open cancelled");
+            }
+        };
+        opening.add(tab);
+        // Progress shows unless it would hide that of an open or save
+        if (fileTask == null || fileTask.isDone()) {
+            statusBar.track(task);
+        }
+        task.execute();
+    }
+
+    /**
+     * Describes a file that has just been opened, warning when saving it would change how some
+     * of its lines end.
+     */
+    private static String openedMessage(File file, TextFormat format) {
+        if (format.isMixed()) {
+            return "Opened " + file.getName() + ": its lines end in different ways, and saving ends them all in "
+                    + format.getLineSeparatorName();
+        }
+        return "Opened " + file.getName();
+    }
+
+    /**
+     * Reads the rest of a large file into the document of its tab, which cannot be edited until
+     * then. How far the reading has got shows in the status bar while the tab is shown. A file
+     * that cannot be read to its end is closed again, since its document holds only part of it;
+     * one with bytes further on that are not in the charset its start was read in is opened again,
+     * in the {@linkplain TextFormat#fallback() fallback} charset.
+     *
+     * @param tab The tab, whose document holds the start of its file.
+     * @param loader The loader of the rest of the file.
+     */
+    private void readRest(EditorTab tab, DocumentLoader loader) {
+        String name = tab.getFile().getName();
+        tab.read(loader, new DocumentLoader.Listener() {
+            @Override
+            public void progressed(long done, long total) {
+                if (tab == activeTab) {
+                    statusBar.setMessage("Reading " + name + ": " + (total <= 0 ? 100 : done * 100 / total) + "%");
+                }
+            }
+
+            @Override
+            public void finished() {
+                if (tab == activeTab && tab.isLoaded()) {
+                    textArea.setEditable(!tab.isFollowing());
+                    statusBar.setMessage(openedMessage(tab.getFile(), tab.getFormat()));
+                }
+                // Changes made to the file while it was read are taken up now
+                checkDisk(tab);
+            }
+
             @Override
-            public void undoableEditHappened(UndoableEditEvent e) {
-                undoManager.addEdit(e.getEdit());
+            public void failed(IOException cause) {
+                removeTab(tab);
+                if (tabs.isEmpty()) {
+                    openTab(newTab(new PieceTableDocument(), null));
+                }
+                if (!(cause instanceof CharacterCodingException)) {
+                    statusBar.setMessage("Could not read " + name + " to its end");
+                    return;
+                }
+                File file = tab.getFile();
+                runFileTask(FileWatcher.normalize(file), newOpenTask(file, tab.getFormat().fallback()));
             }
         });
+        if (tab == activeTab) {
+            textArea.setEditable(false);
+        }
+    }
+
+    /**
+     * Finds the offset of the text at the top of the view.
+     *
+     * @return The offset.
+     */
+    private int getViewOffset() {
+        return Math.max(0, textArea.viewToModel2D(scrollPane.getViewport().getViewPosition()));
+    }
+
+    /**
+     * Scrolls the view so that the line holding an offset is at its top, once the text area has
+     * been laid out for the document just installed.
+     *
+     * @param offset The offset.
+     */
+    private void scrollToOffset(int offset) {
+        scrollPane.validate();
+        try {
+            Rectangle2D line = textArea.modelToView2D(offset);
+            if (line != null) {
+                JViewport viewport = scrollPane.getViewport();
+                int maxY = Math.max(0, textArea.getHeight() - viewport.getExtentSize().height);
+                viewport.setViewPosition(new Point(viewport.getViewPosition().x, Math.min((int) line.getY(), maxY)));
+            }
+        } catch (BadLocationException e) {
+            // The caret position scrolls into view instead
+        }
+    }
+
+    /**
+     * Shows the line and column of the caret in the status bar, both counting from 1.
+     */
+    private void updateCaretStatus() {
+        int dot = Math.min(textArea.getCaretPosition(), document.getLength());
+        int line = document.getLineOfOffset(dot);
+        statusBar.setCaretPosition(line + 1, dot - document.getLineStartOffset(line) + 1);
+    }
+
+    /**
+     * Moves the caret to the start of a line and scrolls it into view.
+     *
+     * @param line The line, counting from 1.
+     */
+    public void goToLine(int line) {
+        int index = Math.max(0, Math.min(line - 1, document.getLineCount() - 1));
+        textArea.setCaretPosition(document.getLineStartOffset(index));
+        textArea.requestFocusInWindow();
+    }
+
+    /**
+     * Replaces the document shown in the text area. Its undo history and journal stay with its tab.
+     *
+     * @param document The document to show.
+     */
+    private void installDocument(PieceTableDocument document) {
+        this.document = document;
+        textArea.setDocument(document);
+        searchEngine.setDocument(document);
+        statusBar.setFormat(TextFormat.of(document));
+        updateCaretStatus();
+    }
 
-        JScrollPane scrollPane = new JScrollPane(textArea);
-        add(scrollPane, BorderLayout.CENTER);
+    /**
+     * Keeps the caret inside the document after edits replayed from the undo history on disk,
+     * which the caret does not follow the way it follows ordinary undo.
+     */
+    private void clampCaret() {
+        if (textArea.getCaretPosition() > document.getLength()) {
+            textArea.setCaretPosition(document.getLength());
+        }
+    }
+
+    /**
+     * Brings the tab shown up to date with its file, if another program changed the file. A tab
+     * without unsaved changes is reloaded at once; otherwise the user is asked first, and
+     * declining keeps their text as it is. Other tabs are checked once they are shown.
+     *
+     * @param tab The tab.
+     */
+    private void checkDisk(EditorTab tab) {
+        if (tab != activeTab || !tab.isLoaded() || tab.isFollowing() || tab.isReading() || reloading.contains(tab)
+                || !tab.isChangedOnDisk()) {
+            return;
+        }
+        File file = tab.getFile();
+        if (!file.isFile()) {
+            tab.acceptDiskChange();
+            statusBar.setMessage(file.getName() + " was deleted or moved by another program");
+            return;
+        }
+        if (tab.isModified()) {
+            // Held while asking, so that further changes to the file do not ask again
+            reloading.add(tab);
+            int choice = JOptionPane.showConfirmDialog(this,
+                    file.getName() + " was changed by another program. Reload it?\n"
+                            + "Your unsaved changes can be brought back with Undo.",
+                    "File Changed", JOptionPane.YES_NO_OPTION);
+            reloading.remove(tab);
+            if (choice != JOptionPane.YES_OPTION) {
+                tab.acceptDiskChange();
+                return;
+            }
+            if (tab != activeTab || !tab.isLoaded()) {
+                return;
+            }
+        }
+        reload(tab);
+    }
+
+    /**
+     * Asks before saving over the file of a tab that another program changed since it was read,
+     * which the watcher may not have reported yet.
+     *
+     * @param tab The tab being saved.
+     * @param target The file it is about to be saved to.
+     * @return Whether to go ahead with the save.
+     */
+    private boolean confirmOverwrite(EditorTab tab, File target) {
+        if (tab.getFile() == null || !target.isFile() || !FileWatcher.isSameFile(target, tab.getFile())
+                || !tab.isChangedOnDisk()) {
+            return true;
+        }
+        // Held while asking, so that the watcher does not ask to reload at the same time
+        boolean held = reloading.add(tab);
+        int choice = JOptionPane.showConfirmDialog(this,
+                target.getName() + " was changed by another program since it was read. Save over those changes?",
+                "File Changed", JOptionPane.YES_NO_OPTION);
+        if (held) {
+            reloading.remove(tab);
+        }
+        if (choice != JOptionPane.YES_OPTION) {
+            statusBar.setMessage("Save cancelled");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Starts following the file of the tab shown, which must have no unsaved changes. The text
+     * area shows the end of the file and cannot be edited until following stops, and keeps
+     * scrolling with the text added while the caret is at the end.
+     *
+     * @param tab The tab.
+     */
+    private void startFollowing(EditorTab tab) {
+        if (!tab.isLoaded() || tab.isFollowing()) {
+            return;
+        }
+        if (tab.isReading()) {
+            statusBar.setMessage("Wait until " + tab.getFile().getName() + " has been read to follow it");
+            return;
+        }
+        if (tab.getFile() == null) {
+            statusBar.setMessage("Save the document to a file to follow it");
+            return;
+        }
+        if (tab.isModified()) {
+            statusBar.setMessage("Save or undo the changes to " + tab.getFile().getName() + " to follow it");
+            return;
+        }
+        String name = tab.getFile().getName();
+        tab.follow(followWindowMenuItem.isSelected() ? FOLLOW_LINES : 0, new LogFollower.Listener() {
+            @Override
+            public void appended(int previousLength, int removed, FileWatcher.Stamp stamp) {
+                // The caret was at the end before the batch, possibly moved back by the lines removed
+                if (tab == activeTab && textArea.getCaretPosition() >= previousLength - removed) {
+                    textArea.setCaretPosition(document.getLength());
+                }
+            }
+
+            @Override
+            public void restarted(boolean rotated) {
+                statusBar.setMessage(name + (rotated ? " was replaced by a new file" : " was truncated") + "; following it from its start");
+            }
+
+            @Override
+            public void failed(BadLocationException cause) {
+                stopFollowing(tab);
+                if (tab == activeTab) {
+                    followMenuItem.setSelected(false);
+                }
+                statusBar.setMessage("Stopped following " + name + ": the text read could not be added");
+            }
+        });
+        textArea.setEditable(false);
+        textArea.setCaretPosition(document.getLength());
+        statusBar.setMessage("Following " + name);
+    }
+
+    /**
+     * Stops following the file of a tab, and brings the document up to date with the file if it
+     * holds only part of it.
+     *
+     * @param tab The tab.
+     */
+    private void stopFollowing(EditorTab tab) {
+        if (!tab.isFollowing()) {
+            return;
+        }
+        tab.stopFollowing();
+        if (tab == activeTab && tab.isLoaded()) {
+            textArea.setEditable(true);
+            statusBar.setMessage("Stopped following " + tab.getFile().getName());
+        }
+        checkDisk(tab);
+    }
+
+    /**
+     * Reads the file of a tab again in the background, and replaces only the lines that differ,
+     * as one edit that Undo takes back. The caret and the text at the top of the window stay on
+     * the same text.
+     *
+     * @param tab The tab, which must be loaded.
+     */
+    private void reload(EditorTab tab) {
+        File file = tab.getFile();
+        PieceTableDocument target = tab.getDocument();
+        long editCount = tab.getEditCount();
+        // Taken before reading, so that a change made while the file is read is noticed after
+        FileWatcher.Stamp stamp = FileWatcher.Stamp.of(file);
+        ReloadTask task = new ReloadTask(file, target.snapshot()) {
+            @Override
+            protected void succeeded(Replacements replacements) {
+                reloading.remove(tab);
+                if (!tabs.contains(tab)) {
+                    return;
+                }
+                if (tab.getDocument() != target || tab.getEditCount() != editCount || tab.getFile() != file) {
+                    // Edited while the file was read, so compared again from the start
+                    checkDisk(tab);
+                    return;
+                }
+                if (tab == activeTab) {
+                    applyReload(replacements);
+                    statusBar.setFormat(getFormat());
+                } else {
+                    target.replaceAll(replacements);
+                }
+                tab.reloaded(getFormat(), stamp);
+                statusBar.setMessage("Reloaded " + file.getName() + " after it was changed by another program");
+                checkDisk(tab);
+            }
+
+            @Override
+            protected void failed(Throwable cause) {
+                super.failed(cause);
+                reloading.remove(tab);
+                statusBar.setMessage("Could not reload " + file.getName());
+            }
+
+            @Override
+            protected void cancelled() {
+                reloading.remove(tab);
+                tab.acceptDiskChange();
+                statusBar.setMessage("Reload cancelled");
+            }
+        };
+        reloading.add(tab);
+        // Progress shows unless it would hide that of an open or save
+        if (fileTask == null || fileTask.isDone()) {
+            statusBar.track(task);
+        }
+        task.execute();
+    }
+
+    /**
+     * Replaces lines of the document shown with those of its file, keeping the caret and the
+     * text at the top of the viewport where they were.
+     */
+    private void applyReload(Replacements replacements) {
+        JViewport viewport = scrollPane.getViewport();
+        Point position = viewport.getViewPosition();
+        int top = replacements.mapOffset(textArea.viewToModel2D(position));
+        int caret = replacements.mapOffset(textArea.getCaretPosition());
+        document.replaceAll(replacements);
+        textArea.setCaretPosition(caret);
+        viewport.validate();
+        try {
+            int y = position.y == 0 ? 0 : textArea.modelToView2D(top).getBounds().y;
+            viewport.setViewPosition(new Point(position.x, y));
+        } catch (BadLocationException e) {
+            // Cannot happen for an offset inside the document; the viewport stays where the caret put it
+        }
+    }
+
+    /**
+     * Starts a file task in the background. A task of the same kind already running on the same
+     * thing is cancelled, except for a save, which is never cancelled but waits for the save
+     * running before it to finish. Tasks on different things run alongside.
+     *
+     * @param owner What the task works on: the tab it saves or replaces in, or the file it opens
+     *              or the journal it recovers.
+     * @param task The task to run.
+     */
+    private void runFileTask(Object owner, FileTask<?> task) {
+        List<FileTask<?>> running = fileTasks.getOrDefault(owner, new ArrayList<>());
+        for (FileTask<?> other : new ArrayList<>(running)) {
+            if (kindOf(other) != kindOf(task)) {
+                continue;
+            }
+            if (task instanceof SaveTask) {
+                queuedSaves.computeIfAbsent((EditorTab) owner, k -> new ArrayDeque<>()).add((SaveTask) task);
+                statusBar.setMessage(task.getDescription() + " once the save under way is done");
+                return;
+            }
+            other.cancel(true);
+        }
+        startFileTask(owner, task);
+    }
+
+    /**
+     * Tells what kind of file task a task is, whichever subclass it was made as.
+     */
+    private static Class<?> kindOf(FileTask<?> task) {
+        for (Class<?> kind : FILE_TASK_KINDS) {
+            if (kind.isInstance(task)) {
+                return kind;
+            }
+        }
+        return task.getClass();
+    }
+
+    private void startFileTask(Object owner, FileTask<?> task) {
+        fileTasks.computeIfAbsent(owner, k -> new ArrayList<>()).add(task);
+        // A save counts as running until its background work stops, even when cancelled before
+        String finished = task instanceof SaveTask ? SaveTask.FINISHED : "state";
+        task.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (!finished.equals(evt.getPropertyName())
+                        || (evt.getNewValue() != Boolean.TRUE && evt.getNewValue() != SwingWorker.StateValue.DONE)) {
+                    return;
+                }
+                task.removePropertyChangeListener(this);
+                List<FileTask<?>> running = fileTasks.get(owner);
+                running.remove(task);
+                if (running.isEmpty()) {
+                    fileTasks.remove(owner);
+                }
+                ArrayDeque<SaveTask> queued = task instanceof SaveTask ? queuedSaves.get(owner) : null;
+                if (queued != null) {
+                    SaveTask next = queued.poll();
+                    if (queued.isEmpty()) {
+                        queuedSaves.remove(owner);
+                    }
+                    startFileTask(owner, next);
+                }
+            }
+        });
+        fileTask = task;
+        statusBar.track(task);
+        task.execute();
     }
 
     /**
@@ -73,16 +1247,67 @@ public class GUI extends JFrame {
         toolBar.setFloatable(false);
 
         // Menu bar
-        JMenuBar menuBar = new JMenuBar();
+        menuBar = new JMenuBar();
         toolBar.add(menuBar);
 
-        // Add menus
+        // Add menus; a fast start holds their places with empty menus of the same names
+        if (fastStart) {
+            for (String name : new String[]{"File", "Edit", "Format", "View"}) {
+                menuBar.add(new JMenu(name));
+            }
+        } else {
+            addMenus();
+        }
+
+        add(toolBar, BorderLayout.NORTH);
+    }
+
+    /**
+     * Builds the menus and puts them on the menu bar, in place of any there already.
+     */
+    private void addMenus() {
+        menuBar.removeAll();
         menuBar.add(addFileMenu());
         menuBar.add(addEditMenu());
         menuBar.add(addFormatMenu());
         menuBar.add(addViewMenu());
+        menuBar.revalidate();
+        menuBar.repaint();
+    }
 
-        add(toolBar, BorderLayout.NORTH);
+    /**
+     * Creates the task that opens a file in a new tab.
+     *
+     * @param file The file.
+     * @param format The format to read the file in, or null to detect it.
+     * @return The task, not yet started.
+     */
+    private OpenTask newOpenTask(File file, TextFormat format) {
+        return new OpenTask(file, 0, format) {
+            @Override
+            protected void succeeded(PieceTableDocument document) {
+                // Only the document swap happens on the EDT
+                EditorTab tab = newTab(document, file);
+                openTab(tab);
+                if (getLoader() != null) {
+                    readRest(tab, getLoader());
+                } else {
+                    statusBar.setMessage(openedMessage(file, tab.getFormat()));
+                }
+            }
+
+            @Override
+            protected void failed(Throwable cause) {
+                super.failed(cause);
+                statusBar.setMessage("Could not open " + file.getName());
+            }
+
+            @Override
+            protected void cancelled() {
+                super.cancelled();
+                statusBar.setMessage("Open cancelled");
+            }
+        };
     }
 
     /**
@@ -93,45 +1318,35 @@ public class GUI extends JFrame {
     private JMenu addFileMenu() {
         JMenu fileMenu = new JMenu("File");
 
-        // New functionality - resets everything
+        // New functionality - starts a new document in a tab of its own
         JMenuItem newMenuItem = new JMenuItem("New");
+        newMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_N, InputEvent.CTRL_DOWN_MASK));
         newMenuItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                setTitle("Notepad");
-                textArea.setText("");
-                currentFile = null;
+                openTab(newTab(new PieceTableDocument(), null));
             }
         });
         fileMenu.add(newMenuItem);
 
-        // Open functionality - open a text file
+        // Open functionality - open a text file in a new tab in the background
         JMenuItem openMenuItem = new JMenuItem("Open");
         openMenuItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                int result = fileChooser.showOpenDialog(GUI.this);
+                int result = getFileChooser().showOpenDialog(GUI.this);
                 if (result != JFileChooser.APPROVE_OPTION) return;
 
-                try {
-                    newMenuItem.doClick(); // Reset notepad
-
-                    File selectedFile = fileChooser.getSelectedFile();
-                    currentFile = selectedFile;
-                    setTitle(selectedFile.getName());
-
-                    // Read the file
-                    FileReader fileReader = new FileReader(selectedFile);
-                    BufferedReader bufferedReader = new BufferedReader(fileReader);
-                    StringBuilder fileText = new StringBuilder();
-                    String readText;
-                    while ((readText = bufferedReader.readLine()) != null) {
-                        fileText.append(readText).append("\n");
+                File selectedFile = getFileChooser().getSelectedFile();
+                // A file already open is only brought to the front
+                for (int i = 0; i < tabs.size(); i++) {
+                    File open = tabs.get(i).getFile();
+                    if (open != null && FileWatcher.isSameFile(selectedFile, open)) {
+                        tabStrip.setSelectedIndex(i);
+                        return;
                     }
-                    textArea.setText(fileText.toString());
-                } catch (IOException ex) {
-                    ex.printStackTrace();
                 }
+                runFileTask(FileWatcher.normalize(selectedFile), newOpenTask(selectedFile, null));
             }
         });
         fileMenu.add(openMenuItem);
@@ -141,29 +1356,64 @@ public class GUI extends JFrame {
         saveAsMenuItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                int result = fileChooser.showSaveDialog(GUI.this);
+                EditorTab tab = activeTab;
+                if (!tab.isLoaded()) return;
+                if (tab.isFollowing()) {
+                    // Only the end of the file may be in the document
+                    statusBar.setMessage("Stop following " + tab.getFile().getName() + " to save it");
+                    return;
+                }
+                if (tab.isReading()) {
+                    // Only the start of the file may be in the document
+                    statusBar.setMessage("Wait until " + tab.getFile().getName() + " has been read to save it");
+                    return;
+                }
+
+                int result = getFileChooser().showSaveDialog(GUI.this);
                 if (result != JFileChooser.APPROVE_OPTION) return;
 
-                try {
-                    File selectedFile = fileChooser.getSelectedFile();
-                    if (!selectedFile.getName().endsWith(".txt")) {
-                        selectedFile = new File(selectedFile.getAbsolutePath() + ".txt");
-                    }
-                    selectedFile.createNewFile();
+                File selectedFile = getFileChooser().getSelectedFile();
+                if (!selectedFile.getName().endsWith(".txt")) {
+                    selectedFile = new File(selectedFile.getAbsolutePath() + ".txt");
+                }
+                File savedFile = selectedFile;
+                if (!confirmOverwrite(tab, savedFile)) return;
+                long mark = tab.getJournal().mark();
+                long editCount = tab.getEditCount();
+                runFileTask(tab, new SaveTask(savedFile, tab.getDocument().snapshot(), tab.getFormat(), syncOnSaveMenuItem.getState()) {
+                    @Override
+                    protected void succeeded(Void result) {
+                        tab.getJournal().compact(mark, savedFile);
+                        File oldFile = tab.getFile();
+                        tab.setFile(savedFile);
+                        fileWatcher.watch(savedFile);
+                        if (oldFile != null) {
+                            fileWatcher.unwatch(oldFile);
+                        }
+                        if (tab == activeTab) {
+                            // Shows the highlighting of the new file name
+                            textArea.repaint();
+                        }
+                        tab.markSaved(editCount);
+                        if (tab == activeTab) {
+                            statusBar.setFormat(tab.getFormat());
+                        }
+                        statusBar.setMessage("Saved " + savedFile.getName());
 
-                    FileWriter fileWriter = new FileWriter(selectedFile);
-                    BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
-                    bufferedWriter.write(textArea.getText());
-                    bufferedWriter.close();
-                    fileWriter.close();
+                        JOptionPane.showMessageDialog(GUI.this, "Saved File!");
+                    }
 
-                    setTitle(selectedFile.getName());
-                    currentFile = selectedFile;
+                    @Override
+                    protected void failed(Throwable cause) {
+                        super.failed(cause);
+                        statusBar.setMessage("Could not save " + savedFile.getName());
+                    }
 
-                    JOptionPane.showMessageDialog(GUI.this, "Saved File!");
-                } catch (IOException ex) {
-                    ex.printStackTrace();
-                }
+                    @Override
+                    protected void abandoned() {
+                        statusBar.setMessage("Save cancelled");
+                    }
+                });
             }
         });
         fileMenu.add(saveAsMenuItem);
@@ -173,29 +1423,73 @@ public class GUI extends JFrame {
         saveMenuItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (currentFile == null) {
+                EditorTab tab = activeTab;
+                if (!tab.isLoaded()) return;
+                if (tab.getFile() == null) {
                     saveAsMenuItem.doClick();
                     return;
                 }
-                try {
-                    FileWriter fileWriter = new FileWriter(currentFile);
-                    BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
-                    bufferedWriter.write(textArea.getText());
-                    bufferedWriter.close();
-                    fileWriter.close();
-                } catch (IOException ex) {
-                    ex.printStackTrace();
+                if (tab.isFollowing()) {
+                    // Only the end of the file may be in the document
+                    statusBar.setMessage("Stop following " + tab.getFile().getName() + " to save it");
+                    return;
                 }
+                if (tab.isReading()) {
+                    // Only the start of the file may be in the document
+                    statusBar.setMessage("Wait until " + tab.getFile().getName() + " has been read to save it");
+                    return;
+                }
+                File savedFile = tab.getFile();
+                if (!confirmOverwrite(tab, savedFile)) return;
+                long mark = tab.getJournal().mark();
+                long editCount = tab.getEditCount();
+                runFileTask(tab, new SaveTask(savedFile, tab.getDocument().snapshot(), tab.getFormat(), syncOnSaveMenuItem.getState()) {
+                    @Override
+                    protected void succeeded(Void result) {
+                        tab.getJournal().compact(mark, savedFile);
+                        tab.markSaved(editCount);
+                        if (tab == activeTab) {
+                            statusBar.setFormat(tab.getFormat());
+                        }
+                        statusBar.setMessage("Saved " + savedFile.getName());
+                    }
+
+                    @Override
+                    protected void failed(Throwable cause) {
+                        super.failed(cause);
+                        statusBar.setMessage("Could not save " + savedFile.getName());
+                    }
+
+                    @Override
+                    protected void abandoned() {
+                        statusBar.setMessage("Save cancelled");
+                    }
+                });
             }
         });
         fileMenu.add(saveMenuItem);
 
-        // Exit functionality - ends program process
+        // Close Tab functionality - closes the document shown, asking first if it has unsaved changes
+        JMenuItem closeTabMenuItem = new JMenuItem("Close Tab");
+        closeTabMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_W, InputEvent.CTRL_DOWN_MASK));
+        closeTabMenuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                closeTab(activeTab);
+            }
+        });
+        fileMenu.add(closeTabMenuItem);
+
+        // Sync option - forces saved data to disk before the old file is replaced
+        syncOnSaveMenuItem = new JCheckBoxMenuItem("Sync to Disk on Save", true);
+        fileMenu.add(syncOnSaveMenuItem);
+
+        // Exit functionality - closes the window as its close button does, so the session is saved
         JMenuItem exitMenuItem = new JMenuItem("Exit");
         exitMenuItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                GUI.this.dispose();
+                GUI.this.dispatchEvent(new WindowEvent(GUI.this, WindowEvent.WINDOW_CLOSING));
             }
         });
         fileMenu.add(exitMenuItem);
@@ -216,8 +1510,14 @@ public class GUI extends JFrame {
         undoMenuItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (undoManager.canUndo()) {
-                    undoManager.undo();
+                UndoHistory undoHistory = activeTab.getUndoHistory();
+                if (activeTab.isLoaded() && !activeTab.isFollowing() && !activeTab.isReading() && undoHistory.canUndo()) {
+                    try {
+                        undoHistory.undo();
+                    } catch (CannotUndoException ex) {
+                        statusBar.setMessage("Could not read the undo history back from disk");
+                    }
+                    clampCaret();
                 }
             }
         });
@@ -228,54 +1528,151 @@ public class GUI extends JFrame {
         redoMenuItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (undoManager.canRedo()) {
-                    undoManager.redo();
+                UndoHistory undoHistory = activeTab.getUndoHistory();
+                if (activeTab.isLoaded() && !activeTab.isFollowing() && !activeTab.isReading() && undoHistory.canRedo()) {
+                    try {
+                        undoHistory.redo();
+                    } catch (CannotRedoException ex) {
+                        statusBar.setMessage("Could not read the undo history back from disk");
+                    }
+                    clampCaret();
                 }
             }
         });
         editMenu.add(redoMenuItem);
 
-        // Find functionality
+        // Find functionality - opens the find dialog
         JMenuItem findMenuItem = new JMenuItem("Find...");
+        findMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, InputEvent.CTRL_DOWN_MASK));
         findMenuItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                String searchText = JOptionPane.showInputDialog(GUI.this, "Enter text to find:");
-                if (searchText != null && !searchText.isEmpty()) {
-                    String text = textArea.getText();
-                    int index = text.indexOf(searchText);
-                    if (index != -1) {
-                        textArea.select(index, index + searchText.length());
-                        textArea.requestFocus();
-                    } else {
-                        JOptionPane.showMessageDialog(GUI.this, "Text not found!");
-                    }
-                }
+                getFindDialog().showDialog();
             }
         });
         editMenu.add(findMenuItem);
 
-        // Replace functionality
+        // Find Next functionality - repeats the last search forward
+        JMenuItem findNextMenuItem = new JMenuItem("Find Next");
+        findNextMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0));
+        findNextMenuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                findAgain(true);
+            }
+        });
+        editMenu.add(findNextMenuItem);
+
+        // Find Previous functionality - repeats the last search backward
+        JMenuItem findPreviousMenuItem = new JMenuItem("Find Previous");
+        findPreviousMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, InputEvent.SHIFT_DOWN_MASK));
+        findPreviousMenuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                findAgain(false);
+            }
+        });
+        editMenu.add(findPreviousMenuItem);
+
+        // Replace functionality - replaces every match in the background as one undoable edit
         JMenuItem replaceMenuItem = new JMenuItem("Replace...");
         replaceMenuItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                String findText = JOptionPane.showInputDialog(GUI.this, "Enter text to find:");
-                if (findText != null && !findText.isEmpty()) {
-                    String replaceText = JOptionPane.showInputDialog(GUI.this, "Enter replacement text:");
-                    if (replaceText != null) {
-                        String text = textArea.getText();
-                        text = text.replace(findText, replaceText);
-                        textArea.setText(text);
-                    }
-                }
+                new ReplaceDialog(GUI.this).setVisible(true);
             }
         });
         editMenu.add(replaceMenuItem);
 
+        // Go To functionality - moves the caret to a line by number
+        JMenuItem goToMenuItem = new JMenuItem("Go To...");
+        goToMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_G, InputEvent.CTRL_DOWN_MASK));
+        goToMenuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                int line = document.getLineOfOffset(textArea.getCaretPosition()) + 1;
+                new GoToLineDialog(GUI.this, line, document.getLineCount()).setVisible(true);
+            }
+        });
+        editMenu.add(goToMenuItem);
+
         return editMenu;
     }
 
+    /**
+     * Retrieves the find dialog, creating it the first time.
+     *
+     * @return The find dialog.
+     */
+    private FindDialog getFindDialog() {
+        if (findDialog == null) {
+            findDialog = new FindDialog(this, searchEngine);
+        }
+        return findDialog;
+    }
+
+    /**
+     * Repeats the last search, or opens the find dialog if there is none yet.
+     *
+     * @param forward True to search forward, false to search backward.
+     */
+    private void findAgain(boolean forward) {
+        if (!searchEngine.hasQuery()) {
+            getFindDialog().showDialog();
+        } else if (!getFindDialog().find(forward)) {
+            statusBar.setMessage("Text not found!");
+        }
+    }
+
+    /**
+     * Replaces every match in the document. The matches are found in the background; the
+     * document is then changed in one edit that keeps the caret on the same text.
+     *
+     * @param find The text or regular expression to find.
+     * @param replacement The replacement text.
+     * @param matchCase Whether upper and lower case letters must match exactly.
+     * @param regex Whether the text to find is a regular expression.
+     * @throws java.util.regex.PatternSyntaxException If the regular expression is invalid.
+     */
+    public void replaceAll(String find, String replacement, boolean matchCase, boolean regex) {
+        if (activeTab.isFollowing()) {
+            statusBar.setMessage("Stop following " + activeTab.getFile().getName() + " to replace in it");
+            return;
+        }
+        if (activeTab.isReading()) {
+            statusBar.setMessage("Wait until " + activeTab.getFile().getName() + " has been read to replace in it");
+            return;
+        }
+        PieceTableDocument target = document;
+        int[] regions = regex ? null : searchEngine.getCandidateRegions(find);
+        runFileTask(activeTab, new ReplaceAllTask(target, find, replacement, matchCase, regex, regions) {
+            @Override
+            protected void succeeded(Replacements replacements) {
+                if (target != document || isDocumentChanged()) {
+                    statusBar.setMessage("Replace cancelled: the text changed while it ran");
+                    return;
+                }
+                int caret = replacements.mapOffset(textArea.getCaretPosition());
+                document.replaceAll(replacements);
+                textArea.setCaretPosition(caret);
+
+                int count = replacements.size();
+                statusBar.setMessage("Replaced " + count + (count == 1 ? " match" : " matches"));
+            }
+
+            @Override
+            protected void failed(Throwable cause) {
+                super.failed(cause);
+                statusBar.setMessage("Could not replace: " + cause.getMessage());
+            }
+
+            @Override
+            protected void cancelled() {
+                statusBar.setMessage("Replace cancelled");
+            }
+        });
+    }
+
     /**
      * Constructs and returns the Format menu.
      *
@@ -285,7 +1682,7 @@ public class GUI extends JFrame {
         JMenu formatMenu = new JMenu("Format");
 
         // Word wrap functionality
-        JCheckBoxMenuItem wordWrapMenuItem = new JCheckBoxMenuItem("Word Wrap");
+        wordWrapMenuItem = new JCheckBoxMenuItem("Word Wrap", textArea.getLineWrap());
         wordWrapMenuItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -344,49 +1741,85 @@ public class GUI extends JFrame {
         JMenu zoomMenu = new JMenu("Zoom");
 
         JMenuItem zoomInMenuItem = new JMenuItem("Zoom in");
+        zoomInMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_EQUALS, InputEvent.CTRL_DOWN_MASK));
         zoomInMenuItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                Font currentFont = textArea.getFont();
-                textArea.setFont(new Font(
-                        currentFont.getName(),
-                        currentFont.getStyle(),
-                        currentFont.getSize() + 1
-                ));
+                zoomController.zoomBy(1);
             }
         });
         zoomMenu.add(zoomInMenuItem);
 
         JMenuItem zoomOutMenuItem = new JMenuItem("Zoom out");
+        zoomOutMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_MINUS, InputEvent.CTRL_DOWN_MASK));
         zoomOutMenuItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                Font currentFont = textArea.getFont();
-                textArea.setFont(new Font(
-                        currentFont.getName(),
-                        currentFont.getStyle(),
-                        currentFont.getSize() - 1
-                ));
+                zoomController.zoomBy(-1);
             }
         });
         zoomMenu.add(zoomOutMenuItem);
 
         JMenuItem zoomRestoreMenuItem = new JMenuItem("Restore Default Zoom");
+        zoomRestoreMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_0, InputEvent.CTRL_DOWN_MASK));
         zoomRestoreMenuItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                Font currentFont = textArea.getFont();
-                textArea.setFont(new Font(
-                        currentFont.getName(),
-                        currentFont.getStyle(),
-                        12
-                ));
+                zoomController.restore();
             }
         });
         zoomMenu.add(zoomRestoreMenuItem);
 
         viewMenu.add(zoomMenu);
 
+        // Line numbers - shows or hides the gutter beside the text
+        JCheckBoxMenuItem lineNumbersMenuItem = new JCheckBoxMenuItem("Line Numbers", true);
+        lineNumbersMenuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                scrollPane.setRowHeaderView(lineNumbersMenuItem.isSelected() ? lineNumberGutter : null);
+            }
+        });
+        viewMenu.add(lineNumbersMenuItem);
+
+        viewMenu.addSeparator();
+
+        // Follow - adds what other programs append to the file, like tail -f, for growing logs
+        followMenuItem = new JCheckBoxMenuItem("Follow End of File");
+        followMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
+        followMenuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (followMenuItem.isSelected()) {
+                    startFollowing(activeTab);
+                } else {
+                    stopFollowing(activeTab);
+                }
+                followMenuItem.setSelected(activeTab.isFollowing());
+            }
+        });
+        viewMenu.add(followMenuItem);
+
+        // Follow window - keeps only the last lines of a followed file, to bound its memory
+        followWindowMenuItem = new JCheckBoxMenuItem(String.format("Keep Only the Last %,d Lines When Following", FOLLOW_LINES));
+        viewMenu.add(followWindowMenuItem);
+
+        viewMenu.addSeparator();
+
+        // Diagnostics - shows how long typing, opening, saving and searching take
+        JMenuItem diagnosticsMenuItem = new JMenuItem("Diagnostics...");
+        diagnosticsMenuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (diagnosticsDialog == null || !diagnosticsDialog.isDisplayable()) {
+                    diagnosticsDialog = new DiagnosticsDialog(GUI.this);
+                }
+                diagnosticsDialog.setVisible(true);
+                diagnosticsDialog.toFront();
+            }
+        });
+        viewMenu.add(diagnosticsMenuItem);
+
         return viewMenu;
     }
 
@@ -398,4 +1831,13 @@ public class GUI extends JFrame {
     public JTextArea getTextArea() {
         return textArea;
     }
+
+    /**
+     * Retrieves the controller that changes the font of the text area.
+     *
+     * @return The zoom controller.
+     */
+    public ZoomController getZoomController() {
+        return zoomController;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,92 @@
+import java.awt.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Character widths of a font, kept per font so that going back to a font, such as zooming in and
+ * out again, finds its widths already measured.
+ * <p>
+ * FontMetrics keeps the widths of the first 256 characters only, and measures any other character
+ * again each time it is asked, which adds up when wrapping long runs of, say, Chinese text. Here
+ * every character of the Basic Multilingual Plane is measured once, the first time it is asked
+ * for, and the metrics of the last few fonts are kept. Safe to use from any thread: a width
+ * measured twice at once is simply stored twice.
+ */
+public final class GlyphMetrics {
+    // Fonts kept at once; a font's table takes 128 KB once it is filled
+    private static final int CACHE_SIZE = 8;
+
+    private static final Map<Font, GlyphMetrics> cache = new LinkedHashMap<Font, GlyphMetrics>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Font, GlyphMetrics> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final FontMetrics metrics;
+
+    // Width plus one of every character measured so far, zero for those not measured yet
+    private final short[] widths = new short[Character.MAX_VALUE + 1];
+
+    private final int averageWidth;
+
+    private GlyphMetrics(FontMetrics metrics) {
+        this.metrics = metrics;
+        int[] latin = metrics.getWidths();
+        for (int c = 0; c < latin.length; c++) {
+            widths[c] = (short) (Math.min(latin[c], Short.MAX_VALUE - 1) + 1);
+        }
+        averageWidth = Math.max(1, metrics.charWidth('n'));
+    }
+
+    /**
+     * Retrieves the metrics of a component's font.
+     *
+     * @param component The component the text is drawn on.
+     * @param font The font.
+     * @return The metrics, measured before if the font was used recently.
+     */
+    public static GlyphMetrics get(Component component, Font font) {
+        synchronized (cache) {
+            GlyphMetrics glyphMetrics = cache.get(font);
+            if (glyphMetrics == null) {
+                glyphMetrics = new GlyphMetrics(component.getFontMetrics(font));
+                cache.put(font, glyphMetrics);
+            }
+            return glyphMetrics;
+        }
+    }
+
+    /**
+     * Retrieves the metrics the widths come from.
+     *
+     * @return The font metrics.
+     */
+    public FontMetrics getFontMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Retrieves the width of a character.
+     *
+     * @param c The character.
+     * @return Its advance in pixels.
+     */
+    public int charWidth(char c) {
+        int width = widths[c];
+        if (width == 0) {
+            width = Math.min(metrics.charWidth(c), Short.MAX_VALUE - 1) + 1;
+            widths[c] = (short) width;
+        }
+        return width - 1;
+    }
+
+    /**
+     * Retrieves the width of a typical character, for estimating how much text fits a width.
+     *
+     * @return The width of 'n' in pixels.
+     */
+    public int getAverageWidth() {
+        return averageWidth;
+    }
+}
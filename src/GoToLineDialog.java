@@ -0,0 +1,84 @@
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * GoToLineDialog class extends JDialog to ask for a line to move the caret to.
+ */
+public class GoToLineDialog extends JDialog {
+    // Reference to the GUI instance whose caret is moved
+    private GUI source;
+
+    // Field for the line number
+    private JTextField lineField;
+
+    /**
+     * Constructor to initialize the GoToLineDialog.
+     *
+     * @param source The GUI instance that launched this dialog.
+     * @param currentLine The line the caret is on, counting from 1.
+     * @param lineCount The number of lines in the document.
+     */
+    public GoToLineDialog(GUI source, int currentLine, int lineCount) {
+        super(source);
+        this.source = source;
+        setTitle("Go To Line");
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        setSize(300, 120);
+        setLocationRelativeTo(source);
+        setModal(true);
+
+        // Use absolute positioning like the other dialogs
+        setLayout(null);
+
+        addDialogComponents(currentLine, lineCount);
+    }
+
+    /**
+     * Adds all components to the dialog.
+     */
+    private void addDialogComponents(int currentLine, int lineCount) {
+        JLabel lineLabel = new JLabel("Line number (1 - " + lineCount + "):");
+        lineLabel.setBounds(10, 10, 270, 25);
+        add(lineLabel);
+
+        lineField = new JTextField(String.valueOf(currentLine));
+        lineField.setBounds(10, 40, 100, 25);
+        lineField.selectAll();
+        add(lineField);
+
+        // Go To button - moves the caret to the start of the line
+        JButton goToButton = new JButton("Go To");
+        goToButton.setBounds(120, 40, 75, 25);
+        goToButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                int line;
+                try {
+                    line = Integer.parseInt(lineField.getText().trim());
+                } catch (NumberFormatException ex) {
+                    line = 0;
+                }
+                if (line < 1 || line > lineCount) {
+                    JOptionPane.showMessageDialog(GoToLineDialog.this, "The line number is beyond the total number of lines");
+                    return;
+                }
+                source.goToLine(line);
+                GoToLineDialog.this.dispose();
+            }
+        });
+        add(goToButton);
+        getRootPane().setDefaultButton(goToButton);
+
+        // Cancel button - closes the dialog without moving the caret
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.setBounds(200, 40, 75, 25);
+        cancelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                GoToLineDialog.this.dispose();
+            }
+        });
+        add(cancelButton);
+    }
+}
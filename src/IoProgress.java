@@ -0,0 +1,25 @@
+import java.util.concurrent.CancellationException;
+
+/**
+ * Receives progress from long-running file and document operations.
+ */
+public interface IoProgress {
+
+    /**
+     * Progress sink that ignores updates and never cancels.
+     */
+    IoProgress NONE = new IoProgress() {
+        @Override
+        public void update(long done, long total) {
+        }
+    };
+
+    /**
+     * Reports how much of an operation is done. Implementations stop the operation by throwing.
+     *
+     * @param done The amount of work done so far.
+     * @param total The total amount of work.
+     * @throws CancellationException If the operation has been cancelled.
+     */
+    void update(long done, long total) throws CancellationException;
+}
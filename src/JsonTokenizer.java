@@ -0,0 +1,156 @@
+import javax.swing.text.Segment;
+
+/**
+ * Tokenizes JSON, telling the keys of objects from string values, and also takes the comments
+ * allowed by JSON with comments.
+ * <p>
+ * The state holds whether the text is inside a string or a block comment, whether a key comes
+ * next, and which of the enclosing containers are objects, one bit per level for the innermost
+ * {@value #MAX_STACK} levels. Deeper than that, containers are taken to be objects.
+ */
+public class JsonTokenizer implements Tokenizer {
+    private static final int MODE_MASK = 3;
+    private static final int NORMAL = 0;
+    private static final int IN_STRING = 1;
+    private static final int IN_COMMENT = 2;
+
+    // Flags after the mode
+    private static final int ESCAPE = 1 << 2;
+    private static final int EXPECT_KEY = 1 << 3;
+    private static final int IN_KEY = 1 << 4;
+
+    // Nesting depth, up to 31, then a bit per level telling objects from arrays
+    private static final int DEPTH_SHIFT = 5;
+    private static final int DEPTH_MASK = 31;
+    private static final int STACK_SHIFT = 10;
+    private static final int MAX_STACK = 21;
+
+    @Override
+    public int getInitialState() {
+        return NORMAL;
+    }
+
+    @Override
+    public int tokenize(Segment text, int state, boolean endsLine, TokenList tokens) {
+        char[] array = text.array;
+        int start = text.offset;
+        int end = start + text.count;
+        int mode = state & MODE_MASK;
+        boolean escape = (state & ESCAPE) != 0;
+        boolean expectKey = (state & EXPECT_KEY) != 0;
+        boolean inKey = (state & IN_KEY) != 0;
+        int depth = (state >>> DEPTH_SHIFT) & DEPTH_MASK;
+        int stack = state >>> STACK_SHIFT;
+
+        int i = start;
+        while (i < end) {
+            if (mode == IN_STRING) {
+                Tokenizers.add(tokens, i - start, inKey ? TokenType.ATTRIBUTE : TokenType.STRING);
+                while (i < end) {
+                    char c = array[i++];
+                    if (escape) {
+                        escape = false;
+                    } else if (c == '\\') {
+                        escape = true;
+                    } else if (c == '"') {
+                        mode = NORMAL;
+                        break;
+                    }
+                }
+                continue;
+            }
+            if (mode == IN_COMMENT) {
+                Tokenizers.add(tokens, i - start, TokenType.COMMENT);
+                while (i < end) {
+                    if (array[i] == '*' && i + 1 < end && array[i + 1] == '/') {
+                        i += 2;
+                        mode = NORMAL;
+                        break;
+                    }
+                    i++;
+                }
+                continue;
+            }
+
+            char c = array[i];
+            if (c == ' ' || c == '\t' || c == '\r') {
+                // Spacing keeps the type before it, which saves a token
+                i++;
+            } else if (c == '"') {
+                inKey = expectKey && inObject(depth, stack);
+                mode = IN_STRING;
+                Tokenizers.add(tokens, i - start, inKey ? TokenType.ATTRIBUTE : TokenType.STRING);
+                i++;
+            } else if (c == '{' || c == '[') {
+                if (depth < MAX_STACK && c == '{') {
+                    stack |= 1 << depth;
+                } else if (depth < MAX_STACK) {
+                    stack &= ~(1 << depth);
+                }
+                depth = Math.min(depth + 1, DEPTH_MASK);
+                expectKey = c == '{';
+                Tokenizers.add(tokens, i - start, TokenType.PUNCTUATION);
+                i++;
+            } else if (c == '}' || c == ']') {
+                depth = Math.max(depth - 1, 0);
+                expectKey = false;
+                Tokenizers.add(tokens, i - start, TokenType.PUNCTUATION);
+                i++;
+            } else if (c == ',') {
+                expectKey = inObject(depth, stack);
+                Tokenizers.add(tokens, i - start, TokenType.PUNCTUATION);
+                i++;
+            } else if (c == ':') {
+                expectKey = false;
+                Tokenizers.add(tokens, i - start, TokenType.PUNCTUATION);
+                i++;
+            } else if (c == '/' && i + 1 < end && array[i + 1] == '/') {
+                Tokenizers.add(tokens, i - start, TokenType.COMMENT);
+                i = end;
+            } else if (c == '/' && i + 1 < end && array[i + 1] == '*') {
+                Tokenizers.add(tokens, i - start, TokenType.COMMENT);
+                mode = IN_COMMENT;
+                i += 2;
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                Tokenizers.add(tokens, i - start, TokenType.NUMBER);
+                i++;
+                while (i < end && isNumberPart(array[i])) {
+                    i++;
+                }
+            } else if (Character.isLetter(c)) {
+                int wordStart = i;
+                while (i < end && Character.isLetterOrDigit(array[i])) {
+                    i++;
+                }
+                Tokenizers.add(tokens, wordStart - start, isKeyword(array, wordStart, i) ? TokenType.KEYWORD : TokenType.ERROR);
+            } else {
+                Tokenizers.add(tokens, i - start, TokenType.TEXT);
+                i++;
+            }
+        }
+
+        if (endsLine && mode == IN_STRING) {
+            // Strings cannot span lines; the next line starts afresh rather than staying a string
+            mode = NORMAL;
+            escape = false;
+        }
+        return mode | (escape ? ESCAPE : 0) | (expectKey ? EXPECT_KEY : 0) | (inKey ? IN_KEY : 0)
+                | depth << DEPTH_SHIFT | stack << STACK_SHIFT;
+    }
+
+    private static boolean inObject(int depth, int stack) {
+        if (depth == 0) {
+            return false;
+        }
+        return depth > MAX_STACK || (stack & 1 << (depth - 1)) != 0;
+    }
+
+    private static boolean isNumberPart(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-';
+    }
+
+    private static boolean isKeyword(char[] array, int start, int end) {
+        return Tokenizers.matches(array, start, end, "true") || Tokenizers.matches(array, start, end, "false")
+                || Tokenizers.matches(array, start, end, "null");
+    }
+}
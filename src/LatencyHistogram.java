@@ -0,0 +1,132 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long an operation took, in buckets whose width grows with the time, in the manner of
+ * HdrHistogram: every power of two of microseconds is split into 32 buckets, so any percentile is
+ * read back to within about 3% of the time really taken, from a microsecond up to a day, in about
+ * a thousand counters whatever the number of samples.
+ * <p>
+ * Recording only increments counters, without a lock, so it may be done from any thread, as
+ * often as an event is dispatched. The figures read back while samples are being recorded may be
+ * a sample or two behind.
+ */
+public class LatencyHistogram {
+    // Buckets per power of two, as a number of bits
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Times past 2^37 microseconds, about a day and a half, go in the last bucket
+    private static final int MAX_BITS = 37;
+    private static final int BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records one sample.
+     *
+     * @param nanos How long the operation took, in nanoseconds.
+     */
+    public void record(long nanos) {
+        nanos = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketOf(nanos / 1000));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Retrieves the number of samples recorded.
+     *
+     * @return The number of samples.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Retrieves the time that a share of the samples took at most.
+     *
+     * @param percentile The share, from 0 to 100, such as 99.9.
+     * @return The time in nanoseconds, or 0 before the first sample.
+     */
+    public long getPercentile(double percentile) {
+        long samples = count.get();
+        if (samples == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * samples));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= wanted) {
+                // The highest time the bucket holds, but never past the slowest sample
+                return Math.min(highestMicrosOf(bucket) * 1000 + 999, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Retrieves how long the slowest sample took.
+     *
+     * @return The time in nanoseconds, or 0 before the first sample.
+     */
+    public long getMax() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Retrieves how long a sample took on average.
+     *
+     * @return The time in nanoseconds, or 0 before the first sample.
+     */
+    public long getMean() {
+        long samples = count.get();
+        return samples == 0 ? 0 : totalNanos.get() / samples;
+    }
+
+    /**
+     * Forgets every sample recorded so far.
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts.set(bucket, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * Works out the bucket of a time: the first 32 hold a microsecond each, and past them the
+     * top six bits of the time, whose first is always set, pick the bucket within its power of
+     * two.
+     */
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(micros) - (SUB_BUCKET_BITS + 1);
+        long bucket = (long) shift * SUB_BUCKETS + (micros >>> shift);
+        return (int) Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * Works out the highest time in microseconds a bucket holds.
+     */
+    private static long highestMicrosOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long top = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+}
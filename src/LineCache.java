@@ -0,0 +1,95 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of something computed per line of a document, such as where a line
+ * wraps or how wide its text is, which follows the lines as edits move them.
+ * <p>
+ * An edit drops the entries of the lines it touched and renumbers those after them, so every
+ * other entry stays valid. Whatever else an entry depends on, such as the font, is up to the
+ * owner, which clears the cache when it changes.
+ *
+ * @param <V> The type of the entries.
+ */
+public class LineCache<V> {
+    private final int capacity;
+    private Map<Integer, V> entries;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity The most lines kept at once.
+     */
+    public LineCache(int capacity) {
+        this.capacity = capacity;
+        entries = newMap();
+    }
+
+    /**
+     * Retrieves the entry of a line, counting it as used.
+     *
+     * @param line The line.
+     * @return The entry, or null if it is not cached.
+     */
+    public V get(int line) {
+        return entries.get(line);
+    }
+
+    /**
+     * Caches the entry of a line, dropping the least recently used one if the cache is full.
+     *
+     * @param line The line.
+     * @param value The entry.
+     */
+    public void put(int line, V value) {
+        entries.put(line, value);
+    }
+
+    /**
+     * Drops the entry of a line, if it is cached.
+     *
+     * @param line The line.
+     */
+    public void remove(int line) {
+        entries.remove(line);
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public void clear() {
+        entries = newMap();
+    }
+
+    /**
+     * Follows an edit: drops the entries of the lines it replaced and renumbers those after them.
+     *
+     * @param first The first line the edit touched.
+     * @param lastOld The last line it touched, as numbered before the edit.
+     * @param lineChange The number of lines the edit added, negative if it removed lines.
+     */
+    public void linesReplaced(int first, int lastOld, int lineChange) {
+        Map<Integer, V> shifted = newMap();
+        Iterator<Map.Entry<Integer, V>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, V> entry = iterator.next();
+            int line = entry.getKey();
+            if (line < first) {
+                shifted.put(line, entry.getValue());
+            } else if (line > lastOld) {
+                shifted.put(line + lineChange, entry.getValue());
+            }
+        }
+        entries = shifted;
+    }
+
+    private Map<Integer, V> newMap() {
+        return new LinkedHashMap<Integer, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+}
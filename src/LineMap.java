@@ -0,0 +1,387 @@
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Position;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import java.util.Arrays;
+
+/**
+ * Root element of a {@link PieceTableDocument}, with one child element per line, backed by a
+ * {@link LineIndex} instead of a child object for every line.
+ * <p>
+ * Line elements are made on demand, and a small cache hands out the same element for a line as
+ * long as it stays unchanged. A line element tracks the newline before it with a Position, so it
+ * follows the text like the elements Swing keeps for every line, while only the lines views
+ * actually look at cost any objects.
+ */
+public class LineMap implements Element {
+    private static final int CACHE_SIZE = 1024;
+
+    private final Document document;
+    private LineIndex index = new LineIndex();
+    private final Line[] cache = new Line[CACHE_SIZE];
+
+    /**
+     * Creates the map of a document holding a single empty line.
+     *
+     * @param document The document the lines belong to.
+     */
+    public LineMap(Document document) {
+        this.document = document;
+    }
+
+    /**
+     * Retrieves the index of line starts.
+     *
+     * @return The line index.
+     */
+    public LineIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Replaces the whole index, for text loaded in one go. Not undoable.
+     *
+     * @param index The index of the new text.
+     */
+    public void setIndex(LineIndex index) {
+        this.index = index;
+        Arrays.fill(cache, null);
+    }
+
+    /**
+     * Starts recording changes to the lines for an edit of the document.
+     *
+     * @param elementChange Whether the edit adds or removes lines, so that the views have to be
+     *                      told which lines changed.
+     * @return The edit, to add to the document event once its changes are made.
+     */
+    public LineEdit createEdit(boolean elementChange) {
+        return elementChange ? new LineChange() : new LineEdit();
+    }
+
+    @Override
+    public Document getDocument() {
+        return document;
+    }
+
+    @Override
+    public Element getParentElement() {
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return "paragraph";
+    }
+
+    @Override
+    public AttributeSet getAttributes() {
+        return SimpleAttributeSet.EMPTY;
+    }
+
+    @Override
+    public int getStartOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getEndOffset() {
+        return index.getLength();
+    }
+
+    @Override
+    public int getElementIndex(int offset) {
+        return index.getLineOfOffset(offset);
+    }
+
+    @Override
+    public int getElementCount() {
+        return index.getLineCount();
+    }
+
+    @Override
+    public Element getElement(int line) {
+        if (line < 0 || line >= index.getLineCount()) {
+            return null;
+        }
+        int start = index.getLineStart(line);
+        Line cached = cache[line & (CACHE_SIZE - 1)];
+        // A line element is the line whose newline it follows, wherever that has moved to
+        if (cached != null && cached.getStartOffset() == start) {
+            return cached;
+        }
+        Line element;
+        try {
+            element = new Line(line == 0 ? null : document.createPosition(start - 1));
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        cache[line & (CACHE_SIZE - 1)] = element;
+        return element;
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return false;
+    }
+
+    /**
+     * Element of a single line, shared by all the lines views look at.
+     */
+    private abstract class LineElement implements Element {
+
+        @Override
+        public Document getDocument() {
+            return document;
+        }
+
+        @Override
+        public Element getParentElement() {
+            return LineMap.this;
+        }
+
+        @Override
+        public String getName() {
+            return "content";
+        }
+
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getElementIndex(int offset) {
+            return -1;
+        }
+
+        @Override
+        public int getElementCount() {
+            return 0;
+        }
+
+        @Override
+        public Element getElement(int index) {
+            return null;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return true;
+        }
+    }
+
+    /**
+     * A line of the current text.
+     */
+    private final class Line extends LineElement {
+        // The newline ending the line before, or null for the first line
+        private final Position newline;
+
+        Line(Position newline) {
+            this.newline = newline;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return newline == null ? 0 : newline.getOffset() + 1;
+        }
+
+        @Override
+        public int getEndOffset() {
+            return index.getLineEnd(index.getLineOfOffset(getStartOffset()));
+        }
+    }
+
+    /**
+     * A line an edit removed, with the bounds it had before.
+     */
+    private final class RemovedLine extends LineElement {
+        private final int start;
+        private final int end;
+
+        RemovedLine(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return start;
+        }
+
+        @Override
+        public int getEndOffset() {
+            return end;
+        }
+    }
+
+    /**
+     * Undoable batch of changes to the line starts, made in document order.
+     * <p>
+     * Each change replaces the starts of a run of lines, and remembers the starts it removed and
+     * added so that it can be reverted. The ints are kept in flat arrays, so a batch of a million
+     * replacements costs a few arrays rather than an object per change.
+     */
+    public class LineEdit extends AbstractUndoableEdit {
+        // Per change: first line, starts removed, starts added, length change
+        int[] changes = new int[4];
+        int changeCount;
+        int[] removedStarts = new int[0];
+        int removedSize;
+        int[] addedStarts = new int[0];
+        int addedSize;
+
+        LineEdit() {
+        }
+
+        /**
+         * Replaces the starts of a run of lines and records the change.
+         *
+         * @param line The first line of the run.
+         * @param removeCount The number of line starts to remove.
+         * @param added The starts of the new lines, as they read after the edit.
+         * @param addCount The number of starts to take from the array.
+         * @param lengthChange How much the edit changed the length of the text.
+         */
+        public void replace(int line, int removeCount, int[] added, int addCount, int lengthChange) {
+            if (changeCount * 4 + 4 > changes.length) {
+                changes = Arrays.copyOf(changes, changes.length * 2);
+            }
+            changes[changeCount * 4] = line;
+            changes[changeCount * 4 + 1] = removeCount;
+            changes[changeCount * 4 + 2] = addCount;
+            changes[changeCount * 4 + 3] = lengthChange;
+            changeCount++;
+
+            removedStarts = ensureCapacity(removedStarts, removedSize + removeCount);
+            for (int i = 0; i < removeCount; i++) {
+                removedStarts[removedSize++] = index.getLineStart(line + i);
+            }
+            addedStarts = ensureCapacity(addedStarts, addedSize + addCount);
+            System.arraycopy(added, 0, addedStarts, addedSize, addCount);
+            addedSize += addCount;
+
+            index.replace(line, removeCount, added, 0, addCount, lengthChange);
+        }
+
+        private int[] ensureCapacity(int[] array, int size) {
+            return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            int removedEnd = removedSize;
+            int addedEnd = addedSize;
+            for (int c = changeCount - 1; c >= 0; c--) {
+                int removed = changes[c * 4 + 1];
+                int added = changes[c * 4 + 2];
+                removedEnd -= removed;
+                addedEnd -= added;
+                index.replace(changes[c * 4], added, removedStarts, removedEnd, removed, -changes[c * 4 + 3]);
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            int addedFrom = 0;
+            for (int c = 0; c < changeCount; c++) {
+                int added = changes[c * 4 + 2];
+                index.replace(changes[c * 4], changes[c * 4 + 1], addedStarts, addedFrom, added, changes[c * 4 + 3]);
+                addedFrom += added;
+            }
+        }
+    }
+
+    /**
+     * Line edit that also tells the views which lines it replaced: the run from the line holding
+     * the first change to the line holding the end of the last one. The elements are only made
+     * if a view asks for them.
+     */
+    private final class LineChange extends LineEdit implements DocumentEvent.ElementChange {
+        private Element[] removed;
+        private Element[] added;
+
+        @Override
+        public Element getElement() {
+            return LineMap.this;
+        }
+
+        @Override
+        public int getIndex() {
+            return changes[0] - 1;
+        }
+
+        @Override
+        public Element[] getChildrenRemoved() {
+            if (removed == null) {
+                removed = removedLines();
+            }
+            return removed;
+        }
+
+        @Override
+        public Element[] getChildrenAdded() {
+            if (added == null) {
+                int last = changeCount * 4 - 4;
+                int count = changes[last] + changes[last + 2] - getIndex();
+                added = new Element[count];
+                for (int i = 0; i < count; i++) {
+                    added[i] = LineMap.this.getElement(getIndex() + i);
+                }
+            }
+            return added;
+        }
+
+        /**
+         * Rebuilds the bounds the replaced lines had before the edit. Lines between two changes
+         * were only moved by the changes before them, and the starts of the lines the changes
+         * removed were recorded.
+         */
+        private Element[] removedLines() {
+            int last = changeCount * 4 - 4;
+            int lineChange = 0;
+            int lengthChange = 0;
+            for (int c = 0; c < changeCount - 1; c++) {
+                lineChange += changes[c * 4 + 2] - changes[c * 4 + 1];
+            }
+            int count = changes[last] + changes[last + 1] - lineChange - getIndex();
+
+            // One more start than lines, for the end of the last one
+            int[] starts = new int[count + 1];
+            int size = 0;
+            int removedFrom = 0;
+            lineChange = 0;
+            int oldLine = getIndex();
+            for (int c = 0; c < changeCount; c++) {
+                int changeLine = changes[c * 4] - lineChange;
+                for (; oldLine < changeLine; oldLine++) {
+                    starts[size++] = index.getLineStart(oldLine + lineChange) - lengthChange;
+                }
+                for (int i = 0; i < changes[c * 4 + 1]; i++, oldLine++) {
+                    starts[size++] = removedStarts[removedFrom + i] - lengthChange;
+                }
+                removedFrom += changes[c * 4 + 1];
+                lineChange += changes[c * 4 + 2] - changes[c * 4 + 1];
+                lengthChange += changes[c * 4 + 3];
+            }
+            // The start of the line after the run, or the old end of the text
+            int next = oldLine + lineChange;
+            starts[size] = next < index.getLineCount() ? index.getLineStart(next) - lengthChange : index.getLength() - lengthChange;
+
+            Element[] lines = new Element[count];
+            for (int i = 0; i < count; i++) {
+                lines[i] = new RemovedLine(starts[i], starts[i + 1]);
+            }
+            return lines;
+        }
+    }
+}
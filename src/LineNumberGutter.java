@@ -0,0 +1,131 @@
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.geom.Rectangle2D;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+
+/**
+ * Gutter showing line numbers beside a text area, for use as the row header of its scroll pane.
+ * <p>
+ * Only the lines inside the clip are painted, and their numbers and positions come from the line
+ * index of the document, so the gutter costs the same for ten lines as for ten million.
+ */
+public class LineNumberGutter extends JComponent {
+    private static final int MARGIN = 6;
+
+    private final JTextArea textArea;
+    private PieceTableDocument document;
+
+    // Number of digits the gutter is currently sized for
+    private int digits;
+
+    private final DocumentListener documentListener = new DocumentListener() {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            linesChanged();
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            linesChanged();
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+            linesChanged();
+        }
+    };
+
+    /**
+     * Creates a gutter for a text area editing a {@link PieceTableDocument}.
+     *
+     * @param textArea The text area to number the lines of.
+     */
+    public LineNumberGutter(JTextArea textArea) {
+        this.textArea = textArea;
+        setOpaque(true);
+        setBackground(UIManager.getColor("Panel.background"));
+        setForeground(Color.GRAY);
+        setDocument((PieceTableDocument) textArea.getDocument());
+
+        // Follow the text area when it gets a new document, font or size
+        textArea.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if ("document".equals(evt.getPropertyName())) {
+                    setDocument((PieceTableDocument) evt.getNewValue());
+                } else if ("font".equals(evt.getPropertyName())) {
+                    revalidate();
+                    repaint();
+                }
+            }
+        });
+        textArea.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                revalidate();
+                repaint();
+            }
+        });
+    }
+
+    private void setDocument(PieceTableDocument document) {
+        if (this.document != null) {
+            this.document.removeDocumentListener(documentListener);
+        }
+        this.document = document;
+        document.addDocumentListener(documentListener);
+        linesChanged();
+    }
+
+    /**
+     * Repaints the numbers, and widens or narrows the gutter when the line count gains or loses
+     * a digit.
+     */
+    private void linesChanged() {
+        int width = String.valueOf(document.getLineCount()).length();
+        if (width != digits) {
+            digits = width;
+            revalidate();
+        }
+        repaint();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        FontMetrics metrics = getFontMetrics(textArea.getFont());
+        int width = 2 * MARGIN + Math.max(2, digits) * metrics.charWidth('0');
+        return new Dimension(width, textArea.getPreferredSize().height);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        Rectangle clip = g.getClipBounds();
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        g.setFont(textArea.getFont());
+        g.setColor(getForeground());
+        FontMetrics metrics = g.getFontMetrics();
+        int lineCount = document.getLineCount();
+        try {
+            int offset = textArea.viewToModel2D(new Point(0, clip.y));
+            for (int line = document.getLineOfOffset(offset); line < lineCount; line++) {
+                Rectangle2D bounds = textArea.modelToView2D(document.getLineStartOffset(line));
+                if (bounds == null || bounds.getY() > clip.y + clip.height) {
+                    break;
+                }
+                String number = String.valueOf(line + 1);
+                int x = getWidth() - MARGIN - metrics.stringWidth(number);
+                g.drawString(number, x, (int) bounds.getY() + metrics.getAscent());
+            }
+        } catch (BadLocationException e) {
+            // The view is behind the document; the next repaint catches up
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.Arrays;
+
+/**
+ * One int per line of a document, such as the state a tokenizer starts the line in, kept in one
+ * growable array with a gap at the last edited line, as {@link LineIndex} keeps line starts. An
+ * edit costs moving the gap from the previous edit, so typing in one place costs the same however
+ * many lines there are.
+ */
+public class LineStates {
+    private int[] values;
+    private int gapStart;
+    private int gapEnd;
+
+    /**
+     * Creates the values of a number of lines, all the same.
+     *
+     * @param count The number of lines.
+     * @param value The value of every line.
+     */
+    public LineStates(int count, int value) {
+        values = new int[count + 16];
+        Arrays.fill(values, 0, count, value);
+        gapStart = count;
+        gapEnd = values.length;
+    }
+
+    /**
+     * Retrieves the number of lines.
+     *
+     * @return The number of lines.
+     */
+    public int getLineCount() {
+        return values.length - (gapEnd - gapStart);
+    }
+
+    /**
+     * Retrieves the value of a line.
+     *
+     * @param line The line, counting from 0.
+     * @return Its value.
+     */
+    public int get(int line) {
+        return values[line < gapStart ? line : line + gapEnd - gapStart];
+    }
+
+    /**
+     * Changes the value of a line.
+     *
+     * @param line The line, counting from 0.
+     * @param value Its new value.
+     */
+    public void set(int line, int value) {
+        values[line < gapStart ? line : line + gapEnd - gapStart] = value;
+    }
+
+    /**
+     * Replaces a run of lines after an edit.
+     *
+     * @param line The first line of the run.
+     * @param removeCount The number of lines to remove.
+     * @param addCount The number of lines to add in their place.
+     * @param value The value of the added lines.
+     */
+    public void replace(int line, int removeCount, int addCount, int value) {
+        moveGap(line);
+        gapEnd += removeCount;
+        if (gapEnd - gapStart < addCount) {
+            grow(addCount);
+        }
+        Arrays.fill(values, gapStart, gapStart + addCount, value);
+        gapStart += addCount;
+    }
+
+    /**
+     * Moves the gap so that it sits just before a line.
+     */
+    private void moveGap(int line) {
+        if (line < gapStart) {
+            int count = gapStart - line;
+            System.arraycopy(values, line, values, gapEnd - count, count);
+            gapStart = line;
+            gapEnd -= count;
+        } else if (line > gapStart) {
+            int count = line - gapStart;
+            System.arraycopy(values, gapEnd, values, gapStart, count);
+            gapStart = line;
+            gapEnd += count;
+        }
+    }
+
+    /**
+     * Widens the gap so that it holds at least the given number of values.
+     */
+    private void grow(int needed) {
+        int tail = values.length - gapEnd;
+        int capacity = Math.max(values.length + values.length / 2, gapStart + needed + tail + 16);
+        int[] grown = new int[capacity];
+        System.arraycopy(values, 0, grown, 0, gapStart);
+        System.arraycopy(values, gapEnd, grown, capacity - tail, tail);
+        values = grown;
+        gapEnd = capacity - tail;
+    }
+}
@@ -0,0 +1,488 @@
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * View that shows the lines of a {@link PieceTableDocument} unwrapped, painting only the part of
+ * the text inside the clip.
+ * <p>
+ * Swing's PlainView draws and measures a line from its start every time, so a line hundreds of
+ * thousands of characters long is measured in full for every paint, caret move and click, and
+ * it measures every line of the document to find the widest whenever the font changes. Here each
+ * line's layout holds the x position of every {@value #CHECKPOINT}th character, measured only as
+ * far along the line as something has asked for, so finding a position on a long line costs one
+ * short measurement from the checkpoint before it. Painting uses them to draw just the characters
+ * between the left and right edges of the clip. Layouts are kept in a least recently used cache
+ * that follows the lines through edits and is cleared when the font changes, and the width of
+ * the text is taken from the line with the most characters, widened as longer ones are measured.
+ */
+public class LineView extends View implements TabExpander {
+    // Characters between measured positions on a line
+    private static final int CHECKPOINT = 256;
+
+    // Lines whose layouts are kept, which covers several screens of text
+    private static final int CACHE_SIZE = 512;
+
+    private PieceTableDocument document;
+    private JTextComponent host;
+
+    // Line count as of the last edit the view has seen
+    private int lineCount;
+
+    private Font font;
+    private FontMetrics metrics;
+    private int lineHeight;
+    private int tabSize;
+    private final LineCache<LineLayout> layouts = new LineCache<>(CACHE_SIZE);
+
+    // The line with the most characters, and the widest any line is known to be
+    private int longestLine;
+    private int longestLength;
+    private float widest;
+
+    // Set when the longest line got shorter, so that another may now be longer
+    private boolean longestStale;
+
+    // Left edge of the text being drawn or measured, for tab stops
+    private float tabBase;
+
+    private final Segment segment = new Segment();
+
+    // Repaints the lines the highlighter restyles once it has worked out how they start
+    private final SyntaxHighlighter.Listener restyleListener = new SyntaxHighlighter.Listener() {
+        @Override
+        public void linesRestyled(int first, int last) {
+            if (host == null) {
+                return;
+            }
+            Insets insets = host.getInsets();
+            long top = insets.top + first * (long) lineHeight;
+            long bottom = insets.top + (Math.min(last, lineCount - 1) + 1L) * lineHeight;
+            host.repaint(0, (int) Math.min(top, Integer.MAX_VALUE), host.getWidth(),
+                    (int) Math.min(bottom - top, Integer.MAX_VALUE));
+        }
+    };
+
+    /**
+     * Creates a view of the root element of a {@link PieceTableDocument}.
+     *
+     * @param element The root element.
+     */
+    public LineView(Element element) {
+        super(element);
+    }
+
+    @Override
+    public void setParent(View parent) {
+        super.setParent(parent);
+        if (parent == null && document != null) {
+            SyntaxHighlighter highlighter = SyntaxHighlighter.of(document);
+            if (highlighter != null) {
+                highlighter.removeListener(restyleListener);
+            }
+        }
+        if (parent != null) {
+            host = (JTextComponent) getContainer();
+            if (document == null) {
+                document = (PieceTableDocument) getDocument();
+                lineCount = document.getLineCount();
+                findLongestLine();
+            }
+            // Kept on for a new font or tab size, which only clears the layouts
+            updateMetrics();
+        }
+    }
+
+    /**
+     * Measures the text again if the font or tab size has changed since it was last measured.
+     */
+    private void updateMetrics() {
+        Font current = host.getFont();
+        Object size = document.getProperty(PlainDocument.tabSizeAttribute);
+        int tabs = size instanceof Integer ? (Integer) size : 8;
+        if (current.equals(font) && tabSize == tabs * metrics.charWidth('m')) {
+            return;
+        }
+        font = current;
+        metrics = host.getFontMetrics(font);
+        lineHeight = metrics.getHeight();
+        tabSize = tabs * metrics.charWidth('m');
+        layouts.clear();
+        if (longestStale) {
+            findLongestLine();
+        }
+        widest = getWidth(longestLine);
+        preferenceChanged(null, true, true);
+    }
+
+    /**
+     * Finds the line with the most characters, which is almost always the widest. Takes only the
+     * line starts, so it is quick even on long documents.
+     */
+    private void findLongestLine() {
+        int count = document.getLineCount();
+        longestStale = false;
+        longestLine = 0;
+        longestLength = -1;
+        int start = 0;
+        for (int line = 0; line < count; line++) {
+            int next = line + 1 < count ? document.getLineStartOffset(line + 1) : document.getLength() + 1;
+            if (next - start - 1 > longestLength) {
+                longestLine = line;
+                longestLength = next - start - 1;
+            }
+            start = next;
+        }
+    }
+
+    @Override
+    public float getPreferredSpan(int axis) {
+        updateMetrics();
+        if (axis == X_AXIS) {
+            // Room for the caret after the last character
+            return widest + 1;
+        }
+        return (float) Math.min((long) document.getLineCount() * lineHeight, Integer.MAX_VALUE / 2);
+    }
+
+    // Line geometry
+
+    private int getLineStart(int line) {
+        return document.getLineStartOffset(line);
+    }
+
+    /**
+     * Retrieves the end of a line, not counting its newline.
+     */
+    private int getLineEnd(int line) {
+        return line + 1 < document.getLineCount() ? getLineStart(line + 1) - 1 : document.getLength();
+    }
+
+    private LineLayout getLayout(int line) {
+        int start = getLineStart(line);
+        LineLayout layout = layouts.get(line);
+        if (layout == null) {
+            layout = new LineLayout(getLineEnd(line) - start);
+            layouts.put(line, layout);
+        }
+        // Edits before the line move it, but leave its layout as it was
+        layout.start = start;
+        return layout;
+    }
+
+    /**
+     * Measures a line in full.
+     */
+    private float getWidth(int line) {
+        LineLayout layout = getLayout(line);
+        return getX(layout, layout.length);
+    }
+
+    /**
+     * Finds the x position of a character of a line, relative to the start of the line.
+     */
+    private float getX(LineLayout layout, int offset) {
+        int checkpoint = offset / CHECKPOINT;
+        measureTo(layout, checkpoint);
+        float x = layout.positions[checkpoint];
+        int from = checkpoint * CHECKPOINT;
+        return offset > from ? measure(layout.start + from, offset - from, x) : x;
+    }
+
+    /**
+     * Finds the character of a line at an x position relative to the start of the line.
+     *
+     * @param round Whether to take the nearest character boundary, rather than the character
+     *              the position falls on.
+     */
+    private int getOffset(LineLayout layout, float x, boolean round) {
+        if (x <= 0) {
+            return 0;
+        }
+        // Measure along the line only until a checkpoint lies past the position
+        int lastCheckpoint = layout.length / CHECKPOINT;
+        while (layout.count - 1 < lastCheckpoint && layout.positions[layout.count - 1] <= x) {
+            measureTo(layout, layout.count);
+        }
+        int checkpoint = Arrays.binarySearch(layout.positions, 0, layout.count, x);
+        if (checkpoint < 0) {
+            checkpoint = -checkpoint - 2;
+        }
+        int from = checkpoint * CHECKPOINT;
+        int length = Math.min(CHECKPOINT, layout.length - from);
+        if (length == 0) {
+            return from;
+        }
+        try {
+            document.getText(layout.start + from, length, segment);
+        } catch (BadLocationException e) {
+            return from;
+        }
+        tabBase = 0;
+        return from + Utilities.getTabbedTextOffset(segment, metrics, layout.positions[checkpoint], x, this,
+                layout.start + from, round);
+    }
+
+    /**
+     * Measures a line up to and including a checkpoint.
+     */
+    private void measureTo(LineLayout layout, int checkpoint) {
+        while (layout.count <= checkpoint) {
+            float x = layout.positions[layout.count - 1];
+            layout.add(measure(layout.start + (layout.count - 1) * CHECKPOINT, CHECKPOINT, x));
+        }
+    }
+
+    /**
+     * Measures a range of text starting at an x position relative to its line, and returns where
+     * it ends.
+     */
+    private float measure(int offset, int length, float x) {
+        try {
+            document.getText(offset, length, segment);
+        } catch (BadLocationException e) {
+            return x;
+        }
+        tabBase = 0;
+        return x + Utilities.getTabbedTextWidth(segment, metrics, x, this, offset);
+    }
+
+    // Painting
+
+    @Override
+    public void paint(Graphics g, Shape a) {
+        long started = System.nanoTime();
+        try {
+            paintLines(g, a);
+        } finally {
+            PaintMetrics.record(System.nanoTime() - started);
+            Diagnostics.textPainted();
+        }
+    }
+
+    /**
+     * Paints the characters inside the clip.
+     */
+    private void paintLines(Graphics g, Shape a) {
+        updateMetrics();
+        Rectangle alloc = a.getBounds();
+        Rectangle clip = g.getClipBounds();
+        g.setFont(font);
+
+        int first = Math.max(0, (clip.y - alloc.y) / lineHeight);
+        int last = Math.min(lineCount - 1, (clip.y + clip.height - alloc.y) / lineHeight);
+        int selectionStart = host.getSelectionStart();
+        int selectionEnd = host.getSelectionEnd();
+        Color foreground = host.isEnabled() ? host.getForeground() : host.getDisabledTextColor();
+        Color selected = host.getSelectedTextColor();
+        float left = clip.x - alloc.x;
+        float right = left + clip.width;
+        float oldWidest = widest;
+        SyntaxHighlighter highlighter = host.isEnabled() ? SyntaxHighlighter.of(document) : null;
+        if (highlighter != null) {
+            highlighter.setListener(restyleListener);
+        }
+
+        for (int line = first; line <= last; line++) {
+            LineLayout layout = getLayout(line);
+            // Only the characters between the edges of the clip, on however long a line
+            int p0 = getOffset(layout, left, false);
+            int p1 = Math.min(layout.length, getOffset(layout, right, false) + 1);
+            if (p0 >= p1) {
+                continue;
+            }
+            int start = layout.start;
+            float x = alloc.x + getX(layout, p0);
+            int baseline = alloc.y + line * lineHeight + metrics.getAscent();
+            // Selected text is drawn in its own color, like PlainView does
+            int rowStart = start + p0;
+            int rowEnd = start + p1;
+            TokenList tokens = highlighter != null ? highlighter.getTokens(line) : null;
+            x = drawTokens(g, tokens, start, rowStart, Math.min(rowEnd, Math.max(rowStart, selectionStart)), x, baseline, foreground, alloc.x);
+            x = drawText(g, Math.max(rowStart, selectionStart), Math.min(rowEnd, selectionEnd), x, baseline, selected, alloc.x);
+            x = drawTokens(g, tokens, start, Math.max(rowStart, Math.min(rowEnd, selectionEnd)), rowEnd, x, baseline, foreground, alloc.x);
+            if (p1 == layout.length) {
+                widest = Math.max(widest, x - alloc.x);
+            }
+        }
+        if (widest > oldWidest) {
+            // A line wider than the widest known one came into view
+            preferenceChanged(null, true, false);
+        }
+    }
+
+    /**
+     * Draws a range of a line in the colors of its tokens, or in the foreground color if it has
+     * none, and returns where it ends.
+     */
+    private float drawTokens(Graphics g, TokenList tokens, int lineStart, int p0, int p1, float x, int baseline,
+                             Color foreground, int lineX) {
+        if (tokens == null) {
+            return drawText(g, p0, p1, x, baseline, foreground, lineX);
+        }
+        int index = tokens.indexAt(p0 - lineStart);
+        while (p0 < p1) {
+            int next = index + 1 < tokens.getCount() ? Math.min(p1, lineStart + tokens.getStart(index + 1)) : p1;
+            Color color = index >= 0 ? tokens.getType(index).getColor() : null;
+            x = drawText(g, p0, next, x, baseline, color != null ? color : foreground, lineX);
+            p0 = next;
+            index++;
+        }
+        return x;
+    }
+
+    /**
+     * Draws a range of text and returns where it ends.
+     */
+    private float drawText(Graphics g, int p0, int p1, float x, int baseline, Color color, int lineX) {
+        if (p1 <= p0) {
+            return x;
+        }
+        try {
+            document.getText(p0, p1 - p0, segment);
+        } catch (BadLocationException e) {
+            return x;
+        }
+        g.setColor(color);
+        tabBase = lineX;
+        return Utilities.drawTabbedText(segment, x, baseline, (Graphics2D) g, this, p0);
+    }
+
+    @Override
+    public float nextTabStop(float x, int tabOffset) {
+        if (tabSize == 0) {
+            return x;
+        }
+        int tabs = (int) ((x - tabBase) / tabSize);
+        return tabBase + (tabs + 1) * tabSize;
+    }
+
+    // Mapping between the text and the screen
+
+    @Override
+    public Shape modelToView(int pos, Shape a, Position.Bias b) throws BadLocationException {
+        if (pos < 0 || pos > document.getLength()) {
+            throw new BadLocationException("Offset outside the document", pos);
+        }
+        updateMetrics();
+        Rectangle alloc = a.getBounds();
+        int line = document.getLineOfOffset(pos);
+        LineLayout layout = getLayout(line);
+        int x = alloc.x + (int) getX(layout, pos - layout.start);
+        return new Rectangle(x, alloc.y + line * lineHeight, 1, lineHeight);
+    }
+
+    @Override
+    public int viewToModel(float fx, float fy, Shape a, Position.Bias[] biasReturn) {
+        biasReturn[0] = Position.Bias.Forward;
+        updateMetrics();
+        Rectangle alloc = a.getBounds();
+        if (fy < alloc.y) {
+            return 0;
+        }
+        int line = (int) ((fy - alloc.y) / lineHeight);
+        if (line >= document.getLineCount()) {
+            return document.getLength();
+        }
+        LineLayout layout = getLayout(line);
+        return layout.start + Math.min(layout.length, getOffset(layout, fx - alloc.x, true));
+    }
+
+    // Edits
+
+    @Override
+    public void insertUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        linesChanged(e);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        linesChanged(e);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        linesChanged(e);
+    }
+
+    /**
+     * Drops the layouts of the lines an edit touched, keeps the others, and widens the text if an
+     * edited line became the longest.
+     */
+    private void linesChanged(DocumentEvent e) {
+        int newCount = document.getLineCount();
+        int first = document.getLineOfOffset(e.getOffset());
+        int lastNew = e.getType() == DocumentEvent.EventType.REMOVE ? first
+                : document.getLineOfOffset(e.getOffset() + e.getLength());
+        int lineChange = newCount - lineCount;
+        lineCount = newCount;
+        int lastOld = lastNew - lineChange;
+        layouts.linesReplaced(first, lastOld, lineChange);
+
+        if (longestLine > lastOld) {
+            longestLine += lineChange;
+        } else if (longestLine >= first) {
+            // The longest line was edited; if it got shorter, the width is kept until the font
+            // changes, rather than looking through every line on a keystroke
+            int length = getLineEnd(first) - getLineStart(first);
+            longestStale |= length < longestLength;
+            longestLine = first;
+            longestLength = length;
+        }
+        float oldWidest = widest;
+        if (lastNew - first < CACHE_SIZE) {
+            for (int line = first; line <= lastNew; line++) {
+                int length = getLineEnd(line) - getLineStart(line);
+                if (length > longestLength) {
+                    longestLine = line;
+                    longestLength = length;
+                    widest = Math.max(widest, getWidth(line));
+                }
+            }
+        } else {
+            findLongestLine();
+            widest = Math.max(widest, getWidth(longestLine));
+        }
+
+        Insets insets = host.getInsets();
+        if (lineChange != 0 || widest != oldWidest) {
+            preferenceChanged(null, widest != oldWidest, lineChange != 0);
+            host.repaint(0, insets.top + first * lineHeight, host.getWidth(), host.getHeight());
+        } else {
+            host.repaint(0, insets.top + first * lineHeight, host.getWidth(), (lastNew - first + 1) * lineHeight);
+        }
+    }
+
+    /**
+     * Layout of one line: its length, and the x positions of its checkpoints measured so far,
+     * relative to the start of the line. The start of the line in the document is filled in
+     * whenever the layout is looked up.
+     */
+    private static final class LineLayout {
+        final int length;
+        int start;
+        float[] positions = new float[1];
+        int count = 1;
+
+        LineLayout(int length) {
+            this.length = length;
+        }
+
+        void add(float x) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, Math.min(count * 2, length / CHECKPOINT + 1));
+            }
+            positions[count++] = x;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a file that keeps growing, such as a log, the way {@code tail -f} does: the bytes
+ * written to it since it was last read are added to the end of the document.
+ * <p>
+ * A background thread remembers how far the file has been read, and reads only what was appended
+ * after that, through a {@link FileChannel}, at most one batch at a time. Each batch is added to
+ * the document on the Event Dispatch Thread, and the next one is not read until the last has been
+ * added and a short pause has passed, so a program writing faster than the editor can show still
+ * leaves the Event Dispatch Thread time for everything else; the document then falls behind the
+ * file rather than the editor behind the user.
+ * <p>
+ * A file that shrinks was truncated, and one whose file key changes was replaced by another, as
+ * when a log is rotated; either way the document starts over with the file as it is now. Where
+ * files have no key, as on Windows, a change of creation time tells a replaced file instead. With
+ * a window set, only that many of the last lines are kept, and a document that has fallen far
+ * behind skips to near the end of the file.
+ * <p>
+ * Following stops by itself if a batch cannot be added to the document, and the listener is told.
+ */
+public class LogFollower {
+    /**
+     * Told on the Event Dispatch Thread about the text the follower adds.
+     */
+    public interface Listener {
+        /**
+         * Called after a batch of text was added to the end of the document.
+         *
+         * @param previousLength The length of the document before the batch was added.
+         * @param removed The number of characters removed from the start of the document to make
+         *                room, or all of them if it started over.
+         * @param stamp The file as it was read, if the document now holds all of it, otherwise
+         *              null.
+         */
+        void appended(int previousLength, int removed, FileWatcher.Stamp stamp);
+
+        /**
+         * Called when the file was truncated or replaced, before the text it holds now is added.
+         *
+         * @param rotated True if another file took its place, false if it was truncated.
+         */
+        void restarted(boolean rotated);
+
+        /**
+         * Called when a batch could not be added to the document. The follower has stopped.
+         *
+         * @param cause The error.
+         */
+        void failed(BadLocationException cause);
+    }
+
+    // Most bytes read in one batch
+    private static final int BATCH_BYTES = 1 << 20;
+
+    // Pause after a batch before reading the next one, which bounds the rate text is added at
+    private static final long BATCH_MILLIS = 50;
+
+    // How often a file that has been read to its end is looked at again
+    private static final long POLL_MILLIS = 250;
+
+    // With a window, a document further behind than this skips ahead to the end of the file
+    private static final long SKIP_BYTES = 16L * BATCH_BYTES;
+
+    private static final ScheduledExecutorService readThread = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Log follower");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final PieceTableDocument document;
+    private final File file;
+    private final Path path;
+    private final int bomLength;
+    private final int windowLines;
+    private final Listener listener;
+    private volatile boolean stopped;
+
+    // Only used by the read thread: the offset read up to, the file key and creation time of the
+    // file it was read from, the bytes of a character split between batches, and whether the last
+    // character was a CR that a LF may follow
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BATCH_BYTES);
+    private final CharBuffer chars;
+    private long offset;
+    private Object fileKey;
+    private FileTime created;
+    private boolean pendingCr;
+
+    // Whether the document holds the file from its start, and whether the partial line read
+    // after skipping ahead is still to be dropped; also only used by the read thread
+    private boolean whole;
+    private boolean skippingLine;
+
+    // Whether lines have been removed from the start of the document, only used on the Event
+    // Dispatch Thread
+    private boolean trimmed;
+
+    /**
+     * Creates a follower of a file whose text up to some point the document already holds.
+     * Following starts with {@link #start()}.
+     *
+     * @param document The document to add the text to.
+     * @param file The file.
+     * @param format The format the file is read in.
+     * @param stamp The file as it was when the document was read from it, which gives the
+     *              offset to carry on from, or null or one of no file to read the file from its
+     *              start.
+     * @param windowLines The most lines to keep, or 0 to keep all of them.
+     * @param listener The listener told about the text added.
+     */
+    public LogFollower(PieceTableDocument document, File file, TextFormat format, FileWatcher.Stamp stamp,
+                       int windowLines, Listener listener) {
+        this.document = document;
+        this.file = file;
+        this.windowLines = windowLines;
+        this.listener = listener;
+        path = file.toPath();
+        bomLength = format.getBom().length;
+        decoder = format.getCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        chars = CharBuffer.allocate((int) Math.ceil(BATCH_BYTES * (double) decoder.maxCharsPerByte()) + 16);
+        whole = true;
+        if (stamp != null && stamp.getSize() >= 0) {
+            offset = stamp.getSize();
+            fileKey = stamp.getKey();
+        } else {
+            // The document starts over with the first batch
+            offset = -1;
+        }
+    }
+
+    /**
+     * Starts reading what is appended to the file.
+     */
+    public void start() {
+        schedule(0);
+    }
+
+    /**
+     * Stops following the file. A batch already read is not added.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    private void schedule(long delay) {
+        if (stopped) {
+            return;
+        }
+        readThread.schedule(new Runnable() {
+            @Override
+            public void run() {
+                readNext();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads the next batch on the read thread and hands it to the Event Dispatch Thread, or looks
+     * again later if there is nothing new.
+     */
+    private void readNext() {
+        if (stopped) {
+            return;
+        }
+        Batch batch;
+        try {
+            batch = read();
+        } catch (IOException e) {
+            // Missing or unreadable for now, as while a log is rotated
+            batch = null;
+        }
+        if (batch == null) {
+            schedule(POLL_MILLIS);
+            return;
+        }
+        Batch added = batch;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (stopped) {
+                    return;
+                }
+                if (add(added)) {
+                    schedule(added.caughtUp ? POLL_MILLIS : BATCH_MILLIS);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the bytes appended since the last batch, up to a batch of them.
+     *
+     * @return The batch, or null if the file has not changed.
+     */
+    private Batch read() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        Object key = attributes.fileKey();
+        // File systems without creation times give the modification time, which every append
+        // changes, so a time equal to it says nothing
+        FileTime creationTime = attributes.creationTime();
+        if (creationTime.equals(attributes.lastModifiedTime())) {
+            creationTime = created;
+        }
+
+        Batch batch = new Batch();
+        boolean rotated;
+        if (fileKey != null && key != null) {
+            rotated = !fileKey.equals(key);
+        } else {
+            // No file keys, as on Windows; a file created in place of the old one has a later time
+            rotated = created != null && creationTime != null && !created.equals(creationTime);
+        }
+        if (offset < 0 || rotated || size < offset) {
+            batch.restarted = offset >= 0;
+            batch.rotated = rotated;
+            startOver(bomLength);
+            whole = true;
+            batch.clear = true;
+        }
+        fileKey = key;
+        created = creationTime;
+        if (windowLines > 0 && size - offset > SKIP_BYTES) {
+            // Too far behind to catch up line by line; start again close to the end
+            startOver(alignedOffset(size - SKIP_BYTES / 4));
+            whole = false;
+            skippingLine = true;
+            batch.clear = true;
+        }
+        if (size <= offset && !batch.clear) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            bytes.limit((int) Math.min(bytes.capacity(), bytes.position() + Math.max(0, size - offset)));
+            while (bytes.hasRemaining()) {
+                int read = channel.read(bytes, offset);
+                if (read <= 0) {
+                    break;
+                }
+                offset += read;
+            }
+        }
+        bytes.limit(bytes.capacity());
+        bytes.flip();
+        decoder.decode(bytes, chars, false);
+        // Bytes of a character split by the end of the batch wait for the rest of it
+        bytes.compact();
+        chars.flip();
+        batch.text = normalize(chars);
+        chars.clear();
+
+        batch.caughtUp = offset >= size;
+        if (batch.caughtUp && whole) {
+            FileWatcher.Stamp stamp = FileWatcher.Stamp.of(file);
+            batch.stamp = stamp.getSize() == offset ? stamp : null;
+        }
+        return batch;
+    }
+
+    /**
+     * Forgets what was read, to read again from an offset.
+     */
+    private void startOver(long from) {
+        offset = from;
+        decoder.reset();
+        bytes.clear();
+        pendingCr = false;
+        skippingLine = false;
+    }
+
+    /**
+     * Rounds an offset down to the start of a character, for charsets whose characters all take
+     * the same number of bytes.
+     */
+    private long alignedOffset(long from) {
+        int unit = Math.max(1, Math.round(1 / decoder.averageCharsPerByte()));
+        return from - (from - bomLength) % unit;
+    }
+
+    /**
+     * Turns the line separators of decoded text into the LF the document holds, and drops the
+     * partial line left after skipping ahead.
+     */
+    private String normalize(CharBuffer decoded) {
+        StringBuilder text = new StringBuilder(decoded.remaining());
+        while (decoded.hasRemaining()) {
+            char c = decoded.get();
+            if (pendingCr) {
+                pendingCr = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            if (skippingLine) {
+                skippingLine = c != '\n' && c != '\r';
+                pendingCr = c == '\r';
+                continue;
+            }
+            if (c == '\r') {
+                pendingCr = true;
+                c = '\n';
+            }
+            text.append(c);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Adds a batch to the document on the Event Dispatch Thread, then removes the lines beyond
+     * the window. A batch that cannot be added stops the follower.
+     *
+     * @return False if the follower stopped.
+     */
+    private boolean add(Batch batch) {
+        int previousLength = document.getLength();
+        int removed = 0;
+        try {
+            if (batch.clear) {
+                document.remove(0, previousLength);
+                removed = previousLength;
+                trimmed = false;
+            }
+            if (batch.restarted) {
+                listener.restarted(batch.rotated);
+            }
+            if (!batch.text.isEmpty()) {
+                document.insertString(document.getLength(), batch.text, null);
+            }
+            removed += trim();
+        } catch (BadLocationException e) {
+            stopped = true;
+            listener.failed(e);
+            return false;
+        }
+        listener.appended(previousLength, removed, trimmed ? null : batch.stamp);
+        return true;
+    }
+
+    /**
+     * Removes the oldest lines once the document holds an eighth more than the window, so that
+     * they are not removed a few at a time with every batch.
+     *
+     * @return The number of characters removed.
+     */
+    private int trim() throws BadLocationException {
+        if (windowLines <= 0) {
+            return 0;
+        }
+        int lines = document.getLineCount();
+        if (lines <= windowLines + windowLines / 8) {
+            return 0;
+        }
+        int end = document.getLineStartOffset(lines - windowLines);
+        document.remove(0, end);
+        trimmed = true;
+        return end;
+    }
+
+    /**
+     * Text read in one go, and what happened to the file before it was read.
+     */
+    private static final class Batch {
+        private String text;
+        private boolean clear;
+        private boolean restarted;
+        private boolean rotated;
+        private boolean caughtUp;
+        private FileWatcher.Stamp stamp;
+    }
+}
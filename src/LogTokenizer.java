@@ -0,0 +1,147 @@
+import javax.swing.text.Segment;
+
+/**
+ * Tokenizes log files: the timestamp and the level of each entry, with the lines an entry runs
+ * on over, such as a stack trace, drawn in the color of its level.
+ * <p>
+ * A line starts a new entry when it starts with a timestamp or has a level word near its start;
+ * any other line continues the entry above it. The state is the level of the entry the text is
+ * in, and whether the text continues a line too long to be tokenized in one go.
+ */
+public class LogTokenizer implements Tokenizer {
+    private static final int NONE = 0;
+    private static final int ERROR = 1;
+    private static final int WARNING = 2;
+    private static final int INFO = 3;
+    private static final int DEBUG = 4;
+
+    private static final int LEVEL_MASK = 7;
+    private static final int MID_LINE = 8;
+
+    // How far into a line a level word is looked for
+    private static final int LEVEL_SEARCH = 200;
+
+    private static final String[] WORDS = {"ERROR", "FATAL", "SEVERE", "CRITICAL", "WARN", "WARNING", "INFO",
+            "NOTICE", "DEBUG", "TRACE", "FINE", "FINER", "FINEST"};
+    private static final int[] LEVELS = {ERROR, ERROR, ERROR, ERROR, WARNING, WARNING, INFO,
+            INFO, DEBUG, DEBUG, DEBUG, DEBUG, DEBUG};
+
+    @Override
+    public int getInitialState() {
+        return NONE;
+    }
+
+    @Override
+    public int tokenize(Segment text, int state, boolean endsLine, TokenList tokens) {
+        char[] array = text.array;
+        int start = text.offset;
+        int end = start + text.count;
+        int level = state & LEVEL_MASK;
+
+        if ((state & MID_LINE) != 0) {
+            Tokenizers.add(tokens, 0, colorOf(level));
+            return level | (endsLine ? 0 : MID_LINE);
+        }
+
+        int timestampEnd = skipTimestamp(array, start, end);
+        int wordStart = -1;
+        int wordEnd = -1;
+        int wordLevel = NONE;
+        int limit = Math.min(end, timestampEnd + LEVEL_SEARCH);
+        for (int i = timestampEnd; i < limit && wordStart < 0; i++) {
+            if (!Character.isUpperCase(array[i]) || (i > start && Character.isLetterOrDigit(array[i - 1]))) {
+                continue;
+            }
+            int j = i;
+            while (j < end && Character.isUpperCase(array[j])) {
+                j++;
+            }
+            if (j < end && Character.isLetterOrDigit(array[j])) {
+                continue;
+            }
+            for (int w = 0; w < WORDS.length; w++) {
+                if (Tokenizers.matches(array, i, j, WORDS[w])) {
+                    wordStart = i;
+                    wordEnd = j;
+                    wordLevel = LEVELS[w];
+                    break;
+                }
+            }
+        }
+
+        if (timestampEnd == start && wordStart < 0) {
+            // Goes on with the entry above
+            Tokenizers.add(tokens, 0, colorOf(level));
+            return level | (endsLine ? 0 : MID_LINE);
+        }
+
+        level = wordStart >= 0 ? wordLevel : NONE;
+        if (timestampEnd > start) {
+            Tokenizers.add(tokens, 0, TokenType.DATE);
+        }
+        Tokenizers.add(tokens, timestampEnd - start, TokenType.TEXT);
+        if (wordStart >= 0) {
+            Tokenizers.add(tokens, wordStart - start, level == INFO ? TokenType.KEYWORD : colorOf(level));
+            Tokenizers.add(tokens, wordEnd - start, TokenType.TEXT);
+        }
+        return level | (endsLine ? 0 : MID_LINE);
+    }
+
+    private static TokenType colorOf(int level) {
+        switch (level) {
+            case ERROR:
+                return TokenType.ERROR;
+            case WARNING:
+                return TokenType.WARNING;
+            case DEBUG:
+                return TokenType.DEBUG;
+            default:
+                return TokenType.TEXT;
+        }
+    }
+
+    /**
+     * Finds the end of a timestamp at the start of a line, such as "2024-05-01 12:00:00,123",
+     * "[12:00:00.5]" or "May 1 12:00:00".
+     *
+     * @return Where the timestamp ends, or the start of the line if there is none.
+     */
+    private static int skipTimestamp(char[] array, int start, int end) {
+        int i = start;
+        if (i < end && array[i] == '[') {
+            i++;
+        }
+        // Syslog style dates start with the month
+        if (end - i >= 3 && Character.isUpperCase(array[i]) && Character.isLowerCase(array[i + 1])
+                && Character.isLowerCase(array[i + 2])) {
+            i += 3;
+            while (i < end && array[i] == ' ') {
+                i++;
+            }
+        }
+        int digitsStart = i;
+        boolean separated = false;
+        while (i < end) {
+            char c = array[i];
+            if (c >= '0' && c <= '9') {
+                i++;
+            } else if (c == '-' || c == ':' || c == '/' || c == '.' || c == ',') {
+                separated = true;
+                i++;
+            } else if ((c == 'T' || c == ' ') && i + 1 < end && array[i + 1] >= '0' && array[i + 1] <= '9') {
+                i++;
+            } else if (c == 'Z' || c == '+') {
+                i++;
+            } else {
+                break;
+            }
+        }
+        if (i - digitsStart < 5 || !separated || array[digitsStart] < '0' || array[digitsStart] > '9') {
+            return start;
+        }
+        if (i < end && array[i] == ']' && array[start] == '[') {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,712 @@
+import javax.swing.text.Segment;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * TextBuffer over a memory-mapped file that decodes only the pages being read.
+ * <p>
+ * The file is split into pages of about 64 KB whose boundaries never cut a character in half.
+ * Opening the file decodes each page once to learn how many characters it holds, keeping only
+ * those counts; after that, pages are decoded again on demand and a small LRU cache keeps the
+ * most recently used ones. Heap use therefore stays flat no matter how large the file is.
+ * <p>
+ * Line breaks are normalized to '\n' while decoding, the same way the editor has always read files,
+ * unless the buffer is opened to read back text the editor wrote itself.
+ * <p>
+ * The piece table counts on the text of a buffer never changing, but other programs may rewrite a
+ * file the user opened at any time: a mapping shows such changes as they happen, reading a mapped
+ * page of a file truncated since fails outright, and on Windows a mapped file cannot be replaced,
+ * not even by the editor's own save. Only files the editor writes itself, such as its snapshots,
+ * are therefore mapped directly, with {@link #open(Path, Charset, long, boolean, IoProgress)}. A
+ * file the user opens is read once, in order, by {@link #copy(Path, Charset, long)} and
+ * {@link #readPages(long, IoProgress)}, into a private temporary copy as its pages are indexed,
+ * and it is the copy that is mapped once it is complete. The copy is deleted as soon as it is
+ * mapped, and its space freed with the mapping. It costs a second write of the file, and disk
+ * space as large, so {@link #canCopy(long)} tells whether there is room for it first.
+ * <p>
+ * Pages indexed so far can be read while the rest of the file is still being read, from the copy
+ * rather than the mapping. Reading the file and decoding its pages happens under a lock of its
+ * own, with a decoder of its own, so painting the pages already read never waits for it; each
+ * page is published as it is finished.
+ */
+public class MappedTextBuffer implements TextBuffer {
+    private static final int PAGE_SIZE = 1 << 16;
+    private static final long REGION_SIZE = 1L << 30;
+    private static final int CACHED_PAGES = 64;
+
+    // Bytes read from a file being copied at a time, which must hold a page and the bytes just
+    // past it that tell where the page can end
+    private static final int WINDOW_SIZE = 1 << 20;
+
+    // Space left free on the disk a copy is made on
+    private static final long COPY_RESERVE = 256L << 20;
+
+    // Names of the copies, by which those a crash left behind are found
+    private static final String COPY_PREFIX = "notepad-open";
+    private static final String COPY_SUFFIX = ".text";
+
+    // Whether copies left behind in the cache directory have been deleted yet
+    private static boolean cacheCleared;
+
+    private final Path path;
+    private final Charset charset;
+    private final int unitSize;
+    private final boolean normalize;
+
+    // The mapping, once there is one
+    private volatile MappedByteBuffer[] regions;
+
+    // Byte offset and character offset at which each page starts, with one extra entry for the end
+    // of the last page. The entries up to the page count never change once the count covers them.
+    private final long[] pageBytes;
+    private final int[] pageChars;
+    private volatile int pageCount;
+
+    // While a file is being copied: the file, the copy, how far the text goes, how much has been
+    // copied, the bytes read last, starting at windowStart, and the decoder of the pages read;
+    // all guarded by loadLock. The copy is also read back for pages that are not mapped yet, so
+    // it is only let go of under this as well.
+    private final Object loadLock = new Object();
+    private volatile FileChannel source;
+    private FileChannel copy;
+    private volatile long end;
+    private long copied;
+    private ByteBuffer window;
+    private long windowStart;
+    private boolean discarded;
+    private PageDecoder loadDecoder;
+
+    // Decodes pages again when they are read; guarded by this
+    private final PageDecoder pageDecoder;
+
+    private final Map<Integer, char[]> cache = new LinkedHashMap<Integer, char[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, char[]> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+
+    private MappedTextBuffer(Path path, Charset charset, long start, long size, boolean normalize) {
+        this.path = path;
+        this.charset = charset;
+        this.normalize = normalize;
+        this.unitSize = isUtf16(charset) ? 2 : 1;
+        this.pageDecoder = new PageDecoder();
+
+        // A page ends up to a few bytes short of the page size, to keep a character whole
+        int maxPages = (int) (size / (PAGE_SIZE - 8)) + 2;
+        this.pageBytes = new long[maxPages + 1];
+        this.pageChars = new int[maxPages + 1];
+        pageBytes[0] = start;
+        end = size;
+    }
+
+    /**
+     * Returns whether files in the given charset can be opened as mapped pages.
+     * That needs character boundaries that can be found without decoding from the start.
+     *
+     * @param charset The charset of the file.
+     * @return True if the charset is supported.
+     */
+    public static boolean supports(Charset charset) {
+        return isSingleByte(charset) || isUtf16(charset) || charset.equals(StandardCharsets.UTF_8);
+    }
+
+    private static boolean isSingleByte(Charset charset) {
+        return charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1.0f;
+    }
+
+    private static boolean isUtf16(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_16LE) || charset.equals(StandardCharsets.UTF_16BE);
+    }
+
+    /**
+     * Maps a file whose text starts after a header, such as a byte order mark, and indexes its
+     * pages, optionally keeping its line breaks exactly as they are. The file must be one that
+     * nothing but the editor writes, such as a snapshot, since it is mapped as it is; files the
+     * user opens go through {@link #copy(Path, Charset, long)}.
+     *
+     * @param path The file to open.
+     * @param charset The charset of the file; must be {@linkplain #supports(Charset) supported}.
+     * @param start The offset of the first byte of text.
+     * @param normalize Whether to turn CRLF and lone CR into LF, as for files the user opens.
+     * @param progress Receives the number of bytes indexed so far.
+     * @return The buffer.
+     * @throws IOException If the file cannot be read, is too large for a document, or has bytes
+     *                     that are not valid in the charset.
+     */
+    public static MappedTextBuffer open(Path path, Charset charset, long start, boolean normalize, IoProgress progress) throws IOException {
+        if (!supports(charset)) {
+            throw new IOException("Cannot page files in " + charset.name());
+        }
+        MappedByteBuffer[] regions;
+        long size;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            regions = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) / REGION_SIZE)];
+            for (int i = 0; i < regions.length; i++) {
+                long regionStart = i * REGION_SIZE;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, Math.min(REGION_SIZE, size - regionStart));
+            }
+        }
+
+        MappedTextBuffer buffer = new MappedTextBuffer(path, charset, Math.min(start, size), size, normalize);
+        buffer.regions = regions;
+        buffer.indexPages(progress);
+        return buffer;
+    }
+
+    /**
+     * Finds page boundaries and counts the characters in each page of a mapped file.
+     */
+    private synchronized void indexPages(IoProgress progress) throws IOException {
+        long size = end;
+        long bytePos = pageBytes[0];
+        while (bytePos < size) {
+            long pageEnd = alignPageEnd(Math.min(bytePos + PAGE_SIZE, size), bytePos, size);
+            addPage(pageEnd, pageDecoder.decode(bytes(bytePos, pageEnd)));
+            bytePos = pageEnd;
+            progress.update(bytePos, size);
+        }
+    }
+
+    /**
+     * Starts reading a file into a private copy, to index its pages a batch at a time with
+     * {@link #readPages(long, IoProgress)}. The buffer holds no text until then, and grows with
+     * every batch; the text it holds never changes. A buffer that is not read to the end must be
+     * {@linkplain #discard() discarded}. Callers check {@link #canCopy(long)} first.
+     *
+     * @param path The file to read.
+     * @param charset The charset of the file; must be {@linkplain #supports(Charset) supported}.
+     * @param start The offset of the first byte of text, past a byte order mark.
+     * @return The buffer.
+     * @throws IOException If the file cannot be read or the copy cannot be made.
+     */
+    public static MappedTextBuffer copy(Path path, Charset charset, long start) throws IOException {
+        if (!supports(charset)) {
+            throw new IOException("Cannot page files in " + charset.name());
+        }
+        FileChannel source = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = source.size();
+            MappedTextBuffer buffer = new MappedTextBuffer(path, charset, Math.min(start, size), size, true);
+            Path directory = copyDirectory(size);
+            if (directory == null) {
+                throw new IOException("No room on disk for a copy of " + path);
+            }
+            Path file = Files.createTempFile(directory, COPY_PREFIX, COPY_SUFFIX);
+            file.toFile().deleteOnExit();
+            buffer.copy = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+            buffer.source = source;
+            buffer.copied = buffer.pageBytes[0];
+            buffer.windowStart = buffer.copied;
+            buffer.window = ByteBuffer.allocate(WINDOW_SIZE);
+            buffer.window.flip();
+            buffer.loadDecoder = buffer.new PageDecoder();
+            return buffer;
+        } catch (IOException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns whether a file of the given size can be {@linkplain #copy(Path, Charset, long) copied}:
+     * whether the temporary directory or the cache directory has room for it on a disk.
+     *
+     * @param size The size of the file in bytes.
+     * @return True if there is room for the copy.
+     */
+    public static boolean canCopy(long size) {
+        return copyDirectory(size) != null;
+    }
+
+    /**
+     * Picks the directory a copy of a file is made in: the temporary directory, unless it is a
+     * tmpfs or short of room, then the cache directory set with -Dnotepad.cacheDir, by default
+     * {@code ~/.notepad/cache}. A copy on a tmpfs would sit in memory, uncompressed, which costs
+     * more than decoding the file into memory does.
+     *
+     * @param size The size of the file in bytes.
+     * @return The directory, or null if neither has room for the copy.
+     */
+    private static Path copyDirectory(long size) {
+        Path temp = Paths.get(System.getProperty("java.io.tmpdir"));
+        if (hasRoom(temp, size)) {
+            return temp;
+        }
+        String configured = System.getProperty("notepad.cacheDir");
+        Path cache = configured != null ? Paths.get(configured)
+                : Paths.get(System.getProperty("user.home"), ".notepad", "cache");
+        try {
+            Files.createDirectories(cache);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        clearCache(cache);
+        return hasRoom(cache, size) ? cache : null;
+    }
+
+    private static boolean hasRoom(Path directory, long size) {
+        try {
+            FileStore store = Files.getFileStore(directory);
+            return !"tmpfs".equals(store.type()) && store.getUsableSpace() - size > COPY_RESERVE;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the copies a crash left behind in the cache directory, the first time it is used.
+     * Unlike the temporary directory, nothing else ever clears it. A copy another editor is
+     * still reading cannot be deleted, or stays readable to it once deleted.
+     */
+    private static synchronized void clearCache(Path cache) {
+        if (cacheCleared) {
+            return;
+        }
+        cacheCleared = true;
+        try (DirectoryStream<Path> copies = Files.newDirectoryStream(cache, COPY_PREFIX + "*" + COPY_SUFFIX)) {
+            for (Path copy : copies) {
+                try {
+                    Files.deleteIfExists(copy);
+                } catch (IOException e) {
+                    // In use by another editor
+                }
+            }
+        } catch (IOException e) {
+            // Tried again next time the editor starts
+        }
+    }
+
+    /**
+     * Copies and indexes the next pages of a file being {@linkplain #copy(Path, Charset, long) copied},
+     * and maps the copy once the whole file has been read. A file that shrinks while it is read
+     * ends where it was found to end; bytes added to it after it was first opened are not read.
+     * The pages already read can be read meanwhile, each one as soon as it is finished.
+     *
+     * @param bytes About how many bytes of the file to read.
+     * @param progress Receives the number of bytes read so far, out of the size of the file.
+     * @return True once the whole file has been read.
+     * @throws IOException If the file or the copy cannot be read or written, or the file is too
+     *                     large for a document. A page with bytes that are not valid in the charset
+     *                     throws a {@link CharacterCodingException}, and the buffer must then be
+     *                     discarded.
+     */
+    public boolean readPages(long bytes, IoProgress progress) throws IOException {
+        synchronized (loadLock) {
+            if (discarded) {
+                throw new IOException("The copy of the file was discarded: " + path);
+            }
+            if (source == null) {
+                return true;
+            }
+            long bytePos = pageBytes[pageCount];
+            long stop = bytePos + bytes;
+            while (bytePos < end && bytePos < stop) {
+                fill(bytePos);
+                if (bytePos >= end) {
+                    break;
+                }
+                long pageEnd = alignPageEnd(Math.min(bytePos + PAGE_SIZE, end), bytePos, end);
+                ByteBuffer page = window.duplicate();
+                page.position((int) (bytePos - windowStart));
+                page.limit((int) (pageEnd - windowStart));
+                int count = loadDecoder.decode(page);
+                char[] chars = Arrays.copyOf(loadDecoder.chars.array(), count);
+                // The pages just read are kept, since they are about to be read for their line breaks
+                synchronized (this) {
+                    cache.put(pageCount, chars);
+                }
+                addPage(pageEnd, count);
+                bytePos = pageEnd;
+                progress.update(bytePos, end);
+            }
+            if (bytePos >= end) {
+                mapCopy();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Makes sure the window holds the page starting at a byte offset and the bytes just past it,
+     * reading more of the file into it, and into the copy, if it does not.
+     */
+    private void fill(long bytePos) throws IOException {
+        long needed = Math.min(bytePos + PAGE_SIZE + 8, end);
+        if (bytePos >= windowStart && needed <= windowStart + window.limit()) {
+            return;
+        }
+        // The window always ends where the copy does; the bytes from here on are kept
+        window.position((int) (bytePos - windowStart));
+        window.compact();
+        windowStart = bytePos;
+        // Nothing past the size the file had when it was opened is read
+        window.limit((int) Math.min(window.capacity(), window.position() + end - copied));
+        while (window.hasRemaining() && copied < end) {
+            int before = window.position();
+            int read = source.read(window, copied);
+            if (read < 0) {
+                // Truncated since it was opened
+                end = copied;
+                break;
+            }
+            ByteBuffer fresh = window.duplicate();
+            fresh.flip();
+            fresh.position(before);
+            while (fresh.hasRemaining()) {
+                copy.write(fresh, copied + fresh.position() - before);
+            }
+            copied += read;
+        }
+        window.flip();
+    }
+
+    /**
+     * Maps the complete copy, and lets go of the file and of the copy, which is deleted but lasts
+     * as long as the mapping does.
+     */
+    private void mapCopy() throws IOException {
+        long size = end;
+        MappedByteBuffer[] mapped = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) / REGION_SIZE)];
+        for (int i = 0; i < mapped.length; i++) {
+            long regionStart = i * REGION_SIZE;
+            mapped[i] = copy.map(FileChannel.MapMode.READ_ONLY, regionStart, Math.min(REGION_SIZE, size - regionStart));
+        }
+        regions = mapped;
+        closeChannels();
+    }
+
+    /**
+     * Stops reading a file being {@linkplain #copy(Path, Charset, long) copied} and deletes the
+     * copy, for a buffer that is no longer needed. The buffer must not be read afterwards.
+     */
+    public void discard() {
+        synchronized (loadLock) {
+            if (source != null) {
+                discarded = true;
+                closeChannels();
+            }
+        }
+    }
+
+    /**
+     * Closes the file and the copy, once readers of pages not yet mapped cannot reach the copy.
+     */
+    private void closeChannels() {
+        FileChannel closing;
+        synchronized (this) {
+            closing = copy;
+            copy = null;
+        }
+        try {
+            source.close();
+        } catch (IOException e) {
+            // Only read from
+        }
+        try {
+            closing.close();
+        } catch (IOException e) {
+            // Deleted on exit instead
+        }
+        source = null;
+        window = null;
+        loadDecoder = null;
+    }
+
+    /**
+     * Returns whether the whole file has been read.
+     *
+     * @return True once the buffer holds all of the text.
+     */
+    public boolean isComplete() {
+        synchronized (loadLock) {
+            return source == null && !discarded;
+        }
+    }
+
+    /**
+     * Retrieves how much of the file has been read.
+     *
+     * @return The number of bytes indexed so far, counting from the start of the file.
+     */
+    public long getBytesRead() {
+        return pageBytes[pageCount];
+    }
+
+    /**
+     * Retrieves how much of the file there is to read.
+     *
+     * @return The offset the text of the file ends at.
+     */
+    public long getSize() {
+        return end;
+    }
+
+    /**
+     * Adds the page ending at a byte offset, and makes it visible to readers.
+     */
+    private void addPage(long pageEnd, int chars) throws IOException {
+        int count = pageCount;
+        long charPos = (long) pageChars[count] + chars;
+        if (charPos >= Integer.MAX_VALUE - 1) {
+            throw new IOException("File is too large to edit: " + path);
+        }
+        pageBytes[count + 1] = pageEnd;
+        pageChars[count + 1] = (int) charPos;
+        pageCount = count + 1;
+    }
+
+    @Override
+    public synchronized long memoryUsage() {
+        // The mapping itself is off the heap; only the decoded pages in the cache count
+        long bytes = (long) (pageBytes.length + pageChars.length) * Long.BYTES;
+        if (source != null) {
+            // The window and decoder of a file still being read
+            bytes += WINDOW_SIZE + 3L * PAGE_SIZE;
+        }
+        for (char[] page : cache.values()) {
+            bytes += (long) page.length * Character.BYTES;
+        }
+        return bytes;
+    }
+
+    @Override
+    public int length() {
+        return pageChars[pageCount];
+    }
+
+    @Override
+    public void getChars(int offset, int length, Segment segment) {
+        int page = pageOf(offset, pageCount);
+        int inPage = offset - pageChars[page];
+        int available = pageChars[page + 1] - offset;
+        if (length <= available || segment.isPartialReturn()) {
+            segment.array = page(page);
+            segment.offset = inPage;
+            segment.count = Math.min(length, available);
+        } else {
+            char[] copy = new char[length];
+            TextBuffer.copyChars(this, offset, length, copy, 0);
+            segment.array = copy;
+            segment.offset = 0;
+            segment.count = length;
+        }
+    }
+
+    /**
+     * Returns the page holding the given character offset.
+     */
+    private int pageOf(int offset, int count) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (pageChars[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the decoded characters of a page, decoding it if it is not cached.
+     */
+    private synchronized char[] page(int page) {
+        char[] chars = cache.get(page);
+        if (chars == null) {
+            int count;
+            try {
+                count = pageDecoder.decode(bytes(pageBytes[page], pageBytes[page + 1]));
+            } catch (CharacterCodingException e) {
+                // Every page decoded once already, when it was indexed
+                throw new IllegalStateException(e);
+            }
+            chars = Arrays.copyOf(pageDecoder.chars.array(), count);
+            cache.put(page, chars);
+        }
+        return chars;
+    }
+
+    /**
+     * Decoder of pages, with the scratch buffers it reuses for every page. Indexing and paging
+     * both go through one, so a page always decodes to the same length; the thread reading a file
+     * and the threads reading its pages each have their own.
+     * <p>
+     * Bytes that are not valid in the charset are reported rather than replaced, since a
+     * replacement character would be written back in their place on save.
+     */
+    private final class PageDecoder {
+        private final CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        private final CharBuffer chars = CharBuffer.allocate(PAGE_SIZE);
+        private final ByteBuffer scratchBytes = ByteBuffer.allocate(PAGE_SIZE);
+
+        /**
+         * Decodes the bytes of a page into the start of the scratch characters and returns the
+         * number of characters produced.
+         *
+         * @throws CharacterCodingException If the page has bytes that are not valid in the charset.
+         */
+        int decode(ByteBuffer bytes) throws CharacterCodingException {
+            chars.clear();
+            if (charset.equals(StandardCharsets.ISO_8859_1)) {
+                // Latin-1 bytes are their own code points, so widening them is all the decoding needed
+                while (bytes.hasRemaining()) {
+                    chars.put((char) (bytes.get() & 0xFF));
+                }
+            } else {
+                // The decoders only take their fast array loops on heap buffers, so the page is copied
+                // out of the mapping in one bulk transfer first
+                if (bytes.isDirect()) {
+                    scratchBytes.clear();
+                    scratchBytes.put(bytes);
+                    scratchBytes.flip();
+                    bytes = scratchBytes;
+                }
+                // A page decodes to at most as many characters as it has bytes, so never overflows
+                decoder.reset();
+                CoderResult result = decoder.decode(bytes, chars, true);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                decoder.flush(chars);
+            }
+            return normalize ? normalizeLineBreaks(chars.array(), chars.position()) : chars.position();
+        }
+    }
+
+    /**
+     * Turns CRLF and lone CR into LF in place and returns the new length.
+     */
+    private static int normalizeLineBreaks(char[] chars, int length) {
+        int out = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c == '\r') {
+                if (i + 1 < length && chars[i + 1] == '\n') {
+                    continue;
+                }
+                c = '\n';
+            }
+            chars[out++] = c;
+        }
+        return out;
+    }
+
+    /**
+     * Returns the bytes in a range, sliced straight from the mapping when it fits in one region,
+     * or read back from the copy while there is no mapping yet, holding this so the copy stays
+     * open.
+     */
+    private ByteBuffer bytes(long start, long end) {
+        MappedByteBuffer[] regions = this.regions;
+        if (regions == null) {
+            if (copy == null) {
+                throw new IllegalStateException("The copy of the file was discarded: " + path);
+            }
+            ByteBuffer read = ByteBuffer.allocate((int) (end - start));
+            try {
+                while (read.hasRemaining()) {
+                    if (copy.read(read, start + read.position()) < 0) {
+                        throw new IOException("The copy of the file is truncated: " + path);
+                    }
+                }
+            } catch (IOException e) {
+                // The copy is the editor's own file, so it only fails as the disk does
+                throw new IllegalStateException(e);
+            }
+            read.flip();
+            return read;
+        }
+        int region = (int) (start / REGION_SIZE);
+        int from = (int) (start - region * REGION_SIZE);
+        int length = (int) (end - start);
+        if (from + length <= regions[region].capacity()) {
+            return regions[region].slice(from, length);
+        }
+        byte[] copy = new byte[length];
+        for (int copied = 0; copied < length; ) {
+            long pos = start + copied;
+            int r = (int) (pos / REGION_SIZE);
+            int inRegion = (int) (pos - r * REGION_SIZE);
+            int count = Math.min(length - copied, regions[r].capacity() - inRegion);
+            regions[r].get(inRegion, copy, copied, count);
+            copied += count;
+        }
+        return ByteBuffer.wrap(copy);
+    }
+
+    private int byteAt(long pos) {
+        MappedByteBuffer[] regions = this.regions;
+        if (regions == null) {
+            // Only asked while indexing a copy, for bytes the window holds
+            return window.get((int) (pos - windowStart)) & 0xFF;
+        }
+        int region = (int) (pos / REGION_SIZE);
+        return regions[region].get((int) (pos - region * REGION_SIZE)) & 0xFF;
+    }
+
+    /**
+     * Returns the code unit ending at the given byte offset.
+     */
+    private int unitBefore(long pos) {
+        if (unitSize == 1) {
+            return byteAt(pos - 1);
+        }
+        return charset.equals(StandardCharsets.UTF_16LE)
+                ? byteAt(pos - 2) | byteAt(pos - 1) << 8
+                : byteAt(pos - 2) << 8 | byteAt(pos - 1);
+    }
+
+    /**
+     * Moves a tentative page end back so it splits neither a character nor a CRLF pair.
+     */
+    private long alignPageEnd(long end, long start, long size) {
+        if (end >= size) {
+            return end;
+        }
+        if (unitSize == 2) {
+            end -= (end - start) & 1;
+            // Keep surrogate pairs together
+            if ((unitBefore(end) & 0xFC00) == 0xD800) {
+                end -= 2;
+            }
+        } else if (charset.equals(StandardCharsets.UTF_8)) {
+            // Never start a page on a continuation byte
+            long aligned = end;
+            while (aligned > start + 1 && (byteAt(aligned) & 0xC0) == 0x80 && end - aligned < 4) {
+                aligned--;
+            }
+            end = aligned;
+        }
+        if (unitBefore(end) == '\r' && end - unitSize > start) {
+            end -= unitSize;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the documents of open tabs within a heap budget, by evicting the ones used least
+ * recently to disk once the tabs together hold more than the budget. The tab being shown is
+ * never evicted, however large it is.
+ */
+public class MemoryGovernor {
+    private final long budget;
+
+    /**
+     * Creates a governor.
+     *
+     * @param budget The most memory, in bytes, the documents of all tabs may hold together.
+     */
+    public MemoryGovernor(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Retrieves the budget the tabs are kept within.
+     *
+     * @return The budget in bytes.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Evicts tabs, least recently used first, until the ones left in memory fit in the budget.
+     *
+     * @param tabs The open tabs.
+     * @param active The tab being shown.
+     */
+    public void enforce(List<EditorTab> tabs, EditorTab active) {
+        long total = 0;
+        List<EditorTab> candidates = new ArrayList<>();
+        for (EditorTab tab : tabs) {
+            total += tab.memoryUsage(tab == active);
+            if (tab != active && tab.isLoaded() && !tab.isTransferring()) {
+                candidates.add(tab);
+            }
+        }
+        if (total <= budget) {
+            return;
+        }
+
+        Collections.sort(candidates, new Comparator<EditorTab>() {
+            @Override
+            public int compare(EditorTab a, EditorTab b) {
+                return Long.compare(a.getLastUsed(), b.getLastUsed());
+            }
+        });
+        for (EditorTab tab : candidates) {
+            if (total <= budget) {
+                break;
+            }
+            total -= tab.memoryUsage(false);
+            tab.evict();
+        }
+    }
+}
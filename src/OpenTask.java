@@ -0,0 +1,255 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Opens a file into a new document in the background.
+ * <p>
+ * The format of the file is detected first, and kept as a property of the document so that saving
+ * writes the text back in the same charset and with the same line separators. A file found to have
+ * bytes that are not valid in the charset detected is read again in the {@link TextFormat#fallback()
+ * fallback} charset.
+ * <p>
+ * Files of a few megabytes, and files in charsets that cannot be paged, are decoded into memory.
+ * Larger files are read into a {@link MappedTextBuffer}, which pages them through a private copy;
+ * only their first megabyte is read before the document is shown, and {@link #getLoader()} then
+ * reads the rest into it while the user looks at the start.
+ */
+public abstract class OpenTask extends FileTask<PieceTableDocument> {
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    // Files smaller than this are decoded into memory rather than paged
+    private static final long PAGED_SIZE = 8L << 20;
+
+    // Bytes of a paged file read before its document is shown
+    private static final long FIRST_BYTES = 1L << 20;
+
+    private final File file;
+    private final int visibleOffset;
+    private final TextFormat format;
+
+    // Reads the rest of a paged file, if only its start was read
+    private DocumentLoader loader;
+
+    /**
+     * Creates a task that opens the given file.
+     *
+     * @param file The file to open.
+     */
+    protected OpenTask(File file) {
+        this(file, 0);
+    }
+
+    /**
+     * Creates a task that opens the given file, reading it at least up to some offset before the
+     * document is shown, for a document that is to be shown there.
+     *
+     * @param file The file to open.
+     * @param visibleOffset The character offset that must be in the document when it is shown.
+     */
+    protected OpenTask(File file, int visibleOffset) {
+        this(file, visibleOffset, null);
+    }
+
+    /**
+     * Creates a task that opens the given file in a known format rather than the one detected.
+     *
+     * @param file The file to open.
+     * @param visibleOffset The character offset that must be in the document when it is shown.
+     * @param format The format of the file, or null to detect it.
+     */
+    protected OpenTask(File file, int visibleOffset, TextFormat format) {
+        super("Opening " + file.getName(), Diagnostics.Operation.OPEN, file.getPath());
+        this.file = file;
+        this.visibleOffset = visibleOffset;
+        this.format = format;
+    }
+
+    @Override
+    protected PieceTableDocument doInBackground() throws IOException {
+        TextFormat format = this.format != null ? this.format : TextFormat.detect(file.toPath());
+        while (true) {
+            try {
+                return open(format);
+            } catch (CharacterCodingException e) {
+                // Bytes past the part detection looked at are not in the charset it guessed
+                format = format.fallback();
+            }
+        }
+    }
+
+    /**
+     * Opens the file in a format, reading only the start of a large file.
+     */
+    private PieceTableDocument open(TextFormat format) throws IOException {
+        if (!isPaged(file, format)) {
+            return load(decodeText(file, format, format.getBom().length, step(0, 50)), format, step(50, 100));
+        }
+        MappedTextBuffer text = MappedTextBuffer.copy(file.toPath(), format.getCharset(), format.getBom().length);
+        try {
+            boolean complete = false;
+            while (!complete && text.length() <= visibleOffset) {
+                complete = text.readPages(FIRST_BYTES, step(0, 50));
+            }
+            PieceTableDocument document = load(text, format, step(50, 100));
+            if (!complete) {
+                loader = new DocumentLoader(document, text);
+            }
+            return document;
+        } catch (IOException | RuntimeException e) {
+            text.discard();
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieves what reads the rest of the file into the document, when only the start of a
+     * large file was read. It must either be started, or stopped to let go of the file.
+     *
+     * @return The loader, or null if the document holds the whole file.
+     */
+    protected DocumentLoader getLoader() {
+        return loader;
+    }
+
+    /**
+     * Lets go of the file, if only its start was read, since the document is not shown.
+     */
+    @Override
+    protected void cancelled() {
+        if (loader != null) {
+            loader.stop();
+            loader = null;
+        }
+    }
+
+    /**
+     * Reads a whole file into a new document, detecting its format.
+     *
+     * @param file The file to read.
+     * @param reading Receives the number of bytes read so far.
+     * @param loading Receives the number of characters indexed so far.
+     * @return The document, with the format of the file as a property.
+     * @throws IOException If the file cannot be read.
+     */
+    static PieceTableDocument read(File file, IoProgress reading, IoProgress loading) throws IOException {
+        TextFormat format = TextFormat.detect(file.toPath());
+        while (true) {
+            TextBuffer text;
+            try {
+                text = openText(file, format, reading);
+            } catch (CharacterCodingException e) {
+                format = format.fallback();
+                continue;
+            }
+            return load(text, format, loading);
+        }
+    }
+
+    private static PieceTableDocument load(TextBuffer text, TextFormat format, IoProgress loading) {
+        PieceTableDocument document = PieceTableDocument.load(text, loading);
+        document.putProperty(TextFormat.PROPERTY, format);
+        return document;
+    }
+
+    /**
+     * Returns whether a file is large enough, and in a charset that allows, to be paged, and there
+     * is room on disk for the copy paging reads from.
+     */
+    private static boolean isPaged(File file, TextFormat format) {
+        return MappedTextBuffer.supports(format.getCharset()) && file.length() >= PAGED_SIZE
+                && MappedTextBuffer.canCopy(file.length());
+    }
+
+    /**
+     * Reads the whole file as a text buffer. Large files in charsets that can be paged are copied
+     * and memory-mapped, anything else is decoded into memory in one pass.
+     */
+    private static TextBuffer openText(File file, TextFormat format, IoProgress progress) throws IOException {
+        int bomLength = format.getBom().length;
+        if (isPaged(file, format)) {
+            MappedTextBuffer text = MappedTextBuffer.copy(file.toPath(), format.getCharset(), bomLength);
+            try {
+                text.readPages(Long.MAX_VALUE, progress);
+            } catch (IOException | RuntimeException e) {
+                text.discard();
+                throw e;
+            }
+            return text;
+        }
+        return decodeText(file, format, bomLength, progress);
+    }
+
+    /**
+     * Decodes the whole file, a chunk at a time, with a single decoder and heap buffer reused
+     * for every chunk. Line breaks are normalized to '\n' like mapped files are. The text is
+     * compressed as it is decoded, so a large file never sits in memory as plain characters.
+     * Bytes that are not valid in the charset throw a {@link CharacterCodingException}.
+     */
+    private static TextBuffer decodeText(File file, TextFormat format, long start, IoProgress progress) throws IOException {
+        CharsetDecoder decoder = format.getCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer in = ByteBuffer.allocate(CHUNK_SIZE);
+        CharBuffer out = CharBuffer.allocate(CHUNK_SIZE);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            channel.position(start);
+            CompressedTextBuffer.Builder text = new CompressedTextBuffer.Builder();
+            boolean pendingCr = false;
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                endOfInput = channel.read(in) < 0;
+                in.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(in, out, endOfInput);
+                    if (result.isError()) {
+                        result.throwException();
+                    }
+                    if (endOfInput && !result.isOverflow()) {
+                        result = decoder.flush(out);
+                    }
+                    out.flip();
+
+                    // A CR is only written once the next character shows it is not half of a CRLF
+                    char[] decoded = out.array();
+                    int end = out.limit();
+                    for (int i = 0; i < end; i++) {
+                        char c = decoded[i];
+                        if (pendingCr) {
+                            pendingCr = false;
+                            text.append('\n');
+                            if (c == '\n') {
+                                continue;
+                            }
+                        }
+                        if (c == '\r') {
+                            pendingCr = true;
+                        } else {
+                            text.append(c);
+                        }
+                    }
+                    out.clear();
+                } while (result.isOverflow());
+                if (text.length() >= Integer.MAX_VALUE - 16) {
+                    throw new IOException("File is too large to edit: " + file);
+                }
+                in.compact();
+                progress.update(channel.position(), size);
+            }
+            if (pendingCr) {
+                text.append('\n');
+            }
+            return text.build();
+        }
+    }
+}
@@ -0,0 +1,523 @@
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Document content stored as a piece table.
+ * <p>
+ * The text is described by a sequence of pieces, each pointing into one of two buffers:
+ * the read-only original buffer the document was loaded from, and an append-only buffer
+ * holding everything inserted since. Pieces are kept in a treap ordered by document offset,
+ * so inserting or removing text costs O(log n) in the number of pieces wherever it happens,
+ * and no text is ever copied or moved once it is in a buffer.
+ * <p>
+ * Undo and redo detach and re-attach whole subtrees of pieces, which is why removed text
+ * never needs to be copied out either.
+ */
+public class PieceTableContent implements AbstractDocument.Content {
+    // Rough size of a piece object, with its header and fields
+    private static final int PIECE_SIZE = 48;
+
+    private final AppendBuffer added = new AppendBuffer();
+    private final PositionTable positions = new PositionTable();
+    private Piece root;
+
+    // Results of the last split, kept in fields to avoid allocating a pair per call
+    private Piece splitLeft, splitRight;
+
+    /**
+     * Creates content holding just the implied trailing newline every document ends with.
+     */
+    public PieceTableContent() {
+        int start = added.append("\n");
+        root = new Piece(added, start, 1);
+    }
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        if (offset < 0 || offset > length()) {
+            throw new BadLocationException("Invalid position", offset);
+        }
+        return positions.createPosition(offset);
+    }
+
+    @Override
+    public int length() {
+        return size(root);
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        if (where < 0 || where > length()) {
+            throw new BadLocationException("Invalid insert", where);
+        }
+        int start = added.append(str);
+        if (!extendPiece(root, where, added, start, str.length())) {
+            attach(where, new Piece(added, start, str.length()));
+        }
+        positions.insertUpdate(where, str.length());
+        return new PieceEdit(where, str.length(), true, null);
+    }
+
+    /**
+     * Inserts the contents of a buffer without copying it.
+     *
+     * @param where The offset to insert at.
+     * @param buffer The buffer to insert. It must not change afterwards.
+     * @return An edit that removes the buffer again.
+     * @throws BadLocationException If the offset is not inside the content.
+     */
+    public UndoableEdit insertBuffer(int where, TextBuffer buffer) throws BadLocationException {
+        return insertBuffer(where, buffer, 0, buffer.length());
+    }
+
+    /**
+     * Inserts a range of a buffer without copying it. The same buffer may back any number of
+     * insertions, which lets a batch of replacements share one copy of their text.
+     *
+     * @param where The offset to insert at.
+     * @param buffer The buffer holding the text. The range must not change afterwards.
+     * @param start The offset of the text in the buffer.
+     * @param length The number of characters to insert.
+     * @return An edit that removes the text again, or null if there was nothing to insert.
+     * @throws BadLocationException If the offset is not inside the content.
+     */
+    public UndoableEdit insertBuffer(int where, TextBuffer buffer, int start, int length) throws BadLocationException {
+        if (where < 0 || where > length()) {
+            throw new BadLocationException("Invalid insert", where);
+        }
+        if (length == 0) {
+            return null;
+        }
+        attach(where, new Piece(buffer, start, length));
+        positions.insertUpdate(where, length);
+        return new PieceEdit(where, length, true, null);
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        if (where < 0 || nitems < 0 || where + nitems >= length()) {
+            throw new BadLocationException("Invalid remove", where + nitems);
+        }
+        Object marks = positions.capture(where, nitems);
+        Piece removed = detach(where, nitems);
+        positions.removeUpdate(where, nitems);
+        PieceEdit edit = new PieceEdit(where, nitems, false, removed);
+        edit.marks = marks;
+        return edit;
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        checkRange(where, len);
+        char[] chars = new char[len];
+        copyChars(where, len, chars, 0);
+        return new String(chars);
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        checkRange(where, len);
+        if (len == 0) {
+            txt.array = new char[0];
+            txt.offset = 0;
+            txt.count = 0;
+            return;
+        }
+        // Find the piece holding the first character
+        Piece node = root;
+        int offset = where;
+        while (true) {
+            int leftSize = size(node.left);
+            if (offset < leftSize) {
+                node = node.left;
+            } else if (offset < leftSize + node.length) {
+                offset -= leftSize;
+                break;
+            } else {
+                offset -= leftSize + node.length;
+                node = node.right;
+            }
+        }
+        int available = node.length - offset;
+        if (len <= available || txt.isPartialReturn()) {
+            // Zero-copy when the range stays inside one piece, or the caller accepts a partial result
+            node.buffer.getChars(node.start + offset, Math.min(len, available), txt);
+        } else {
+            char[] chars = new char[len];
+            copyChars(where, len, chars, 0);
+            txt.array = chars;
+            txt.offset = 0;
+            txt.count = len;
+        }
+    }
+
+    /**
+     * Captures the current text as an immutable buffer. Only the list of pieces is copied, since
+     * the buffers they point into never change, so the snapshot is cheap to take and can be read
+     * from any thread while the content keeps being edited.
+     *
+     * @return The snapshot, without the implied trailing newline.
+     */
+    public TextBuffer snapshot() {
+        int count = countPieces(root);
+        Snapshot snapshot = new Snapshot(count);
+        collectPieces(root, snapshot);
+        snapshot.offsets[count] = length() - 1;
+        return snapshot;
+    }
+
+    /**
+     * Captures a range of the current text as an immutable buffer, copying only the pieces that
+     * overlap it.
+     *
+     * @param where The start of the range.
+     * @param len The length of the range.
+     * @return The snapshot of the range.
+     * @throws BadLocationException If the range is not inside the content.
+     */
+    public TextBuffer snapshot(int where, int len) throws BadLocationException {
+        checkRange(where, len);
+        Snapshot snapshot = new Snapshot(countPieces(root, 0, where, where + len));
+        collectPieces(root, 0, where, where + len, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Estimates the heap memory the content holds: the pieces and the buffer of inserted text,
+     * but not the buffers it was loaded from.
+     *
+     * @return The estimate in bytes.
+     */
+    public long memoryUsage() {
+        return added.memoryUsage() + (long) countPieces(root) * PIECE_SIZE;
+    }
+
+    private static int countPieces(Piece node) {
+        return node == null ? 0 : 1 + countPieces(node.left) + countPieces(node.right);
+    }
+
+    private static int countPieces(Piece node, int base, int from, int to) {
+        if (node == null) {
+            return 0;
+        }
+        int start = base + size(node.left);
+        int end = start + node.length;
+        int count = from < end && start < to ? 1 : 0;
+        if (from < start) {
+            count += countPieces(node.left, base, from, to);
+        }
+        if (end < to) {
+            count += countPieces(node.right, end, from, to);
+        }
+        return count;
+    }
+
+    /**
+     * Collects the parts of the pieces under a node that overlap a range, where base is the
+     * offset of the first character under the node.
+     */
+    private static void collectPieces(Piece node, int base, int from, int to, Snapshot snapshot) {
+        if (node == null) {
+            return;
+        }
+        int start = base + size(node.left);
+        int end = start + node.length;
+        if (from < start) {
+            collectPieces(node.left, base, from, to, snapshot);
+        }
+        if (from < end && start < to) {
+            int low = Math.max(from, start);
+            int high = Math.min(to, end);
+            int i = snapshot.count++;
+            snapshot.buffers[i] = node.buffer;
+            snapshot.starts[i] = node.start + low - start;
+            snapshot.offsets[i + 1] = snapshot.offsets[i] + high - low;
+        }
+        if (end < to) {
+            collectPieces(node.right, end, from, to, snapshot);
+        }
+    }
+
+    private static void collectPieces(Piece node, Snapshot snapshot) {
+        if (node == null) {
+            return;
+        }
+        collectPieces(node.left, snapshot);
+        int i = snapshot.count++;
+        snapshot.buffers[i] = node.buffer;
+        snapshot.starts[i] = node.start;
+        snapshot.offsets[i + 1] = snapshot.offsets[i] + node.length;
+        collectPieces(node.right, snapshot);
+    }
+
+    /**
+     * Copies a range of the content into an array piece by piece.
+     */
+    private void copyChars(int where, int len, char[] dest, int destPos) {
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        while (len > 0) {
+            try {
+                getChars(where, len, segment);
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+            System.arraycopy(segment.array, segment.offset, dest, destPos, segment.count);
+            where += segment.count;
+            destPos += segment.count;
+            len -= segment.count;
+        }
+    }
+
+    private void checkRange(int where, int len) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > length()) {
+            throw new BadLocationException("Invalid range", where + len);
+        }
+    }
+
+    /**
+     * Splices a detached subtree of pieces into the tree at the given offset.
+     */
+    private void attach(int where, Piece pieces) {
+        split(root, where);
+        Piece right = splitRight;
+        root = merge(merge(splitLeft, pieces), right);
+    }
+
+    /**
+     * Cuts a range out of the tree and returns it as a detached subtree.
+     */
+    private Piece detach(int where, int length) {
+        split(root, where);
+        Piece left = splitLeft;
+        split(splitRight, length);
+        Piece middle = splitLeft;
+        root = merge(left, splitRight);
+        return middle;
+    }
+
+    /**
+     * Grows the piece ending exactly at the given offset when the new text directly follows it
+     * in the same buffer, which is the common case of typing one character after another.
+     */
+    private static boolean extendPiece(Piece node, int where, TextBuffer buffer, int start, int length) {
+        if (node == null) {
+            return false;
+        }
+        int leftSize = size(node.left);
+        boolean extended;
+        if (where <= leftSize) {
+            extended = extendPiece(node.left, where, buffer, start, length);
+        } else if (where == leftSize + node.length) {
+            extended = node.buffer == buffer && node.start + node.length == start;
+            if (extended) {
+                node.length += length;
+            }
+        } else if (where < leftSize + node.length) {
+            return false;
+        } else {
+            extended = extendPiece(node.right, where - leftSize - node.length, buffer, start, length);
+        }
+        if (extended) {
+            node.size += length;
+        }
+        return extended;
+    }
+
+    /**
+     * Splits a tree into the pieces before and after the given offset, cutting a piece in two
+     * if the offset falls inside it. The results are left in splitLeft and splitRight.
+     */
+    private void split(Piece node, int offset) {
+        if (node == null) {
+            splitLeft = splitRight = null;
+            return;
+        }
+        int leftSize = size(node.left);
+        if (offset <= leftSize) {
+            split(node.left, offset);
+            node.left = splitRight;
+            node.update();
+            splitRight = node;
+        } else if (offset >= leftSize + node.length) {
+            split(node.right, offset - leftSize - node.length);
+            node.right = splitLeft;
+            node.update();
+            splitLeft = node;
+        } else {
+            int cut = offset - leftSize;
+            Piece tail = new Piece(node.buffer, node.start + cut, node.length - cut);
+            tail.priority = node.priority;
+            tail.right = node.right;
+            tail.update();
+            node.length = cut;
+            node.right = null;
+            node.update();
+            splitLeft = node;
+            splitRight = tail;
+        }
+    }
+
+    /**
+     * Joins two trees where every piece of the first comes before every piece of the second.
+     */
+    private static Piece merge(Piece left, Piece right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private static int size(Piece node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * A run of characters in one buffer, and a treap node ordered by document offset.
+     */
+    private static final class Piece {
+        final TextBuffer buffer;
+        final int start;
+        int length;
+        int priority = ThreadLocalRandom.current().nextInt();
+        int size;
+        Piece left, right;
+
+        Piece(TextBuffer buffer, int start, int length) {
+            this.buffer = buffer;
+            this.start = start;
+            this.length = length;
+            this.size = length;
+        }
+
+        void update() {
+            size = length + size(left) + size(right);
+        }
+    }
+
+    /**
+     * Flattened, immutable list of pieces.
+     */
+    private static final class Snapshot implements TextBuffer {
+        final TextBuffer[] buffers;
+        final int[] starts;
+        final int[] offsets;
+        int count;
+
+        Snapshot(int pieces) {
+            buffers = new TextBuffer[pieces];
+            starts = new int[pieces];
+            offsets = new int[pieces + 1];
+        }
+
+        @Override
+        public int length() {
+            return offsets[count];
+        }
+
+        @Override
+        public void getChars(int offset, int length, Segment segment) {
+            // Binary search for the piece holding the first character
+            int low = 0;
+            int high = count - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (offsets[mid] <= offset) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            int available = offsets[low + 1] - offset;
+            if (length <= available || segment.isPartialReturn()) {
+                buffers[low].getChars(starts[low] + offset - offsets[low], Math.min(length, available), segment);
+            } else {
+                char[] copy = new char[length];
+                TextBuffer.copyChars(this, offset, length, copy, 0);
+                segment.array = copy;
+                segment.offset = 0;
+                segment.count = length;
+            }
+        }
+    }
+
+    /**
+     * Undoable insertion or removal of a range of pieces.
+     */
+    private final class PieceEdit extends AbstractUndoableEdit {
+        private final int offset;
+        private final int length;
+        private final boolean insertion;
+
+        // Pieces of the range while its text is out of the content
+        private Piece pieces;
+
+        // Positions that pointed into the range when its text was taken out
+        private Object marks;
+
+        PieceEdit(int offset, int length, boolean insertion, Piece pieces) {
+            this.offset = offset;
+            this.length = length;
+            this.insertion = insertion;
+            this.pieces = pieces;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            if (insertion) {
+                takeOut();
+            } else {
+                putBack();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            if (insertion) {
+                putBack();
+            } else {
+                takeOut();
+            }
+        }
+
+        @Override
+        public void die() {
+            super.die();
+            pieces = null;
+            marks = null;
+        }
+
+        private void takeOut() {
+            marks = positions.capture(offset, length);
+            pieces = detach(offset, length);
+            positions.removeUpdate(offset, length);
+        }
+
+        private void putBack() {
+            attach(offset, pieces);
+            pieces = null;
+            positions.insertUpdate(offset, length);
+            positions.restore(marks, offset, length);
+            marks = null;
+        }
+    }
+}
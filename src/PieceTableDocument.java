@@ -0,0 +1,379 @@
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoableEdit;
+import java.util.Arrays;
+
+/**
+ * Plain text document backed by a {@link PieceTableContent}.
+ * <p>
+ * Lines are kept in a {@link LineIndex} of their start offsets rather than as one element per
+ * line like PlainDocument, and inserted text is scanned for newlines in chunks instead of asking
+ * the content for one contiguous copy, so loading or pasting very large text never materializes
+ * it as a single array, and a line costs four bytes.
+ */
+public class PieceTableDocument extends AbstractDocument {
+    private final PieceTableContent content;
+    private final LineMap lineMap;
+
+    // Buffer the document was loaded from, if any, and how much of it the document holds
+    private TextBuffer original;
+    private int originalLength;
+
+    // Text about to be removed, captured for the undo listeners before it leaves the content
+    private TextBuffer removedText;
+
+    // Offsets just past the newlines found by the last scan, reused from one edit to the next
+    private int[] breaks = new int[16];
+
+    /**
+     * Creates an empty document.
+     */
+    public PieceTableDocument() {
+        this(new PieceTableContent());
+    }
+
+    private PieceTableDocument(PieceTableContent content) {
+        super(content);
+        this.content = content;
+        putProperty(PlainDocument.tabSizeAttribute, 8);
+        lineMap = new LineMap(this);
+    }
+
+    /**
+     * Creates a document whose text is the given buffer. The buffer becomes the read-only
+     * original buffer of the piece table and is never copied.
+     *
+     * @param text The initial text.
+     * @return The new document.
+     */
+    public static PieceTableDocument load(TextBuffer text) {
+        return load(text, IoProgress.NONE);
+    }
+
+    /**
+     * Creates a document whose text is the given buffer, reporting progress while the lines
+     * are indexed. Safe to call off the Event Dispatch Thread, since nobody else can see the
+     * document yet.
+     *
+     * @param text The initial text.
+     * @param progress Receives the number of characters indexed so far.
+     * @return The new document.
+     */
+    public static PieceTableDocument load(TextBuffer text, IoProgress progress) {
+        PieceTableDocument document = new PieceTableDocument();
+        document.writeLock();
+        try {
+            document.content.insertBuffer(0, text);
+            document.original = text;
+            // The buffer may still be growing, so the document holds what it held just now
+            int length = document.content.length() - 1;
+            document.originalLength = length;
+            // The first line starts at 0, and every other one just past a newline
+            document.breaks[0] = 0;
+            int count = document.scanBreaks(text, 0, length, 0, 1, progress);
+            document.lineMap.setIndex(new LineIndex(document.breaks, count, length + 1));
+            document.breaks = new int[16];
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            document.writeUnlock();
+        }
+        return document;
+    }
+
+    /**
+     * Adds what the buffer the document was loaded from has gained since to the end of the
+     * document, for a buffer that was still being read, such as by a {@link DocumentLoader}.
+     * The text is the file's rather than the user's, so document listeners are told about it
+     * but undo listeners are not.
+     */
+    public void extend() {
+        writeLock();
+        try {
+            int from = originalLength;
+            int length = original.length() - from;
+            if (length <= 0) {
+                return;
+            }
+            int offset = getLength();
+            DefaultDocumentEvent event = new DefaultDocumentEvent(offset, length, DocumentEvent.EventType.INSERT);
+            UndoableEdit inserted = content.insertBuffer(offset, original, from, length);
+            if (inserted != null) {
+                event.addEdit(inserted);
+            }
+            originalLength += length;
+            insertUpdate(event, null);
+            event.end();
+            fireInsertUpdate(event);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Captures the current text so that it can be read from another thread.
+     *
+     * @return An immutable copy of the text that shares its storage with the document.
+     */
+    public TextBuffer snapshot() {
+        readLock();
+        try {
+            return content.snapshot();
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Captures a range of the text so that it can be read from another thread.
+     *
+     * @param offset The start of the range.
+     * @param length The length of the range.
+     * @return An immutable copy of the range that shares its storage with the document.
+     * @throws BadLocationException If the range is not inside the document.
+     */
+    public TextBuffer snapshot(int offset, int length) throws BadLocationException {
+        readLock();
+        try {
+            return content.snapshot(offset, length);
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Estimates the heap memory the document holds: its text, pieces and line index.
+     *
+     * @return The estimate in bytes.
+     */
+    public long memoryUsage() {
+        readLock();
+        try {
+            long bytes = content.memoryUsage() + lineMap.getIndex().memoryUsage();
+            return original == null ? bytes : bytes + original.memoryUsage();
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of lines, counting the one after a final newline.
+     *
+     * @return The number of lines.
+     */
+    public int getLineCount() {
+        readLock();
+        try {
+            return lineMap.getIndex().getLineCount();
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Finds the line holding an offset, without making an element for it.
+     *
+     * @param offset The offset.
+     * @return The line, counting from 0.
+     */
+    public int getLineOfOffset(int offset) {
+        readLock();
+        try {
+            return lineMap.getIndex().getLineOfOffset(offset);
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Retrieves the offset at which a line starts, without making an element for it.
+     *
+     * @param line The line, counting from 0.
+     * @return The offset of its first character.
+     */
+    public int getLineStartOffset(int line) {
+        readLock();
+        try {
+            return lineMap.getIndex().getLineStart(line);
+        } finally {
+            readUnlock();
+        }
+    }
+
+    @Override
+    public Element getDefaultRootElement() {
+        return lineMap;
+    }
+
+    @Override
+    public Element getParagraphElement(int pos) {
+        return lineMap.getElement(lineMap.getElementIndex(pos));
+    }
+
+    /**
+     * Adds a line for every newline in the inserted text.
+     */
+    @Override
+    protected void insertUpdate(DefaultDocumentEvent chng, AttributeSet attr) {
+        int offset = chng.getOffset();
+        int length = chng.getLength();
+        int line = lineMap.getIndex().getLineOfOffset(offset);
+        int count;
+        try {
+            count = scanBreaks(content.snapshot(offset, length), 0, length, offset, 0, IoProgress.NONE);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        LineMap.LineEdit edit = lineMap.createEdit(count > 0);
+        edit.replace(line + 1, 0, breaks, count, length);
+        chng.addEdit(edit);
+        super.insertUpdate(chng, attr);
+    }
+
+    /**
+     * Collects the offset just past every newline in a range of a buffer into breaks.
+     *
+     * @param text The buffer to scan.
+     * @param from The start of the range.
+     * @param to The end of the range.
+     * @param base The document offset of the start of the range.
+     * @param count The number of breaks already collected, which are kept.
+     * @param progress Receives the number of characters scanned so far.
+     * @return The number of breaks collected in all.
+     */
+    private int scanBreaks(TextBuffer text, int from, int to, int base, int count, IoProgress progress) {
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        for (int pos = from; pos < to; pos += segment.count) {
+            text.getChars(pos, to - pos, segment);
+            for (int i = 0; i < segment.count; i++) {
+                if (segment.array[segment.offset + i] == '\n') {
+                    if (count == breaks.length) {
+                        breaks = Arrays.copyOf(breaks, count + (count >> 1));
+                    }
+                    breaks[count++] = base + pos - from + i + 1;
+                }
+            }
+            progress.update(pos + segment.count - from, to - from);
+        }
+        return count;
+    }
+
+    /**
+     * Replaces a batch of ranges as one edit. The ranges are rewritten back to front directly
+     * in the piece table, sharing the replacement buffer instead of copying it, and the line
+     * index is updated front to back in one pass. Listeners get a single change event for the span from the
+     * first replaced range to the end of the last one, and undo sees one edit.
+     * <p>
+     * Swing has no event type for a replacement, so the event is a change event: it carries
+     * the line changes for views, and its offset and length give the span as it reads after
+     * the replacement.
+     *
+     * @param replacements The ranges to replace, in document order.
+     */
+    public void replaceAll(Replacements replacements) {
+        int count = replacements.size();
+        if (count == 0) {
+            return;
+        }
+        writeLock();
+        try {
+            int first = replacements.getStart(0);
+            int oldEnd = replacements.getStart(count - 1) + replacements.getLength(count - 1);
+            int change = (int) replacements.getLengthChange();
+
+            DefaultDocumentEvent event = new DefaultDocumentEvent(
+                    first, oldEnd - first + change, DocumentEvent.EventType.CHANGE);
+            TextBuffer oldText = content.snapshot();
+            TextBuffer text = replacements.getText();
+            for (int i = count - 1; i >= 0; i--) {
+                int start = replacements.getStart(i);
+                if (replacements.getLength(i) > 0) {
+                    event.addEdit(content.remove(start, replacements.getLength(i)));
+                }
+                UndoableEdit inserted = content.insertBuffer(start, text, replacements.getTextStart(i), replacements.getTextLength(i));
+                if (inserted != null) {
+                    event.addEdit(inserted);
+                }
+            }
+
+            // Each replacement is found in the index as the text reads after the ones before it
+            LineIndex index = lineMap.getIndex();
+            LineMap.LineEdit lines = lineMap.createEdit(true);
+            long shift = 0;
+            for (int i = 0; i < count; i++) {
+                int start = (int) (replacements.getStart(i) + shift);
+                int length = replacements.getLength(i);
+                int textStart = replacements.getTextStart(i);
+                int textLength = replacements.getTextLength(i);
+                int line0 = index.getLineOfOffset(start);
+                int line1 = index.getLineOfOffset(start + length);
+                int added = scanBreaks(text, textStart, textStart + textLength, start, 0, IoProgress.NONE);
+                lines.replace(line0 + 1, line1 - line0, breaks, added, textLength - length);
+                shift += textLength - length;
+            }
+            event.addEdit(lines);
+
+            event.end();
+            fireChangedUpdate(event);
+            fireUndoableEditUpdate(new UndoableEditEvent(this, new TextEdit(event, replacements, oldText, 0)));
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Joins the lines a removed range spans, before the text is removed.
+     */
+    @Override
+    protected void removeUpdate(DefaultDocumentEvent chng) {
+        int offset = chng.getOffset();
+        int length = chng.getLength();
+        LineIndex index = lineMap.getIndex();
+        int line0 = index.getLineOfOffset(offset);
+        int line1 = index.getLineOfOffset(offset + length);
+        try {
+            removedText = content.snapshot(offset, length);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        LineMap.LineEdit edit = lineMap.createEdit(line1 > line0);
+        edit.replace(line0 + 1, line1 - line0, breaks, 0, -length);
+        chng.addEdit(edit);
+        super.removeUpdate(chng);
+    }
+
+    /**
+     * Hands undo listeners a {@link TextEdit} describing the text the edit changed, in place of
+     * the bare document event.
+     */
+    @Override
+    protected void fireUndoableEditUpdate(UndoableEditEvent e) {
+        if (!(e.getEdit() instanceof TextEdit)) {
+            DocumentEvent change = (DocumentEvent) e.getEdit();
+            TextEdit edit;
+            if (change.getType() == DocumentEvent.EventType.REMOVE) {
+                edit = TextEdit.removal(e.getEdit(), change.getOffset(), removedText);
+                removedText = null;
+            } else {
+                try {
+                    edit = TextEdit.insertion(e.getEdit(), change.getOffset(), content.snapshot(change.getOffset(), change.getLength()));
+                } catch (BadLocationException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+            e = new UndoableEditEvent(this, edit);
+        }
+        super.fireUndoableEditUpdate(e);
+    }
+}
@@ -0,0 +1,286 @@
+import javax.swing.text.Position;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Tracks the Positions handed out by a {@link PieceTableContent} and keeps them in step with edits.
+ * <p>
+ * Marks are kept sorted and stored relative to a virtual gap, the same trick GapContent uses
+ * for its buffer: marks after the gap are stored with the gap length added, so an edit only has to
+ * touch the marks between the previous edit and the current one. Typing in one place costs O(log n)
+ * per keystroke no matter how many positions the document holds.
+ * <p>
+ * New marks are queued and merged into the sorted array in one pass before the next edit, so
+ * creating the positions for thousands of new lines costs one merge rather than one array shift
+ * per position.
+ */
+public class PositionTable {
+    // The gap is purely virtual, so it can be large enough to never run out
+    private static final long GAP_SIZE = 1L << 60;
+
+    private final ReferenceQueue<StickyPosition> queue = new ReferenceQueue<>();
+    private Mark[] marks = new Mark[16];
+    private int count;
+    private int unused;
+
+    // Marks created since the last edit, not yet merged into marks
+    private Mark[] pending = new Mark[16];
+    private int pendingCount;
+
+    private long gapStart = 0;
+    private long gapEnd = GAP_SIZE;
+
+    /**
+     * Creates a position that follows the text at the given offset.
+     *
+     * @param offset The offset of the position.
+     * @return The position.
+     */
+    public synchronized Position createPosition(int offset) {
+        purgeUnused();
+        // Marks are never shared between positions: a mark captured by an edit may later be
+        // restored to a different offset than other marks that happen to sit next to it now
+        StickyPosition position = new StickyPosition();
+        Mark mark = new Mark(position, toIndex(offset));
+        position.mark = mark;
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+        pending[pendingCount++] = mark;
+        return position;
+    }
+
+    /**
+     * Updates the marks for text inserted at the given offset. Marks at the insertion point move
+     * past the new text, except those at offset zero.
+     *
+     * @param offset The insertion offset.
+     * @param length The number of characters inserted.
+     */
+    public synchronized void insertUpdate(int offset, int length) {
+        mergePending();
+        moveGap(offset);
+        if (offset == 0) {
+            // Marks at the very start of the document stay at the start
+            for (int i = 0; i < count && marks[i].index == gapEnd; i++) {
+                marks[i].index = 0;
+            }
+        }
+        gapStart += length;
+    }
+
+    /**
+     * Updates the marks for text removed at the given offset. Marks inside the removed range
+     * collapse onto its start.
+     *
+     * @param offset The removal offset.
+     * @param length The number of characters removed.
+     */
+    public synchronized void removeUpdate(int offset, int length) {
+        mergePending();
+        moveGap(offset);
+        long newGapEnd = gapEnd + length;
+        for (int i = lowerBound(gapEnd); i < count && marks[i].index < newGapEnd; i++) {
+            marks[i].index = newGapEnd;
+        }
+        gapEnd = newGapEnd;
+    }
+
+    /**
+     * Records the marks inside a range so that their exact offsets can be restored when the
+     * text they pointed into comes back through undo or redo.
+     *
+     * @param offset The start of the range.
+     * @param length The length of the range.
+     * @return An opaque record, or null if no marks lie in the range.
+     */
+    public synchronized Object capture(int offset, int length) {
+        mergePending();
+        int from = lowerBound(toIndex(offset));
+        int to = from;
+        while (to < count && marks[to].offset() <= offset + length) {
+            to++;
+        }
+        if (from == to) {
+            return null;
+        }
+        List<Mark> captured = new ArrayList<>(to - from);
+        int[] offsets = new int[to - from];
+        for (int i = from; i < to; i++) {
+            captured.add(marks[i]);
+            offsets[i - from] = marks[i].offset();
+        }
+        return new Captured(captured, offsets);
+    }
+
+    /**
+     * Puts previously captured marks back at the offsets they had when they were captured.
+     *
+     * @param record The record returned by {@link #capture(int, int)}, may be null.
+     * @param offset The start of the range that was captured.
+     * @param length The length of the range that was captured.
+     */
+    public synchronized void restore(Object record, int offset, int length) {
+        mergePending();
+        if (record == null) {
+            return;
+        }
+        // All marks in the range are contiguous before and after the reset, so only that slice needs re-sorting
+        int from = lowerBound(toIndex(offset));
+        int to = from;
+        while (to < count && marks[to].offset() <= offset + length) {
+            to++;
+        }
+        Captured captured = (Captured) record;
+        for (int i = 0; i < captured.marks.size(); i++) {
+            captured.marks.get(i).index = toIndex(captured.offsets[i]);
+        }
+        Arrays.sort(marks, from, to, Comparator.comparingLong(mark -> mark.index));
+    }
+
+    /**
+     * Converts a document offset into the index space used to store marks.
+     */
+    private long toIndex(int offset) {
+        return offset < gapStart ? offset : offset + (gapEnd - gapStart);
+    }
+
+    /**
+     * Moves the virtual gap to the given offset, shifting only the marks in between.
+     */
+    private void moveGap(int offset) {
+        if (offset == gapStart) {
+            return;
+        }
+        long gapLength = gapEnd - gapStart;
+        if (offset < gapStart) {
+            for (int i = lowerBound(offset), end = lowerBound(gapStart); i < end; i++) {
+                marks[i].index += gapLength;
+            }
+        } else {
+            for (int i = lowerBound(gapEnd), end = lowerBound(offset + gapLength); i < end; i++) {
+                marks[i].index -= gapLength;
+            }
+        }
+        gapStart = offset;
+        gapEnd = offset + gapLength;
+    }
+
+    /**
+     * Returns the first mark whose index is at least the given index.
+     */
+    private int lowerBound(long index) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (marks[mid].index < index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Merges the marks created since the last edit into the sorted array. A new mark goes before
+     * existing marks with the same index, like an insertion at its lower bound would.
+     */
+    private void mergePending() {
+        if (pendingCount == 0) {
+            return;
+        }
+        Arrays.sort(pending, 0, pendingCount, Comparator.comparingLong(mark -> mark.index));
+        if (count + pendingCount > marks.length) {
+            marks = Arrays.copyOf(marks, Math.max(marks.length * 2, count + pendingCount));
+        }
+        int i = count - 1;
+        int j = pendingCount - 1;
+        int k = count + pendingCount - 1;
+        while (j >= 0) {
+            if (i >= 0 && marks[i].index >= pending[j].index) {
+                marks[k--] = marks[i--];
+            } else {
+                marks[k--] = pending[j--];
+            }
+        }
+        count += pendingCount;
+        Arrays.fill(pending, 0, pendingCount, null);
+        pendingCount = 0;
+    }
+
+    /**
+     * Drops marks whose positions have been garbage collected once enough of them pile up.
+     */
+    private void purgeUnused() {
+        while (queue.poll() != null) {
+            unused++;
+        }
+        if (unused < 64 || unused < count / 2) {
+            return;
+        }
+        mergePending();
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (marks[i].get() != null) {
+                marks[kept++] = marks[i];
+            }
+        }
+        Arrays.fill(marks, kept, count, null);
+        count = kept;
+        unused = 0;
+    }
+
+    /**
+     * A mark stored in gap space, weakly referring to the position that uses it.
+     */
+    private final class Mark extends WeakReference<StickyPosition> {
+        long index;
+
+        Mark(StickyPosition position, long index) {
+            super(position, queue);
+            this.index = index;
+        }
+
+        int offset() {
+            return (int) (index < gapStart ? index : index - (gapEnd - gapStart));
+        }
+    }
+
+    /**
+     * Position handed out to the document; holds its mark strongly.
+     */
+    private final class StickyPosition implements Position {
+        Mark mark;
+
+        @Override
+        public int getOffset() {
+            synchronized (PositionTable.this) {
+                return mark.offset();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+    }
+
+    /**
+     * Marks and the offsets they had when captured.
+     */
+    private static final class Captured {
+        final List<Mark> marks;
+        final int[] offsets;
+
+        Captured(List<Mark> marks, int[] offsets) {
+            this.marks = marks;
+            this.offsets = offsets;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Rebuilds a document from the journal of a session that did not end cleanly, in the background.
+ */
+public abstract class RecoverTask extends FileTask<PieceTableDocument> {
+    private final Path journal;
+    private final File base;
+
+    /**
+     * Creates a task that replays a journal.
+     *
+     * @param journal The journal to replay.
+     * @param base The file the journaled edits apply to, or null if they were made to a new document.
+     */
+    protected RecoverTask(Path journal, File base) {
+        super("Recovering " + (base == null ? "unsaved document" : base.getName()));
+        this.journal = journal;
+        this.base = base;
+    }
+
+    @Override
+    protected PieceTableDocument doInBackground() throws IOException {
+        PieceTableDocument document = base == null
+                ? new PieceTableDocument()
+                : OpenTask.read(base, step(0, 40), step(40, 70));
+        EditJournal.replay(journal, document, step(70, 100));
+        return document;
+    }
+}
@@ -0,0 +1,67 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads a file that was changed by another program in the background, and works out how the
+ * document shown for it differs, so that only the lines that changed are replaced, as one
+ * edit that can be undone.
+ * <p>
+ * The text the changed lines are replaced with is copied out of the file as it was read, so the
+ * document holds on to those lines only, and never to a buffer the file can still change under.
+ */
+public abstract class ReloadTask extends FileTask<Replacements> {
+    private final File file;
+    private final TextBuffer text;
+    private volatile TextFormat format;
+
+    /**
+     * Creates a task that compares a file with the text of its document.
+     *
+     * @param file The file to read.
+     * @param text The text to compare it with, usually a document snapshot.
+     */
+    protected ReloadTask(File file, TextBuffer text) {
+        super("Reloading " + file.getName());
+        this.file = file;
+        this.text = text;
+    }
+
+    /**
+     * Retrieves the format the file was read in, once the task has succeeded.
+     *
+     * @return The charset and line separator of the file.
+     */
+    public TextFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    protected Replacements doInBackground() throws IOException {
+        PieceTableDocument reloaded = OpenTask.read(file, step(0, 40), step(40, 50));
+        format = TextFormat.of(reloaded);
+        return copyText(TextDiff.diff(text, reloaded.snapshot(), step(50, 100)));
+    }
+
+    /**
+     * Copies the text a batch of replacements inserts into one array of its own.
+     *
+     * @param replacements The replacements, referring to the text they were worked out from.
+     * @return The same replacements, referring to the copy.
+     */
+    static Replacements copyText(Replacements replacements) {
+        int total = 0;
+        for (int i = 0; i < replacements.size(); i++) {
+            total += replacements.getTextLength(i);
+        }
+        char[] chars = new char[total];
+        Replacements copied = new Replacements(new CharArrayBuffer(chars));
+        int position = 0;
+        for (int i = 0; i < replacements.size(); i++) {
+            int length = replacements.getTextLength(i);
+            TextBuffer.copyChars(replacements.getText(), replacements.getTextStart(i), length, chars, position);
+            copied.add(replacements.getStart(i), replacements.getLength(i), position, length);
+            position += length;
+        }
+        return copied;
+    }
+}
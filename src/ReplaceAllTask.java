@@ -0,0 +1,81 @@
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+
+/**
+ * Finds every match in a snapshot of a document in the background and works out its
+ * replacement, so that the document only has to apply the finished batch on the Event
+ * Dispatch Thread.
+ */
+public abstract class ReplaceAllTask extends FileTask<Replacements> {
+    private final TextBuffer text;
+    private final Replacer replacer;
+    private final int[] regions;
+
+    // Set when the document is edited while the matches are being found
+    private volatile boolean documentChanged;
+
+    /**
+     * Creates a task over the current text of a document.
+     *
+     * @param document The document to search. Must be called on the Event Dispatch Thread.
+     * @param find The text or regular expression to find; must not be empty.
+     * @param replacement The replacement text; for a regular expression it may refer to
+     *                    groups with $1 or ${name}, and \ escapes the next character.
+     * @param matchCase Whether upper and lower case letters must match exactly.
+     * @param regex Whether the text to find is a regular expression.
+     * @param regions The regions of the document that may hold a literal match, as given by
+     *                {@link SearchEngine#getCandidateRegions(String)}, or null to scan it all.
+     * @throws java.util.regex.PatternSyntaxException If the regular expression is invalid.
+     */
+    protected ReplaceAllTask(PieceTableDocument document, String find, String replacement, boolean matchCase, boolean regex, int[] regions) {
+        super("Replacing", Diagnostics.Operation.REPLACE, find);
+        this.text = document.snapshot();
+        this.replacer = new Replacer(find, replacement, matchCase, regex);
+        this.regions = regions;
+
+        // Watch the document until the task is over; matches found in a stale snapshot must not be applied
+        DocumentListener listener = new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                documentChanged = true;
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                documentChanged = true;
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                documentChanged = true;
+            }
+        };
+        document.addDocumentListener(listener);
+        addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == SwingWorker.StateValue.DONE) {
+                    document.removeDocumentListener(listener);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns whether the document was edited after the task took its snapshot, in which case
+     * the replacements no longer line up with the text.
+     *
+     * @return True if the document changed.
+     */
+    public boolean isDocumentChanged() {
+        return documentChanged;
+    }
+
+    @Override
+    protected Replacements doInBackground() {
+        return replacer.findAll(text, regions, this);
+    }
+}
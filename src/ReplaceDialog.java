@@ -0,0 +1,98 @@
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * ReplaceDialog class extends JDialog to ask what to replace throughout the document.
+ */
+public class ReplaceDialog extends JDialog {
+    // Reference to the GUI instance whose document is edited
+    private GUI source;
+
+    // Components for the replace settings
+    private JTextField findField, replaceField;
+    private JCheckBox matchCaseCheckBox, regexCheckBox;
+
+    /**
+     * Constructor to initialize the ReplaceDialog.
+     *
+     * @param source The GUI instance that launched this dialog.
+     */
+    public ReplaceDialog(GUI source) {
+        super(source);
+        this.source = source;
+        setTitle("Replace");
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        setSize(400, 170);
+        setLocationRelativeTo(source);
+        setModal(true);
+
+        // Use absolute positioning like the other dialogs
+        setLayout(null);
+
+        addDialogComponents();
+    }
+
+    /**
+     * Adds all components to the dialog.
+     */
+    private void addDialogComponents() {
+        JLabel findLabel = new JLabel("Find what:");
+        findLabel.setBounds(10, 10, 80, 25);
+        add(findLabel);
+
+        findField = new JTextField();
+        findField.setBounds(90, 10, 180, 25);
+        add(findField);
+
+        JLabel replaceLabel = new JLabel("Replace with:");
+        replaceLabel.setBounds(10, 45, 80, 25);
+        add(replaceLabel);
+
+        replaceField = new JTextField();
+        replaceField.setBounds(90, 45, 180, 25);
+        replaceField.setToolTipText("With a regular expression, $1 or ${name} inserts a group");
+        add(replaceField);
+
+        matchCaseCheckBox = new JCheckBox("Match case");
+        matchCaseCheckBox.setBounds(10, 85, 110, 25);
+        add(matchCaseCheckBox);
+
+        regexCheckBox = new JCheckBox("Regular expression");
+        regexCheckBox.setBounds(120, 85, 150, 25);
+        add(regexCheckBox);
+
+        // Replace All button - replaces every match in one undoable edit
+        JButton replaceAllButton = new JButton("Replace All");
+        replaceAllButton.setBounds(280, 10, 100, 25);
+        replaceAllButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (findField.getText().isEmpty()) return;
+
+                try {
+                    source.replaceAll(findField.getText(), replaceField.getText(),
+                            matchCaseCheckBox.isSelected(), regexCheckBox.isSelected());
+                } catch (PatternSyntaxException ex) {
+                    JOptionPane.showMessageDialog(ReplaceDialog.this, "Invalid regular expression: " + ex.getDescription());
+                    return;
+                }
+                ReplaceDialog.this.dispose();
+            }
+        });
+        add(replaceAllButton);
+        getRootPane().setDefaultButton(replaceAllButton);
+
+        // Cancel button - closes the dialog without replacing anything
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.setBounds(280, 45, 100, 25);
+        cancelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                ReplaceDialog.this.dispose();
+            }
+        });
+        add(cancelButton);
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.Arrays;
+
+/**
+ * A batch of replacements to apply to a document in one edit: the ranges to replace, in order,
+ * and for each one the range of a shared buffer holding its new text.
+ */
+public class Replacements {
+    private final TextBuffer text;
+    private int[] starts = new int[64];
+    private int[] lengths = new int[64];
+    private int[] textStarts = new int[64];
+    private int[] textLengths = new int[64];
+    private int count;
+    private long lengthChange;
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param text The buffer holding the replacement text of every range.
+     */
+    public Replacements(TextBuffer text) {
+        this.text = text;
+    }
+
+    /**
+     * Adds a replacement. Ranges must be added in document order and must not overlap.
+     *
+     * @param start The start of the range to replace.
+     * @param length The length of the range to replace.
+     * @param textStart The offset of the new text in the text buffer.
+     * @param textLength The length of the new text.
+     */
+    public void add(int start, int length, int textStart, int textLength) {
+        if (count == starts.length) {
+            int capacity = count * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            textStarts = Arrays.copyOf(textStarts, capacity);
+            textLengths = Arrays.copyOf(textLengths, capacity);
+        }
+        starts[count] = start;
+        lengths[count] = length;
+        textStarts[count] = textStart;
+        textLengths[count] = textLength;
+        count++;
+        lengthChange += textLength - length;
+    }
+
+    /**
+     * Retrieves the number of replacements.
+     *
+     * @return The number of ranges to replace.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Retrieves the buffer holding the replacement text.
+     *
+     * @return The text buffer.
+     */
+    public TextBuffer getText() {
+        return text;
+    }
+
+    /**
+     * Retrieves the start of a range to replace.
+     *
+     * @param i The index of the replacement.
+     * @return The start of a range to replace.
+     */
+    public int getStart(int i) {
+        return starts[i];
+    }
+
+    /**
+     * Retrieves the length of a range to replace.
+     *
+     * @param i The index of the replacement.
+     * @return The length of a range to replace.
+     */
+    public int getLength(int i) {
+        return lengths[i];
+    }
+
+    /**
+     * Retrieves the offset of the new text of a range in the text buffer.
+     *
+     * @param i The index of the replacement.
+     * @return The offset of the new text of a range in the text buffer.
+     */
+    public int getTextStart(int i) {
+        return textStarts[i];
+    }
+
+    /**
+     * Retrieves the length of the new text of a range.
+     *
+     * @param i The index of the replacement.
+     * @return The length of the new text of a range.
+     */
+    public int getTextLength(int i) {
+        return textLengths[i];
+    }
+
+    /**
+     * Retrieves how much the replacements change the length of the document.
+     *
+     * @return The new length minus the old length.
+     */
+    public long getLengthChange() {
+        return lengthChange;
+    }
+
+    /**
+     * Maps an offset in the text before the replacements to the matching offset after them.
+     * An offset inside a replaced range maps to the end of its new text.
+     *
+     * @param offset The offset before the replacements.
+     * @return The offset after the replacements.
+     */
+    public int mapOffset(int offset) {
+        long shift = 0;
+        for (int i = 0; i < count && starts[i] < offset; i++) {
+            if (offset < starts[i] + lengths[i]) {
+                return (int) (starts[i] + shift + textLengths[i]);
+            }
+            shift += textLengths[i] - lengths[i];
+        }
+        return (int) (offset + shift);
+    }
+}
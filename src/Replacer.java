@@ -0,0 +1,128 @@
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Works out every replacement of a literal or regular expression in a text, for Replace All in
+ * the editor and for {@link BatchReplace}. Safe to use from several threads at once.
+ */
+public class Replacer {
+    private final String find;
+    private final String replacement;
+    private final boolean matchCase;
+    private final Pattern pattern;
+
+    /**
+     * Creates a replacer.
+     *
+     * @param find The text or regular expression to find; must not be empty.
+     * @param replacement The replacement text; for a regular expression it may refer to
+     *                    groups with $1 or ${name}, and \ escapes the next character.
+     * @param matchCase Whether upper and lower case letters must match exactly.
+     * @param regex Whether the text to find is a regular expression.
+     * @throws java.util.regex.PatternSyntaxException If the regular expression is invalid.
+     */
+    public Replacer(String find, String replacement, boolean matchCase, boolean regex) {
+        this.find = find;
+        this.replacement = replacement;
+        this.matchCase = matchCase;
+        this.pattern = regex
+                ? Pattern.compile(find, Pattern.MULTILINE | (matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE))
+                : null;
+    }
+
+    /**
+     * Finds every match in a text and works out its replacement.
+     *
+     * @param text The text to search.
+     * @param regions The regions that may hold a literal match, as given by
+     *                {@link SearchEngine#getCandidateRegions(String)}, or null to scan it all.
+     *                A regular expression always scans it all.
+     * @param progress Receives how far the search has got, and may cancel it.
+     * @return The replacements, in order.
+     * @throws IllegalArgumentException If the replacement refers to a group wrongly.
+     */
+    public Replacements findAll(TextBuffer text, int[] regions, IoProgress progress) {
+        if (pattern != null) {
+            return replaceRegex(text, progress);
+        }
+        return replaceLiteral(text, regions != null ? regions : new int[]{0, text.length()}, progress);
+    }
+
+    /**
+     * Every match of a literal gets the same text, so one shared copy of it backs them all.
+     */
+    private Replacements replaceLiteral(TextBuffer text, int[] regions, IoProgress progress) {
+        Replacements replacements = new Replacements(new CharArrayBuffer(replacement.toCharArray()));
+        TextSearcher searcher = new TextSearcher(find, matchCase);
+        searcher.scan(text, regions, progress, new TextSearcher.MatchVisitor() {
+            @Override
+            public boolean matchFound(int start) {
+                replacements.add(start, searcher.length(), 0, replacement.length());
+                return true;
+            }
+        });
+        return replacements;
+    }
+
+    /**
+     * Runs the expression over the text and appends each expanded replacement to one buffer.
+     * The text reports progress as it is read, so a scan that finds nothing for a long time can
+     * still be cancelled.
+     */
+    private Replacements replaceRegex(TextBuffer text, IoProgress progress) {
+        AppendBuffer expanded = new AppendBuffer();
+        Replacements replacements = new Replacements(expanded);
+        Matcher matcher = pattern.matcher(new TextBufferSequence(text, progress));
+        StringBuilder out = new StringBuilder();
+        while (matcher.find()) {
+            out.setLength(0);
+            expand(matcher, out);
+            int start = expanded.append(out.toString());
+            replacements.add(matcher.start(), matcher.end() - matcher.start(), start, out.length());
+        }
+        return replacements;
+    }
+
+    /**
+     * Expands group references in the replacement the way Matcher.appendReplacement does,
+     * without also copying the text between matches.
+     */
+    private void expand(Matcher matcher, StringBuilder out) {
+        for (int i = 0; i < replacement.length(); i++) {
+            char c = replacement.charAt(i);
+            if (c == '\\' && i + 1 < replacement.length()) {
+                out.append(replacement.charAt(++i));
+            } else if (c == '$' && i + 1 < replacement.length() && replacement.charAt(i + 1) == '{') {
+                int close = replacement.indexOf('}', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Named group is missing a closing brace");
+                }
+                appendGroup(out, matcher.group(replacement.substring(i + 2, close)));
+                i = close;
+            } else if (c == '$' && i + 1 < replacement.length() && Character.isDigit(replacement.charAt(i + 1))) {
+                // Take as many digits as still make a valid group number
+                int group = replacement.charAt(++i) - '0';
+                while (i + 1 < replacement.length() && Character.isDigit(replacement.charAt(i + 1))) {
+                    int longer = group * 10 + replacement.charAt(i + 1) - '0';
+                    if (longer > matcher.groupCount()) {
+                        break;
+                    }
+                    group = longer;
+                    i++;
+                }
+                if (group > matcher.groupCount()) {
+                    throw new IllegalArgumentException("No group " + group);
+                }
+                appendGroup(out, matcher.group(group));
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    private static void appendGroup(StringBuilder out, String group) {
+        if (group != null) {
+            out.append(group);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+import java.util.Arrays;
+
+/**
+ * Number of screen rows each line of a document wraps into, for a view that wraps lines.
+ * <p>
+ * A line's count is packed into one int together with the layout generation it was computed
+ * for, so that a new wrap width or font makes every count stale at once without touching any of
+ * them. Stale counts still serve as estimates, which keeps the scroll position steady while they
+ * are recomputed. Row positions come from per-block sums of the counts, which are brought up to
+ * date lazily from the first block an edit touched, so an edit near the top of a long document
+ * only pays for the blocks a lookup actually reaches.
+ */
+public class RowIndex {
+    // Lines per block of summed row counts
+    private static final int BLOCK_SIZE = 1024;
+
+    // A count takes the low 24 bits, the generation it was computed for the high 8
+    private static final int ROW_MASK = 0xFFFFFF;
+    private static final int GENERATION_SHIFT = 24;
+
+    private int[] counts;
+    private int lineCount;
+    private int generation;
+    private long rowCount;
+
+    // Rows before the start of each block, valid up to and including validBlocks
+    private long[] blockStarts;
+    private int validBlocks;
+
+    /**
+     * Creates an index in which every line is a single stale row.
+     *
+     * @param lineCount The number of lines.
+     */
+    public RowIndex(int lineCount) {
+        counts = new int[Math.max(lineCount, 16)];
+        this.lineCount = lineCount;
+        // Generation 0 is never current, so every line starts out stale
+        generation = 1;
+        Arrays.fill(counts, 0, lineCount, 1);
+        rowCount = lineCount;
+        blockStarts = new long[lineCount / BLOCK_SIZE + 2];
+    }
+
+    /**
+     * Retrieves the number of lines.
+     *
+     * @return The number of lines.
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Retrieves the number of rows of all lines together.
+     *
+     * @return The number of rows.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Retrieves the number of rows of a line.
+     *
+     * @param line The line.
+     * @return Its row count, at least one.
+     */
+    public int getRows(int line) {
+        return counts[line] & ROW_MASK;
+    }
+
+    /**
+     * Returns whether the count of a line was computed for an earlier layout, or only estimated.
+     *
+     * @param line The line.
+     * @return True if the count needs computing again.
+     */
+    public boolean isStale(int line) {
+        return counts[line] >>> GENERATION_SHIFT != generation;
+    }
+
+    /**
+     * Sets the number of rows of a line.
+     *
+     * @param line The line.
+     * @param rows Its row count, at least one.
+     * @param exact Whether the count was computed for the current layout, rather than estimated.
+     */
+    public void setRows(int line, int rows, boolean exact) {
+        rows = Math.max(1, Math.min(rows, ROW_MASK));
+        int change = rows - getRows(line);
+        counts[line] = rows | (exact ? generation : 0) << GENERATION_SHIFT;
+        if (change != 0) {
+            rowCount += change;
+            // Only the sums already brought up to date need the change too
+            for (int block = line / BLOCK_SIZE + 1; block <= validBlocks; block++) {
+                blockStarts[block] += change;
+            }
+        }
+    }
+
+    /**
+     * Makes every count stale, for a new wrap width or font. The counts stay as estimates, those
+     * of lines that wrap scaled by how much more or less text a row now holds.
+     *
+     * @param scale The factor to scale the counts of lines that wrap into several rows by.
+     */
+    public void invalidateAll(double scale) {
+        generation = (generation + 1) & 0xFF;
+        boolean wrapped = generation == 0;
+        if (wrapped) {
+            // The generation wrapped around, so old counts could pass for current ones
+            generation = 1;
+        }
+        if (!wrapped && scale == 1) {
+            return;
+        }
+        long total = 0;
+        for (int i = 0; i < lineCount; i++) {
+            int rows = counts[i] & ROW_MASK;
+            if (rows > 1 && scale != 1) {
+                rows = (int) Math.max(1, Math.min(Math.round(rows * scale), ROW_MASK));
+                counts[i] = rows | (counts[i] & ~ROW_MASK);
+            }
+            if (wrapped) {
+                counts[i] = rows;
+            }
+            total += rows;
+        }
+        rowCount = total;
+        validBlocks = 0;
+    }
+
+    /**
+     * Replaces the counts of a run of lines after an edit. The new lines start out as single
+     * stale rows.
+     *
+     * @param line The first line of the run.
+     * @param removeCount The number of lines the edit replaced.
+     * @param addCount The number of lines that replace them.
+     */
+    public void replace(int line, int removeCount, int addCount) {
+        if (removeCount == addCount) {
+            // Typing within a line moves no other line, so the later lines and sums stay put
+            for (int i = 0; i < addCount; i++) {
+                setRows(line + i, 1, false);
+            }
+            return;
+        }
+        for (int i = 0; i < removeCount; i++) {
+            rowCount -= getRows(line + i);
+        }
+        int tail = lineCount - line - removeCount;
+        int newCount = lineCount - removeCount + addCount;
+        if (newCount > counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(newCount, counts.length + counts.length / 2));
+        }
+        System.arraycopy(counts, line + removeCount, counts, line + addCount, tail);
+        Arrays.fill(counts, line, line + addCount, 1);
+        rowCount += addCount;
+        lineCount = newCount;
+
+        if (blockStarts.length < lineCount / BLOCK_SIZE + 2) {
+            blockStarts = Arrays.copyOf(blockStarts, lineCount / BLOCK_SIZE + 2 + blockStarts.length / 2);
+        }
+        // Every later block now holds different lines
+        validBlocks = Math.min(validBlocks, line / BLOCK_SIZE);
+    }
+
+    /**
+     * Finds the row a line starts on.
+     *
+     * @param line The line.
+     * @return The number of rows of the lines before it.
+     */
+    public long getRowOfLine(int line) {
+        int block = line / BLOCK_SIZE;
+        ensureValid(block);
+        long row = blockStarts[block];
+        for (int i = block * BLOCK_SIZE; i < line; i++) {
+            row += counts[i] & ROW_MASK;
+        }
+        return row;
+    }
+
+    /**
+     * Finds the line a row belongs to.
+     *
+     * @param row The row.
+     * @return The line holding it, or the last line for a row past the end.
+     */
+    public int getLineOfRow(long row) {
+        int lastBlock = (lineCount - 1) / BLOCK_SIZE;
+        // Bring the sums up to date only as far as the row
+        while (validBlocks < lastBlock && blockStarts[validBlocks] <= row) {
+            ensureValid(validBlocks + 1);
+        }
+        int low = 0;
+        int high = validBlocks;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (blockStarts[mid] <= row) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        long start = blockStarts[low];
+        int end = Math.min(lineCount, (low + 1) * BLOCK_SIZE);
+        for (int line = low * BLOCK_SIZE; line < end; line++) {
+            start += counts[line] & ROW_MASK;
+            if (start > row) {
+                return line;
+            }
+        }
+        return lineCount - 1;
+    }
+
+    /**
+     * Finds the first stale line at or after a line.
+     *
+     * @param from The line to start at.
+     * @return The stale line, or -1 if every line from there on is up to date.
+     */
+    public int findStale(int from) {
+        for (int line = from; line < lineCount; line++) {
+            if (counts[line] >>> GENERATION_SHIFT != generation) {
+                return line;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Brings the block sums up to date as far as a block.
+     */
+    private void ensureValid(int block) {
+        for (; validBlocks < block; validBlocks++) {
+            long sum = blockStarts[validBlocks];
+            int end = Math.min(lineCount, (validBlocks + 1) * BLOCK_SIZE);
+            for (int i = validBlocks * BLOCK_SIZE; i < end; i++) {
+                sum += counts[i] & ROW_MASK;
+            }
+            blockStarts[validBlocks + 1] = sum;
+        }
+    }
+
+    /**
+     * Estimates the memory the index holds.
+     *
+     * @return The size of its arrays in bytes.
+     */
+    public long memoryUsage() {
+        return (long) counts.length * Integer.BYTES + (long) blockStarts.length * Long.BYTES;
+    }
+}
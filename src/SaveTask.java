@@ -0,0 +1,97 @@
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes a snapshot of a document to a file in the background.
+ * <p>
+ * A save cancelled once the file has been replaced still went through, so it ends in
+ * {@link #succeeded(Object)}; one cancelled before that ends in {@link #abandoned()}. Either is
+ * only called once the background work has stopped.
+ */
+public abstract class SaveTask extends FileTask<Void> {
+    /**
+     * Property fired, on the Event Dispatch Thread, once the background work has stopped, however
+     * it ended.
+     */
+    public static final String FINISHED = "finished";
+
+    private final File file;
+    private final TextBuffer text;
+    private final TextFormat format;
+    private final boolean sync;
+
+    // Whether the file has been replaced with the text
+    private volatile boolean replaced;
+
+    // Whether the background work has stopped, and whether a cancellation waits for it to
+    private boolean stopped;
+    private boolean cancelPending;
+
+    /**
+     * Creates a task that saves text to the given file.
+     *
+     * @param file The file to write.
+     * @param text The text to write, usually a document snapshot.
+     * @param format The charset and line separator to write the text with.
+     * @param sync Whether to force the data to disk before replacing the file.
+     */
+    protected SaveTask(File file, TextBuffer text, TextFormat format, boolean sync) {
+        super("Saving " + file.getName(), Diagnostics.Operation.SAVE, file.getPath());
+        this.file = file;
+        this.text = text;
+        this.format = format;
+        this.sync = sync;
+    }
+
+    @Override
+    protected Void doInBackground() throws IOException {
+        try {
+            new AtomicSaver(format, sync).save(text, file.toPath(), this);
+            replaced = true;
+        } finally {
+            boolean settle;
+            synchronized (this) {
+                stopped = true;
+                settle = cancelPending;
+            }
+            if (settle) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        settleCancel();
+                    }
+                });
+            }
+            firePropertyChange(FINISHED, false, true);
+        }
+        return null;
+    }
+
+    @Override
+    protected final void cancelled() {
+        synchronized (this) {
+            if (!stopped) {
+                // The file may yet be replaced; settled once the background work stops
+                cancelPending = true;
+                return;
+            }
+        }
+        settleCancel();
+    }
+
+    private void settleCancel() {
+        if (replaced) {
+            succeeded(null);
+        } else {
+            abandoned();
+        }
+    }
+
+    /**
+     * Called on the Event Dispatch Thread when the save was cancelled before the file was
+     * replaced, which is left as it was.
+     */
+    protected void abandoned() {
+    }
+}
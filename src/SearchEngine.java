@@ -0,0 +1,484 @@
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds text in the document shown by the editor.
+ * <p>
+ * Find next and previous scan the document from the caret with a {@link TextSearcher}. Meanwhile the
+ * total number of matches is counted on a background thread over a snapshot, and the offsets found
+ * are kept; while they are current, finding the next or previous match is a binary search.
+ * Edits throw the offsets away and the count is started again once typing pauses.
+ * <p>
+ * Large documents also get a {@link TrigramIndex}, built in the background after the document is
+ * installed and kept up to date from its events, so that searches only scan the regions that can
+ * hold a match. Small documents are scanned directly, which is already fast.
+ */
+public class SearchEngine implements DocumentListener {
+    // Keeping more offsets than this is not worth the memory; searches then scan instead
+    private static final int MAX_KEPT_MATCHES = 1 << 22;
+    private static final int RECOUNT_DELAY = 300;
+
+    // Documents shorter than this scan in a few milliseconds and are not worth indexing
+    private static final int MIN_INDEXED_LENGTH = 1 << 23;
+    private static final long INDEX_BUDGET = 64L << 20;
+    private static final int REINDEX_DELAY = 2000;
+
+    private PieceTableDocument document;
+    private TextSearcher searcher;
+    private String query;
+    private final List<ChangeListener> listeners = new ArrayList<>();
+
+    // Offsets of all matches, valid only when the count is complete and the document unchanged since
+    private int[] matches;
+    private int matchCount = -1;
+    private boolean matchesKept;
+    private CountTask countTask;
+    private int countProgress;
+    private final Timer recountTimer;
+
+    // Index of the document, when it is large enough to have one and the index is up to date
+    private TrigramIndex index;
+    private IndexTask indexTask;
+    private final Timer reindexTimer;
+
+    /**
+     * Constructor to initialize the search engine.
+     */
+    public SearchEngine() {
+        recountTimer = new Timer(RECOUNT_DELAY, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startCount();
+            }
+        });
+        recountTimer.setRepeats(false);
+
+        reindexTimer = new Timer(REINDEX_DELAY, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startIndex();
+            }
+        });
+        reindexTimer.setRepeats(false);
+    }
+
+    /**
+     * Switches the engine to another document.
+     *
+     * @param document The document to search.
+     */
+    public void setDocument(PieceTableDocument document) {
+        if (this.document != null) {
+            this.document.removeDocumentListener(this);
+        }
+        this.document = document;
+        document.addDocumentListener(this);
+        startIndex();
+        startCount();
+    }
+
+    /**
+     * Sets the text to find. Changing it starts a new background count.
+     *
+     * @param text The text to find, or an empty string to clear the search.
+     * @param matchCase Whether upper and lower case letters must match exactly.
+     */
+    public void setQuery(String text, boolean matchCase) {
+        if (text.isEmpty()) {
+            if (searcher != null) {
+                searcher = null;
+                startCount();
+            }
+            return;
+        }
+        if (searcher != null && searcher.isMatchCase() == matchCase && text.equals(query)) {
+            return;
+        }
+        searcher = new TextSearcher(text, matchCase);
+        query = text;
+        startCount();
+    }
+
+    /**
+     * Returns whether there is any text to find.
+     *
+     * @return True if a query is set.
+     */
+    public boolean hasQuery() {
+        return searcher != null;
+    }
+
+    /**
+     * Retrieves the length of the text being found.
+     *
+     * @return The number of characters a match spans.
+     */
+    public int getMatchLength() {
+        return searcher == null ? 0 : searcher.length();
+    }
+
+    /**
+     * Finds the first match at or after an offset.
+     *
+     * @param from The offset to search from, usually the end of the selection.
+     * @param wrap Whether to continue from the start of the document when nothing is found.
+     * @return The start of the match, or -1 if there is none.
+     */
+    public int findNext(int from, boolean wrap) {
+        if (searcher == null) {
+            return -1;
+        }
+        if (matchesKept) {
+            int i = firstMatchAtOrAfter(from);
+            if (i < matchCount) {
+                return matches[i];
+            }
+            return wrap && matchCount > 0 ? matches[0] : -1;
+        }
+
+        TextBuffer text = document.snapshot();
+        int[] regions = searchRegions(text);
+        int found = indexOf(text, regions, from, text.length());
+        if (found < 0 && wrap) {
+            found = indexOf(text, regions, 0, Math.min(text.length(), from + searcher.length() - 1));
+        }
+        return found;
+    }
+
+    /**
+     * Finds the last match that starts before an offset.
+     *
+     * @param before The offset to search back from, usually the start of the selection.
+     * @param wrap Whether to continue from the end of the document when nothing is found.
+     * @return The start of the match, or -1 if there is none.
+     */
+    public int findPrevious(int before, boolean wrap) {
+        if (searcher == null) {
+            return -1;
+        }
+        if (matchesKept) {
+            int i = firstMatchAtOrAfter(before) - 1;
+            if (i >= 0) {
+                return matches[i];
+            }
+            return wrap && matchCount > 0 ? matches[matchCount - 1] : -1;
+        }
+
+        TextBuffer text = document.snapshot();
+        int[] regions = searchRegions(text);
+        int found = lastIndexOf(text, regions, 0, Math.min(text.length(), before + searcher.length() - 1));
+        if (found < 0 && wrap) {
+            found = lastIndexOf(text, regions, 0, text.length());
+        }
+        return found;
+    }
+
+    /**
+     * Returns the regions a search has to scan: the candidates from the index when there is one,
+     * otherwise the whole text.
+     */
+    private int[] searchRegions(TextBuffer text) {
+        int[] regions = getCandidateRegions(query);
+        return regions != null ? regions : new int[]{0, text.length()};
+    }
+
+    /**
+     * Works out which regions of the document may hold a match, using the index.
+     *
+     * @param text The text to find.
+     * @return Start and end offsets of the regions, or null if the whole document must be scanned.
+     */
+    public int[] getCandidateRegions(String text) {
+        return index == null ? null : index.candidateRegions(text);
+    }
+
+    /**
+     * Finds the first match in a range that lies inside one of the regions.
+     */
+    private int indexOf(TextBuffer text, int[] regions, int from, int to) {
+        for (int i = 0; i < regions.length; i += 2) {
+            int start = Math.max(from, regions[i]);
+            int end = Math.min(to, regions[i + 1]);
+            if (start < end) {
+                int found = searcher.indexOf(text, start, end);
+                if (found >= 0) {
+                    return found;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the last match in a range that lies inside one of the regions.
+     */
+    private int lastIndexOf(TextBuffer text, int[] regions, int from, int to) {
+        for (int i = regions.length - 2; i >= 0; i -= 2) {
+            int start = Math.max(from, regions[i]);
+            int end = Math.min(to, regions[i + 1]);
+            if (start < end) {
+                int found = searcher.lastIndexOf(text, start, end);
+                if (found >= 0) {
+                    return found;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the total number of matches.
+     *
+     * @return The number of matches, or -1 while they are still being counted.
+     */
+    public int getMatchCount() {
+        return matchCount;
+    }
+
+    /**
+     * Retrieves how far the background count has got.
+     *
+     * @return The percentage of the document counted so far.
+     */
+    public int getCountProgress() {
+        return countProgress;
+    }
+
+    /**
+     * Retrieves the position of a match among all matches, when the offsets are known.
+     *
+     * @param start The start of the match.
+     * @return The one-based number of the match, or 0 if it is not known.
+     */
+    public int getMatchNumber(int start) {
+        if (!matchesKept) {
+            return 0;
+        }
+        int i = firstMatchAtOrAfter(start);
+        return i < matchCount && matches[i] == start ? i + 1 : 0;
+    }
+
+    /**
+     * Registers a listener told whenever the match count changes.
+     *
+     * @param listener The listener to add.
+     */
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addChangeListener(ChangeListener)}.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireStateChanged() {
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener : new ArrayList<>(listeners)) {
+            listener.stateChanged(event);
+        }
+    }
+
+    private int firstMatchAtOrAfter(int offset) {
+        int i = Arrays.binarySearch(matches, 0, matchCount, offset);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        indexChanged(index != null && index.insertUpdate(e.getDocument(), e.getOffset(), e.getLength()));
+        documentChanged();
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        indexChanged(index != null && index.removeUpdate(e.getDocument(), e.getOffset(), e.getLength()));
+        documentChanged();
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Replace All rewrites text through a single change event, too much to fold into the index
+        indexChanged(false);
+        documentChanged();
+    }
+
+    /**
+     * Drops an index that could not follow an edit, along with any build over older text, and
+     * schedules a fresh build once the edits pause.
+     */
+    private void indexChanged(boolean indexCurrent) {
+        if (indexCurrent) {
+            return;
+        }
+        index = null;
+        if (indexTask != null) {
+            indexTask.cancel(true);
+            indexTask = null;
+        }
+        if (document.getLength() >= MIN_INDEXED_LENGTH) {
+            reindexTimer.restart();
+        } else {
+            reindexTimer.stop();
+        }
+    }
+
+    /**
+     * Builds the index over a snapshot of the document, if it is large enough to need one.
+     */
+    private void startIndex() {
+        reindexTimer.stop();
+        index = null;
+        if (indexTask != null) {
+            indexTask.cancel(true);
+            indexTask = null;
+        }
+        if (document.getLength() >= MIN_INDEXED_LENGTH) {
+            indexTask = new IndexTask(document.snapshot());
+            indexTask.execute();
+        }
+    }
+
+    /**
+     * Forgets the offsets found so far and schedules a new count once the edits pause.
+     */
+    private void documentChanged() {
+        if (searcher == null) {
+            return;
+        }
+        cancelCount();
+        matchCount = -1;
+        countProgress = 0;
+        recountTimer.restart();
+        fireStateChanged();
+    }
+
+    private void cancelCount() {
+        if (countTask != null) {
+            countTask.cancel(true);
+            countTask = null;
+        }
+        matches = null;
+        matchesKept = false;
+    }
+
+    /**
+     * Counts the matches of the current query over a snapshot of the document.
+     */
+    private void startCount() {
+        recountTimer.stop();
+        cancelCount();
+        countProgress = 0;
+        if (searcher == null || document == null) {
+            matchCount = -1;
+            fireStateChanged();
+            return;
+        }
+        matchCount = -1;
+        TextBuffer text = document.snapshot();
+        CountTask task = new CountTask(searcher, text, searchRegions(text));
+        countTask = task;
+        task.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (countTask == task && "progress".equals(evt.getPropertyName())) {
+                    countProgress = (Integer) evt.getNewValue();
+                    fireStateChanged();
+                }
+            }
+        });
+        task.execute();
+        fireStateChanged();
+    }
+
+    /**
+     * Background scan that counts matches and keeps their offsets while there are not too many.
+     */
+    private class CountTask extends FileTask<Void> {
+        private final TextSearcher searcher;
+        private final TextBuffer text;
+        private final int[] regions;
+        private int[] found = new int[64];
+        private int count;
+
+        CountTask(TextSearcher searcher, TextBuffer text, int[] regions) {
+            super("Counting matches");
+            this.searcher = searcher;
+            this.text = text;
+            this.regions = regions;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            searcher.scan(text, regions, this, new TextSearcher.MatchVisitor() {
+                @Override
+                public boolean matchFound(int start) {
+                    if (found != null) {
+                        if (count == MAX_KEPT_MATCHES) {
+                            found = null;
+                        } else {
+                            if (count == found.length) {
+                                found = Arrays.copyOf(found, count * 2);
+                            }
+                            found[count] = start;
+                        }
+                    }
+                    count++;
+                    return true;
+                }
+            });
+            return null;
+        }
+
+        @Override
+        protected void succeeded(Void result) {
+            if (countTask != this) return;
+
+            countTask = null;
+            matches = found;
+            matchesKept = found != null;
+            matchCount = count;
+            countProgress = 100;
+            fireStateChanged();
+        }
+    }
+
+    /**
+     * Background build of the index over a snapshot.
+     */
+    private class IndexTask extends FileTask<TrigramIndex> {
+        private final TextBuffer text;
+
+        IndexTask(TextBuffer text) {
+            super("Indexing");
+            this.text = text;
+        }
+
+        @Override
+        protected TrigramIndex doInBackground() {
+            return TrigramIndex.build(text, INDEX_BUDGET, this);
+        }
+
+        @Override
+        protected void succeeded(TrigramIndex result) {
+            if (indexTask != this) return;
+
+            indexTask = null;
+            index = result;
+        }
+    }
+}
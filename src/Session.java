@@ -0,0 +1,334 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What the editor was showing when it last ran, so that the next launch picks up where it left
+ * off: the files open in tabs, where the caret and the top of the view were in each, the font and
+ * whether lines wrap, and optionally the undo history of each file that was saved.
+ * <p>
+ * The session is a small binary file written on exit and now and then while the editor runs, in
+ * the directory set with {@code -Dnotepad.sessionDir} or {@code ~/.notepad/session}. It records
+ * each file's size and time of change, so that a file changed since is still reopened but not given an undo history that no longer applies to it.
+ */
+public final class Session {
+    // "NPSS", and the version of the layout below
+    private static final int MAGIC = 0x4E505353;
+    private static final int VERSION = 1;
+
+    // Bytes of the smallest entry: two empty strings, the size, time, caret and view
+    private static final int ENTRY_MIN_BYTES = 2 * Integer.BYTES + 2 * Long.BYTES + 2 * Integer.BYTES;
+
+    private static final String FILE_NAME = "session.bin";
+
+    // What was last written, so that writing the same session again does not touch the disk
+    private static byte[] lastWritten;
+
+    /**
+     * One tab of the session.
+     */
+    public static final class Entry {
+        private final File file;
+        private final long size;
+        private final long modified;
+        private final int caretPosition;
+        private final int viewPosition;
+        private final Path undoFile;
+
+        /**
+         * Creates an entry.
+         *
+         * @param file The file open in the tab.
+         * @param size The size of the file when the entry was made.
+         * @param modified When the file was last changed then, in nanoseconds.
+         * @param caretPosition The caret offset.
+         * @param viewPosition The offset of the text at the top of the view.
+         * @param undoFile The file the undo history was saved to, or null for none.
+         */
+        public Entry(File file, long size, long modified, int caretPosition, int viewPosition, Path undoFile) {
+            this.file = file;
+            this.size = size;
+            this.modified = modified;
+            this.caretPosition = caretPosition;
+            this.viewPosition = viewPosition;
+            this.undoFile = undoFile;
+        }
+
+        /**
+         * Retrieves the file open in the tab.
+         *
+         * @return The file.
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Returns whether the file is still as it was when the entry was made.
+         *
+         * @param stamp The file as it is now.
+         * @return True if it has the same size and time of change.
+         */
+        public boolean matches(FileWatcher.Stamp stamp) {
+            return stamp.getSize() == size && stamp.getModified() == modified;
+        }
+
+        /**
+         * Retrieves where the caret was.
+         *
+         * @return The caret offset.
+         */
+        public int getCaretPosition() {
+            return caretPosition;
+        }
+
+        /**
+         * Retrieves the text that was at the top of the view.
+         *
+         * @return Its offset.
+         */
+        public int getViewPosition() {
+            return viewPosition;
+        }
+
+        /**
+         * Retrieves the file the undo history of the tab was saved to.
+         *
+         * @return The file, or null if the history was not saved.
+         */
+        public Path getUndoFile() {
+            return undoFile;
+        }
+    }
+
+    private final String fontName;
+    private final int fontStyle;
+    private final int fontSize;
+    private final int foreground;
+    private final boolean lineWrap;
+    private final int activeIndex;
+    private final List<Entry> entries;
+
+    /**
+     * Creates a session.
+     *
+     * @param fontName The family of the font of the text.
+     * @param fontStyle The style of the font, as in {@link java.awt.Font#getStyle()}.
+     * @param fontSize The size of the font, zoom included.
+     * @param foreground The color of the text, as RGB.
+     * @param lineWrap Whether lines wrap.
+     * @param activeIndex The tab that was shown.
+     * @param entries The tabs with files, in the order of the tab strip.
+     */
+    public Session(String fontName, int fontStyle, int fontSize, int foreground, boolean lineWrap,
+                   int activeIndex, List<Entry> entries) {
+        this.fontName = fontName;
+        this.fontStyle = fontStyle;
+        this.fontSize = fontSize;
+        this.foreground = foreground;
+        this.lineWrap = lineWrap;
+        this.activeIndex = activeIndex;
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    /**
+     * Retrieves the directory the session is kept in, set with -Dnotepad.sessionDir.
+     *
+     * @return The directory.
+     */
+    public static Path getDirectory() {
+        String directory = System.getProperty("notepad.sessionDir");
+        if (directory != null) {
+            return Paths.get(directory);
+        }
+        return Paths.get(System.getProperty("user.home"), ".notepad", "session");
+    }
+
+    /**
+     * Reads the session the editor last wrote. The file is small and read whole into the heap;
+     * mapping it would keep it from being replaced by the next write on some platforms.
+     *
+     * @return The session, or null if there is none or it cannot be read.
+     */
+    public static Session read() {
+        Path path = getDirectory().resolve(FILE_NAME);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            String fontName = readString(buffer);
+            int fontStyle = buffer.getInt();
+            int fontSize = buffer.getInt();
+            int foreground = buffer.getInt();
+            boolean lineWrap = buffer.get() != 0;
+            int activeIndex = buffer.getInt();
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / ENTRY_MIN_BYTES) {
+                return null;
+            }
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                File file = new File(readString(buffer));
+                long size = buffer.getLong();
+                long modified = buffer.getLong();
+                int caretPosition = buffer.getInt();
+                int viewPosition = buffer.getInt();
+                String undoFile = readString(buffer);
+                entries.add(new Entry(file, size, modified, caretPosition, viewPosition,
+                        undoFile.isEmpty() ? null : Paths.get(undoFile)));
+            }
+            return new Session(fontName, fontStyle, fontSize, foreground, lineWrap, activeIndex, entries);
+        } catch (IOException | RuntimeException e) {
+            // A session cut short or from another version is started afresh
+            return null;
+        }
+    }
+
+    /**
+     * Reads a string, refusing a length the rest of the session cannot hold, as a damaged
+     * session may give.
+     */
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Session is damaged");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the session, replacing the last one once it is complete, so that a crash part way
+     * through leaves the last one intact. A session the same as the one last written is not
+     * written again.
+     *
+     * @throws IOException If the session cannot be written.
+     */
+    public void write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, fontName);
+        out.writeInt(fontStyle);
+        out.writeInt(fontSize);
+        out.writeInt(foreground);
+        out.writeByte(lineWrap ? 1 : 0);
+        out.writeInt(activeIndex);
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            writeString(out, entry.file.getAbsolutePath());
+            out.writeLong(entry.size);
+            out.writeLong(entry.modified);
+            out.writeInt(entry.caretPosition);
+            out.writeInt(entry.viewPosition);
+            writeString(out, entry.undoFile == null ? "" : entry.undoFile.toString());
+        }
+        out.flush();
+        byte[] written = bytes.toByteArray();
+        synchronized (Session.class) {
+            if (Arrays.equals(written, lastWritten)) {
+                return;
+            }
+            lastWritten = null;
+        }
+
+        Path directory = getDirectory();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "session", ".tmp");
+        try {
+            Files.write(temp, written);
+            Files.move(temp, directory.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        synchronized (Session.class) {
+            lastWritten = written;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Retrieves the family of the font of the text.
+     *
+     * @return The font name.
+     */
+    public String getFontName() {
+        return fontName;
+    }
+
+    /**
+     * Retrieves the style of the font of the text.
+     *
+     * @return The style, as in {@link java.awt.Font#getStyle()}.
+     */
+    public int getFontStyle() {
+        return fontStyle;
+    }
+
+    /**
+     * Retrieves the size of the font of the text, zoom included.
+     *
+     * @return The size in points.
+     */
+    public int getFontSize() {
+        return fontSize;
+    }
+
+    /**
+     * Retrieves the color of the text.
+     *
+     * @return The color as RGB.
+     */
+    public int getForeground() {
+        return foreground;
+    }
+
+    /**
+     * Returns whether lines wrap.
+     *
+     * @return True if they do.
+     */
+    public boolean isLineWrap() {
+        return lineWrap;
+    }
+
+    /**
+     * Retrieves the tab that was shown.
+     *
+     * @return Its index among the entries.
+     */
+    public int getActiveIndex() {
+        return activeIndex;
+    }
+
+    /**
+     * Retrieves the tabs with files.
+     *
+     * @return The entries, in the order of the tab strip.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+}
@@ -0,0 +1,87 @@
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Times the phases of startup: how long the JVM took to reach {@code main}, then each phase up to
+ * the first paint of the text area.
+ * <p>
+ * Marks are cheap, so they are always taken. The report is printed to standard error when
+ * Notepad runs with {@code -Dnotepad.startupTiming=true}.
+ */
+public final class StartupTimer {
+    private static final boolean PRINT = Boolean.getBoolean("notepad.startupTiming");
+
+    // Wall clock time when main was reached, and the nanoTime of every mark after it
+    private static long mainMillis;
+    private static long mainNanos;
+    private static final List<String> phases = new ArrayList<>();
+    private static final List<Long> ends = new ArrayList<>();
+    private static boolean reported;
+
+    private StartupTimer() {
+    }
+
+    /**
+     * Marks that {@code main} has been reached, which ends the JVM start phase.
+     */
+    public static synchronized void start() {
+        mainMillis = System.currentTimeMillis();
+        mainNanos = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of a phase, which began where the one before it ended.
+     *
+     * @param phase The name of the phase.
+     */
+    public static synchronized void mark(String phase) {
+        if (!reported) {
+            phases.add(phase);
+            ends.add(System.nanoTime());
+        }
+    }
+
+    /**
+     * Describes how long each phase took, such as
+     * "JVM start 80 ms, look and feel 95 ms, frame construction 60 ms, first paint 25 ms; 260 ms in all".
+     *
+     * @return The report.
+     */
+    public static synchronized String getReport() {
+        StringBuilder report = new StringBuilder();
+        long total = 0;
+        // The process start time is only looked up here, since it costs more than a mark
+        Optional<Instant> processStart = ProcessHandle.current().info().startInstant();
+        if (processStart.isPresent()) {
+            long jvmStart = Math.max(0, mainMillis - processStart.get().toEpochMilli());
+            report.append("JVM start ").append(jvmStart).append(" ms");
+            total += jvmStart;
+        }
+        long previous = mainNanos;
+        for (int i = 0; i < phases.size(); i++) {
+            long millis = (ends.get(i) - previous) / 1000000;
+            if (report.length() > 0) {
+                report.append(", ");
+            }
+            report.append(phases.get(i)).append(' ').append(millis).append(" ms");
+            total += millis;
+            previous = ends.get(i);
+        }
+        return report.append("; ").append(total).append(" ms in all").toString();
+    }
+
+    /**
+     * Ends timing, and prints the report if asked to.
+     */
+    public static synchronized void report() {
+        if (reported) {
+            return;
+        }
+        reported = true;
+        if (PRINT) {
+            System.err.println("Startup: " + getReport());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+
+/**
+ * Status bar shown at the bottom of the editor, with progress and cancellation for file tasks.
+ */
+public class StatusBar extends JPanel {
+    private JLabel messageLabel;
+    private JLabel positionLabel;
+    private JLabel formatLabel;
+    private JProgressBar progressBar;
+    private JButton cancelButton;
+
+    // Task currently shown, if any
+    private FileTask<?> task;
+
+    /**
+     * Constructor to initialize the status bar.
+     */
+    public StatusBar() {
+        super(new BorderLayout(5, 0));
+        setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+
+        messageLabel = new JLabel(" ");
+        add(messageLabel, BorderLayout.CENTER);
+
+        JPanel taskPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        positionLabel = new JLabel();
+        taskPanel.add(positionLabel);
+        formatLabel = new JLabel();
+        taskPanel.add(formatLabel);
+
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        taskPanel.add(progressBar);
+
+        cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (task != null) {
+                    task.cancel(true);
+                }
+            }
+        });
+        taskPanel.add(cancelButton);
+        add(taskPanel, BorderLayout.EAST);
+
+        setTaskVisible(false);
+    }
+
+    /**
+     * Shows a message in the status bar.
+     *
+     * @param message The message to show.
+     */
+    public void setMessage(String message) {
+        messageLabel.setText(message);
+    }
+
+    /**
+     * Shows where the caret is.
+     *
+     * @param line The line of the caret, counting from 1.
+     * @param column The column of the caret, counting from 1.
+     */
+    public void setCaretPosition(int line, int column) {
+        positionLabel.setText("Ln " + line + ", Col " + column);
+    }
+
+    /**
+     * Shows the charset and line separator the document will be saved with.
+     *
+     * @param format The format of the document.
+     */
+    public void setFormat(TextFormat format) {
+        formatLabel.setText(format.toString());
+    }
+
+    /**
+     * Shows the progress of a task until it finishes, and lets the user cancel it.
+     *
+     * @param fileTask The task to track.
+     */
+    public void track(FileTask<?> fileTask) {
+        task = fileTask;
+        setMessage(fileTask.getDescription() + "...");
+        progressBar.setValue(0);
+        setTaskVisible(true);
+
+        fileTask.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (task != fileTask) return;
+
+                if ("progress".equals(evt.getPropertyName())) {
+                    progressBar.setValue((Integer) evt.getNewValue());
+                } else if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == SwingWorker.StateValue.DONE) {
+                    task = null;
+                    setTaskVisible(false);
+                }
+            }
+        });
+    }
+
+    private void setTaskVisible(boolean visible) {
+        progressBar.setVisible(visible);
+        cancelButton.setVisible(visible);
+    }
+}
@@ -0,0 +1,347 @@
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Highlights a document with a {@link Tokenizer}, keeping the state each line starts in.
+ * <p>
+ * The text views ask for the tokens of the lines they paint, which are tokenized right then from
+ * their stored start state, so painting and typing cost the same however large the document is.
+ * Working out the start states is left to a background thread, a chunk of lines at a time,
+ * against a snapshot of the text. An edit only makes the lines it touched dirty: the thread
+ * tokenizes again from the first of them, and stops as soon as a line past them ends in the same
+ * state as before, since every line below it then tokenizes as before too. Opening a comment
+ * restyles the rest of the document; typing inside a string restyles nothing but its line.
+ * <p>
+ * The highlighter is kept as a property of its document, and is only used on the event dispatch
+ * thread. The start states take four bytes a line.
+ */
+public class SyntaxHighlighter implements DocumentListener {
+    /**
+     * Told when the background thread finds that lines start in a different state, so that they
+     * are painted again.
+     */
+    public interface Listener {
+        /**
+         * Called when lines have changed their style.
+         *
+         * @param first The first line that changed.
+         * @param last The last line that changed.
+         */
+        void linesRestyled(int first, int last);
+    }
+
+    // Start state of a line the background thread has not reached yet
+    private static final int UNKNOWN = -1;
+
+    // Work for the background thread at a time
+    private static final int CHUNK_LINES = 2048;
+    private static final int CHUNK_CHARS = 1 << 18;
+
+    // Lines longer than this are painted plain, and tokenized in runs of this length
+    private static final int LONG_LINE = 1 << 16;
+
+    // Lines whose tokens are kept, which covers several screens of text
+    private static final int CACHE_SIZE = 512;
+
+    private static final ExecutorService tokenizeThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Syntax highlighting");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+
+    private final PieceTableDocument document;
+    private final Tokenizer tokenizer;
+    private final LineStates states;
+    private final LineCache<TokenList> tokenCache = new LineCache<>(CACHE_SIZE);
+    private final Segment segment = new Segment();
+    private Listener listener;
+    private boolean installed;
+
+    // Lines the background thread still has to tokenize: from the first, whose start state is
+    // known, at least up to the last; the first is -1 once every state is known
+    private int dirtyFrom;
+    private int dirtyTo;
+
+    // Bumped by every edit, so that background work on older text is thrown away
+    private long editCount;
+    private boolean pending;
+
+    private SyntaxHighlighter(PieceTableDocument document, Tokenizer tokenizer) {
+        this.document = document;
+        this.tokenizer = tokenizer;
+        int lineCount = document.getLineCount();
+        states = new LineStates(lineCount, UNKNOWN);
+        states.set(0, tokenizer.getInitialState());
+        dirtyFrom = 0;
+        dirtyTo = lineCount - 1;
+    }
+
+    /**
+     * Highlights a document, replacing any highlighter it had.
+     *
+     * @param document The document.
+     * @param tokenizer The tokenizer for its format, or null to leave it plain.
+     * @return The highlighter, or null if there is no tokenizer.
+     */
+    public static SyntaxHighlighter install(PieceTableDocument document, Tokenizer tokenizer) {
+        uninstall(document);
+        if (tokenizer == null) {
+            return null;
+        }
+        SyntaxHighlighter highlighter = new SyntaxHighlighter(document, tokenizer);
+        highlighter.installed = true;
+        document.putProperty(SyntaxHighlighter.class, highlighter);
+        document.addDocumentListener(highlighter);
+        highlighter.schedule();
+        return highlighter;
+    }
+
+    /**
+     * Stops highlighting a document, if it was highlighted.
+     *
+     * @param document The document.
+     */
+    public static void uninstall(Document document) {
+        SyntaxHighlighter highlighter = of(document);
+        if (highlighter == null) {
+            return;
+        }
+        document.removeDocumentListener(highlighter);
+        document.putProperty(SyntaxHighlighter.class, null);
+        highlighter.installed = false;
+        highlighter.editCount++;
+        if (highlighter.listener != null) {
+            highlighter.listener.linesRestyled(0, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Retrieves the highlighter of a document.
+     *
+     * @param document The document.
+     * @return Its highlighter, or null if it is not highlighted.
+     */
+    public static SyntaxHighlighter of(Document document) {
+        Object highlighter = document.getProperty(SyntaxHighlighter.class);
+        return highlighter instanceof SyntaxHighlighter ? (SyntaxHighlighter) highlighter : null;
+    }
+
+    /**
+     * Sets what is told when lines change their style, replacing any listener set before.
+     *
+     * @param listener The listener.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Stops telling a listener about restyled lines, unless another has replaced it already.
+     *
+     * @param listener The listener.
+     */
+    public void removeListener(Listener listener) {
+        if (this.listener == listener) {
+            this.listener = null;
+        }
+    }
+
+    /**
+     * Retrieves the tokens of a line, tokenizing it now if they are not cached.
+     *
+     * @param line The line.
+     * @return The tokens, or null if the line is to be painted plain: it is too long, or the
+     *         background thread has not reached it yet.
+     */
+    public TokenList getTokens(int line) {
+        if (line >= states.getLineCount() || states.get(line) == UNKNOWN) {
+            return null;
+        }
+        TokenList tokens = tokenCache.get(line);
+        if (tokens == null) {
+            int start = document.getLineStartOffset(line);
+            int end = line + 1 < states.getLineCount() ? document.getLineStartOffset(line + 1) - 1 : document.getLength();
+            if (end - start > LONG_LINE) {
+                return null;
+            }
+            try {
+                document.getText(start, end - start, segment);
+            } catch (BadLocationException e) {
+                return null;
+            }
+            tokens = new TokenList();
+            tokenizer.tokenize(segment, states.get(line), true, tokens);
+            tokenCache.put(line, tokens);
+        }
+        return tokens;
+    }
+
+    // Edits
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        linesChanged(e);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        linesChanged(e);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Attributes do not change the text
+    }
+
+    /**
+     * Makes the lines an edit touched dirty. The lines it added take the start state of the first
+     * line as a guess until the background thread gets to them.
+     */
+    private void linesChanged(DocumentEvent e) {
+        int oldCount = states.getLineCount();
+        int newCount = document.getLineCount();
+        int first = document.getLineOfOffset(e.getOffset());
+        int lastNew = e.getType() == DocumentEvent.EventType.REMOVE ? first
+                : document.getLineOfOffset(e.getOffset() + e.getLength());
+        int lineChange = newCount - oldCount;
+        int lastOld = lastNew - lineChange;
+
+        states.replace(first + 1, lastOld - first, lastNew - first, states.get(first));
+        tokenCache.linesReplaced(first, lastOld, lineChange);
+        editCount++;
+
+        if (dirtyFrom < 0) {
+            dirtyFrom = first;
+            dirtyTo = lastNew;
+        } else {
+            int from = dirtyFrom > lastOld ? dirtyFrom + lineChange : dirtyFrom;
+            int to = dirtyTo > lastOld ? dirtyTo + lineChange : dirtyTo;
+            dirtyFrom = Math.min(from, first);
+            dirtyTo = Math.max(to, lastNew);
+        }
+        schedule();
+    }
+
+    // Background tokenizing
+
+    /**
+     * Hands the next chunk of dirty lines to the background thread, unless it is busy or every
+     * start state is known.
+     */
+    private void schedule() {
+        if (pending || !installed || dirtyFrom < 0) {
+            return;
+        }
+        int first = dirtyFrom;
+        int lineCount = states.getLineCount();
+        int start = document.getLineStartOffset(first);
+        int last = first;
+        while (last + 1 < lineCount && last + 1 - first < CHUNK_LINES
+                && document.getLineStartOffset(last + 1) - start < CHUNK_CHARS) {
+            last++;
+        }
+        int end = last + 1 < lineCount ? document.getLineStartOffset(last + 1) - 1 : document.getLength();
+        int[] lineStarts = new int[last - first + 2];
+        for (int line = first; line <= last; line++) {
+            lineStarts[line - first] = document.getLineStartOffset(line) - start;
+        }
+        lineStarts[last - first + 1] = end - start + 1;
+
+        TextBuffer text;
+        try {
+            text = document.snapshot(start, end - start);
+        } catch (BadLocationException e) {
+            return;
+        }
+        int startState = states.get(first);
+        long chunkEditCount = editCount;
+        pending = true;
+        tokenizeThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                int[] endStates = tokenize(text, lineStarts, startState);
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        pending = false;
+                        if (!installed) {
+                            return;
+                        }
+                        if (chunkEditCount == editCount) {
+                            applyStates(first, endStates);
+                        }
+                        schedule();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Works out the state each line of a chunk ends in, on the background thread.
+     */
+    private int[] tokenize(TextBuffer text, int[] lineStarts, int state) {
+        int[] endStates = new int[lineStarts.length - 1];
+        Segment run = new Segment();
+        for (int i = 0; i < endStates.length; i++) {
+            int offset = lineStarts[i];
+            int end = lineStarts[i + 1] - 1;
+            if (offset == end) {
+                run.count = 0;
+                state = tokenizer.tokenize(run, state, true, null);
+            }
+            while (offset < end) {
+                int length = Math.min(end - offset, LONG_LINE);
+                text.getChars(offset, length, run);
+                offset += length;
+                state = tokenizer.tokenize(run, state, offset == end, null);
+            }
+            endStates[i] = state;
+        }
+        return endStates;
+    }
+
+    /**
+     * Takes the states the background thread worked out, and stops once they match the ones
+     * before the edit again past the dirty lines.
+     */
+    private void applyStates(int first, int[] endStates) {
+        int lineCount = states.getLineCount();
+        int restyledFrom = -1;
+        int restyledTo = -1;
+        dirtyFrom = first + endStates.length;
+        for (int i = 0; i < endStates.length; i++) {
+            int next = first + i + 1;
+            if (next >= lineCount) {
+                dirtyFrom = -1;
+                break;
+            }
+            if (states.get(next) != endStates[i]) {
+                states.set(next, endStates[i]);
+                tokenCache.remove(next);
+                if (restyledFrom < 0) {
+                    restyledFrom = next;
+                }
+                restyledTo = next;
+            } else if (first + i >= dirtyTo) {
+                // Every line below tokenizes as it did before
+                dirtyFrom = -1;
+                break;
+            }
+        }
+        if (restyledFrom >= 0 && listener != null) {
+            listener.linesRestyled(restyledFrom, restyledTo);
+        }
+    }
+}
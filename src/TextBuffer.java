@@ -0,0 +1,55 @@
+import javax.swing.text.Segment;
+
+/**
+ * Read-only sequence of characters that backs the pieces of a {@link PieceTableContent}.
+ */
+public interface TextBuffer {
+
+    /**
+     * Returns the number of characters in the buffer.
+     *
+     * @return The buffer length.
+     */
+    int length();
+
+    /**
+     * Points the segment at the requested range of characters.
+     * If the segment allows partial returns, the implementation may return fewer
+     * characters than requested, but always at least one.
+     *
+     * @param offset The first character to fetch.
+     * @param length The number of characters to fetch.
+     * @param segment The segment to fill in.
+     */
+    void getChars(int offset, int length, Segment segment);
+
+    /**
+     * Estimates the heap memory the buffer holds on to.
+     *
+     * @return The estimate in bytes. Buffers that share their storage with others report none.
+     */
+    default long memoryUsage() {
+        return 0;
+    }
+
+    /**
+     * Copies a range of a buffer into a character array, one contiguous chunk at a time.
+     *
+     * @param buffer The buffer to copy from.
+     * @param offset The first character to copy.
+     * @param length The number of characters to copy.
+     * @param dest The destination array.
+     * @param destPos The position in the destination array to start writing to.
+     */
+    static void copyChars(TextBuffer buffer, int offset, int length, char[] dest, int destPos) {
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        while (length > 0) {
+            buffer.getChars(offset, length, segment);
+            System.arraycopy(segment.array, segment.offset, dest, destPos, segment.count);
+            offset += segment.count;
+            destPos += segment.count;
+            length -= segment.count;
+        }
+    }
+}
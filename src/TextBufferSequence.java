@@ -0,0 +1,91 @@
+import javax.swing.text.Segment;
+
+/**
+ * CharSequence view of a {@link TextBuffer}, so that regular expressions can run over a document
+ * without copying it into a String. The segment last read is kept, which makes the mostly
+ * sequential access of a regex scan cost little more than reading an array.
+ * <p>
+ * A regular expression can backtrack over the same text many times without finding a match, so
+ * a sequence given an {@link IoProgress} reports to it after every 64K characters read, however
+ * they are read, which lets even such a scan be cancelled.
+ */
+public class TextBufferSequence implements CharSequence {
+    private final TextBuffer text;
+    private final int start;
+    private final int length;
+    private final IoProgress progress;
+
+    // How many characters are read between progress reports, and how many are left until the next
+    private static final int CHECK_INTERVAL = 1 << 16;
+    private int untilCheck = CHECK_INTERVAL;
+
+    // The segment last read, and the offset in this sequence at which it starts
+    private final Segment segment = new Segment();
+    private int segmentStart;
+
+    /**
+     * Creates a view of a whole buffer.
+     *
+     * @param text The buffer to view.
+     */
+    public TextBufferSequence(TextBuffer text) {
+        this(text, IoProgress.NONE);
+    }
+
+    /**
+     * Creates a view of a whole buffer that reports how far reading it has got.
+     *
+     * @param text The buffer to view.
+     * @param progress Receives the offset being read, and may cancel the reading by throwing.
+     */
+    public TextBufferSequence(TextBuffer text, IoProgress progress) {
+        this(text, 0, text.length(), progress);
+    }
+
+    private TextBufferSequence(TextBuffer text, int start, int length, IoProgress progress) {
+        this.text = text;
+        this.start = start;
+        this.length = length;
+        this.progress = progress;
+        segment.setPartialReturn(true);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (--untilCheck == 0) {
+            untilCheck = CHECK_INTERVAL;
+            progress.update(index, length);
+        }
+        int i = index - segmentStart;
+        if (i < 0 || i >= segment.count) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            text.getChars(start + index, length - index, segment);
+            segmentStart = index;
+            i = 0;
+        }
+        return segment.array[segment.offset + i];
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException(from);
+        }
+        // Only taken for groups and such, which are read once
+        return new TextBufferSequence(text, start + from, to - from, IoProgress.NONE);
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length];
+        TextBuffer.copyChars(text, start, length, chars, 0);
+        return new String(chars);
+    }
+}
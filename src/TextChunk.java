@@ -0,0 +1,202 @@
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A run of text held compressed, for text that is kept in memory but seldom read.
+ * <p>
+ * The characters are first packed into as few bytes as they allow: one byte each when they are
+ * all Latin-1, UTF-8 when that is shorter than two bytes each, otherwise UTF-16. The packed bytes
+ * are then deflated at the fastest level, unless that saves too little to be worth inflating them
+ * again. A chunk never changes once made; {@link ChunkCache} keeps the characters of the chunks
+ * read lately.
+ */
+public final class TextChunk {
+    // How the characters are packed into bytes
+    private static final byte LATIN_1 = 0;
+    private static final byte UTF_8 = 1;
+    private static final byte UTF_16 = 2;
+
+    private final byte packing;
+    private final boolean deflated;
+    private final int length;
+    private final int packedLength;
+    private final byte[] data;
+
+    private TextChunk(byte packing, boolean deflated, int length, int packedLength, byte[] data) {
+        this.packing = packing;
+        this.deflated = deflated;
+        this.length = length;
+        this.packedLength = packedLength;
+        this.data = data;
+    }
+
+    /**
+     * Compresses a range of characters.
+     *
+     * @param chars The characters.
+     * @param offset The first character of the range.
+     * @param length The number of characters in the range.
+     * @param deflater The deflater to compress with, set to raw output at the fastest level. It
+     *                 is reset first, so one deflater serves any number of chunks.
+     * @return The chunk.
+     */
+    public static TextChunk compress(char[] chars, int offset, int length, Deflater deflater) {
+        byte packing = LATIN_1;
+        int utf8Length = 0;
+        for (int i = offset; i < offset + length; i++) {
+            char c = chars[i];
+            if (c < 0x80) {
+                utf8Length++;
+                continue;
+            }
+            if (c >= 0x100 && packing == LATIN_1) {
+                packing = UTF_8;
+            }
+            if (c < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < offset + length && Character.isLowSurrogate(chars[i + 1])) {
+                utf8Length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // A lone surrogate has no UTF-8 form
+                utf8Length = Integer.MAX_VALUE;
+                break;
+            } else {
+                utf8Length += 3;
+            }
+        }
+        if (packing == UTF_8 && utf8Length >= 2L * length) {
+            packing = UTF_16;
+        }
+        byte[] packed = pack(packing, chars, offset, length, utf8Length);
+
+        deflater.reset();
+        deflater.setInput(packed);
+        deflater.finish();
+        byte[] out = new byte[packed.length];
+        int written = 0;
+        while (!deflater.finished() && written < out.length) {
+            written += deflater.deflate(out, written, out.length - written);
+        }
+        // Inflating costs time on every read, so a chunk that hardly shrinks is kept packed
+        if (deflater.finished() && written < packed.length - packed.length / 16) {
+            return new TextChunk(packing, true, length, packed.length, Arrays.copyOf(out, written));
+        }
+        return new TextChunk(packing, false, length, packed.length, packed);
+    }
+
+    private static byte[] pack(byte packing, char[] chars, int offset, int length, int utf8Length) {
+        byte[] packed;
+        int end = offset + length;
+        if (packing == LATIN_1) {
+            packed = new byte[length];
+            for (int i = 0; i < length; i++) {
+                packed[i] = (byte) chars[offset + i];
+            }
+        } else if (packing == UTF_16) {
+            packed = new byte[length * 2];
+            for (int i = 0; i < length; i++) {
+                char c = chars[offset + i];
+                packed[2 * i] = (byte) (c >>> 8);
+                packed[2 * i + 1] = (byte) c;
+            }
+        } else {
+            packed = new byte[utf8Length];
+            int out = 0;
+            for (int i = offset; i < end; i++) {
+                char c = chars[i];
+                if (c < 0x80) {
+                    packed[out++] = (byte) c;
+                } else if (c < 0x800) {
+                    packed[out++] = (byte) (0xC0 | c >>> 6);
+                    packed[out++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c)) {
+                    int code = Character.toCodePoint(c, chars[++i]);
+                    packed[out++] = (byte) (0xF0 | code >>> 18);
+                    packed[out++] = (byte) (0x80 | code >>> 12 & 0x3F);
+                    packed[out++] = (byte) (0x80 | code >>> 6 & 0x3F);
+                    packed[out++] = (byte) (0x80 | code & 0x3F);
+                } else {
+                    packed[out++] = (byte) (0xE0 | c >>> 12);
+                    packed[out++] = (byte) (0x80 | c >>> 6 & 0x3F);
+                    packed[out++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Restores the characters of the chunk.
+     *
+     * @param inflater The inflater to restore them with, set to raw input. It is reset first.
+     * @return A new array holding exactly the characters.
+     */
+    public char[] decompress(Inflater inflater) {
+        byte[] packed = data;
+        if (deflated) {
+            packed = new byte[packedLength];
+            inflater.reset();
+            inflater.setInput(data);
+            try {
+                int read = 0;
+                while (read < packedLength && !inflater.finished()) {
+                    read += inflater.inflate(packed, read, packedLength - read);
+                }
+            } catch (DataFormatException e) {
+                // The chunk deflated the bytes itself, so they cannot be corrupt
+                throw new IllegalStateException(e);
+            }
+        }
+
+        char[] chars = new char[length];
+        if (packing == LATIN_1) {
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (packed[i] & 0xFF);
+            }
+        } else if (packing == UTF_16) {
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) ((packed[2 * i] & 0xFF) << 8 | packed[2 * i + 1] & 0xFF);
+            }
+        } else {
+            int in = 0;
+            int out = 0;
+            while (out < length) {
+                int b = packed[in++];
+                if (b >= 0) {
+                    chars[out++] = (char) b;
+                } else if ((b & 0xE0) == 0xC0) {
+                    chars[out++] = (char) ((b & 0x1F) << 6 | packed[in++] & 0x3F);
+                } else if ((b & 0xF0) == 0xE0) {
+                    chars[out++] = (char) ((b & 0x0F) << 12 | (packed[in++] & 0x3F) << 6 | packed[in++] & 0x3F);
+                } else {
+                    int code = (b & 0x07) << 18 | (packed[in++] & 0x3F) << 12 | (packed[in++] & 0x3F) << 6 | packed[in++] & 0x3F;
+                    chars[out++] = Character.highSurrogate(code);
+                    chars[out++] = Character.lowSurrogate(code);
+                }
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Returns the number of characters in the chunk.
+     *
+     * @return The length.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Estimates the heap memory the chunk holds, not counting its characters in the cache.
+     *
+     * @return The estimate in bytes.
+     */
+    public long memoryUsage() {
+        // The object and array headers
+        return data.length + 48;
+    }
+}
@@ -0,0 +1,367 @@
+import javax.swing.text.Segment;
+import java.util.Arrays;
+
+/**
+ * Works out where a new version of a text differs from the old one, as a batch of
+ * {@link Replacements} that turns the old text into the new one when applied to a document.
+ * <p>
+ * The text both versions start and end with is skipped first, a block at a time, which is all it
+ * takes when a file was appended to or changed in one place. What is left is compared a line at
+ * a time: every line is hashed, the lines found exactly once in each version are matched up
+ * where they keep their order, and the matches are grown over the equal lines around them. The
+ * lines in between are the ones that changed. The batch refers to the new text rather than
+ * copying it, so a small change to a large file stays small.
+ */
+public final class TextDiff {
+    // Characters compared or scanned at a time
+    private static final int BLOCK = 1 << 16;
+
+    // Changes spanning less than this are replaced whole, without looking for lines they share
+    private static final int SMALL_CHANGE = 4096;
+
+    // Changes spanning more lines than this are replaced whole, to bound the memory used
+    private static final int MAX_LINES = 1 << 20;
+
+    private final TextBuffer oldText;
+    private final TextBuffer newText;
+    private final Segment oldSegment = new Segment();
+    private final Segment newSegment = new Segment();
+
+    private TextDiff(TextBuffer oldText, TextBuffer newText) {
+        this.oldText = oldText;
+        this.newText = newText;
+        oldSegment.setPartialReturn(true);
+        newSegment.setPartialReturn(true);
+    }
+
+    /**
+     * Works out the replacements that turn one text into another.
+     *
+     * @param oldText The old text, usually a document snapshot.
+     * @param newText The new text, which the replacements refer to for what they insert.
+     * @param progress Receives the number of characters scanned so far.
+     * @return The replacements, in order; none if the texts are the same.
+     */
+    public static Replacements diff(TextBuffer oldText, TextBuffer newText, IoProgress progress) {
+        return new TextDiff(oldText, newText).diff(progress);
+    }
+
+    private Replacements diff(IoProgress progress) {
+        Replacements replacements = new Replacements(newText);
+        int oldLength = oldText.length();
+        int newLength = newText.length();
+        int prefix = matchForward(0, 0, Math.min(oldLength, newLength));
+        if (prefix == oldLength && prefix == newLength) {
+            return replacements;
+        }
+        int suffix = matchBackward(oldLength, newLength, Math.min(oldLength, newLength) - prefix);
+        int oldEnd = oldLength - suffix;
+        int newEnd = newLength - suffix;
+        if (oldEnd == prefix || newEnd == prefix || oldEnd - prefix + newEnd - prefix < SMALL_CHANGE) {
+            // Text only added or removed in one place, or changed in so little that it all goes
+            replacements.add(prefix, oldEnd - prefix, prefix, newEnd - prefix);
+            return replacements;
+        }
+
+        // From the start of the line the first difference is on to the end of the line the last
+        // one is on, which are the same in both versions
+        int start = lineStart(prefix);
+        int extra = lineEnd(oldEnd, oldLength) - oldEnd;
+        Lines oldLines = Lines.scan(oldText, start, oldEnd + extra, progress, 0, (long) oldEnd - start + newEnd - start);
+        Lines newLines = oldLines == null ? null
+                : Lines.scan(newText, start, newEnd + extra, progress, oldEnd - start, (long) oldEnd - start + newEnd - start);
+        if (oldLines == null || newLines == null) {
+            replacements.add(prefix, oldEnd - prefix, prefix, newEnd - prefix);
+            return replacements;
+        }
+        diffLines(oldLines, newLines, replacements);
+        return replacements;
+    }
+
+    /**
+     * Matches up the lines of the changed part of each version, and adds a replacement for every
+     * run of lines in between.
+     */
+    private void diffLines(Lines oldLines, Lines newLines, Replacements replacements) {
+        int[] anchors = uniqueMatches(oldLines, newLines);
+        int oldFrom = 0;
+        int newFrom = 0;
+        for (int i = 0; i <= anchors.length / 2; i++) {
+            int oldAnchor = i < anchors.length / 2 ? anchors[2 * i] : oldLines.count;
+            int newAnchor = i < anchors.length / 2 ? anchors[2 * i + 1] : newLines.count;
+            if (i < anchors.length / 2 && !linesEqual(oldLines, oldAnchor, newLines, newAnchor)) {
+                // Only the hashes matched
+                continue;
+            }
+            // Grow the matches on either side over the equal lines next to them
+            int oldTo = oldAnchor;
+            int newTo = newAnchor;
+            while (oldFrom < oldTo && newFrom < newTo && linesEqual(oldLines, oldFrom, newLines, newFrom)) {
+                oldFrom++;
+                newFrom++;
+            }
+            while (oldFrom < oldTo && newFrom < newTo && linesEqual(oldLines, oldTo - 1, newLines, newTo - 1)) {
+                oldTo--;
+                newTo--;
+            }
+            if (oldFrom < oldTo || newFrom < newTo) {
+                int oldStart = oldLines.starts[oldFrom];
+                int newStart = newLines.starts[newFrom];
+                replacements.add(oldStart, oldLines.starts[oldTo] - oldStart, newStart, newLines.starts[newTo] - newStart);
+            }
+            oldFrom = oldAnchor + 1;
+            newFrom = newAnchor + 1;
+        }
+    }
+
+    /**
+     * Finds the lines that are found exactly once in each version, and keeps the longest run of
+     * them whose order is the same in both.
+     *
+     * @return The line of each match in the old version then in the new one, in order.
+     */
+    private static int[] uniqueMatches(Lines oldLines, Lines newLines) {
+        LineTable table = new LineTable(oldLines.count + newLines.count);
+        for (int i = 0; i < oldLines.count; i++) {
+            table.addOld(oldLines.hashes[i], i);
+        }
+        for (int i = 0; i < newLines.count; i++) {
+            table.addNew(newLines.hashes[i], i);
+        }
+
+        // Candidates in the order of the new version, then the longest increasing run of their old
+        // lines, by patience sorting
+        int[] candidateOld = new int[newLines.count];
+        int[] candidateNew = new int[newLines.count];
+        int candidates = 0;
+        for (int i = 0; i < newLines.count; i++) {
+            int oldLine = table.uniqueOldLine(newLines.hashes[i]);
+            if (oldLine >= 0) {
+                candidateOld[candidates] = oldLine;
+                candidateNew[candidates] = i;
+                candidates++;
+            }
+        }
+        int[] tails = new int[candidates];
+        int[] previous = new int[candidates];
+        int length = 0;
+        for (int i = 0; i < candidates; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (candidateOld[tails[middle]] < candidateOld[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            length = Math.max(length, low + 1);
+        }
+        int[] matches = new int[2 * length];
+        for (int i = length - 1, c = length > 0 ? tails[length - 1] : -1; i >= 0; i--, c = previous[c]) {
+            matches[2 * i] = candidateOld[c];
+            matches[2 * i + 1] = candidateNew[c];
+        }
+        return matches;
+    }
+
+    private boolean linesEqual(Lines oldLines, int oldLine, Lines newLines, int newLine) {
+        int oldStart = oldLines.starts[oldLine];
+        int length = oldLines.starts[oldLine + 1] - oldStart;
+        int newStart = newLines.starts[newLine];
+        return oldLines.hashes[oldLine] == newLines.hashes[newLine]
+                && length == newLines.starts[newLine + 1] - newStart
+                && matchForward(oldStart, newStart, length) == length;
+    }
+
+    /**
+     * Counts the characters that are the same in both versions from a position in each.
+     */
+    private int matchForward(int oldFrom, int newFrom, int limit) {
+        int matched = 0;
+        while (matched < limit) {
+            int length = Math.min(limit - matched, BLOCK);
+            oldText.getChars(oldFrom + matched, length, oldSegment);
+            newText.getChars(newFrom + matched, length, newSegment);
+            length = Math.min(oldSegment.count, newSegment.count);
+            int mismatch = Arrays.mismatch(oldSegment.array, oldSegment.offset, oldSegment.offset + length,
+                    newSegment.array, newSegment.offset, newSegment.offset + length);
+            if (mismatch >= 0) {
+                return matched + mismatch;
+            }
+            matched += length;
+        }
+        return limit;
+    }
+
+    /**
+     * Counts the characters that are the same in both versions back from a position in each.
+     */
+    private int matchBackward(int oldTo, int newTo, int limit) {
+        char[] oldChars = new char[Math.min(limit, BLOCK)];
+        char[] newChars = new char[oldChars.length];
+        int matched = 0;
+        while (matched < limit) {
+            int length = Math.min(limit - matched, BLOCK);
+            TextBuffer.copyChars(oldText, oldTo - matched - length, length, oldChars, 0);
+            TextBuffer.copyChars(newText, newTo - matched - length, length, newChars, 0);
+            for (int i = length - 1; i >= 0; i--) {
+                if (oldChars[i] != newChars[i]) {
+                    return matched + length - 1 - i;
+                }
+            }
+            matched += length;
+        }
+        return limit;
+    }
+
+    /**
+     * Finds the start of the line holding an offset of the old version.
+     */
+    private int lineStart(int offset) {
+        char[] chars = new char[Math.min(offset, BLOCK)];
+        for (int pos = offset; pos > 0; ) {
+            int length = Math.min(pos, BLOCK);
+            TextBuffer.copyChars(oldText, pos - length, length, chars, 0);
+            for (int i = length - 1; i >= 0; i--) {
+                if (chars[i] == '\n') {
+                    return pos - length + i + 1;
+                }
+            }
+            pos -= length;
+        }
+        return 0;
+    }
+
+    /**
+     * Finds the end of the line holding an offset of the old version, just past its line break.
+     */
+    private int lineEnd(int offset, int length) {
+        for (int pos = offset; pos < length; pos += oldSegment.count) {
+            oldText.getChars(pos, Math.min(length - pos, BLOCK), oldSegment);
+            for (int i = 0; i < oldSegment.count; i++) {
+                if (oldSegment.array[oldSegment.offset + i] == '\n') {
+                    return pos + i + 1;
+                }
+            }
+        }
+        return length;
+    }
+
+    /**
+     * The lines of part of a text: where each starts, with one more entry for the end of the
+     * last, and the hash of each.
+     */
+    private static final class Lines {
+        private int[] starts;
+        private long[] hashes;
+        private int count;
+
+        /**
+         * Splits part of a text into lines, which keep their line breaks.
+         *
+         * @return The lines, or null if there are too many.
+         */
+        static Lines scan(TextBuffer text, int from, int to, IoProgress progress, long done, long total) {
+            Lines lines = new Lines();
+            lines.starts = new int[64];
+            lines.hashes = new long[64];
+            Segment segment = new Segment();
+            segment.setPartialReturn(true);
+            long hash = 0;
+            int lineStart = from;
+            for (int pos = from; pos < to; pos += segment.count) {
+                text.getChars(pos, Math.min(to - pos, BLOCK), segment);
+                for (int i = 0; i < segment.count; i++) {
+                    char c = segment.array[segment.offset + i];
+                    // 64-bit FNV-1a
+                    hash = (hash ^ c) * 0x100000001b3L;
+                    if (c == '\n') {
+                        if (!lines.add(lineStart, hash)) {
+                            return null;
+                        }
+                        lineStart = pos + i + 1;
+                        hash = 0;
+                    }
+                }
+                progress.update(done + pos + segment.count - from, total);
+            }
+            if (lineStart < to && !lines.add(lineStart, hash)) {
+                return null;
+            }
+            lines.starts[lines.count] = to;
+            return lines;
+        }
+
+        private boolean add(int start, long hash) {
+            if (count == MAX_LINES) {
+                return false;
+            }
+            // One extra start for the end of the last line
+            if (count + 1 == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            }
+            starts[count] = start;
+            hashes[count] = hash;
+            count++;
+            return true;
+        }
+    }
+
+    /**
+     * Counts how often each line hash is found in each version, by open addressing, and where it
+     * was last found in the old one.
+     */
+    private static final class LineTable {
+        private final long[] keys;
+        private final int[] oldLines;
+        // How often the hash is found in each version, counting no further than two
+        private final byte[] oldCounts;
+        private final byte[] newCounts;
+        private final int mask;
+
+        LineTable(int lines) {
+            int capacity = Integer.highestOneBit(Math.max(lines, 8) * 2 - 1) << 1;
+            keys = new long[capacity];
+            oldLines = new int[capacity];
+            oldCounts = new byte[capacity];
+            newCounts = new byte[capacity];
+            mask = capacity - 1;
+        }
+
+        void addOld(long hash, int line) {
+            int slot = slotOf(hash);
+            keys[slot] = hash;
+            oldLines[slot] = line;
+            oldCounts[slot] = (byte) Math.min(oldCounts[slot] + 1, 2);
+        }
+
+        void addNew(long hash, int line) {
+            int slot = slotOf(hash);
+            keys[slot] = hash;
+            newCounts[slot] = (byte) Math.min(newCounts[slot] + 1, 2);
+        }
+
+        /**
+         * Retrieves the old line with a hash that is found once in each version.
+         *
+         * @return The line, or -1 if the hash is not unique in both.
+         */
+        int uniqueOldLine(long hash) {
+            int slot = slotOf(hash);
+            return oldCounts[slot] == 1 && newCounts[slot] == 1 ? oldLines[slot] : -1;
+        }
+
+        private int slotOf(long hash) {
+            int slot = (int) (hash ^ (hash >>> 32)) * 0x9E3779B9 & mask;
+            while ((oldCounts[slot] != 0 || newCounts[slot] != 0) && keys[slot] != hash) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+import javax.swing.text.Segment;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * An edit of a {@link PieceTableDocument}, as handed to undo listeners: the document's own
+ * undoable edit, together with a description of the text it changed.
+ * <p>
+ * The change is kept as a batch of replacements in the coordinates of the text before the edit,
+ * plus an immutable buffer the removed text can be read from. Both share their storage with the
+ * document, so describing an edit copies no text, and the description lets an undo history write
+ * the edit out and replay it later without the document's own undo state.
+ */
+public class TextEdit implements UndoableEdit {
+    private static final TextBuffer EMPTY = new CharArrayBuffer(new char[0]);
+
+    // Rough cost of the objects behind one edit: the event, its content edit and pieces
+    private static final int EDIT_OVERHEAD = 256;
+    private static final int REPLACEMENT_OVERHEAD = 96;
+
+    private final UndoableEdit edit;
+    private final Replacements replacements;
+    private final TextBuffer removedText;
+    private final int removedTextOffset;
+    private final long time = System.currentTimeMillis();
+
+    /**
+     * Describes an edit.
+     *
+     * @param edit The document's undoable edit.
+     * @param replacements The ranges the edit replaced, in the coordinates of the text before it.
+     * @param removedText A buffer holding the text of the replaced ranges.
+     * @param removedTextOffset The offset in the text before the edit that the first character
+     *                          of the removed text buffer corresponds to.
+     */
+    public TextEdit(UndoableEdit edit, Replacements replacements, TextBuffer removedText, int removedTextOffset) {
+        this.edit = edit;
+        this.replacements = replacements;
+        this.removedText = removedText;
+        this.removedTextOffset = removedTextOffset;
+    }
+
+    /**
+     * Describes an insertion.
+     *
+     * @param edit The document's undoable edit.
+     * @param offset The offset of the insertion.
+     * @param inserted The inserted text.
+     * @return The description.
+     */
+    public static TextEdit insertion(UndoableEdit edit, int offset, TextBuffer inserted) {
+        Replacements replacements = new Replacements(inserted);
+        replacements.add(offset, 0, 0, inserted.length());
+        return new TextEdit(edit, replacements, EMPTY, offset);
+    }
+
+    /**
+     * Describes a removal.
+     *
+     * @param edit The document's undoable edit.
+     * @param offset The offset of the removal.
+     * @param removed The removed text.
+     * @return The description.
+     */
+    public static TextEdit removal(UndoableEdit edit, int offset, TextBuffer removed) {
+        Replacements replacements = new Replacements(EMPTY);
+        replacements.add(offset, removed.length(), 0, 0);
+        return new TextEdit(edit, replacements, removed, offset);
+    }
+
+    /**
+     * Retrieves the ranges the edit replaced.
+     *
+     * @return The replacements, in the coordinates of the text before the edit.
+     */
+    public Replacements getReplacements() {
+        return replacements;
+    }
+
+    /**
+     * Copies the text a replacement removed into a segment.
+     *
+     * @param i The index of the replacement.
+     * @param segment The segment to fill in; it may receive less than the whole range if it
+     *                allows partial returns.
+     * @param skip The number of removed characters to skip.
+     */
+    public void getRemovedText(int i, int skip, Segment segment) {
+        removedText.getChars(replacements.getStart(i) - removedTextOffset + skip, replacements.getLength(i) - skip, segment);
+    }
+
+    /**
+     * Retrieves when the edit was made.
+     *
+     * @return The time of the edit in milliseconds since the epoch.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns whether the edit is a single typed or deleted character.
+     *
+     * @return True for a keystroke.
+     */
+    public boolean isKeystroke() {
+        return replacements.size() == 1
+                && replacements.getLength(0) + replacements.getTextLength(0) == 1;
+    }
+
+    /**
+     * Returns whether the edit only inserted text.
+     *
+     * @return True for an insertion.
+     */
+    public boolean isInsertion() {
+        return replacements.size() == 1 && replacements.getLength(0) == 0;
+    }
+
+    /**
+     * Retrieves the offset at which the edit starts.
+     *
+     * @return The start of the first replaced range.
+     */
+    public int getOffset() {
+        return replacements.getStart(0);
+    }
+
+    /**
+     * Retrieves the first character the edit inserted or, for a removal, removed.
+     *
+     * @return The character.
+     */
+    public char getFirstChar() {
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        if (isInsertion()) {
+            replacements.getText().getChars(replacements.getTextStart(0), 1, segment);
+        } else {
+            getRemovedText(0, 0, segment);
+        }
+        return segment.array[segment.offset];
+    }
+
+    /**
+     * Estimates the memory the edit keeps reachable: the objects behind it and the text it holds.
+     *
+     * @return The estimate in bytes.
+     */
+    public long memoryUsage() {
+        long bytes = EDIT_OVERHEAD + (long) replacements.size() * REPLACEMENT_OVERHEAD;
+        for (int i = 0; i < replacements.size(); i++) {
+            bytes += 2L * (replacements.getLength(i) + replacements.getTextLength(i));
+        }
+        return bytes;
+    }
+
+    @Override
+    public void undo() throws CannotUndoException {
+        edit.undo();
+    }
+
+    @Override
+    public boolean canUndo() {
+        return edit.canUndo();
+    }
+
+    @Override
+    public void redo() throws CannotRedoException {
+        edit.redo();
+    }
+
+    @Override
+    public boolean canRedo() {
+        return edit.canRedo();
+    }
+
+    @Override
+    public void die() {
+        edit.die();
+    }
+
+    @Override
+    public boolean addEdit(UndoableEdit anEdit) {
+        return false;
+    }
+
+    @Override
+    public boolean replaceEdit(UndoableEdit anEdit) {
+        return false;
+    }
+
+    @Override
+    public boolean isSignificant() {
+        return edit.isSignificant();
+    }
+
+    @Override
+    public String getPresentationName() {
+        return edit.getPresentationName();
+    }
+
+    @Override
+    public String getUndoPresentationName() {
+        return edit.getUndoPresentationName();
+    }
+
+    @Override
+    public String getRedoPresentationName() {
+        return edit.getRedoPresentationName();
+    }
+}
@@ -0,0 +1,371 @@
+import javax.swing.text.Document;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * How the text of a file is stored on disk: its charset, whether it starts with a byte order mark,
+ * and which line separator it uses.
+ * <p>
+ * Documents always hold '\n' line breaks. The format a file was opened with is kept as a property
+ * of its document, so that saving writes the same bytes back for every line the user left alone.
+ * <p>
+ * The exception is a file whose lines end in more than one way, such as CRLF with some LF lines
+ * pasted in. Only one separator is kept, the most common one, and saving writes every line break
+ * with it. Such a format is marked {@link #isMixed() mixed}, so that the editor can say so before
+ * the user saves.
+ * <p>
+ * The charset is guessed from the start of the file only. A file with bytes further in that are
+ * not valid in it, such as a Latin-1 byte in an otherwise UTF-8 file, is read again in the
+ * {@link #fallback() fallback} charset, which holds any byte, rather than with those bytes
+ * replaced, which saving would write back in their place.
+ */
+public final class TextFormat {
+    /**
+     * Key of the document property holding the format of the file a document was opened from.
+     */
+    public static final Object PROPERTY = TextFormat.class;
+
+    /**
+     * Format of new documents: UTF-8 without a byte order mark, with '\n' line breaks.
+     */
+    public static final TextFormat DEFAULT = new TextFormat(StandardCharsets.UTF_8, false, "\n");
+
+    // How much of a file is looked at to guess its format
+    private static final int SAMPLE_SIZE = 1 << 16;
+
+    private static final byte[] UTF_8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final byte[] UTF_16LE_BOM = {(byte) 0xFF, (byte) 0xFE};
+    private static final byte[] UTF_16BE_BOM = {(byte) 0xFE, (byte) 0xFF};
+
+    private final Charset charset;
+    private final boolean bom;
+    private final String lineSeparator;
+    private final boolean mixed;
+
+    /**
+     * Creates a format.
+     *
+     * @param charset The charset of the text.
+     * @param bom Whether the file starts with a byte order mark. Only UTF-8 and UTF-16 have one.
+     * @param lineSeparator The line separator: "\n", "\r\n" or "\r".
+     */
+    public TextFormat(Charset charset, boolean bom, String lineSeparator) {
+        this(charset, bom, lineSeparator, false);
+    }
+
+    private TextFormat(Charset charset, boolean bom, String lineSeparator, boolean mixed) {
+        this.charset = charset;
+        this.bom = bom && bomOf(charset) != null;
+        this.lineSeparator = lineSeparator;
+        this.mixed = mixed;
+    }
+
+    /**
+     * Retrieves the format a document was opened with.
+     *
+     * @param document The document.
+     * @return The format of its file, or {@link #DEFAULT} for a document that was never opened.
+     */
+    public static TextFormat of(Document document) {
+        Object format = document.getProperty(PROPERTY);
+        return format instanceof TextFormat ? (TextFormat) format : DEFAULT;
+    }
+
+    /**
+     * Guesses the format of a file from its first 64 KB.
+     * <p>
+     * A byte order mark decides the charset outright. Without one, text with NUL bytes in most of
+     * its odd or even positions is taken as UTF-16, text that decodes as UTF-8 is UTF-8, and
+     * anything else is read in the platform charset, or in a single-byte charset that can hold
+     * any byte when the platform charset is UTF-8 or ASCII and so cannot be right either. The line separator is whichever kind of
+     * line break is most common in the sample, and the format is mixed if the sample has more
+     * than one kind.
+     *
+     * @param path The file.
+     * @return Its format.
+     * @throws IOException If the file cannot be read.
+     */
+    public static TextFormat detect(Path path) throws IOException {
+        ByteBuffer sample = ByteBuffer.allocate(SAMPLE_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (sample.hasRemaining() && channel.read(sample) >= 0) {
+                // Keep reading until the sample is full or the file ends
+            }
+        }
+        sample.flip();
+        boolean truncated = sample.limit() == SAMPLE_SIZE;
+
+        Charset charset;
+        boolean bom = true;
+        if (startsWith(sample, UTF_8_BOM)) {
+            charset = StandardCharsets.UTF_8;
+        } else if (startsWith(sample, UTF_16LE_BOM)) {
+            charset = StandardCharsets.UTF_16LE;
+        } else if (startsWith(sample, UTF_16BE_BOM)) {
+            charset = StandardCharsets.UTF_16BE;
+        } else {
+            bom = false;
+            charset = guessCharset(sample, truncated);
+        }
+        if (bom) {
+            sample.position(bomOf(charset).length);
+        }
+        int[] counts = countLineBreaks(sample, charset);
+        int crlf = counts[0];
+        int lf = counts[1];
+        int cr = counts[2];
+        String separator;
+        if (crlf > lf && crlf >= cr) {
+            separator = "\r\n";
+        } else {
+            separator = cr > lf ? "\r" : "\n";
+        }
+        int kinds = (crlf > 0 ? 1 : 0) + (lf > 0 ? 1 : 0) + (cr > 0 ? 1 : 0);
+        return new TextFormat(charset, bom, separator, kinds > 1);
+    }
+
+    /**
+     * Guesses the charset of a sample without a byte order mark.
+     */
+    private static Charset guessCharset(ByteBuffer sample, boolean truncated) {
+        // Text in UTF-16 has a zero high byte for every ASCII character, and text in any other
+        // charset next to no zero bytes at all
+        int pairs = sample.remaining() / 2;
+        int evenZeros = 0;
+        int oddZeros = 0;
+        for (int i = 0; i < pairs * 2; i += 2) {
+            if (sample.get(i) == 0) evenZeros++;
+            if (sample.get(i + 1) == 0) oddZeros++;
+        }
+        if (pairs > 0 && oddZeros > pairs / 4 && evenZeros < oddZeros / 8) {
+            return StandardCharsets.UTF_16LE;
+        }
+        if (pairs > 0 && evenZeros > pairs / 4 && oddZeros < evenZeros / 8) {
+            return StandardCharsets.UTF_16BE;
+        }
+
+        if (isUtf8(sample, truncated)) {
+            return StandardCharsets.UTF_8;
+        }
+        Charset platform = Charset.defaultCharset();
+        if (!platform.equals(StandardCharsets.UTF_8) && !platform.equals(StandardCharsets.US_ASCII)) {
+            return platform;
+        }
+        return fitsWindows1252(sample) ? windows1252() : StandardCharsets.ISO_8859_1;
+    }
+
+    /**
+     * Checks whether a sample is well-formed UTF-8. A sequence cut off by the end of a truncated
+     * sample is allowed, since the rest of it is in the part of the file that was not read.
+     */
+    private static boolean isUtf8(ByteBuffer sample, boolean truncated) {
+        int end = sample.limit();
+        int i = sample.position();
+        while (i < end) {
+            int b = sample.get(i) & 0xFF;
+            int length;
+            int min;
+            if (b < 0x80) {
+                i++;
+                continue;
+            } else if (b >= 0xC2 && b <= 0xDF) {
+                length = 2;
+                min = 0x80;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                length = 3;
+                min = 0x800;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                length = 4;
+                min = 0x10000;
+            } else {
+                return false;
+            }
+            if (i + length > end) {
+                return truncated;
+            }
+            int codePoint = b & (0xFF >> (length + 1));
+            for (int k = 1; k < length; k++) {
+                int next = sample.get(i + k) & 0xFF;
+                if ((next & 0xC0) != 0x80) {
+                    return false;
+                }
+                codePoint = codePoint << 6 | (next & 0x3F);
+            }
+            // Overlong forms, surrogates and code points past the last plane are not UTF-8
+            if (codePoint < min || codePoint > 0x10FFFF || (codePoint >= 0xD800 && codePoint <= 0xDFFF)) {
+                return false;
+            }
+            i += length;
+        }
+        return true;
+    }
+
+    /**
+     * Checks that a sample has none of the five bytes windows-1252 leaves undefined, which would
+     * not survive being opened and saved again.
+     */
+    private static boolean fitsWindows1252(ByteBuffer sample) {
+        if (windows1252() == null) {
+            return false;
+        }
+        for (int i = sample.position(); i < sample.limit(); i++) {
+            int b = sample.get(i) & 0xFF;
+            if (b == 0x81 || b == 0x8D || b == 0x8F || b == 0x90 || b == 0x9D) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Charset windows1252() {
+        try {
+            return Charset.forName("windows-1252");
+        } catch (UnsupportedCharsetException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Counts each kind of line break in a sample: CRLF, LF and CR, in that order.
+     */
+    private static int[] countLineBreaks(ByteBuffer sample, Charset charset) {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate(sample.remaining());
+        decoder.decode(sample, chars, true);
+        chars.flip();
+
+        int crlf = 0;
+        int lf = 0;
+        int cr = 0;
+        int length = chars.limit();
+        for (int i = 0; i < length; i++) {
+            char c = chars.get(i);
+            if (c == '\n') {
+                lf++;
+            } else if (c == '\r') {
+                if (i + 1 < length && chars.get(i + 1) == '\n') {
+                    crlf++;
+                    i++;
+                } else if (i + 1 < length) {
+                    // A CR at the very end of the sample may be half of a CRLF
+                    cr++;
+                }
+            }
+        }
+        return new int[]{crlf, lf, cr};
+    }
+
+    private static boolean startsWith(ByteBuffer sample, byte[] prefix) {
+        if (sample.remaining() < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (sample.get(sample.position() + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the byte order mark of a charset, or null if it has none.
+     */
+    private static byte[] bomOf(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8)) return UTF_8_BOM;
+        if (charset.equals(StandardCharsets.UTF_16LE)) return UTF_16LE_BOM;
+        if (charset.equals(StandardCharsets.UTF_16BE)) return UTF_16BE_BOM;
+        return null;
+    }
+
+    /**
+     * Retrieves the charset of the text.
+     *
+     * @return The charset.
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Retrieves the byte order mark the file starts with.
+     *
+     * @return The bytes of the mark, empty if the file has none.
+     */
+    public byte[] getBom() {
+        return bom ? bomOf(charset).clone() : new byte[0];
+    }
+
+    /**
+     * Retrieves the line separator of the file.
+     *
+     * @return "\n", "\r\n" or "\r".
+     */
+    public String getLineSeparator() {
+        return lineSeparator;
+    }
+
+    /**
+     * Names the line separator the way status bars usually do.
+     *
+     * @return "CRLF", "CR" or "LF".
+     */
+    public String getLineSeparatorName() {
+        return lineSeparator.equals("\r\n") ? "CRLF" : lineSeparator.equals("\r") ? "CR" : "LF";
+    }
+
+    /**
+     * Tells whether the file ended its lines in more than one way, which saving does not keep.
+     *
+     * @return True if the lines of the file end in different ways.
+     */
+    public boolean isMixed() {
+        return mixed;
+    }
+
+    /**
+     * Retrieves the format to read a file in again when it has bytes that are not valid in this
+     * one's charset: windows-1252, or ISO-8859-1 for a file that is not windows-1252 either. Every
+     * byte is a character in ISO-8859-1, so reading in it never fails. The byte order mark, if any,
+     * is read as text, so that it is written back as it was.
+     *
+     * @return The format, with the same line separator.
+     */
+    public TextFormat fallback() {
+        Charset windows1252 = windows1252();
+        Charset fallback = windows1252 != null && !charset.equals(windows1252) && !charset.equals(StandardCharsets.ISO_8859_1)
+                ? windows1252 : StandardCharsets.ISO_8859_1;
+        return new TextFormat(fallback, false, lineSeparator, mixed);
+    }
+
+    /**
+     * Retrieves the format of the file once it has been saved, with every line ending in the
+     * line separator.
+     *
+     * @return This format, no longer mixed.
+     */
+    public TextFormat unmixed() {
+        return mixed ? new TextFormat(charset, bom, lineSeparator) : this;
+    }
+
+    /**
+     * Describes the format the way status bars usually do, such as "UTF-8 BOM, CRLF", with
+     * "(mixed)" after the separator of a file whose lines end in different ways.
+     *
+     * @return The description.
+     */
+    @Override
+    public String toString() {
+        return charset.name() + (bom ? " BOM" : "") + ", " + getLineSeparatorName() + (mixed ? " (mixed)" : "");
+    }
+}
@@ -0,0 +1,277 @@
+import javax.swing.text.Segment;
+import java.util.Arrays;
+
+/**
+ * Literal pattern compiled for Boyer-Moore-Horspool search over a {@link TextBuffer}.
+ * <p>
+ * The text is scanned segment by segment straight out of the buffer, without copying it.
+ * Only matches that straddle two segments are checked in a small stitch buffer holding the
+ * last few characters of one segment and the first few of the next.
+ */
+public class TextSearcher {
+    private static final int BACKWARD_CHUNK = 1 << 20;
+
+    private final char[] pattern;
+    private final boolean matchCase;
+    private final int[] shift = new int[256];
+
+    /**
+     * Receives matches while a range is scanned.
+     */
+    public interface MatchVisitor {
+        /**
+         * Called for each match, in document order.
+         *
+         * @param start The offset at which the match starts.
+         * @return True to keep scanning, false to stop.
+         */
+        boolean matchFound(int start);
+    }
+
+    /**
+     * Compiles a pattern.
+     *
+     * @param text The literal text to find; must not be empty.
+     * @param matchCase Whether upper and lower case letters must match exactly.
+     */
+    public TextSearcher(String text, boolean matchCase) {
+        this.matchCase = matchCase;
+        this.pattern = new char[text.length()];
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = fold(text.charAt(i));
+        }
+
+        // Characters that share their low byte share a shift slot; taking the smallest keeps it safe
+        int last = pattern.length - 1;
+        Arrays.fill(shift, pattern.length);
+        for (int i = 0; i < last; i++) {
+            shift[pattern[i] & 0xFF] = last - i;
+        }
+    }
+
+    /**
+     * Retrieves the length of the pattern.
+     *
+     * @return The number of characters a match spans.
+     */
+    public int length() {
+        return pattern.length;
+    }
+
+    /**
+     * Returns whether the pattern ignores case.
+     *
+     * @return True if case is ignored.
+     */
+    public boolean isMatchCase() {
+        return matchCase;
+    }
+
+    /**
+     * Finds the first match that starts at or after one offset and ends at or before another.
+     *
+     * @param text The text to search.
+     * @param from The first offset a match may start at.
+     * @param to The offset matches must end by.
+     * @return The start of the match, or -1 if there is none.
+     */
+    public int indexOf(TextBuffer text, int from, int to) {
+        int[] found = {-1};
+        scan(text, from, to, IoProgress.NONE, new MatchVisitor() {
+            @Override
+            public boolean matchFound(int start) {
+                found[0] = start;
+                return false;
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * Finds the last match that starts at or after one offset and ends at or before another.
+     * The range is scanned backwards in chunks, so a match near the end is found quickly.
+     *
+     * @param text The text to search.
+     * @param from The first offset a match may start at.
+     * @param to The offset matches must end by.
+     * @return The start of the match, or -1 if there is none.
+     */
+    public int lastIndexOf(TextBuffer text, int from, int to) {
+        int overlap = pattern.length - 1;
+        int end = to;
+        while (end - from >= pattern.length) {
+            int start = Math.max(from, end - BACKWARD_CHUNK - overlap);
+            int[] found = {-1};
+            // Overlapping matches count here, or the last one could be skipped over
+            scan(text, start, end, IoProgress.NONE, 1, new MatchVisitor() {
+                @Override
+                public boolean matchFound(int match) {
+                    found[0] = match;
+                    return true;
+                }
+            });
+            if (found[0] >= 0) {
+                return found[0];
+            }
+            // The next chunk must still see matches that end inside the part already scanned
+            end = start + overlap;
+            if (start == from) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Visits every non-overlapping match in a range, in order.
+     *
+     * @param text The text to search.
+     * @param from The first offset a match may start at.
+     * @param to The offset matches must end by.
+     * @param progress Receives the number of characters scanned so far.
+     * @param visitor Receives the matches.
+     */
+    public void scan(TextBuffer text, int from, int to, IoProgress progress, MatchVisitor visitor) {
+        scan(text, from, to, progress, pattern.length, visitor);
+    }
+
+    /**
+     * Visits every non-overlapping match inside a set of regions, in order. Matches must lie
+     * wholly inside one region.
+     *
+     * @param text The text to search.
+     * @param regions Start and end offsets of each region, sorted and not overlapping.
+     * @param progress Receives the number of characters scanned so far.
+     * @param visitor Receives the matches.
+     */
+    public void scan(TextBuffer text, int[] regions, IoProgress progress, MatchVisitor visitor) {
+        long sum = 0;
+        for (int i = 0; i < regions.length; i += 2) {
+            sum += regions[i + 1] - regions[i];
+        }
+        long total = sum;
+        long[] done = {0};
+        boolean[] stopped = {false};
+        for (int i = 0; i < regions.length && !stopped[0]; i += 2) {
+            long before = done[0];
+            scan(text, regions[i], regions[i + 1], new IoProgress() {
+                @Override
+                public void update(long scanned, long length) {
+                    done[0] = before + scanned;
+                    progress.update(done[0], total);
+                }
+            }, pattern.length, new MatchVisitor() {
+                @Override
+                public boolean matchFound(int start) {
+                    stopped[0] = !visitor.matchFound(start);
+                    return !stopped[0];
+                }
+            });
+        }
+    }
+
+    /**
+     * Visits matches in a range, resuming each time the given number of characters after the
+     * start of the previous match.
+     */
+    private void scan(TextBuffer text, int from, int to, IoProgress progress, int step, MatchVisitor visitor) {
+        int overlap = pattern.length - 1;
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+
+        // The last characters of the text scanned so far, for matches that cross into the next segment
+        char[] carry = new char[overlap];
+        int carryLength = 0;
+        char[] stitch = new char[overlap * 2];
+
+        // Matches may not start before this offset, which keeps them from overlapping when the step is the pattern length
+        int next = from;
+        for (int pos = from; pos < to; pos += segment.count) {
+            text.getChars(pos, to - pos, segment);
+            char[] array = segment.array;
+            int count = segment.count;
+            int base = segment.offset - pos;
+
+            if (carryLength > 0) {
+                int head = Math.min(count, overlap);
+                System.arraycopy(carry, 0, stitch, 0, carryLength);
+                System.arraycopy(array, segment.offset, stitch, carryLength, head);
+                int stitchStart = pos - carryLength;
+                int i = Math.max(0, next - stitchStart);
+                while ((i = find(stitch, i, carryLength + head)) >= 0 && i < carryLength) {
+                    if (i + pattern.length > carryLength) {
+                        if (!visitor.matchFound(stitchStart + i)) return;
+                        next = stitchStart + i + step;
+                        i += step;
+                    } else {
+                        i++;
+                    }
+                }
+            }
+
+            int i = Math.max(pos, next) + base;
+            int end = segment.offset + count;
+            while ((i = find(array, i, end)) >= 0) {
+                if (!visitor.matchFound(i - base)) return;
+                i += step;
+                next = i - base;
+            }
+
+            // Keep the last characters for the next stitch
+            if (overlap > 0) {
+                if (count >= overlap) {
+                    System.arraycopy(array, end - overlap, carry, 0, overlap);
+                    carryLength = overlap;
+                } else {
+                    int keep = Math.min(carryLength, overlap - count);
+                    System.arraycopy(carry, carryLength - keep, carry, 0, keep);
+                    System.arraycopy(array, segment.offset, carry, keep, count);
+                    carryLength = keep + count;
+                }
+            }
+            progress.update(pos + count - from, to - from);
+        }
+    }
+
+    /**
+     * Boyer-Moore-Horspool search of one array range.
+     *
+     * @return The index of the first match at or after from that ends by to, or -1.
+     */
+    private int find(char[] text, int from, int to) {
+        int last = pattern.length - 1;
+        char lastChar = pattern[last];
+        int i = from;
+        while (i + last < to) {
+            char c = fold(text[i + last]);
+            if (c == lastChar) {
+                int j = last - 1;
+                while (j >= 0 && fold(text[i + j]) == pattern[j]) {
+                    j--;
+                }
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += shift[c & 0xFF];
+        }
+        return -1;
+    }
+
+    private char fold(char c) {
+        return matchCase ? c : foldCase(c);
+    }
+
+    /**
+     * Maps a character to the form it takes when case is ignored.
+     *
+     * @param c The character.
+     * @return The character with its case folded.
+     */
+    public static char foldCase(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
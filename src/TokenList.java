@@ -0,0 +1,80 @@
+import java.util.Arrays;
+
+/**
+ * Tokens of one line, in order: where each starts and its type, in two primitive arrays. A token
+ * runs until the next one starts, and the last one to the end of the line.
+ */
+public class TokenList {
+    private int[] starts = new int[8];
+    private byte[] types = new byte[8];
+    private int count;
+
+    /**
+     * Adds a token, unless it continues one of the same type, which then simply grows.
+     *
+     * @param start Where the token starts, relative to the start of the line.
+     * @param type The type of the token.
+     */
+    public void add(int start, TokenType type) {
+        if (count > 0 && types[count - 1] == type.ordinal()) {
+            return;
+        }
+        if (count > 0 && starts[count - 1] == start) {
+            // An empty token before this one
+            count--;
+            if (count > 0 && types[count - 1] == type.ordinal()) {
+                return;
+            }
+        }
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            types = Arrays.copyOf(types, count * 2);
+        }
+        starts[count] = start;
+        types[count] = (byte) type.ordinal();
+        count++;
+    }
+
+    /**
+     * Retrieves the number of tokens.
+     *
+     * @return The number of tokens.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Retrieves where a token starts.
+     *
+     * @param index The index of the token.
+     * @return Its start relative to the start of the line.
+     */
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    /**
+     * Retrieves the type of a token.
+     *
+     * @param index The index of the token.
+     * @return Its type.
+     */
+    public TokenType getType(int index) {
+        return TokenType.of(types[index]);
+    }
+
+    /**
+     * Finds the token holding a position.
+     *
+     * @param position The position, relative to the start of the line.
+     * @return The index of the last token starting at or before it, or -1 if there is none.
+     */
+    public int indexAt(int position) {
+        int index = Arrays.binarySearch(starts, 0, count, position);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return index;
+    }
+}
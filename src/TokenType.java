@@ -0,0 +1,63 @@
+import java.awt.*;
+
+/**
+ * Kinds of token a {@link Tokenizer} splits text into, each with the color it is drawn in.
+ */
+public enum TokenType {
+    // Drawn in the text area's own foreground color
+    TEXT(null),
+    KEYWORD(new Color(0, 0, 192)),
+    STRING(new Color(163, 21, 21)),
+    NUMBER(new Color(9, 134, 88)),
+    COMMENT(new Color(128, 128, 128)),
+    PUNCTUATION(new Color(96, 96, 96)),
+    TAG(new Color(128, 0, 0)),
+    ATTRIBUTE(new Color(4, 81, 165)),
+    DATE(new Color(0, 128, 128)),
+    ERROR(new Color(205, 0, 0)),
+    WARNING(new Color(184, 110, 0)),
+    DEBUG(new Color(150, 150, 150)),
+
+    // Columns of a table take these in turn
+    COLUMN_1(new Color(31, 100, 180)),
+    COLUMN_2(new Color(140, 60, 160)),
+    COLUMN_3(new Color(0, 128, 96)),
+    COLUMN_4(new Color(160, 90, 0));
+
+    private static final TokenType[] VALUES = values();
+
+    private final Color color;
+
+    TokenType(Color color) {
+        this.color = color;
+    }
+
+    /**
+     * Retrieves the color tokens of this kind are drawn in.
+     *
+     * @return The color, or null for the text area's foreground color.
+     */
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * Retrieves the type with an ordinal, as stored in a {@link TokenList}.
+     *
+     * @param ordinal The ordinal.
+     * @return The type.
+     */
+    public static TokenType of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    /**
+     * Retrieves the type a column of a table is drawn in.
+     *
+     * @param column The column, counting from 0.
+     * @return One of the column types, taken in turn.
+     */
+    public static TokenType column(int column) {
+        return VALUES[COLUMN_1.ordinal() + column % 4];
+    }
+}
@@ -0,0 +1,35 @@
+import javax.swing.text.Segment;
+
+/**
+ * Splits the lines of a document of one format into tokens for highlighting.
+ * <p>
+ * A tokenizer keeps nothing between calls: whatever it needs to carry from one line to the next,
+ * such as being inside a comment or a quoted field, it packs into an int state, which it is given
+ * back for the next line. The {@link SyntaxHighlighter} stores the state each line starts in, so
+ * that any line can be tokenized on its own, and so that after an edit it can tell where the lines
+ * below start tokenizing as before. States are never negative.
+ * <p>
+ * Lines are tokenized both on the event dispatch thread and on a background thread, so a
+ * tokenizer must not change any fields of its own while tokenizing.
+ */
+public interface Tokenizer {
+    /**
+     * Retrieves the state the first line starts in.
+     *
+     * @return The initial state.
+     */
+    int getInitialState();
+
+    /**
+     * Tokenizes a line, or a part of one when a line is too long to take whole.
+     *
+     * @param text The text, without its line separator.
+     * @param state The state the text starts in.
+     * @param endsLine Whether the text runs to the end of its line, rather than being continued
+     *                 by the next call.
+     * @param tokens The list to add the tokens to, with starts relative to the text, or null when
+     *               only the state after the text is wanted.
+     * @return The state the text ends in.
+     */
+    int tokenize(Segment text, int state, boolean endsLine, TokenList tokens);
+}
@@ -0,0 +1,80 @@
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Picks the tokenizer for a file, and helpers the tokenizers share.
+ */
+public final class Tokenizers {
+    private Tokenizers() {
+    }
+
+    /**
+     * Picks the tokenizer for a file by its extension.
+     *
+     * @param file The file, or null for a document not saved yet.
+     * @return The tokenizer, or null if the file is not of a format that is highlighted.
+     */
+    public static Tokenizer forFile(File file) {
+        if (file == null) {
+            return null;
+        }
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        String extension = name.substring(name.lastIndexOf('.') + 1);
+        switch (extension) {
+            case "json":
+            case "jsonc":
+                return new JsonTokenizer();
+            case "csv":
+                return new CsvTokenizer(',');
+            case "tsv":
+            case "tab":
+                return new CsvTokenizer('\t');
+            case "xml":
+            case "xsd":
+            case "xsl":
+            case "svg":
+            case "html":
+            case "htm":
+            case "pom":
+                return new XmlTokenizer();
+            case "log":
+                return new LogTokenizer();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Adds a token to a list, if there is one.
+     *
+     * @param tokens The list, or null when only states are being worked out.
+     * @param start Where the token starts.
+     * @param type Its type.
+     */
+    static void add(TokenList tokens, int start, TokenType type) {
+        if (tokens != null) {
+            tokens.add(start, type);
+        }
+    }
+
+    /**
+     * Tells whether a range of characters is a given word.
+     *
+     * @param array The characters.
+     * @param start Where the range starts.
+     * @param end Where it ends.
+     * @param word The word.
+     * @return Whether the range holds exactly the word.
+     */
+    static boolean matches(char[] array, int start, int end, String word) {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (array[start + i] != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
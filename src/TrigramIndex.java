@@ -0,0 +1,360 @@
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.util.Arrays;
+
+/**
+ * Index of the three-character sequences in a document, used to skip the parts of a large
+ * document that cannot hold a match.
+ * <p>
+ * The text is divided into blocks, and for each trigram (case folded and hashed into a fixed
+ * number of buckets) the index keeps a sorted int list of the blocks containing it. A pattern can
+ * only match in a block whose lists hold every trigram of the pattern, so a search scans just
+ * those candidate blocks. Blocks start small and are merged in pairs while building whenever the
+ * lists outgrow the memory budget, so the index trades precision for a fixed memory cap.
+ * <p>
+ * Small edits are folded in as they happen: blocks stretch and shrink with the text, and the
+ * trigrams around each edit are added. Entries are never removed, which only lets a few more
+ * blocks through as candidates. Edits too large to fold in make the index report that it needs
+ * rebuilding.
+ */
+public class TrigramIndex {
+    private static final int BUCKET_BITS = 16;
+    private static final int BUCKETS = 1 << BUCKET_BITS;
+    private static final int MIN_BLOCK_SHIFT = 14;
+
+    // Largest edit folded into the index; anything bigger calls for a rebuild
+    private static final int MAX_INCREMENTAL_EDIT = 1 << 16;
+
+    // Patterns are checked against at most this many of their trigrams
+    private static final int MAX_QUERY_TRIGRAMS = 16;
+
+    private final int[][] postings = new int[BUCKETS][];
+    private final int[] sizes = new int[BUCKETS];
+
+    // Offset at which each block starts; blocks may become empty as text is removed
+    private int[] blockStarts;
+    private int blockCount;
+    private int length;
+
+    // Characters changed since the index was built
+    private long edited;
+
+    private TrigramIndex() {
+    }
+
+    /**
+     * Indexes a text. Runs on any thread, since it only reads the given buffer.
+     *
+     * @param text The text to index.
+     * @param budget The most memory, in bytes, the posting lists may take.
+     * @param progress Receives the number of characters indexed so far.
+     * @return The index.
+     */
+    public static TrigramIndex build(TextBuffer text, long budget, IoProgress progress) {
+        TrigramIndex index = new TrigramIndex();
+        int length = text.length();
+        index.length = length;
+        int blockShift = MIN_BLOCK_SHIFT;
+        long entries = 0;
+
+        // The last block added to each bucket, so that a block is listed only once per bucket
+        int[] lastBlock = new int[BUCKETS];
+        Arrays.fill(lastBlock, -1);
+
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        long key = 0;
+        for (int pos = 0; pos < length; pos += segment.count) {
+            text.getChars(pos, length - pos, segment);
+            for (int i = 0; i < segment.count; i++) {
+                key = key << 16 | TextSearcher.foldCase(segment.array[segment.offset + i]);
+                int start = pos + i - 2;
+                if (start < 0) {
+                    continue;
+                }
+                int bucket = bucket(key);
+                int block = start >>> blockShift;
+                if (lastBlock[bucket] != block) {
+                    lastBlock[bucket] = block;
+                    index.append(bucket, block);
+                    entries++;
+                }
+            }
+
+            // Halve the number of blocks until the lists fit in the budget again
+            while (entries * Integer.BYTES > budget && blockShift < 30) {
+                blockShift++;
+                entries = index.mergeBlockPairs();
+                for (int b = 0; b < BUCKETS; b++) {
+                    lastBlock[b] = lastBlock[b] < 0 ? -1 : lastBlock[b] >> 1;
+                }
+            }
+            progress.update(pos + segment.count, length);
+        }
+
+        index.blockCount = Math.max(1, (int) ((length + (1L << blockShift) - 1) >>> blockShift));
+        index.blockStarts = new int[index.blockCount];
+        for (int b = 0; b < index.blockCount; b++) {
+            index.blockStarts[b] = b << blockShift;
+        }
+        for (int b = 0; b < BUCKETS; b++) {
+            if (index.postings[b] != null) {
+                index.postings[b] = Arrays.copyOf(index.postings[b], index.sizes[b]);
+            }
+        }
+        return index;
+    }
+
+    private static int bucket(long key) {
+        return (int) ((key & 0xFFFFFFFFFFFFL) * 0x9E3779B97F4A7C15L >>> (64 - BUCKET_BITS));
+    }
+
+    private void append(int bucket, int block) {
+        int[] list = postings[bucket];
+        if (list == null) {
+            list = postings[bucket] = new int[4];
+        } else if (sizes[bucket] == list.length) {
+            list = postings[bucket] = Arrays.copyOf(list, list.length * 2);
+        }
+        list[sizes[bucket]++] = block;
+    }
+
+    /**
+     * Renumbers the blocks in every list as if each pair of blocks were one, and returns the new
+     * number of entries.
+     */
+    private long mergeBlockPairs() {
+        long entries = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            int[] list = postings[b];
+            int kept = 0;
+            for (int i = 0; i < sizes[b]; i++) {
+                int block = list[i] >> 1;
+                if (kept == 0 || list[kept - 1] != block) {
+                    list[kept++] = block;
+                }
+            }
+            sizes[b] = kept;
+            entries += kept;
+        }
+        return entries;
+    }
+
+    /**
+     * Estimates the memory the index holds.
+     *
+     * @return The number of bytes used by the lists and block offsets.
+     */
+    public long memoryUsage() {
+        long bytes = (long) blockStarts.length * Integer.BYTES;
+        for (int[] list : postings) {
+            if (list != null) {
+                bytes += 16 + (long) list.length * Integer.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Retrieves the number of blocks the text is divided into.
+     *
+     * @return The number of blocks.
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Folds text inserted into the document into the index. Must be called for every insertion,
+     * with the document already holding the new text.
+     *
+     * @param document The document.
+     * @param offset The offset of the insertion.
+     * @param count The number of characters inserted.
+     * @return False if the edit could not be folded in and the index must be rebuilt.
+     */
+    public boolean insertUpdate(Document document, int offset, int count) {
+        if (count > MAX_INCREMENTAL_EDIT) {
+            return false;
+        }
+        // Text inserted at a block start belongs to that block, so only later blocks move
+        for (int b = firstBlockAfter(offset); b < blockCount; b++) {
+            blockStarts[b] += count;
+        }
+        length += count;
+        edited += count;
+        addTrigrams(document, offset - 2, offset + count);
+        return isCurrent();
+    }
+
+    /**
+     * Folds text removed from the document into the index. Must be called for every removal,
+     * with the document already missing the text.
+     *
+     * @param document The document.
+     * @param offset The offset of the removal.
+     * @param count The number of characters removed.
+     * @return False if the index must be rebuilt.
+     */
+    public boolean removeUpdate(Document document, int offset, int count) {
+        for (int b = firstBlockAfter(offset); b < blockCount; b++) {
+            blockStarts[b] = Math.max(offset, blockStarts[b] - count);
+        }
+        length -= count;
+        edited += count;
+        // Text on either side of the removal now forms trigrams that were never indexed
+        addTrigrams(document, offset - 2, offset);
+        return isCurrent();
+    }
+
+    /**
+     * Returns whether the index still describes the text closely enough to be worth keeping.
+     */
+    private boolean isCurrent() {
+        return edited <= Math.max(length, 1) / 4;
+    }
+
+    /**
+     * Adds the trigrams starting in a range of the document to the blocks holding them.
+     */
+    private void addTrigrams(Document document, int from, int to) {
+        from = Math.max(0, from);
+        to = Math.min(to, length - 2);
+        if (from >= to) {
+            return;
+        }
+        String text;
+        try {
+            text = document.getText(from, to - from + 2);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        long key = (long) TextSearcher.foldCase(text.charAt(0)) << 16 | TextSearcher.foldCase(text.charAt(1));
+        int block = blockOf(from);
+        for (int start = from; start < to; start++) {
+            key = key << 16 | TextSearcher.foldCase(text.charAt(start - from + 2));
+            while (block + 1 < blockCount && blockStarts[block + 1] <= start) {
+                block++;
+            }
+            insert(bucket(key), block);
+        }
+    }
+
+    /**
+     * Adds a block to a list, keeping it sorted and free of duplicates.
+     */
+    private void insert(int bucket, int block) {
+        int size = sizes[bucket];
+        int[] list = postings[bucket];
+        int i = list == null ? -1 : Arrays.binarySearch(list, 0, size, block);
+        if (i >= 0) {
+            return;
+        }
+        i = -i - 1;
+        if (list == null) {
+            list = postings[bucket] = new int[4];
+        } else if (size == list.length) {
+            list = postings[bucket] = Arrays.copyOf(list, Math.max(4, size * 2));
+        }
+        System.arraycopy(list, i, list, i + 1, size - i);
+        list[i] = block;
+        sizes[bucket]++;
+    }
+
+    /**
+     * Returns the block holding an offset, which is the last block starting at or before it.
+     */
+    private int blockOf(int offset) {
+        return firstBlockAfter(offset) - 1;
+    }
+
+    /**
+     * Returns the first block that starts after an offset.
+     */
+    private int firstBlockAfter(int offset) {
+        int low = 1;
+        int high = blockCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blockStarts[mid] <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int blockEnd(int block) {
+        return block + 1 < blockCount ? blockStarts[block + 1] : length;
+    }
+
+    /**
+     * Works out the regions of the text that may hold a match of a pattern.
+     *
+     * @param pattern The text to find.
+     * @return Start and end offsets of each region, sorted and not overlapping, or null if the
+     *         index cannot narrow down the search for this pattern.
+     */
+    public int[] candidateRegions(String pattern) {
+        int m = pattern.length();
+        if (m < 3) {
+            return null;
+        }
+        // A match is assumed to touch at most two blocks, which removals may have made untrue
+        for (int b = 0; b + 1 < blockCount; b++) {
+            if (blockStarts[b + 1] - blockStarts[b] < m - 1) {
+                return null;
+            }
+        }
+
+        // A match starting in a block has each of its trigrams in that block or the next
+        long[] candidates = null;
+        int trigrams = m - 2;
+        int used = Math.min(trigrams, MAX_QUERY_TRIGRAMS);
+        for (int k = 0; k < used; k++) {
+            // Spread the trigrams checked evenly over a long pattern
+            int t = used == 1 ? 0 : (int) ((long) k * (trigrams - 1) / (used - 1));
+            long key = (long) TextSearcher.foldCase(pattern.charAt(t)) << 32
+                    | (long) TextSearcher.foldCase(pattern.charAt(t + 1)) << 16
+                    | TextSearcher.foldCase(pattern.charAt(t + 2));
+            int bucket = bucket(key);
+            long[] bits = new long[(blockCount + 63) >>> 6];
+            for (int i = 0; i < sizes[bucket]; i++) {
+                int block = postings[bucket][i];
+                bits[block >>> 6] |= 1L << block;
+                if (block > 0) {
+                    bits[(block - 1) >>> 6] |= 1L << (block - 1);
+                }
+            }
+            if (candidates == null) {
+                candidates = bits;
+            } else {
+                for (int w = 0; w < bits.length; w++) {
+                    candidates[w] &= bits[w];
+                }
+            }
+        }
+
+        int[] regions = new int[16];
+        int size = 0;
+        for (int b = 0; b < blockCount; b++) {
+            if ((candidates[b >>> 6] & 1L << b) == 0) {
+                continue;
+            }
+            int start = blockStarts[b];
+            int end = (int) Math.min(length, (long) blockEnd(b) + m - 1);
+            if (size > 0 && start <= regions[size - 1]) {
+                regions[size - 1] = end;
+            } else {
+                if (size == regions.length) {
+                    regions = Arrays.copyOf(regions, size * 2);
+                }
+                regions[size++] = start;
+                regions[size++] = end;
+            }
+        }
+        return Arrays.copyOf(regions, size);
+    }
+}
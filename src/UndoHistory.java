@@ -0,0 +1,808 @@
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoManager;
+import javax.swing.undo.UndoableEdit;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Undo history of a {@link PieceTableDocument} that groups keystrokes and bounds its memory.
+ * <p>
+ * Characters typed or deleted one after another are merged into one edit, until the typing
+ * moves elsewhere, pauses for a second, or a new word starts. Every edit's memory is estimated,
+ * and once the history holds more than its budget the oldest edits are written to a compressed
+ * log on disk by a background thread. What stays behind is a small stub that reads the edit back
+ * and replays it on the document when the user undoes that far.
+ */
+public class UndoHistory extends UndoManager {
+    private static final long GROUP_PAUSE = 1000;
+    private static final int HISTORY_LIMIT = 100000;
+
+    // Rough cost of an edit whose text is on disk
+    private static final int SPILLED_EDIT_SIZE = 64;
+
+    private final long budget;
+    private PieceTableDocument document;
+
+    // Estimated memory held by the edits still in memory
+    private long heldBytes;
+
+    // The oldest edits, up to this index, are on disk
+    private int spilled;
+
+    // Set while a spilled edit is replayed, so that the document's events are not recorded again
+    private boolean replaying;
+
+    // Set while a saved history is loaded, so that the edits waiting to be redone are marked
+    // undone without replaying them on the document
+    private boolean loading;
+
+    // Log the spilled edits are written to, created the first time one is needed
+    private SpillLog log;
+
+    /**
+     * Creates an empty history.
+     *
+     * @param budget The most memory, in bytes, the edits may hold before the oldest are written
+     *               to disk.
+     */
+    public UndoHistory(long budget) {
+        this.budget = budget;
+        setLimit(HISTORY_LIMIT);
+    }
+
+    /**
+     * Starts a fresh history for another document, and records its edits from now on.
+     *
+     * @param document The document.
+     */
+    public synchronized void setDocument(PieceTableDocument document) {
+        if (this.document != null) {
+            this.document.removeUndoableEditListener(this);
+        }
+        this.document = document;
+        document.addUndoableEditListener(this);
+        discardAllEdits();
+    }
+
+    /**
+     * Writes every edit out to the log, including the ones waiting to be redone, and lets go of
+     * the document. The document can then be dropped, and the history carried on with another
+     * one holding the same text.
+     */
+    public synchronized void moveToDisk() {
+        spill(edits.size(), -1);
+        if (document != null) {
+            document.removeUndoableEditListener(this);
+            document = null;
+        }
+    }
+
+    /**
+     * Stops recording the edits of the document for a while, keeping the history, for text the
+     * user did not type such as that of a followed log. {@link #resume(PieceTableDocument)}
+     * carries on if the edits in the history still apply, otherwise {@link #setDocument(PieceTableDocument)}
+     * starts afresh.
+     */
+    public synchronized void pause() {
+        if (document != null) {
+            document.removeUndoableEditListener(this);
+            document = null;
+        }
+    }
+
+    /**
+     * Carries on the history with a document holding the text the history was moved off with.
+     *
+     * @param document The document.
+     */
+    public synchronized void resume(PieceTableDocument document) {
+        this.document = document;
+        document.addUndoableEditListener(this);
+    }
+
+    /**
+     * Writes the whole history to a file, for the next session to carry on with once the document
+     * holds the same text again. Every edit is moved to the log first, as by {@link #moveToDisk()},
+     * so this is meant for a history about to be closed.
+     *
+     * @param file The file, which is replaced if it exists.
+     * @throws IOException If an edit cannot be written or read back from the log.
+     */
+    public synchronized void save(Path file) throws IOException {
+        spill(edits.size(), -1);
+        if (spilled < edits.size()) {
+            throw new IOException("The undo history holds edits that cannot be saved");
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(edits.size());
+            for (UndoableEdit edit : edits) {
+                SpilledEdit spilledEdit = (SpilledEdit) edit;
+                byte[] record = spilledEdit.readRecord();
+                out.writeUTF(spilledEdit.presentationName);
+                out.writeBoolean(spilledEdit.done);
+                out.writeInt(record.length);
+                out.write(record);
+            }
+        }
+    }
+
+    /**
+     * Carries on a history written by {@link #save(Path)}, in place of this one, for a document
+     * that holds the text the history was saved with. The edits stay in the log until they are
+     * undone or redone.
+     *
+     * @param file The file.
+     * @throws IOException If the file cannot be read, in which case the history is left empty.
+     */
+    public synchronized void load(Path file) throws IOException {
+        discardAllEdits();
+        if (log == null) {
+            log = new SpillLog();
+        }
+        List<SpilledEdit> loaded = new ArrayList<>();
+        int undone = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String presentationName = in.readUTF();
+                if (!in.readBoolean()) {
+                    undone++;
+                }
+                byte[] record = new byte[in.readInt()];
+                in.readFully(record);
+                loaded.add(new SpilledEdit(presentationName, log.append(record), true));
+            }
+        } catch (IOException e) {
+            discardAllEdits();
+            throw e;
+        }
+        // The edits waiting to be redone come last, so they are added as done and then undone
+        loading = true;
+        try {
+            for (SpilledEdit edit : loaded) {
+                super.addEdit(edit);
+            }
+            for (int i = 0; i < undone; i++) {
+                super.undo();
+            }
+        } finally {
+            loading = false;
+        }
+        spilled = loaded.size();
+        heldBytes = (long) loaded.size() * SPILLED_EDIT_SIZE;
+    }
+
+    /**
+     * Lets go of the document and deletes the log, for a history that is not needed any more.
+     */
+    public synchronized void close() {
+        if (document != null) {
+            document.removeUndoableEditListener(this);
+            document = null;
+        }
+        super.discardAllEdits();
+        heldBytes = 0;
+        spilled = 0;
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    /**
+     * Estimates the memory held by the edits that are still in memory.
+     *
+     * @return The estimate in bytes.
+     */
+    public synchronized long memoryUsage() {
+        return heldBytes;
+    }
+
+    /**
+     * Retrieves how many of the oldest edits have been written to disk.
+     *
+     * @return The number of edits on disk.
+     */
+    public synchronized int getSpilledCount() {
+        return spilled;
+    }
+
+    @Override
+    public synchronized boolean addEdit(UndoableEdit anEdit) {
+        if (replaying) {
+            return false;
+        }
+        // A keystroke comes wrapped in a group, which the group before it may take over
+        UndoableEdit edit = anEdit;
+        if (anEdit instanceof TextEdit && ((TextEdit) anEdit).isKeystroke()) {
+            edit = new TypingGroup((TextEdit) anEdit);
+        }
+        boolean added = super.addEdit(edit);
+        heldBytes += memoryUsage(anEdit);
+        if (heldBytes > budget) {
+            spillOldest();
+        }
+        return added;
+    }
+
+    @Override
+    public synchronized void discardAllEdits() {
+        super.discardAllEdits();
+        heldBytes = 0;
+        spilled = 0;
+        if (log != null) {
+            log.clear();
+        }
+    }
+
+    @Override
+    protected void trimEdits(int from, int to) {
+        if (from <= to) {
+            for (int i = from; i <= to; i++) {
+                heldBytes -= memoryUsage(edits.get(i));
+            }
+            if (from < spilled) {
+                spilled -= Math.min(spilled, to + 1) - from;
+            }
+        }
+        super.trimEdits(from, to);
+    }
+
+    private static long memoryUsage(UndoableEdit edit) {
+        if (edit instanceof TextEdit) {
+            return ((TextEdit) edit).memoryUsage();
+        } else if (edit instanceof TypingGroup) {
+            return ((TypingGroup) edit).memoryUsage();
+        }
+        return SPILLED_EDIT_SIZE;
+    }
+
+    /**
+     * Writes out the oldest edits until the history is comfortably below its budget again.
+     */
+    private void spillOldest() {
+        // Only edits that are done go; the ones waiting to be redone are likely to be needed soon
+        spill(doneCount(), budget * 3 / 4);
+    }
+
+    /**
+     * Returns the number of edits that are done, as opposed to waiting to be redone.
+     */
+    private int doneCount() {
+        UndoableEdit next = editToBeRedone();
+        return next == null ? edits.size() : edits.indexOf(next);
+    }
+
+    /**
+     * Writes out the oldest edits, up to the given one, until the memory held falls to a target.
+     */
+    private void spill(int limit, long target) {
+        int done = doneCount();
+        while (heldBytes > target && spilled < limit) {
+            UndoableEdit edit = edits.get(spilled);
+            List<TextEdit> parts = new ArrayList<>();
+            if (edit instanceof TypingGroup) {
+                ((TypingGroup) edit).closed = true;
+                parts.addAll(((TypingGroup) edit).edits);
+            } else if (edit instanceof TextEdit) {
+                parts.add((TextEdit) edit);
+            } else {
+                return;
+            }
+            if (log == null) {
+                log = new SpillLog();
+            }
+            heldBytes -= memoryUsage(edit) - SPILLED_EDIT_SIZE;
+            edits.set(spilled, new SpilledEdit(edit.getPresentationName(), log.write(parts), spilled < done));
+            spilled++;
+            // The description is all the log needs, so the document's own undo state can go
+            edit.die();
+        }
+    }
+
+    /**
+     * Keystrokes merged into one edit.
+     */
+    private static final class TypingGroup extends AbstractUndoableEdit {
+        private final List<TextEdit> edits = new ArrayList<>();
+        private boolean closed;
+
+        TypingGroup(TextEdit edit) {
+            edits.add(edit);
+        }
+
+        /**
+         * Takes over the keystroke of a new group if it carries on this one.
+         */
+        @Override
+        public boolean addEdit(UndoableEdit anEdit) {
+            if (closed || !(anEdit instanceof TypingGroup)) {
+                return false;
+            }
+            TextEdit last = edits.get(edits.size() - 1);
+            TextEdit next = ((TypingGroup) anEdit).edits.get(0);
+            if (!continues(last, next)) {
+                closed = true;
+                return false;
+            }
+            edits.add(next);
+            return true;
+        }
+
+        /**
+         * Returns whether a keystroke goes on typing or deleting where the last one left off.
+         */
+        private static boolean continues(TextEdit last, TextEdit next) {
+            if (next.getTime() - last.getTime() > GROUP_PAUSE || next.isInsertion() != last.isInsertion()) {
+                return false;
+            }
+            if (next.isInsertion() ? next.getOffset() != last.getOffset() + 1
+                    // Backspace moves back a character, Delete stays put
+                    : next.getOffset() != last.getOffset() - 1 && next.getOffset() != last.getOffset()) {
+                return false;
+            }
+            // A word typed after a space starts a new group
+            return !Character.isWhitespace(last.getFirstChar()) || Character.isWhitespace(next.getFirstChar());
+        }
+
+        long memoryUsage() {
+            long bytes = 0;
+            for (TextEdit edit : edits) {
+                bytes += edit.memoryUsage();
+            }
+            return bytes;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            closed = true;
+            for (int i = edits.size() - 1; i >= 0; i--) {
+                edits.get(i).undo();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            for (TextEdit edit : edits) {
+                edit.redo();
+            }
+        }
+
+        @Override
+        public void die() {
+            super.die();
+            for (TextEdit edit : edits) {
+                edit.die();
+            }
+        }
+
+        @Override
+        public String getPresentationName() {
+            return edits.get(0).getPresentationName();
+        }
+    }
+
+    /**
+     * Stand-in for an edit whose text has been written to the log.
+     */
+    private final class SpilledEdit extends AbstractUndoableEdit {
+        private final String presentationName;
+        private final Future<long[]> record;
+
+        // Whether the edit is done, since it may be written out while waiting to be redone
+        private boolean done;
+        private boolean alive = true;
+
+        SpilledEdit(String presentationName, Future<long[]> record, boolean done) {
+            this.presentationName = presentationName;
+            this.record = record;
+            this.done = done;
+        }
+
+        @Override
+        public boolean canUndo() {
+            return alive && done;
+        }
+
+        @Override
+        public boolean canRedo() {
+            return alive && !done;
+        }
+
+        @Override
+        public void die() {
+            if (alive && log != null) {
+                alive = false;
+                // Trimmed or discarded, so its record can go when the log is next compacted
+                log.release(record);
+            }
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            if (!canUndo()) {
+                throw new CannotUndoException();
+            }
+            done = false;
+            if (loading) {
+                return;
+            }
+            List<Replacements[]> steps = read();
+            if (steps == null) {
+                throw new CannotUndoException();
+            }
+            replay(steps, 1, steps.size() - 1, -1);
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            if (!canRedo()) {
+                throw new CannotRedoException();
+            }
+            done = true;
+            List<Replacements[]> steps = read();
+            if (steps == null) {
+                throw new CannotRedoException();
+            }
+            replay(steps, 0, 0, 1);
+        }
+
+        /**
+         * Applies one side of each step, starting from the given step and moving in the given
+         * direction.
+         */
+        private void replay(List<Replacements[]> steps, int side, int first, int direction) {
+            replaying = true;
+            try {
+                for (int i = first; i >= 0 && i < steps.size(); i += direction) {
+                    document.replaceAll(steps.get(i)[side]);
+                }
+            } finally {
+                replaying = false;
+            }
+        }
+
+        /**
+         * Reads the steps of the edit back, or returns null if the log could not be read.
+         */
+        private List<Replacements[]> read() {
+            try {
+                return log.read(record.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException | IOException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Reads the record of the edit back as it is in the log, once it has been written.
+         */
+        private byte[] readRecord() throws IOException {
+            try {
+                return log.readBytes(record.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while the undo log was written", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Could not write the undo log", e.getCause());
+            }
+        }
+
+        @Override
+        public String getPresentationName() {
+            return presentationName;
+        }
+    }
+
+    /**
+     * Append-only temporary file of compressed edits, written by a background thread.
+     * <p>
+     * A record holds the steps of one undoable edit. Each step is a batch of replacements with
+     * both the text it removed and the text it inserted, so it can be replayed either way.
+     * <p>
+     * The records of edits that have been trimmed from the history or overwritten by new typing
+     * are dead. Once a large log is mostly dead, the live records are copied to a new file and
+     * the old one deleted; their positions are updated in place, so the edits keep finding them.
+     */
+    private static final class SpillLog {
+        // The log is compacted once it is at least this large and less than half of it is live
+        private static final long COMPACT_SIZE = 16 << 20;
+
+
+        private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Undo log writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        private FileChannel channel;
+
+        // The live records in the order they are in the file, and their total length; only
+        // touched by the writer thread
+        private final Set<long[]> records = new LinkedHashSet<>();
+        private long liveBytes;
+
+        /**
+         * Queues a record for writing.
+         *
+         * @return The position and length of the record, once it is written.
+         */
+        Future<long[]> write(List<TextEdit> steps) {
+            return writer.submit(new Callable<long[]>() {
+                @Override
+                public long[] call() throws IOException {
+                    open();
+                    long start = channel.size();
+                    channel.position(start);
+                    // Finished rather than closed, since closing would close the channel too
+                    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                    try {
+                        DeflaterOutputStream deflated = new DeflaterOutputStream(
+                                new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), deflater);
+                        DataOutputStream out = new DataOutputStream(deflated);
+                        out.writeInt(steps.size());
+                        for (TextEdit step : steps) {
+                            writeStep(step, out);
+                        }
+                        deflated.finish();
+                        out.flush();
+                    } finally {
+                        deflater.end();
+                    }
+                    return added(new long[]{start, channel.size() - start});
+                }
+            });
+        }
+
+        /**
+         * Queues a record that was written before, such as by an earlier session.
+         *
+         * @return The position and length of the record, once it is written.
+         */
+        Future<long[]> append(byte[] record) {
+            return writer.submit(new Callable<long[]>() {
+                @Override
+                public long[] call() throws IOException {
+                    open();
+                    long start = channel.size();
+                    ByteBuffer buffer = ByteBuffer.wrap(record);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer, start + buffer.position());
+                    }
+                    return added(new long[]{start, record.length});
+                }
+            });
+        }
+
+        private long[] added(long[] record) {
+            records.add(record);
+            liveBytes += record[1];
+            return record;
+        }
+
+        /**
+         * Marks a record dead once it has been written, and compacts the log if it is mostly dead.
+         */
+        void release(Future<long[]> record) {
+            writer.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException, ExecutionException, InterruptedException {
+                    long[] released = record.get();
+                    // Already gone if the log was cleared since
+                    if (records.remove(released)) {
+                        liveBytes -= released[1];
+                    }
+                    long size = channel.size();
+                    if (size >= COMPACT_SIZE && liveBytes < size / 2) {
+                        compact();
+                    }
+                    return null;
+                }
+            });
+        }
+
+        /**
+         * Copies the live records to a new file and switches to it. Reads carry on from the old
+         * file until the switch.
+         */
+        private void compact() throws IOException {
+            FileChannel compacted = createFile();
+            long[] positions = new long[records.size()];
+            try {
+                long position = 0;
+                int i = 0;
+                for (long[] record : records) {
+                    positions[i++] = position;
+                    for (long done = 0; done < record[1]; ) {
+                        done += channel.transferTo(record[0] + done, record[1] - done, compacted);
+                    }
+                    position += record[1];
+                }
+            } catch (IOException e) {
+                compacted.close();
+                throw e;
+            }
+            FileChannel old;
+            synchronized (this) {
+                int i = 0;
+                for (long[] record : records) {
+                    record[0] = positions[i++];
+                }
+                old = channel;
+                channel = compacted;
+            }
+            old.close();
+        }
+
+        /**
+         * Creates the file of the log the first time a record is written.
+         */
+        private void open() throws IOException {
+            if (channel == null) {
+                channel = createFile();
+            }
+        }
+
+        private static FileChannel createFile() throws IOException {
+            File file = File.createTempFile("notepad-undo", ".log");
+            file.deleteOnExit();
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        }
+
+        /**
+         * Empties the log once the edits already queued have been written.
+         */
+        void clear() {
+            writer.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    if (channel != null) {
+                        channel.truncate(0);
+                    }
+                    records.clear();
+                    liveBytes = 0;
+                    return null;
+                }
+            });
+        }
+
+        /**
+         * Deletes the log once the edits already queued have been written, and stops the writer.
+         */
+        void close() {
+            writer.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                    return null;
+                }
+            });
+            writer.shutdown();
+        }
+
+        private static void writeStep(TextEdit step, DataOutputStream out) throws IOException {
+            Replacements replacements = step.getReplacements();
+            long removed = 0;
+            for (int i = 0; i < replacements.size(); i++) {
+                removed += replacements.getLength(i);
+            }
+            out.writeInt(replacements.size());
+            out.writeLong(removed);
+            out.writeLong(removed + replacements.getLengthChange());
+
+            Segment segment = new Segment();
+            segment.setPartialReturn(true);
+            for (int i = 0; i < replacements.size(); i++) {
+                out.writeInt(replacements.getStart(i));
+                out.writeInt(replacements.getLength(i));
+                for (int done = 0; done < replacements.getLength(i); done += segment.count) {
+                    step.getRemovedText(i, done, segment);
+                    writeChars(segment, out);
+                }
+                out.writeInt(replacements.getTextLength(i));
+                for (int done = 0; done < replacements.getTextLength(i); done += segment.count) {
+                    replacements.getText().getChars(replacements.getTextStart(i) + done, replacements.getTextLength(i) - done, segment);
+                    writeChars(segment, out);
+                }
+            }
+        }
+
+        private static void writeChars(Segment segment, DataOutputStream out) throws IOException {
+            for (int i = 0; i < segment.count; i++) {
+                out.writeChar(segment.array[segment.offset + i]);
+            }
+        }
+
+        /**
+         * Reads a record back. Each step comes as a pair of batches: the one that redoes it, and
+         * the one that undoes it, which applies to the text as it reads after the step.
+         */
+        List<Replacements[]> read(long[] record) throws IOException {
+            byte[] bytes = readBytes(record);
+            DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)));
+            int count = in.readInt();
+            List<Replacements[]> steps = new ArrayList<>(count);
+            for (int s = 0; s < count; s++) {
+                int size = in.readInt();
+                char[] removedText = new char[(int) in.readLong()];
+                char[] insertedText = new char[(int) in.readLong()];
+                Replacements forward = new Replacements(new CharArrayBuffer(insertedText));
+                Replacements backward = new Replacements(new CharArrayBuffer(removedText));
+                int removedPos = 0;
+                int insertedPos = 0;
+                long shift = 0;
+                for (int i = 0; i < size; i++) {
+                    int start = in.readInt();
+                    int length = in.readInt();
+                    readChars(in, removedText, removedPos, length);
+                    int textLength = in.readInt();
+                    readChars(in, insertedText, insertedPos, textLength);
+                    forward.add(start, length, insertedPos, textLength);
+                    backward.add((int) (start + shift), textLength, removedPos, length);
+                    shift += textLength - length;
+                    removedPos += length;
+                    insertedPos += textLength;
+                }
+                steps.add(new Replacements[]{forward, backward});
+            }
+            return steps;
+        }
+
+        /**
+         * Reads the compressed bytes of a record. Synchronized with the switch to a compacted file,
+         * which moves the record.
+         */
+        synchronized byte[] readBytes(long[] record) throws IOException {
+            byte[] bytes = new byte[(int) record[1]];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, record[0] + buffer.position()) < 0) {
+                    throw new IOException("Undo log is truncated");
+                }
+            }
+            return bytes;
+        }
+
+        private static void readChars(DataInputStream in, char[] dest, int start, int length) throws IOException {
+            for (int i = start; i < start + length; i++) {
+                dest[i] = in.readChar();
+            }
+        }
+    }
+}
@@ -0,0 +1,666 @@
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+import java.awt.*;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * View that wraps the lines of a {@link PieceTableDocument} at the width of the text area,
+ * without a child view per line and without laying out the whole document up front.
+ * <p>
+ * Swing's WrappedPlainView makes a view for every line and wraps all of them on the Event
+ * Dispatch Thread whenever the width or font changes, which freezes the editor on large files.
+ * Here the number of rows each line wraps into is kept in a {@link RowIndex}. Lines being painted
+ * or looked at are wrapped on the spot, and their row starts kept in a small cache; every other
+ * line is wrapped by a background thread, a chunk of lines at a time, against a snapshot of the
+ * text. Until then a line counts as the rows it had before, and while the counts above the
+ * viewport settle the viewport is moved along with the text it shows, so nothing on screen
+ * jumps. An edit only rewraps the lines it touched.
+ */
+public class WrapView extends View implements TabExpander {
+    // Lines whose row starts are kept, which covers several screens of text
+    private static final int CACHE_SIZE = 512;
+
+    // Work for the background thread at a time
+    private static final int CHUNK_LINES = 4096;
+    private static final int CHUNK_CHARS = 1 << 18;
+
+    // Edits spanning more lines than this leave the lines to the background thread
+    private static final int EAGER_LINES = 256;
+
+    private static final ExecutorService layoutThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Wrap layout");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+
+    private final boolean wordWrap;
+    private PieceTableDocument document;
+    private JTextComponent host;
+
+    private RowIndex rows;
+    private Wrapper wrapper;
+    private Font font;
+    private FontMetrics metrics;
+    private GlyphMetrics glyphMetrics;
+    private int lineHeight;
+    private int width;
+
+    // Row starts of recently wrapped lines, relative to the line start
+    private final LineCache<int[]> breakCache = new LineCache<>(CACHE_SIZE);
+
+    // Repaints the lines the highlighter restyles once it has worked out how they start
+    private final SyntaxHighlighter.Listener restyleListener = new SyntaxHighlighter.Listener() {
+        @Override
+        public void linesRestyled(int first, int last) {
+            if (host != null && first < rows.getLineCount()) {
+                repaintLines(first, Math.min(last, rows.getLineCount() - 1));
+            }
+        }
+    };
+
+    // Bumped by every edit, so that background work on older text is thrown away
+    private long editCount;
+
+    // First line the background thread may still have to wrap, and whether it is busy
+    private int layoutCursor;
+    private boolean layoutPending;
+
+    // Left edge of the row being painted or measured, for tab stops
+    private int tabBase;
+
+    private final Segment segment = new Segment();
+
+    /**
+     * Creates a view of the root element of a {@link PieceTableDocument}.
+     *
+     * @param element The root element.
+     * @param wordWrap Whether to break rows between words rather than anywhere.
+     */
+    public WrapView(Element element, boolean wordWrap) {
+        super(element);
+        this.wordWrap = wordWrap;
+    }
+
+    @Override
+    public void setParent(View parent) {
+        super.setParent(parent);
+        if (parent == null) {
+            // Stops the background work, whose results no longer match
+            host = null;
+            editCount++;
+            SyntaxHighlighter highlighter = document != null ? SyntaxHighlighter.of(document) : null;
+            if (highlighter != null) {
+                highlighter.removeListener(restyleListener);
+            }
+            return;
+        }
+        host = (JTextComponent) getContainer();
+        if (rows == null) {
+            document = (PieceTableDocument) getDocument();
+            rows = new RowIndex(document.getLineCount());
+        }
+        // Kept on for a new font or tab size, which only rescales the row counts
+        updateMetrics();
+        scheduleLayout();
+    }
+
+    /**
+     * Returns whether rows break between words rather than anywhere.
+     *
+     * @return True for word wrap.
+     */
+    public boolean isWordWrap() {
+        return wordWrap;
+    }
+
+    /**
+     * Starts a new layout if the font or tab size has changed since the last one.
+     */
+    private void updateMetrics() {
+        Font current = host.getFont();
+        int tabSize = getTabSize();
+        if (current.equals(font) && wrapper != null && wrapper.tabSize == tabSize * metrics.charWidth('m')) {
+            return;
+        }
+        font = current;
+        glyphMetrics = GlyphMetrics.get(host, font);
+        metrics = glyphMetrics.getFontMetrics();
+        lineHeight = metrics.getHeight();
+        relayout();
+    }
+
+    private int getTabSize() {
+        Object size = document.getProperty(PlainDocument.tabSizeAttribute);
+        return size instanceof Integer ? (Integer) size : 8;
+    }
+
+    /**
+     * Makes every row count stale, for a new width or font, and starts wrapping again in the
+     * background. Lines painted from now on are wrapped on the spot. Until the background thread
+     * gets to them, lines that wrapped keep their row counts scaled by how much less text now fits
+     * on a row, so the height of the text, and with it the scroll bar, stays close to right.
+     */
+    private void relayout() {
+        Wrapper old = wrapper;
+        wrapper = new Wrapper(glyphMetrics, getTabSize() * metrics.charWidth('m'), width, wordWrap);
+        double scale = 1;
+        if (old != null && old.width > 0 && width > 0) {
+            scale = (double) glyphMetrics.getAverageWidth() / old.metrics.getAverageWidth() * old.width / width;
+        }
+        rows.invalidateAll(scale);
+        breakCache.clear();
+        editCount++;
+        layoutCursor = 0;
+        preferenceChanged(null, true, true);
+        scheduleLayout();
+    }
+
+    @Override
+    public void setSize(float width, float height) {
+        int newWidth = (int) width;
+        if (newWidth != this.width) {
+            this.width = newWidth;
+            relayout();
+        }
+    }
+
+    @Override
+    public float getPreferredSpan(int axis) {
+        if (axis == X_AXIS) {
+            return width;
+        }
+        updateMetrics();
+        return (float) Math.min(rows.getRowCount() * lineHeight, Integer.MAX_VALUE / 2);
+    }
+
+    @Override
+    public int getResizeWeight(int axis) {
+        return axis == X_AXIS ? 1 : 0;
+    }
+
+    // Line geometry
+
+    private int getLineStart(int line) {
+        return document.getLineStartOffset(line);
+    }
+
+    /**
+     * Retrieves the end of a line, not counting its newline.
+     */
+    private int getLineEnd(int line) {
+        return line + 1 < rows.getLineCount() ? getLineStart(line + 1) - 1 : document.getLength();
+    }
+
+    /**
+     * Retrieves the row starts of a line, wrapping it now if it is not in the cache, which also
+     * brings its row count up to date.
+     */
+    private int[] getBreaks(int line) {
+        int[] breaks = breakCache.get(line);
+        if (breaks == null) {
+            int start = getLineStart(line);
+            int end = getLineEnd(line);
+            try {
+                breaks = wrapper.wrap(document.snapshot(start, end - start), 0, end - start, true);
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+            breakCache.put(line, breaks);
+            rows.setRows(line, breaks.length, true);
+        }
+        return breaks;
+    }
+
+    // Painting
+
+    @Override
+    public void paint(Graphics g, Shape a) {
+        long started = System.nanoTime();
+        try {
+            paintRows(g, a);
+        } finally {
+            PaintMetrics.record(System.nanoTime() - started);
+            Diagnostics.textPainted();
+        }
+    }
+
+    /**
+     * Paints the rows inside the clip, wrapping any of their lines that are not in the cache.
+     */
+    private void paintRows(Graphics g, Shape a) {
+        updateMetrics();
+        Rectangle alloc = a.getBounds();
+        Rectangle clip = g.getClipBounds();
+        tabBase = alloc.x;
+        g.setFont(font);
+
+        long rowCount = rows.getRowCount();
+        long firstRow = Math.max(0, (clip.y - alloc.y) / lineHeight);
+        if (firstRow >= rowCount) {
+            return;
+        }
+        int line = rows.getLineOfRow(firstRow);
+        long y = alloc.y + rows.getRowOfLine(line) * (long) lineHeight;
+        int lineCount = rows.getLineCount();
+        int selectionStart = host.getSelectionStart();
+        int selectionEnd = host.getSelectionEnd();
+        Color foreground = host.isEnabled() ? host.getForeground() : host.getDisabledTextColor();
+        Color selected = host.getSelectedTextColor();
+        SyntaxHighlighter highlighter = host.isEnabled() ? SyntaxHighlighter.of(document) : null;
+        if (highlighter != null) {
+            highlighter.setListener(restyleListener);
+        }
+
+        for (; line < lineCount && y < clip.y + clip.height; line++) {
+            int[] breaks = getBreaks(line);
+            int start = getLineStart(line);
+            int end = getLineEnd(line);
+            TokenList tokens = highlighter != null ? highlighter.getTokens(line) : null;
+            for (int row = 0; row < breaks.length; row++, y += lineHeight) {
+                if (y + lineHeight < clip.y) {
+                    continue;
+                }
+                int rowStart = start + breaks[row];
+                int rowEnd = row + 1 < breaks.length ? start + breaks[row + 1] : end;
+                int baseline = (int) y + metrics.getAscent();
+                // Selected text is drawn in its own color, like PlainView does
+                int x = drawTokens(g, tokens, start, rowStart, Math.min(rowEnd, Math.max(rowStart, selectionStart)), alloc.x, baseline, foreground);
+                x = drawText(g, Math.max(rowStart, selectionStart), Math.min(rowEnd, selectionEnd), x, baseline, selected);
+                drawTokens(g, tokens, start, Math.max(rowStart, Math.min(rowEnd, selectionEnd)), rowEnd, x, baseline, foreground);
+            }
+        }
+        if (rows.getRowCount() != rowCount) {
+            // Wrapping the visible lines changed their height, and so the height of the text
+            preferenceChanged(null, false, true);
+            host.repaint();
+        }
+    }
+
+    /**
+     * Draws a range of a line in the colors of its tokens, or in the foreground color if it has
+     * none, and returns where it ends.
+     */
+    private int drawTokens(Graphics g, TokenList tokens, int lineStart, int p0, int p1, int x, int baseline,
+                           Color foreground) {
+        if (tokens == null) {
+            return drawText(g, p0, p1, x, baseline, foreground);
+        }
+        int index = tokens.indexAt(p0 - lineStart);
+        while (p0 < p1) {
+            int next = index + 1 < tokens.getCount() ? Math.min(p1, lineStart + tokens.getStart(index + 1)) : p1;
+            Color color = index >= 0 ? tokens.getType(index).getColor() : null;
+            x = drawText(g, p0, next, x, baseline, color != null ? color : foreground);
+            p0 = next;
+            index++;
+        }
+        return x;
+    }
+
+    /**
+     * Draws a range of text and returns where it ends.
+     */
+    private int drawText(Graphics g, int p0, int p1, int x, int baseline, Color color) {
+        if (p1 <= p0) {
+            return x;
+        }
+        try {
+            document.getText(p0, p1 - p0, segment);
+        } catch (BadLocationException e) {
+            return x;
+        }
+        g.setColor(color);
+        return (int) Utilities.drawTabbedText(segment, (float) x, (float) baseline, (Graphics2D) g, this, p0);
+    }
+
+    @Override
+    public float nextTabStop(float x, int tabOffset) {
+        int tabSize = wrapper.tabSize;
+        if (tabSize == 0) {
+            return x;
+        }
+        int tabs = ((int) x - tabBase) / tabSize;
+        return tabBase + (tabs + 1) * tabSize;
+    }
+
+    // Mapping between the text and the screen
+
+    @Override
+    public Shape modelToView(int pos, Shape a, Position.Bias b) throws BadLocationException {
+        if (pos < 0 || pos > document.getLength()) {
+            throw new BadLocationException("Offset outside the document", pos);
+        }
+        updateMetrics();
+        Rectangle alloc = a.getBounds();
+        int line = document.getLineOfOffset(pos);
+        int[] breaks = getBreaks(line);
+        int start = getLineStart(line);
+        int row = Arrays.binarySearch(breaks, pos - start);
+        if (row < 0) {
+            row = -row - 2;
+        }
+        int rowStart = start + breaks[row];
+        tabBase = alloc.x;
+        document.getText(rowStart, pos - rowStart, segment);
+        int x = alloc.x + (int) Utilities.getTabbedTextWidth(segment, metrics, (float) alloc.x, this, rowStart);
+        long y = alloc.y + (rows.getRowOfLine(line) + row) * (long) lineHeight;
+        return new Rectangle(x, (int) Math.min(y, Integer.MAX_VALUE), 1, lineHeight);
+    }
+
+    @Override
+    public int viewToModel(float fx, float fy, Shape a, Position.Bias[] biasReturn) {
+        biasReturn[0] = Position.Bias.Forward;
+        updateMetrics();
+        Rectangle alloc = a.getBounds();
+        if (fy < alloc.y) {
+            return 0;
+        }
+        long row = (long) ((fy - alloc.y) / lineHeight);
+        if (row >= rows.getRowCount()) {
+            return document.getLength();
+        }
+        int line = rows.getLineOfRow(row);
+        int[] breaks = getBreaks(line);
+        int rowInLine = (int) Math.max(0, Math.min(row - rows.getRowOfLine(line), breaks.length - 1));
+        int start = getLineStart(line);
+        int rowStart = start + breaks[rowInLine];
+        boolean lastRow = rowInLine + 1 == breaks.length;
+        int rowEnd = lastRow ? getLineEnd(line) : start + breaks[rowInLine + 1];
+        if (fx < alloc.x) {
+            return rowStart;
+        }
+        try {
+            document.getText(rowStart, rowEnd - rowStart, segment);
+        } catch (BadLocationException e) {
+            return rowStart;
+        }
+        tabBase = alloc.x;
+        int offset = rowStart + Utilities.getTabbedTextOffset(segment, metrics, (float) alloc.x, fx, this, rowStart, true);
+        // The end of a wrapped row is the start of the next one, so the caret stays before it
+        return lastRow ? Math.min(offset, rowEnd) : Math.min(offset, rowEnd - 1);
+    }
+
+    // Edits
+
+    @Override
+    public void insertUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        linesChanged(e);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        linesChanged(e);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        linesChanged(e);
+    }
+
+    /**
+     * Replaces the row counts of the lines an edit touched and rewraps them. Every other line
+     * keeps its rows, and cached row starts move along with their lines.
+     */
+    private void linesChanged(DocumentEvent e) {
+        int oldCount = rows.getLineCount();
+        int newCount = document.getLineCount();
+        int first = document.getLineOfOffset(e.getOffset());
+        int lastNew = e.getType() == DocumentEvent.EventType.REMOVE ? first
+                : document.getLineOfOffset(e.getOffset() + e.getLength());
+        int lastOld = lastNew - (newCount - oldCount);
+        long rowCount = rows.getRowCount();
+
+        rows.replace(first, lastOld - first + 1, lastNew - first + 1);
+        breakCache.linesReplaced(first, lastOld, newCount - oldCount);
+        editCount++;
+        layoutCursor = Math.min(layoutCursor, first);
+
+        if (lastNew - first < EAGER_LINES) {
+            for (int line = first; line <= lastNew; line++) {
+                getBreaks(line);
+            }
+        } else {
+            // Estimated from their length until the background thread gets to them
+            for (int line = first; line <= lastNew; line++) {
+                rows.setRows(line, wrapper.estimateRows(getLineEnd(line) - getLineStart(line)), false);
+            }
+        }
+
+        if (rows.getRowCount() != rowCount || newCount != oldCount) {
+            preferenceChanged(null, false, true);
+            host.repaint();
+        } else {
+            repaintLines(first, lastNew);
+        }
+        scheduleLayout();
+    }
+
+    private void repaintLines(int first, int last) {
+        Insets insets = host.getInsets();
+        long top = insets.top + rows.getRowOfLine(first) * (long) lineHeight;
+        long bottom = insets.top + (rows.getRowOfLine(last) + rows.getRows(last)) * (long) lineHeight;
+        host.repaint(0, (int) Math.min(top, Integer.MAX_VALUE), host.getWidth(),
+                (int) Math.min(bottom - top, Integer.MAX_VALUE));
+    }
+
+    // Background layout
+
+    /**
+     * Hands the next chunk of stale lines to the background thread, unless it is busy or every
+     * line is up to date.
+     */
+    private void scheduleLayout() {
+        if (layoutPending || host == null || width <= 0) {
+            return;
+        }
+        int first = rows.findStale(layoutCursor);
+        if (first < 0) {
+            return;
+        }
+        // Take lines up to the chunk's line or character limit, stale or not
+        int lineCount = rows.getLineCount();
+        int start = getLineStart(first);
+        int last = first;
+        while (last + 1 < lineCount && last + 1 - first < CHUNK_LINES && getLineStart(last + 1) - start < CHUNK_CHARS) {
+            last++;
+        }
+        int end = getLineEnd(last);
+        int[] lineStarts = new int[last - first + 2];
+        for (int line = first; line <= last; line++) {
+            lineStarts[line - first] = getLineStart(line) - start;
+        }
+        lineStarts[last - first + 1] = end - start + 1;
+
+        TextBuffer text;
+        try {
+            text = document.snapshot(start, end - start);
+        } catch (BadLocationException e) {
+            return;
+        }
+        Wrapper chunkWrapper = wrapper;
+        long chunkEditCount = editCount;
+        int chunkFirst = first;
+        layoutPending = true;
+        layoutThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                int[] counts = new int[lineStarts.length - 1];
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] = chunkWrapper.wrap(text, lineStarts[i], lineStarts[i + 1] - 1, false).length;
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        layoutPending = false;
+                        if (host == null) {
+                            return;
+                        }
+                        if (chunkEditCount == editCount && chunkWrapper == wrapper) {
+                            applyCounts(chunkFirst, counts);
+                        }
+                        scheduleLayout();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Takes the row counts the background thread computed, keeping the text at the top of the
+     * viewport where it is.
+     */
+    private void applyCounts(int first, int[] counts) {
+        JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, host);
+        // The line at the top of the viewport, and how far into it the viewport starts
+        int anchorLine = -1;
+        long anchorDelta = 0;
+        if (viewport != null) {
+            int top = host.getInsets().top;
+            int y = viewport.getViewPosition().y;
+            anchorLine = y > top ? rows.getLineOfRow((y - top) / lineHeight) : -1;
+            anchorDelta = y - top - rows.getRowOfLine(Math.max(anchorLine, 0)) * lineHeight;
+        }
+        long rowCount = rows.getRowCount();
+
+        for (int i = 0; i < counts.length; i++) {
+            if (rows.isStale(first + i)) {
+                rows.setRows(first + i, counts[i], true);
+            }
+        }
+        layoutCursor = first + counts.length;
+        if (rows.getRowCount() == rowCount) {
+            return;
+        }
+
+        preferenceChanged(null, false, true);
+        if (anchorLine >= 0) {
+            // Moved at once rather than after the next layout, which would show the text, or
+            // hand a zoom, the old position against the new height for an event in between;
+            // sized for the new height first, or the position is clamped to the old one
+            viewport.validate();
+            Point position = viewport.getViewPosition();
+            long y = host.getInsets().top + rows.getRowOfLine(anchorLine) * lineHeight + anchorDelta;
+            position.y = (int) Math.max(0, Math.min(y, Integer.MAX_VALUE));
+            viewport.setViewPosition(position);
+        }
+        host.repaint();
+    }
+
+    /**
+     * Breaks lines into rows that fit a width. Immutable, so the background thread can use it
+     * while the view moves on to another.
+     */
+    static final class Wrapper {
+        private final GlyphMetrics metrics;
+        private final int tabSize;
+        private final int width;
+        private final boolean wordWrap;
+
+        Wrapper(GlyphMetrics metrics, int tabSize, int width, boolean wordWrap) {
+            this.metrics = metrics;
+            this.tabSize = tabSize;
+            this.width = width;
+            this.wordWrap = wordWrap;
+        }
+
+        /**
+         * Guesses how many rows a line of some length wraps into.
+         */
+        int estimateRows(int length) {
+            return width <= 0 ? 1 : Math.max(1, (int) Math.min((long) length * metrics.getAverageWidth() / width + 1, Integer.MAX_VALUE));
+        }
+
+        /**
+         * Finds where a line breaks into rows.
+         *
+         * @param text The text holding the line.
+         * @param start The start of the line.
+         * @param end The end of the line, not counting its newline.
+         * @param keep Whether the row starts are needed, or only how many there are.
+         * @return The row starts relative to the line start, beginning with 0; only the length is
+         *         meaningful if they are not kept.
+         */
+        int[] wrap(TextBuffer text, int start, int end, boolean keep) {
+            if (width <= 0 || end - start == 0) {
+                return new int[1];
+            }
+            int[] breaks = new int[keep ? 4 : 1];
+            int count = 0;
+            Segment chars = new Segment();
+            chars.setPartialReturn(true);
+            int rowStart = start;
+            while (rowStart < end) {
+                if (keep) {
+                    if (count == breaks.length) {
+                        breaks = Arrays.copyOf(breaks, count * 2);
+                    }
+                    breaks[count] = rowStart - start;
+                }
+                count++;
+                rowStart = nextRow(text, rowStart, end, chars);
+            }
+            return keep ? Arrays.copyOf(breaks, count) : new int[count];
+        }
+
+        /**
+         * Finds where the row starting at an offset ends: after the last space that fits when
+         * wrapping words, or else after the last character that fits, and never before at least
+         * one character.
+         */
+        private int nextRow(TextBuffer text, int rowStart, int end, Segment chars) {
+            int x = 0;
+            int lastSpace = -1;
+            int pos = rowStart;
+            while (pos < end) {
+                text.getChars(pos, end - pos, chars);
+                for (int i = 0; i < chars.count; i++, pos++) {
+                    char c = chars.array[chars.offset + i];
+                    if (c == ' ' && wordWrap) {
+                        // Spaces may hang past the edge, so rows break after them
+                        x += metrics.charWidth(' ');
+                        lastSpace = pos + 1;
+                        continue;
+                    }
+                    int advance = c == '\t' ? tabSize == 0 ? 0 : (x / tabSize + 1) * tabSize - x
+                            : metrics.charWidth(c);
+                    if (x + advance > width && pos > rowStart) {
+                        int next = wordWrap && lastSpace > rowStart ? lastSpace : pos;
+                        // Never split a surrogate pair
+                        if (next - 1 > rowStart && Character.isLowSurrogate(charAt(text, next))
+                                && Character.isHighSurrogate(charAt(text, next - 1))) {
+                            next--;
+                        }
+                        return next;
+                    }
+                    x += advance;
+                    if (c == '\t' && wordWrap) {
+                        lastSpace = pos + 1;
+                    }
+                }
+            }
+            return end;
+        }
+
+        private static char charAt(TextBuffer text, int pos) {
+            Segment one = new Segment();
+            text.getChars(pos, 1, one);
+            return one.array[one.offset];
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import javax.swing.text.Segment;
+
+/**
+ * Tokenizes XML, and HTML as far as it looks like XML: tags, attributes and their values,
+ * entities, comments, CDATA sections, processing instructions and declarations.
+ * <p>
+ * The state is the construct the text is inside, since all but plain text may run over several
+ * lines, along with whether the name of a tag comes next.
+ */
+public class XmlTokenizer implements Tokenizer {
+    private static final int TEXT = 0;
+    private static final int TAG = 1;
+    private static final int DOUBLE_QUOTED = 2;
+    private static final int SINGLE_QUOTED = 3;
+    private static final int COMMENT = 4;
+    private static final int CDATA = 5;
+    private static final int INSTRUCTION = 6;
+    private static final int DECLARATION = 7;
+
+    private static final int MODE_MASK = 7;
+    private static final int NAME_NEXT = 8;
+
+    @Override
+    public int getInitialState() {
+        return TEXT;
+    }
+
+    @Override
+    public int tokenize(Segment text, int state, boolean endsLine, TokenList tokens) {
+        char[] array = text.array;
+        int start = text.offset;
+        int end = start + text.count;
+        int mode = state & MODE_MASK;
+        boolean nameNext = (state & NAME_NEXT) != 0;
+
+        int i = start;
+        while (i < end) {
+            char c = array[i];
+            switch (mode) {
+                case TEXT:
+                    if (c == '<') {
+                        if (startsWith(array, i, end, "<!--")) {
+                            Tokenizers.add(tokens, i - start, TokenType.COMMENT);
+                            mode = COMMENT;
+                            i += 4;
+                        } else if (startsWith(array, i, end, "<![CDATA[")) {
+                            Tokenizers.add(tokens, i - start, TokenType.STRING);
+                            mode = CDATA;
+                            i += 9;
+                        } else if (startsWith(array, i, end, "<?")) {
+                            Tokenizers.add(tokens, i - start, TokenType.KEYWORD);
+                            mode = INSTRUCTION;
+                            i += 2;
+                        } else if (startsWith(array, i, end, "<!")) {
+                            Tokenizers.add(tokens, i - start, TokenType.KEYWORD);
+                            mode = DECLARATION;
+                            i += 2;
+                        } else {
+                            Tokenizers.add(tokens, i - start, TokenType.TAG);
+                            mode = TAG;
+                            nameNext = true;
+                            i++;
+                            if (i < end && array[i] == '/') {
+                                i++;
+                            }
+                        }
+                    } else if (c == '&') {
+                        Tokenizers.add(tokens, i - start, TokenType.KEYWORD);
+                        i++;
+                        while (i < end && array[i] != ';' && isNamePart(array[i])) {
+                            i++;
+                        }
+                        if (i < end && array[i] == ';') {
+                            i++;
+                        }
+                    } else {
+                        Tokenizers.add(tokens, i - start, TokenType.TEXT);
+                        while (i < end && array[i] != '<' && array[i] != '&') {
+                            i++;
+                        }
+                    }
+                    break;
+                case TAG:
+                    if (nameNext) {
+                        // The name of the tag takes the color of its brackets
+                        nameNext = false;
+                        while (i < end && isNamePart(array[i])) {
+                            i++;
+                        }
+                    } else if (c == ' ' || c == '\t' || c == '\r') {
+                        i++;
+                    } else if (c == '>' || c == '/') {
+                        Tokenizers.add(tokens, i - start, TokenType.TAG);
+                        if (c == '>') {
+                            mode = TEXT;
+                        }
+                        i++;
+                    } else if (c == '=') {
+                        Tokenizers.add(tokens, i - start, TokenType.PUNCTUATION);
+                        i++;
+                    } else if (c == '"' || c == '\'') {
+                        Tokenizers.add(tokens, i - start, TokenType.STRING);
+                        mode = c == '"' ? DOUBLE_QUOTED : SINGLE_QUOTED;
+                        i++;
+                    } else {
+                        Tokenizers.add(tokens, i - start, TokenType.ATTRIBUTE);
+                        i++;
+                        while (i < end && isNamePart(array[i])) {
+                            i++;
+                        }
+                    }
+                    break;
+                case DOUBLE_QUOTED:
+                case SINGLE_QUOTED:
+                    Tokenizers.add(tokens, i - start, TokenType.STRING);
+                    char quote = mode == DOUBLE_QUOTED ? '"' : '\'';
+                    while (i < end && array[i] != quote) {
+                        i++;
+                    }
+                    if (i < end) {
+                        mode = TAG;
+                        i++;
+                    }
+                    break;
+                case COMMENT:
+                    i = skipPast(array, i, end, "-->", tokens, start, TokenType.COMMENT);
+                    if (i >= 0) {
+                        mode = TEXT;
+                    }
+                    break;
+                case CDATA:
+                    i = skipPast(array, i, end, "]]>", tokens, start, TokenType.STRING);
+                    if (i >= 0) {
+                        mode = TEXT;
+                    }
+                    break;
+                case INSTRUCTION:
+                    i = skipPast(array, i, end, "?>", tokens, start, TokenType.KEYWORD);
+                    if (i >= 0) {
+                        mode = TEXT;
+                    }
+                    break;
+                default:
+                    i = skipPast(array, i, end, ">", tokens, start, TokenType.KEYWORD);
+                    if (i >= 0) {
+                        mode = TEXT;
+                    }
+                    break;
+            }
+            if (i < 0) {
+                // The construct runs past the end of the text
+                break;
+            }
+        }
+        return mode | (nameNext ? NAME_NEXT : 0);
+    }
+
+    /**
+     * Adds a token running up to and including a terminator.
+     *
+     * @return Where the text goes on after the terminator, or -1 if the text ends first.
+     */
+    private static int skipPast(char[] array, int i, int end, String terminator, TokenList tokens, int start,
+                                TokenType type) {
+        Tokenizers.add(tokens, i - start, type);
+        for (; i < end; i++) {
+            if (startsWith(array, i, end, terminator)) {
+                return i + terminator.length();
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(char[] array, int i, int end, String prefix) {
+        return end - i >= prefix.length() && Tokenizers.matches(array, i, i + prefix.length(), prefix);
+    }
+
+    private static boolean isNamePart(char c) {
+        return Character.isLetterOrDigit(c) || c == ':' || c == '-' || c == '_' || c == '.' || c == '#';
+    }
+}
@@ -0,0 +1,136 @@
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Changes the font of the text area for zooming and for the font dialog, keeping the text at the
+ * top of the viewport in place.
+ * <p>
+ * Each font change makes the text views measure the visible text again and, with line wrap on,
+ * wrap the rest of the document again in the background. Zoom steps that come faster than that,
+ * as they do while a zoom shortcut is held down, are therefore throttled: the first step is shown
+ * at once, and the steps after it are folded into one change per {@value #THROTTLE_MILLIS} ms,
+ * which always ends on the last size asked for.
+ */
+public class ZoomController {
+    // Font size Restore Default Zoom goes back to
+    public static final int DEFAULT_SIZE = 12;
+
+    private static final int MIN_SIZE = 4;
+    private static final int MAX_SIZE = 200;
+
+    // Least time between two font changes
+    private static final int THROTTLE_MILLIS = 80;
+
+    private final JTextArea textArea;
+    private final Timer timer;
+
+    // Font asked for while the last change was too recent, if any
+    private Font pending;
+
+    /**
+     * Creates a controller for a text area.
+     *
+     * @param textArea The text area whose font it changes.
+     */
+    public ZoomController(JTextArea textArea) {
+        this.textArea = textArea;
+        timer = new Timer(THROTTLE_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (pending == null) {
+                    timer.stop();
+                    return;
+                }
+                Font font = pending;
+                pending = null;
+                apply(font);
+            }
+        });
+    }
+
+    /**
+     * Makes the text larger or smaller.
+     *
+     * @param steps The number of points to grow the font by, negative to shrink it.
+     */
+    public void zoomBy(int steps) {
+        Font current = getFont();
+        setFont(current.deriveFont((float) Math.max(MIN_SIZE, Math.min(current.getSize() + steps, MAX_SIZE))));
+    }
+
+    /**
+     * Returns the text to its default size.
+     */
+    public void restore() {
+        setFont(getFont().deriveFont((float) DEFAULT_SIZE));
+    }
+
+    /**
+     * Retrieves the font the text area has or is about to get.
+     *
+     * @return The font, counting a change still held back.
+     */
+    public Font getFont() {
+        return pending != null ? pending : textArea.getFont();
+    }
+
+    /**
+     * Changes the font of the text area, at once unless the last change was too recent, in which
+     * case it follows as soon as the throttle allows.
+     *
+     * @param font The new font.
+     */
+    public void setFont(Font font) {
+        if (timer.isRunning()) {
+            pending = font;
+            return;
+        }
+        apply(font);
+        timer.start();
+    }
+
+    /**
+     * Changes the font and scrolls so that the text at the top of the viewport stays there: the
+     * first character shown, found again in the new layout, starts as far above the top of the
+     * viewport as it did before, scaled by how much taller a row has become.
+     */
+    private void apply(Font font) {
+        if (font.equals(textArea.getFont())) {
+            return;
+        }
+        JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, textArea);
+        if (viewport == null) {
+            textArea.setFont(font);
+            return;
+        }
+        Point position = viewport.getViewPosition();
+        int top = textArea.viewToModel2D(position);
+        Rectangle2D before;
+        try {
+            before = textArea.modelToView2D(top);
+        } catch (BadLocationException e) {
+            // Cannot happen for an offset the text area just gave
+            textArea.setFont(font);
+            return;
+        }
+        textArea.setFont(font);
+        // Lays the text out for the new font now, so that the top line is found where it lands
+        viewport.validate();
+        try {
+            Rectangle2D after = textArea.modelToView2D(top);
+            // Left at the very top, the viewport keeps showing the margin above the text
+            int y = 0;
+            if (position.y > 0) {
+                double scale = before.getHeight() > 0 ? after.getHeight() / before.getHeight() : 1;
+                y = (int) Math.max(0, Math.round(after.getY() + (position.y - before.getY()) * scale));
+            }
+            viewport.setViewPosition(new Point(position.x, y));
+        } catch (BadLocationException e) {
+            // Cannot happen for an offset the text area just gave; the viewport stays put
+        }
+    }
+}
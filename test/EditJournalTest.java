@@ -0,0 +1,148 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.swing.text.BadLocationException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that replaying an {@link EditJournal} rebuilds the text it recorded, including after a
+ * crash tore its last record.
+ */
+class EditJournalTest {
+    @TempDir
+    Path directory;
+
+    private String previousDirectory;
+
+    @BeforeEach
+    void useTempDirectory() {
+        previousDirectory = System.setProperty("notepad.journalDir", directory.toString());
+    }
+
+    @AfterEach
+    void restoreDirectory() {
+        if (previousDirectory == null) {
+            System.clearProperty("notepad.journalDir");
+        } else {
+            System.setProperty("notepad.journalDir", previousDirectory);
+        }
+    }
+
+    @Test
+    void replayRebuildsTheText() throws BadLocationException, IOException {
+        String text = record(new Random(7), 400);
+        Path journal = onlyJournal();
+
+        PieceTableDocument replayed = new PieceTableDocument();
+        assertEquals(400, EditJournal.replay(journal, replayed, IoProgress.NONE));
+        assertEquals(text, replayed.getText(0, replayed.getLength()));
+    }
+
+    @Test
+    void tornRecordEndsTheReplay() throws BadLocationException, IOException {
+        String text = record(new Random(8), 50);
+        Path journal = onlyJournal();
+        long size = Files.size(journal);
+        // Half a record, as a crash in the middle of a write leaves it
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 9, 0, 'x'}));
+        }
+
+        PieceTableDocument replayed = new PieceTableDocument();
+        assertEquals(50, EditJournal.replay(journal, replayed, IoProgress.NONE));
+        assertEquals(text, replayed.getText(0, replayed.getLength()));
+        assertEquals(size, Files.size(journal));
+    }
+
+    @Test
+    void markTakenBeforeAStartIsDropped() throws BadLocationException, IOException {
+        PieceTableDocument old = new PieceTableDocument();
+        EditJournal journal = new EditJournal();
+        journal.start(null);
+        journal.setDocument(old);
+        Random random = new Random(9);
+        for (int i = 0; i < 200; i++) {
+            old.insertString(old.getLength(), randomText(random, 50), null);
+        }
+        // A save snapshots the old document, then another one is started before it finishes
+        long mark = journal.mark();
+        journal.start(null);
+        PieceTableDocument document = new PieceTableDocument();
+        journal.setDocument(document);
+        for (int i = 0; i < 5; i++) {
+            document.insertString(document.getLength(), randomText(random, 10), null);
+        }
+        journal.compact(mark, directory.resolve("saved.txt").toFile());
+        String text = document.getText(0, document.getLength());
+        journal.close();
+
+        PieceTableDocument replayed = new PieceTableDocument();
+        assertEquals(5, EditJournal.replay(onlyJournal(), replayed, IoProgress.NONE));
+        assertEquals(text, replayed.getText(0, replayed.getLength()));
+    }
+
+    /**
+     * Journals random insertions, removals and batch replacements of an untitled document, and
+     * returns its text once the journal is closed.
+     */
+    private static String record(Random random, int count) throws BadLocationException {
+        PieceTableDocument document = new PieceTableDocument();
+        EditJournal journal = new EditJournal();
+        journal.start(null);
+        journal.setDocument(document);
+        for (int i = 0; i < count; i++) {
+            int length = document.getLength();
+            int choice = length < 10 ? 0 : random.nextInt(3);
+            if (choice == 0) {
+                document.insertString(random.nextInt(length + 1), randomText(random, 1 + random.nextInt(50)), null);
+            } else if (choice == 1) {
+                int offset = random.nextInt(length);
+                document.remove(offset, 1 + random.nextInt(Math.min(20, length - offset)));
+            } else {
+                String inserted = randomText(random, random.nextInt(30));
+                Replacements replacements = new Replacements(new CharArrayBuffer(inserted.toCharArray()));
+                int offset = random.nextInt(length - 5);
+                replacements.add(offset, 1 + random.nextInt(5), 0, inserted.length());
+                document.replaceAll(replacements);
+            }
+        }
+        String text = document.getText(0, document.getLength());
+        journal.close();
+        return text;
+    }
+
+    /**
+     * Finds the journal just written. It is no orphan, since the process that wrote it lives.
+     */
+    private Path onlyJournal() throws IOException {
+        List<Path> journals = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.journal")) {
+            for (Path file : files) {
+                journals.add(file);
+            }
+        }
+        assertEquals(1, journals.size());
+        return journals.get(0);
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(i % 17 == 16 ? '\n' : (char) ('a' + random.nextInt(26)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the percentiles a {@link LatencyHistogram} reads back are never below the exact ones
+ * and at most a bucket width above them.
+ */
+class LatencyHistogramTest {
+    @Test
+    void emptyHistogramReadsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean());
+    }
+
+    @Test
+    void singleSampleReadsBackExactly() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(123_456_789);
+        assertEquals(123_456_789, histogram.getPercentile(50));
+        assertEquals(123_456_789, histogram.getPercentile(100));
+        assertEquals(123_456_789, histogram.getMean());
+    }
+
+    @Test
+    void percentilesAreWithinABucketOfExact() {
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            long[] samples = new long[1 + random.nextInt(5000)];
+            for (int i = 0; i < samples.length; i++) {
+                // Spread over microseconds to minutes, and a few exactly on bucket edges
+                long micros = random.nextInt(10) == 0 ? (1L << random.nextInt(30)) - random.nextInt(2)
+                        : (long) Math.pow(10, random.nextDouble() * 8);
+                samples[i] = Math.max(0, micros) * 1000 + random.nextInt(1000);
+                histogram.record(samples[i]);
+            }
+            Arrays.sort(samples);
+            assertEquals(samples.length, histogram.getCount());
+            assertEquals(samples[samples.length - 1], histogram.getMax());
+            for (double percentile : new double[]{0, 1, 50, 90, 99, 99.9, 100}) {
+                long wanted = Math.max(1, (long) Math.ceil(percentile / 100 * samples.length));
+                long exact = samples[(int) wanted - 1];
+                long read = histogram.getPercentile(percentile);
+                assertTrue(read >= exact, percentile + "th: " + read + " < " + exact);
+                // A bucket spans a 32nd of its power of two, or a microsecond below 32
+                long width = Math.max(1000, exact / 32 + 1000);
+                assertTrue(read <= exact + width, percentile + "th: " + read + " > " + exact + " + " + width);
+                assertTrue(read <= histogram.getMax());
+            }
+        }
+    }
+
+    @Test
+    void resetForgetsSamples() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5_000_000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        histogram.record(2_000);
+        assertEquals(2_000, histogram.getPercentile(100));
+    }
+}
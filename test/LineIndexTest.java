@@ -0,0 +1,111 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks {@link LineIndex} against the line starts of a StringBuilder put through the same random
+ * edits, so that the gap is moved both ways, widened and emptied.
+ */
+class LineIndexTest {
+    private static final String ALPHABET = "ab\ncd\n\n";
+
+    @Test
+    void emptyIndexHasOneLine() {
+        LineIndex index = new LineIndex();
+        assertEquals(1, index.getLineCount());
+        assertEquals(0, index.getLineStart(0));
+        assertEquals(1, index.getLineEnd(0));
+        assertEquals(0, index.getLineOfOffset(0));
+    }
+
+    @Test
+    void randomEditsMatchLineStarts() {
+        Random random = new Random(3);
+        StringBuilder text = new StringBuilder("\n");
+        LineIndex index = new LineIndex();
+        for (int i = 0; i < 4000; i++) {
+            // The implied newline at the end is never edited
+            int length = text.length() - 1;
+            int offset = random.nextInt(length + 1);
+            int removed = random.nextInt(4) == 0 ? random.nextInt(Math.min(40, length - offset) + 1) : 0;
+            String inserted = randomText(random, random.nextInt(removed == 0 ? 30 : 8));
+            edit(index, text, offset, removed, inserted);
+            if (i % 100 == 0) {
+                check(index, text);
+            }
+        }
+        check(index, text);
+    }
+
+    @Test
+    void editsFarApartMoveTheGapBothWays() {
+        StringBuilder text = new StringBuilder("\n");
+        LineIndex index = new LineIndex();
+        edit(index, text, 0, 0, "line\n".repeat(500));
+        for (int i = 0; i < 50; i++) {
+            // Alternately near the end and near the start
+            int offset = i % 2 == 0 ? text.length() - 1 - i : i;
+            edit(index, text, offset, 0, "x\ny\n");
+            check(index, text);
+        }
+    }
+
+    /**
+     * Applies an edit to both the text and the index the way the document does: the line starts
+     * after the edit and up to the end of the removed text are replaced by those of the inserted
+     * text.
+     */
+    private static void edit(LineIndex index, StringBuilder text, int offset, int removed, String inserted) {
+        int line = index.getLineOfOffset(offset) + 1;
+        int removeCount = 0;
+        while (line + removeCount < index.getLineCount() && index.getLineStart(line + removeCount) <= offset + removed) {
+            removeCount++;
+        }
+        List<Integer> added = new ArrayList<>();
+        for (int i = 0; i < inserted.length(); i++) {
+            if (inserted.charAt(i) == '\n') {
+                added.add(offset + i + 1);
+            }
+        }
+        int[] starts = new int[added.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = added.get(i);
+        }
+        text.replace(offset, offset + removed, inserted);
+        index.replace(line, removeCount, starts, 0, starts.length, inserted.length() - removed);
+    }
+
+    private static void check(LineIndex index, StringBuilder text) {
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        for (int i = 0; i < text.length() - 1; i++) {
+            if (text.charAt(i) == '\n') {
+                starts.add(i + 1);
+            }
+        }
+        assertEquals(text.length(), index.getLength());
+        assertEquals(starts.size(), index.getLineCount());
+        int[] expected = new int[starts.size()];
+        for (int line = 0; line < expected.length; line++) {
+            expected[line] = starts.get(line);
+            int end = line + 1 < starts.size() ? starts.get(line + 1) : text.length();
+            assertEquals(end, index.getLineEnd(line));
+            assertEquals(line, index.getLineOfOffset(expected[line]));
+            assertEquals(line, index.getLineOfOffset(end - 1));
+        }
+        assertArrayEquals(expected, index.getLineStarts(0, expected.length));
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,173 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Checks that a {@link LogFollower} keeps a document in step with a file that is appended to,
+ * truncated and replaced, polling the document until it holds the expected text.
+ */
+class LogFollowerTest {
+    // Long enough for several polls of the follower on a slow machine
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @TempDir
+    Path directory;
+
+    private final PieceTableDocument document = new PieceTableDocument();
+    private final List<String> events = new ArrayList<>();
+    private FileWatcher.Stamp lastStamp;
+    private LogFollower follower;
+
+    @AfterEach
+    void stopFollowing() {
+        if (follower != null) {
+            follower.stop();
+        }
+    }
+
+    @Test
+    void appendedTextIsAddedWithItsLineBreaksNormalized() throws Exception {
+        Path file = directory.resolve("app.log");
+        write(file, "first\r\nsecond\n");
+        follow(file, 0);
+        awaitText("first\nsecond\n");
+        assertNotNull(lastStamp);
+        assertEquals(Files.size(file), lastStamp.getSize());
+
+        // A CRLF split between two appends still gives a single line break
+        append(file, "third\r");
+        awaitText("first\nsecond\nthird\n");
+        append(file, "\nfourth\rfifth");
+        awaitText("first\nsecond\nthird\nfourth\nfifth");
+        assertEquals(List.of(), events());
+    }
+
+    @Test
+    void truncatedFileIsReadAgainFromItsStart() throws Exception {
+        Path file = directory.resolve("app.log");
+        write(file, "a long line that will be gone\n");
+        follow(file, 0);
+        awaitText("a long line that will be gone\n");
+
+        write(file, "short\n");
+        awaitText("short\n");
+        assertEquals(List.of("truncated"), events());
+        append(file, "more\n");
+        awaitText("short\nmore\n");
+    }
+
+    @Test
+    void replacedFileIsReadAgainFromItsStart() throws Exception {
+        Path file = directory.resolve("app.log");
+        write(file, "old\n");
+        follow(file, 0);
+        awaitText("old\n");
+
+        // Rotated as loggers do: the file is moved aside and a new one takes its name
+        Files.move(file, directory.resolve("app.log.1"));
+        write(file, "new file, longer than the old one\n");
+        awaitText("new file, longer than the old one\n");
+        assertEquals(List.of("rotated"), events());
+    }
+
+    @Test
+    void windowKeepsTheLastLines() throws Exception {
+        Path file = directory.resolve("app.log");
+        StringBuilder text = new StringBuilder();
+        StringBuilder kept = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("line ").append(i).append('\n');
+            if (i >= 91) {
+                kept.append("line ").append(i).append('\n');
+            }
+        }
+        write(file, text.toString());
+        follow(file, 10);
+        awaitText(kept.toString());
+        // The document no longer holds all of the file
+        assertNull(lastStamp);
+    }
+
+    private void follow(Path file, int windowLines) {
+        follower = new LogFollower(document, file.toFile(), TextFormat.DEFAULT, null, windowLines, new LogFollower.Listener() {
+            @Override
+            public void appended(int previousLength, int removed, FileWatcher.Stamp stamp) {
+                lastStamp = stamp;
+            }
+
+            @Override
+            public void restarted(boolean rotated) {
+                events.add(rotated ? "rotated" : "truncated");
+            }
+
+            @Override
+            public void failed(BadLocationException cause) {
+                events.add("failed");
+            }
+        });
+        follower.start();
+    }
+
+    /**
+     * Waits for the document to hold a text, reading it on the Event Dispatch Thread the follower
+     * changes it on.
+     */
+    private void awaitText(String expected) throws InterruptedException, InvocationTargetException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        String[] text = new String[1];
+        while (true) {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        text[0] = document.getText(0, document.getLength());
+                    } catch (BadLocationException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            if (text[0].equals(expected)) {
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                fail("Expected \"" + expected + "\" but the document holds \"" + text[0] + "\"");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    private List<String> events() throws InterruptedException, InvocationTargetException {
+        List<String> copy = new ArrayList<>();
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                copy.addAll(events);
+            }
+        });
+        return copy;
+    }
+
+    private static void write(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void append(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
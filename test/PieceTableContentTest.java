@@ -0,0 +1,138 @@
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoableEdit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks {@link PieceTableContent} against a StringBuilder put through the same random edits.
+ */
+class PieceTableContentTest {
+    private static final String ALPHABET = "abc de\nfgh\n";
+
+    @Test
+    void randomEditsMatchStringBuilder() throws BadLocationException {
+        Random random = new Random(1);
+        PieceTableContent content = new PieceTableContent();
+        StringBuilder expected = new StringBuilder("\n");
+        for (int i = 0; i < 5000; i++) {
+            edit(random, content, expected);
+            if (i % 250 == 0) {
+                assertEquals(expected.toString(), content.getString(0, content.length()));
+            }
+        }
+        assertEquals(expected.toString(), content.getString(0, content.length()));
+        // A snapshot leaves out the implied trailing newline
+        assertEquals(expected.substring(0, expected.length() - 1), read(content.snapshot()));
+    }
+
+    @Test
+    void undoAndRedoRestoreEveryVersion() throws BadLocationException {
+        Random random = new Random(2);
+        PieceTableContent content = new PieceTableContent();
+        StringBuilder text = new StringBuilder("\n");
+        List<UndoableEdit> edits = new ArrayList<>();
+        List<String> versions = new ArrayList<>();
+        versions.add(text.toString());
+        for (int i = 0; i < 500; i++) {
+            UndoableEdit edit = edit(random, content, text);
+            if (edit != null) {
+                edits.add(edit);
+                versions.add(text.toString());
+            }
+        }
+        for (int i = edits.size() - 1; i >= 0; i--) {
+            edits.get(i).undo();
+            assertEquals(versions.get(i), content.getString(0, content.length()));
+        }
+        for (int i = 0; i < edits.size(); i++) {
+            edits.get(i).redo();
+            assertEquals(versions.get(i + 1), content.getString(0, content.length()));
+        }
+    }
+
+    @Test
+    void snapshotKeepsItsTextAfterLaterEdits() throws BadLocationException {
+        Random random = new Random(3);
+        PieceTableContent content = new PieceTableContent();
+        StringBuilder text = new StringBuilder("\n");
+        for (int i = 0; i < 300; i++) {
+            edit(random, content, text);
+        }
+        TextBuffer whole = content.snapshot();
+        int start = text.length() / 3;
+        int length = text.length() / 3;
+        TextBuffer part = content.snapshot(start, length);
+        String before = text.toString();
+        for (int i = 0; i < 300; i++) {
+            edit(random, content, text);
+        }
+        assertEquals(before.substring(0, before.length() - 1), read(whole));
+        assertEquals(before.substring(start, start + length), read(part));
+    }
+
+    @Test
+    void sharedBufferRangesReadBack() throws BadLocationException {
+        PieceTableContent content = new PieceTableContent();
+        TextBuffer buffer = new CharArrayBuffer("0123456789".toCharArray());
+        content.insertBuffer(0, buffer, 2, 3);
+        content.insertBuffer(3, buffer, 7, 2);
+        content.insertBuffer(1, buffer, 0, 1);
+        assertEquals("203478\n", content.getString(0, content.length()));
+    }
+
+    /**
+     * Makes one random insertion, buffer insertion or removal in both texts.
+     */
+    private static UndoableEdit edit(Random random, PieceTableContent content, StringBuilder expected) throws BadLocationException {
+        // The implied trailing newline is never removed, nor inserted after
+        int length = expected.length() - 1;
+        int where = random.nextInt(length + 1);
+        switch (random.nextInt(3)) {
+            case 0: {
+                String text = randomText(random, 1 + random.nextInt(20));
+                expected.insert(where, text);
+                return content.insertString(where, text);
+            }
+            case 1: {
+                String text = randomText(random, 1 + random.nextInt(40));
+                int start = random.nextInt(text.length());
+                int count = 1 + random.nextInt(text.length() - start);
+                expected.insert(where, text, start, start + count);
+                return content.insertBuffer(where, new CharArrayBuffer(text.toCharArray()), start, count);
+            }
+            default: {
+                if (where == length) {
+                    return null;
+                }
+                int count = 1 + random.nextInt(Math.min(30, length - where));
+                expected.delete(where, where + count);
+                return content.remove(where, count);
+            }
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return text.toString();
+    }
+
+    static String read(TextBuffer buffer) {
+        StringBuilder text = new StringBuilder();
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        for (int pos = 0; pos < buffer.length(); pos += segment.count) {
+            buffer.getChars(pos, buffer.length() - pos, segment);
+            text.append(segment.array, segment.offset, segment.count);
+        }
+        return text.toString();
+    }
+}
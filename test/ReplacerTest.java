@@ -0,0 +1,90 @@
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.BadLocationException;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that the replacements a {@link Replacer} works out, applied to a document, give the text
+ * {@link Matcher#replaceAll(String)} gives.
+ */
+class ReplacerTest {
+    @Test
+    void literalsMatchReplaceAll() throws BadLocationException {
+        Random random = new Random(6);
+        for (int round = 0; round < 200; round++) {
+            String text = randomText(random, random.nextInt(300));
+            String find = randomText(random, 1 + random.nextInt(3));
+            String replacement = randomText(random, random.nextInt(4)) + "$1\\";
+            boolean matchCase = random.nextBoolean();
+            Pattern pattern = Pattern.compile(Pattern.quote(find), matchCase ? 0 : Pattern.CASE_INSENSITIVE);
+            check(text, new Replacer(find, replacement, matchCase, false),
+                    pattern.matcher(text).replaceAll(Matcher.quoteReplacement(replacement)));
+        }
+    }
+
+    @Test
+    void groupsExpandAsReplaceAllDoes() throws BadLocationException {
+        String text = "key=value\nother=thing\nBad line\n";
+        checkRegex(text, "(\\w+)=(\\w+)", "$2=$1");
+        checkRegex(text, "(?<key>\\w+)=(?<value>\\w+)", "${value}:${key}");
+        checkRegex(text, "(\\w)(\\w)", "\\$$2$1\\\\");
+        // Only as many digits as make a group number are taken; the rest is text
+        checkRegex(text, "(k)ey", "$12");
+        checkRegex(text, "^(\\w+)$", "[$1]");
+        checkRegex(text, "(x)?line", "<$1>");
+    }
+
+    @Test
+    void emptyMatchesReplaceBetweenCharacters() throws BadLocationException {
+        checkRegex("abc\ndef", "x*", "-");
+        checkRegex("aaba", "a*", "<$0>");
+        checkRegex("one\n\ntwo\n", "^", "> ");
+        checkRegex("one\n\ntwo\n", "$", ";");
+        checkRegex("", "x*", "empty");
+    }
+
+    @Test
+    void caseIsIgnoredUnlessMatched() throws BadLocationException {
+        check("Abc ABC abc", new Replacer("abc", "x", false, true), "x x x");
+        check("Abc ABC abc", new Replacer("abc", "x", true, true), "Abc ABC x");
+    }
+
+    @Test
+    void badGroupReferencesAreRejected() {
+        TextBuffer text = new CharArrayBuffer("key=value".toCharArray());
+        assertThrows(IllegalArgumentException.class,
+                () -> new Replacer("(\\w+)", "${name", true, true).findAll(text, null, IoProgress.NONE));
+        assertThrows(IllegalArgumentException.class,
+                () -> new Replacer("(\\w+)", "${missing}", true, true).findAll(text, null, IoProgress.NONE));
+        assertThrows(IllegalArgumentException.class,
+                () -> new Replacer("\\w+", "$1", true, true).findAll(text, null, IoProgress.NONE));
+    }
+
+    private static void checkRegex(String text, String regex, String replacement) throws BadLocationException {
+        Pattern pattern = Pattern.compile(regex, Pattern.MULTILINE);
+        check(text, new Replacer(regex, replacement, true, true), pattern.matcher(text).replaceAll(replacement));
+    }
+
+    /**
+     * Applies the replacements a replacer finds in a text to a document holding it, and checks
+     * the document then holds the expected text.
+     */
+    private static void check(String text, Replacer replacer, String expected) throws BadLocationException {
+        PieceTableDocument document = PieceTableDocument.load(new CharArrayBuffer(text.toCharArray()));
+        document.replaceAll(replacer.findAll(document.snapshot(), null, IoProgress.NONE));
+        assertEquals(expected, document.getText(0, document.getLength()));
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append("aAb\n".charAt(random.nextInt(4)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,109 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks {@link RowIndex} against a plain list of row counts put through the same random changes,
+ * with enough lines that lookups cross many blocks of summed counts.
+ */
+class RowIndexTest {
+    @Test
+    void newLinesAreSingleStaleRows() {
+        RowIndex index = new RowIndex(3000);
+        assertEquals(3000, index.getRowCount());
+        assertTrue(index.isStale(2999));
+        assertEquals(2999, index.getLineOfRow(2999));
+        assertEquals(2999, index.getLineOfRow(1_000_000));
+        assertEquals(0, index.findStale(0));
+    }
+
+    @Test
+    void randomChangesMatchPlainCounts() {
+        Random random = new Random(4);
+        List<Integer> rows = new ArrayList<>(Collections.nCopies(5000, 1));
+        List<Boolean> exact = new ArrayList<>(Collections.nCopies(5000, false));
+        RowIndex index = new RowIndex(5000);
+        for (int i = 0; i < 3000; i++) {
+            int choice = random.nextInt(20);
+            if (choice < 14) {
+                int line = random.nextInt(rows.size());
+                int count = 1 + random.nextInt(random.nextBoolean() ? 3 : 50);
+                boolean isExact = random.nextBoolean();
+                index.setRows(line, count, isExact);
+                rows.set(line, count);
+                exact.set(line, isExact);
+            } else if (choice < 19) {
+                int line = random.nextInt(rows.size());
+                int removeCount = Math.min(random.nextInt(random.nextBoolean() ? 2 : 3000), rows.size() - line);
+                int addCount = random.nextInt(random.nextBoolean() ? 2 : 3000);
+                if (rows.size() - removeCount + addCount == 0) {
+                    addCount = 1;
+                }
+                index.replace(line, removeCount, addCount);
+                rows.subList(line, line + removeCount).clear();
+                exact.subList(line, line + removeCount).clear();
+                rows.addAll(line, Collections.nCopies(addCount, 1));
+                exact.addAll(line, Collections.nCopies(addCount, false));
+            } else {
+                double scale = random.nextBoolean() ? 1 : 0.5 + random.nextDouble();
+                index.invalidateAll(scale);
+                for (int line = 0; line < rows.size(); line++) {
+                    int count = rows.get(line);
+                    if (count > 1 && scale != 1) {
+                        rows.set(line, (int) Math.max(1, Math.round(count * scale)));
+                    }
+                    exact.set(line, false);
+                }
+            }
+            if (i % 50 == 0) {
+                check(index, rows, exact, random);
+            }
+        }
+        check(index, rows, exact, random);
+    }
+
+    @Test
+    void generationsWrappingAroundLeaveNoCountCurrent() {
+        RowIndex index = new RowIndex(10);
+        for (int i = 0; i < 600; i++) {
+            index.setRows(3, 2, true);
+            assertFalse(index.isStale(3));
+            index.invalidateAll(1);
+            assertTrue(index.isStale(3));
+            assertEquals(2, index.getRows(3));
+        }
+    }
+
+    private static void check(RowIndex index, List<Integer> rows, List<Boolean> exact, Random random) {
+        assertEquals(rows.size(), index.getLineCount());
+        long total = 0;
+        int firstStale = -1;
+        long[] rowOfLine = new long[rows.size()];
+        for (int line = 0; line < rows.size(); line++) {
+            rowOfLine[line] = total;
+            total += rows.get(line);
+            assertEquals((int) rows.get(line), index.getRows(line));
+            assertEquals(!exact.get(line), index.isStale(line));
+            if (firstStale < 0 && !exact.get(line)) {
+                firstStale = line;
+            }
+        }
+        assertEquals(total, index.getRowCount());
+        assertEquals(firstStale, index.findStale(0));
+        // Looked up in random order, so the sums are brought up to date in pieces
+        for (int i = 0; i < 200; i++) {
+            int line = random.nextInt(rows.size());
+            assertEquals(rowOfLine[line], index.getRowOfLine(line));
+            long row = rowOfLine[line] + random.nextInt(rows.get(line));
+            assertEquals(line, index.getLineOfRow(row));
+        }
+        assertEquals(rows.size() - 1, index.getLineOfRow(total));
+    }
+}
@@ -0,0 +1,105 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks that a {@link Session} reads back as it was written.
+ */
+class SessionTest {
+    @TempDir
+    Path directory;
+
+    private String previousDirectory;
+
+    @BeforeEach
+    void useTempDirectory() {
+        previousDirectory = System.setProperty("notepad.sessionDir", directory.toString());
+    }
+
+    @AfterEach
+    void restoreDirectory() {
+        if (previousDirectory == null) {
+            System.clearProperty("notepad.sessionDir");
+        } else {
+            System.setProperty("notepad.sessionDir", previousDirectory);
+        }
+    }
+
+    @Test
+    void noSessionReadsAsNull() {
+        assertNull(Session.read());
+    }
+
+    @Test
+    void damagedLengthsReadAsNull() throws IOException {
+        // An entry count the file cannot hold, then font names too long and negative
+        writeSession(ByteBuffer.allocate(64).putInt(0x4E505353).putInt(1).putInt(0)
+                .putInt(0).putInt(12).putInt(0).put((byte) 0).putInt(0).putInt(Integer.MAX_VALUE));
+        assertNull(Session.read());
+        writeSession(ByteBuffer.allocate(64).putInt(0x4E505353).putInt(1).putInt(1 << 30));
+        assertNull(Session.read());
+        writeSession(ByteBuffer.allocate(64).putInt(0x4E505353).putInt(1).putInt(-5));
+        assertNull(Session.read());
+    }
+
+    @Test
+    void truncatedSessionReadsAsNull() throws IOException {
+        List<Session.Entry> entries = new ArrayList<>();
+        entries.add(new Session.Entry(new File("/tmp/notes/cut.txt").getAbsoluteFile(), 1, 2, 3, 4, null));
+        new Session("Serif", 0, 12, 0, false, 0, entries).write();
+        Path file = directory.resolve("session.bin");
+        byte[] bytes = Files.readAllBytes(file);
+        for (int length = 0; length < bytes.length; length++) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            assertNull(Session.read());
+        }
+    }
+
+    private void writeSession(ByteBuffer bytes) throws IOException {
+        bytes.flip();
+        Files.write(directory.resolve("session.bin"), Arrays.copyOf(bytes.array(), bytes.limit()));
+    }
+
+    @Test
+    void writtenSessionReadsBack() throws IOException {
+        List<Session.Entry> entries = new ArrayList<>();
+        entries.add(new Session.Entry(new File("/tmp/notes/first.txt").getAbsoluteFile(), 1234, 5678, 10, 0, null));
+        entries.add(new Session.Entry(new File("/tmp/notes/second file.log").getAbsoluteFile(), 1L << 33, 99, 7, 3,
+                Paths.get("/tmp/undo/second.undo")));
+        Session written = new Session("Monospaced", 1, 17, 0x336699, true, 1, entries);
+        written.write();
+
+        Session read = Session.read();
+        assertNotNull(read);
+        assertEquals("Monospaced", read.getFontName());
+        assertEquals(1, read.getFontStyle());
+        assertEquals(17, read.getFontSize());
+        assertEquals(0x336699, read.getForeground());
+        assertEquals(true, read.isLineWrap());
+        assertEquals(1, read.getActiveIndex());
+        assertEquals(2, read.getEntries().size());
+        for (int i = 0; i < entries.size(); i++) {
+            Session.Entry expected = entries.get(i);
+            Session.Entry actual = read.getEntries().get(i);
+            assertEquals(expected.getFile(), actual.getFile());
+            assertEquals(expected.getCaretPosition(), actual.getCaretPosition());
+            assertEquals(expected.getViewPosition(), actual.getViewPosition());
+            assertEquals(expected.getUndoFile(), actual.getUndoFile());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.BadLocationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the replacements {@link TextDiff} works out turn the old text into the new one
+ * when a document applies them.
+ */
+class TextDiffTest {
+    @Test
+    void sameTextNeedsNoReplacements() {
+        TextBuffer text = buffer("one\ntwo\nthree\n");
+        assertEquals(0, TextDiff.diff(text, buffer("one\ntwo\nthree\n"), IoProgress.NONE).size());
+    }
+
+    @Test
+    void smallChangesApply() throws BadLocationException {
+        checkDiff("", "new file\n");
+        checkDiff("old file\n", "");
+        checkDiff("one\ntwo\nthree\n", "one\n2\nthree\n");
+        checkDiff("log line\n", "log line\nappended\n");
+        checkDiff("abc", "xabcx");
+    }
+
+    @Test
+    void randomLineEditsApply() throws BadLocationException {
+        Random random = new Random(9);
+        for (int round = 0; round < 60; round++) {
+            // Enough lines that the changes are matched line by line rather than replaced whole
+            List<String> lines = new ArrayList<>();
+            int count = 50 + random.nextInt(2000);
+            for (int i = 0; i < count; i++) {
+                lines.add(randomLine(random));
+            }
+            String oldText = String.join("\n", lines);
+            int changes = 1 + random.nextInt(40);
+            for (int i = 0; i < changes; i++) {
+                int at = random.nextInt(lines.size() + 1);
+                switch (random.nextInt(4)) {
+                    case 0:
+                        lines.add(at, randomLine(random));
+                        break;
+                    case 1:
+                        if (at < lines.size()) {
+                            lines.remove(at);
+                        }
+                        break;
+                    case 2:
+                        if (at < lines.size()) {
+                            lines.set(at, randomLine(random));
+                        }
+                        break;
+                    default:
+                        // Lines that repeat are never matched on their own
+                        lines.add(at, "");
+                        lines.add(at, "}");
+                        break;
+                }
+            }
+            checkDiff(oldText, String.join("\n", lines));
+        }
+    }
+
+    @Test
+    void reloadedReplacementsOutliveTheTextTheyCameFrom() throws BadLocationException {
+        String oldText = "first\nsecond\nthird\n";
+        char[] newChars = "first\n2nd\nthird\nfourth\n".toCharArray();
+        String newText = new String(newChars);
+        PieceTableDocument document = PieceTableDocument.load(buffer(oldText));
+        Replacements replacements = ReloadTask.copyText(
+                TextDiff.diff(document.snapshot(), new CharArrayBuffer(newChars), IoProgress.NONE));
+        // The file as it was read may change or go away once the replacements are worked out
+        Arrays.fill(newChars, '?');
+        document.replaceAll(replacements);
+        assertEquals(newText, document.getText(0, document.getLength()));
+    }
+
+    /**
+     * Applies the replacements between two texts to a document holding the old one, and checks
+     * it then holds the new one.
+     */
+    private static void checkDiff(String oldText, String newText) throws BadLocationException {
+        PieceTableDocument document = PieceTableDocument.load(buffer(oldText));
+        Replacements replacements = TextDiff.diff(document.snapshot(), buffer(newText), IoProgress.NONE);
+        document.replaceAll(replacements);
+        assertEquals(newText, document.getText(0, document.getLength()));
+    }
+
+    private static TextBuffer buffer(String text) {
+        return new CharArrayBuffer(text.toCharArray());
+    }
+
+    private static String randomLine(Random random) {
+        StringBuilder line = new StringBuilder();
+        int length = random.nextInt(60);
+        for (int i = 0; i < length; i++) {
+            line.append((char) ('a' + random.nextInt(26)));
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,125 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the charsets and line separators {@link TextFormat#detect(Path)} guesses for files.
+ */
+class TextFormatTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void byteOrderMarksDecide() throws IOException {
+        TextFormat utf8 = detect(concat(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}, bytes("a\r\nb\r\n", StandardCharsets.UTF_8)));
+        assertEquals(StandardCharsets.UTF_8, utf8.getCharset());
+        assertEquals(3, utf8.getBom().length);
+        assertEquals("\r\n", utf8.getLineSeparator());
+
+        TextFormat le = detect(concat(new byte[]{(byte) 0xFF, (byte) 0xFE}, bytes("a\nb\n", StandardCharsets.UTF_16LE)));
+        assertEquals(StandardCharsets.UTF_16LE, le.getCharset());
+        assertArrayEquals(new byte[]{(byte) 0xFF, (byte) 0xFE}, le.getBom());
+        assertEquals("\n", le.getLineSeparator());
+
+        TextFormat be = detect(concat(new byte[]{(byte) 0xFE, (byte) 0xFF}, bytes("a\rb\r", StandardCharsets.UTF_16BE)));
+        assertEquals(StandardCharsets.UTF_16BE, be.getCharset());
+        assertEquals("\r", be.getLineSeparator());
+    }
+
+    @Test
+    void utf16WithoutMarkIsFoundByItsZeroBytes() throws IOException {
+        String text = "plain ASCII text\r\nsecond line\r\n";
+        TextFormat le = detect(bytes(text, StandardCharsets.UTF_16LE));
+        assertEquals(StandardCharsets.UTF_16LE, le.getCharset());
+        assertEquals(0, le.getBom().length);
+        assertEquals("\r\n", le.getLineSeparator());
+        assertEquals(StandardCharsets.UTF_16BE, detect(bytes(text, StandardCharsets.UTF_16BE)).getCharset());
+    }
+
+    @Test
+    void wellFormedUtf8IsUtf8() throws IOException {
+        TextFormat format = detect(bytes("caf\u00e9 \u20ac \ud83d\ude00\n", StandardCharsets.UTF_8));
+        assertEquals(StandardCharsets.UTF_8, format.getCharset());
+        assertEquals(0, format.getBom().length);
+        assertFalse(format.isMixed());
+    }
+
+    @Test
+    void sequenceCutOffByTheSampleIsStillUtf8() throws IOException {
+        // The first two bytes of a three-byte character end the 64 KB sample
+        byte[] file = new byte[(1 << 16) + 1];
+        Arrays.fill(file, (byte) 'a');
+        file[(1 << 16) - 2] = (byte) 0xE2;
+        file[(1 << 16) - 1] = (byte) 0x82;
+        file[1 << 16] = (byte) 0xAC;
+        assertEquals(StandardCharsets.UTF_8, detect(file).getCharset());
+    }
+
+    @Test
+    void invalidUtf8IsReadInAnEightBitCharset() throws IOException {
+        Charset platform = Charset.defaultCharset();
+        boolean platformFits = !platform.equals(StandardCharsets.UTF_8) && !platform.equals(StandardCharsets.US_ASCII);
+
+        // A Latin-1 e acute, and an overlong encoding of '/'
+        for (byte[] file : new byte[][]{{'c', 'a', 'f', (byte) 0xE9, '\n'}, {'a', (byte) 0xC0, (byte) 0xAF}}) {
+            Charset expected = platformFits ? platform : Charset.forName("windows-1252");
+            assertEquals(expected, detect(file).getCharset());
+        }
+        // A byte windows-1252 leaves undefined
+        if (!platformFits) {
+            assertEquals(StandardCharsets.ISO_8859_1, detect(new byte[]{'a', (byte) 0x81, 'b'}).getCharset());
+        }
+    }
+
+    @Test
+    void mostCommonLineBreakWinsAndMixedIsNoted() throws IOException {
+        TextFormat format = detect(bytes("a\r\nb\r\nc\nd\r\n", StandardCharsets.UTF_8));
+        assertEquals("\r\n", format.getLineSeparator());
+        assertTrue(format.isMixed());
+        assertFalse(format.unmixed().isMixed());
+
+        assertEquals("\n", detect(bytes("a\nb\nc\r\n", StandardCharsets.UTF_8)).getLineSeparator());
+        assertEquals("\n", detect(bytes("no line break", StandardCharsets.UTF_8)).getLineSeparator());
+        // A CR at the very end may be the first half of a CRLF, so it is not counted
+        assertFalse(detect(bytes("a\nb\r", StandardCharsets.UTF_8)).isMixed());
+    }
+
+    @Test
+    void fallbackHoldsAnyByte() {
+        TextFormat format = new TextFormat(StandardCharsets.UTF_8, true, "\r\n");
+        TextFormat fallback = format.fallback();
+        assertEquals(Charset.forName("windows-1252"), fallback.getCharset());
+        assertEquals(0, fallback.getBom().length);
+        assertEquals("\r\n", fallback.getLineSeparator());
+        assertEquals(StandardCharsets.ISO_8859_1, fallback.fallback().getCharset());
+    }
+
+    private TextFormat detect(byte[] content) throws IOException {
+        Path file = Files.createTempFile(directory, "format", ".txt");
+        Files.write(file, content);
+        return TextFormat.detect(file);
+    }
+
+    private static byte[] bytes(String text, Charset charset) {
+        return text.getBytes(charset);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(first);
+        out.writeBytes(second);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,149 @@
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.Segment;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks {@link TextSearcher} against a plain search, on text handed out in pieces shorter and
+ * longer than the pattern, so that matches straddle one or several piece boundaries.
+ */
+class TextSearcherTest {
+    @Test
+    void findsMatchesAcrossPieces() {
+        Random random = new Random(5);
+        for (int round = 0; round < 300; round++) {
+            String text = randomText(random, random.nextInt(400), "abAB\u00e9\u00c9 ");
+            int start = random.nextInt(Math.max(1, text.length() - 3));
+            // Mostly text that occurs, sometimes text that may not
+            String pattern = random.nextInt(4) == 0 || text.length() < 5
+                    ? randomText(random, 1 + random.nextInt(6), "abAB")
+                    : text.substring(start, start + 1 + random.nextInt(4));
+            boolean matchCase = random.nextBoolean();
+            TextBuffer buffer = new PieceBuffer(text, 1 + random.nextInt(8));
+            TextSearcher searcher = new TextSearcher(pattern, matchCase);
+            int from = random.nextInt(text.length() + 1);
+            int to = from + random.nextInt(text.length() - from + 1);
+
+            List<Integer> expected = matches(text, pattern, matchCase, from, to, pattern.length());
+            List<Integer> found = new ArrayList<>();
+            searcher.scan(buffer, from, to, IoProgress.NONE, new TextSearcher.MatchVisitor() {
+                @Override
+                public boolean matchFound(int match) {
+                    found.add(match);
+                    return true;
+                }
+            });
+            assertEquals(expected, found, () -> "\"" + pattern + "\" in \"" + text + "\"");
+            assertEquals(expected.isEmpty() ? -1 : expected.get(0), searcher.indexOf(buffer, from, to));
+
+            List<Integer> overlapping = matches(text, pattern, matchCase, from, to, 1);
+            int last = overlapping.isEmpty() ? -1 : overlapping.get(overlapping.size() - 1);
+            assertEquals(last, searcher.lastIndexOf(buffer, from, to));
+        }
+    }
+
+    @Test
+    void scansOnlyInsideRegions() {
+        String text = "abc abc abc abc abc";
+        TextSearcher searcher = new TextSearcher("abc", true);
+        List<Integer> found = new ArrayList<>();
+        // The second region cuts the match at 8 short, and the third holds one whole
+        searcher.scan(new PieceBuffer(text, 2), new int[]{0, 3, 8, 10, 12, 15}, IoProgress.NONE,
+                new TextSearcher.MatchVisitor() {
+                    @Override
+                    public boolean matchFound(int start) {
+                        found.add(start);
+                        return true;
+                    }
+                });
+        assertEquals(List.of(0, 12), found);
+    }
+
+    @Test
+    void visitorStopsTheScan() {
+        TextSearcher searcher = new TextSearcher("a", true);
+        int[] visits = {0};
+        searcher.scan(new PieceBuffer("aaaa", 1), 0, 4, IoProgress.NONE, new TextSearcher.MatchVisitor() {
+            @Override
+            public boolean matchFound(int start) {
+                visits[0]++;
+                return false;
+            }
+        });
+        assertEquals(1, visits[0]);
+    }
+
+    /**
+     * Finds the matches starting in a range and ending by its end, moving on by the given step
+     * after each one.
+     */
+    private static List<Integer> matches(String text, String pattern, boolean matchCase, int from, int to, int step) {
+        List<Integer> matches = new ArrayList<>();
+        int i = from;
+        while (i + pattern.length() <= to) {
+            if (matchesAt(text, pattern, matchCase, i)) {
+                matches.add(i);
+                i += step;
+            } else {
+                i++;
+            }
+        }
+        return matches;
+    }
+
+    private static boolean matchesAt(String text, String pattern, boolean matchCase, int at) {
+        for (int k = 0; k < pattern.length(); k++) {
+            char a = text.charAt(at + k);
+            char b = pattern.charAt(k);
+            if (matchCase ? a != b : TextSearcher.foldCase(a) != TextSearcher.foldCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String randomText(Random random, int length, String alphabet) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Text that hands out at most one piece of a fixed size at a time, as a piece table does.
+     */
+    private static final class PieceBuffer implements TextBuffer {
+        private final char[] chars;
+        private final int pieceSize;
+
+        PieceBuffer(String text, int pieceSize) {
+            chars = text.toCharArray();
+            this.pieceSize = pieceSize;
+        }
+
+        @Override
+        public int length() {
+            return chars.length;
+        }
+
+        @Override
+        public void getChars(int offset, int length, Segment segment) {
+            if (segment.isPartialReturn()) {
+                int pieceEnd = (offset / pieceSize + 1) * pieceSize;
+                segment.array = chars;
+                segment.offset = offset;
+                segment.count = Math.min(length, pieceEnd - offset);
+            } else {
+                segment.array = new char[length];
+                System.arraycopy(chars, offset, segment.array, 0, length);
+                segment.offset = 0;
+                segment.count = length;
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.BadLocationException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the regions a {@link TrigramIndex} narrows a search to hold every match, both right
+ * after it is built and after edits have moved text between its blocks.
+ */
+class TrigramIndexTest {
+    private static final String ALPHABET = "abcdefghAB \n";
+
+    @Test
+    void regionsHoldEveryMatchAsEditsMoveBlocks() throws BadLocationException {
+        Random random = new Random(8);
+        PieceTableDocument document = PieceTableDocument.load(new CharArrayBuffer(randomText(random, 300_000).toCharArray()));
+        // A budget small enough that blocks are merged while building
+        TrigramIndex index = TrigramIndex.build(document.snapshot(), 64 * 1024, IoProgress.NONE);
+        assertTrue(index.getBlockCount() < 300_000 >> 14, "blocks were not merged");
+        check(index, document, random);
+
+        for (int i = 0; i < 400; i++) {
+            int length = document.getLength();
+            boolean current;
+            if (random.nextBoolean()) {
+                int offset = random.nextInt(length + 1);
+                String text = randomText(random, 1 + random.nextInt(60));
+                document.insertString(offset, text, null);
+                current = index.insertUpdate(document, offset, text.length());
+            } else {
+                int offset = random.nextInt(length);
+                int count = Math.min(1 + random.nextInt(60), length - offset);
+                document.remove(offset, count);
+                current = index.removeUpdate(document, offset, count);
+            }
+            assertTrue(current, "small edits asked for a rebuild");
+            if (i % 20 == 0) {
+                check(index, document, random);
+            }
+        }
+        check(index, document, random);
+    }
+
+    @Test
+    void largeEditsAskForARebuild() throws BadLocationException {
+        Random random = new Random(9);
+        PieceTableDocument document = PieceTableDocument.load(new CharArrayBuffer(randomText(random, 100_000).toCharArray()));
+        TrigramIndex index = TrigramIndex.build(document.snapshot(), Long.MAX_VALUE, IoProgress.NONE);
+        String text = randomText(random, 70_000);
+        document.insertString(500, text, null);
+        assertFalse(index.insertUpdate(document, 500, text.length()));
+
+        document = PieceTableDocument.load(new CharArrayBuffer(randomText(random, 100_000).toCharArray()));
+        index = TrigramIndex.build(document.snapshot(), Long.MAX_VALUE, IoProgress.NONE);
+        document.remove(1000, 30_000);
+        assertFalse(index.removeUpdate(document, 1000, 30_000));
+    }
+
+    /**
+     * Checks patterns taken from the text, and some that may not occur, against a plain search.
+     */
+    private static void check(TrigramIndex index, PieceTableDocument document, Random random) throws BadLocationException {
+        String text = document.getText(0, document.getLength());
+        for (int i = 0; i < 30; i++) {
+            String pattern;
+            if (random.nextInt(5) == 0) {
+                pattern = randomText(random, 3 + random.nextInt(4));
+            } else {
+                int start = random.nextInt(text.length() - 20);
+                pattern = swapCase(text.substring(start, start + 3 + random.nextInt(18)), random);
+            }
+            int[] regions = index.candidateRegions(pattern);
+            if (regions == null) {
+                continue;
+            }
+            for (int r = 2; r < regions.length; r += 2) {
+                assertTrue(regions[r - 1] < regions[r], "regions overlap");
+            }
+            for (int at = 0; at + pattern.length() <= text.length(); at++) {
+                if (matchesAt(text, pattern, at)) {
+                    assertTrue(covered(regions, at, at + pattern.length()),
+                            "\"" + pattern + "\" at " + at + " lies outside every region");
+                }
+            }
+        }
+    }
+
+    private static boolean covered(int[] regions, int start, int end) {
+        for (int r = 0; r < regions.length; r += 2) {
+            if (regions[r] <= start && end <= regions[r + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesAt(String text, String pattern, int at) {
+        for (int k = 0; k < pattern.length(); k++) {
+            if (TextSearcher.foldCase(text.charAt(at + k)) != TextSearcher.foldCase(pattern.charAt(k))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String swapCase(String text, Random random) {
+        StringBuilder swapped = new StringBuilder(text);
+        for (int i = 0; i < swapped.length(); i++) {
+            if (random.nextBoolean()) {
+                swapped.setCharAt(i, Character.toUpperCase(swapped.charAt(i)));
+            }
+        }
+        return swapped.toString();
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return text.toString();
+    }
+}
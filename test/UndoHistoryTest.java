@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.swing.text.BadLocationException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link UndoHistory} undoes and redoes back to every version of a document, with
+ * edits in memory, spilled to its log, and saved and loaded by another history.
+ */
+class UndoHistoryTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void undoAndRedoInMemory() throws BadLocationException {
+        checkRoundTrip(1L << 40, 4);
+    }
+
+    @Test
+    void undoAndRedoSpilledEdits() throws BadLocationException {
+        checkRoundTrip(1 << 12, 5);
+    }
+
+    @Test
+    void savedHistoryCarriesOnInAnotherDocument() throws BadLocationException, IOException {
+        PieceTableDocument document = new PieceTableDocument();
+        UndoHistory history = new UndoHistory(1 << 12);
+        history.setDocument(document);
+        List<String> versions = makeEdits(new Random(6), document, 200);
+        // Some edits wait to be redone when the history is saved
+        for (int i = 0; i < 20; i++) {
+            history.undo();
+        }
+        Path file = directory.resolve("history.undo");
+        history.save(file);
+        String saved = document.getText(0, document.getLength());
+        history.close();
+
+        PieceTableDocument reopened = new PieceTableDocument();
+        reopened.insertString(0, saved, null);
+        UndoHistory loaded = new UndoHistory(1 << 12);
+        loaded.setDocument(reopened);
+        loaded.load(file);
+        for (int i = 0; i < 20; i++) {
+            loaded.redo();
+        }
+        assertFalse(loaded.canRedo());
+        assertEquals(versions.get(versions.size() - 1), reopened.getText(0, reopened.getLength()));
+        for (int i = versions.size() - 2; i >= 0; i--) {
+            loaded.undo();
+            assertEquals(versions.get(i), reopened.getText(0, reopened.getLength()));
+        }
+        assertFalse(loaded.canUndo());
+        loaded.close();
+    }
+
+    /**
+     * Makes random edits, then undoes all of them and redoes them again, checking each version.
+     */
+    private static void checkRoundTrip(long budget, long seed) throws BadLocationException {
+        PieceTableDocument document = new PieceTableDocument();
+        UndoHistory history = new UndoHistory(budget);
+        history.setDocument(document);
+        List<String> versions = makeEdits(new Random(seed), document, 300);
+        if (budget < 1 << 16) {
+            assertTrue(history.getSpilledCount() > 0);
+        }
+        for (int i = versions.size() - 2; i >= 0; i--) {
+            history.undo();
+            assertEquals(versions.get(i), document.getText(0, document.getLength()));
+        }
+        assertFalse(history.canUndo());
+        for (int i = 1; i < versions.size(); i++) {
+            history.redo();
+            assertEquals(versions.get(i), document.getText(0, document.getLength()));
+        }
+        assertFalse(history.canRedo());
+        history.close();
+    }
+
+    /**
+     * Makes random insertions and removals of more than one character, so that no two are
+     * merged as typing, and returns the text before and after each.
+     */
+    private static List<String> makeEdits(Random random, PieceTableDocument document, int count) throws BadLocationException {
+        List<String> versions = new ArrayList<>();
+        versions.add(document.getText(0, document.getLength()));
+        for (int i = 0; i < count; i++) {
+            int length = document.getLength();
+            if (length < 2 || random.nextInt(3) > 0) {
+                StringBuilder text = new StringBuilder();
+                int size = 2 + random.nextInt(500);
+                for (int k = 0; k < size; k++) {
+                    text.append(k % 40 == 39 ? '\n' : (char) ('a' + random.nextInt(26)));
+                }
+                document.insertString(random.nextInt(length + 1), text.toString(), null);
+            } else {
+                int offset = random.nextInt(length - 1);
+                document.remove(offset, 2 + random.nextInt(Math.min(300, length - offset - 1)));
+            }
+            versions.add(document.getText(0, document.getLength()));
+        }
+        return versions;
+    }
+}